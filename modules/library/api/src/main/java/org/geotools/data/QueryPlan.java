@@ -0,0 +1,306 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Describes how a feature source is going to run a {@link Query}, without running it.
+ * <p>
+ * The plan tells which part of the filter is handed over to the native storage and which part
+ * is evaluated in memory, the native query itself (a SQL statement, a file scan, a remote
+ * request), the index used if any, and which of sorting, paging, reprojection and retyping are
+ * performed in memory. When the source can tell, the plan also carries the estimated number of
+ * features returned and a relative cost.
+ * </p>
+ *
+ * @see QueryPlanner
+ * @since 2.8
+ * @source $URL$
+ */
+public class QueryPlan {
+
+    /**
+     * Value of the estimates when the source cannot provide them
+     */
+    public static final long UNKNOWN = -1;
+
+    String typeName;
+
+    String nativeQuery;
+
+    String index;
+
+    Filter nativeFilter = Filter.INCLUDE;
+
+    Filter residualFilter = Filter.INCLUDE;
+
+    SortBy[] sortBy;
+
+    boolean sortInMemory;
+
+    boolean offsetInMemory;
+
+    boolean limitInMemory;
+
+    CoordinateReferenceSystem sourceCRS;
+
+    CoordinateReferenceSystem targetCRS;
+
+    boolean reprojectInMemory;
+
+    String[] propertyNames = Query.ALL_NAMES;
+
+    boolean retypeInMemory;
+
+    long estimatedRows = UNKNOWN;
+
+    double estimatedCost = UNKNOWN;
+
+    public QueryPlan(String typeName) {
+        this.typeName = typeName;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * The query run against the native storage, in a human readable form: a SQL statement, a
+     * request, a file scan. May be null if the source cannot describe it.
+     */
+    public String getNativeQuery() {
+        return nativeQuery;
+    }
+
+    public void setNativeQuery(String nativeQuery) {
+        this.nativeQuery = nativeQuery;
+    }
+
+    /**
+     * The index used to locate the features, or null if the features are all scanned or the
+     * choice is left to the native storage
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    /**
+     * The part of the filter evaluated by the native storage
+     */
+    public Filter getNativeFilter() {
+        return nativeFilter;
+    }
+
+    public void setNativeFilter(Filter nativeFilter) {
+        this.nativeFilter = nativeFilter == null ? Filter.INCLUDE : nativeFilter;
+    }
+
+    /**
+     * The part of the filter evaluated in memory on the features returned by the native storage
+     */
+    public Filter getResidualFilter() {
+        return residualFilter;
+    }
+
+    public void setResidualFilter(Filter residualFilter) {
+        this.residualFilter = residualFilter == null ? Filter.INCLUDE : residualFilter;
+    }
+
+    /**
+     * The requested sort order, null if none
+     */
+    public SortBy[] getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(SortBy[] sortBy) {
+        this.sortBy = sortBy;
+    }
+
+    /**
+     * True if the features are sorted in memory rather than by the native storage
+     */
+    public boolean isSortInMemory() {
+        return sortInMemory;
+    }
+
+    public void setSortInMemory(boolean sortInMemory) {
+        this.sortInMemory = sortInMemory;
+    }
+
+    /**
+     * True if the start index is applied by skipping features in memory
+     */
+    public boolean isOffsetInMemory() {
+        return offsetInMemory;
+    }
+
+    public void setOffsetInMemory(boolean offsetInMemory) {
+        this.offsetInMemory = offsetInMemory;
+    }
+
+    /**
+     * True if the maximum number of features is applied in memory
+     */
+    public boolean isLimitInMemory() {
+        return limitInMemory;
+    }
+
+    public void setLimitInMemory(boolean limitInMemory) {
+        this.limitInMemory = limitInMemory;
+    }
+
+    /**
+     * The native coordinate reference system of the data, when the query reprojects
+     */
+    public CoordinateReferenceSystem getSourceCRS() {
+        return sourceCRS;
+    }
+
+    /**
+     * The coordinate reference system the features are reprojected to, or null if the query
+     * does not reproject
+     */
+    public CoordinateReferenceSystem getTargetCRS() {
+        return targetCRS;
+    }
+
+    /**
+     * Sets the reprojection step of the plan
+     *
+     * @param inMemory true if the geometries are reprojected in memory, false if the native
+     *        storage reprojects them
+     */
+    public void setReprojection(CoordinateReferenceSystem sourceCRS,
+            CoordinateReferenceSystem targetCRS, boolean inMemory) {
+        this.sourceCRS = sourceCRS;
+        this.targetCRS = targetCRS;
+        this.reprojectInMemory = inMemory;
+    }
+
+    public boolean isReprojectInMemory() {
+        return reprojectInMemory;
+    }
+
+    /**
+     * The requested properties, {@link Query#ALL_NAMES} for all of them
+     */
+    public String[] getPropertyNames() {
+        return propertyNames;
+    }
+
+    public void setPropertyNames(String[] propertyNames) {
+        this.propertyNames = propertyNames;
+    }
+
+    /**
+     * True if the features are read with all their attributes and retyped in memory
+     */
+    public boolean isRetypeInMemory() {
+        return retypeInMemory;
+    }
+
+    public void setRetypeInMemory(boolean retypeInMemory) {
+        this.retypeInMemory = retypeInMemory;
+    }
+
+    /**
+     * The estimated number of features returned, or {@link #UNKNOWN}
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public void setEstimatedRows(long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+
+    /**
+     * A relative cost, roughly the number of features read from the native storage plus the
+     * work done on them in memory, or {@link #UNKNOWN}. Only meaningful to compare the plans
+     * of a same source.
+     */
+    public double getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    public void setEstimatedCost(double estimatedCost) {
+        this.estimatedCost = estimatedCost;
+    }
+
+    /**
+     * The steps performed in memory after reading from the native storage, in order
+     */
+    public List<String> getMemorySteps() {
+        List<String> steps = new ArrayList<String>();
+        if (residualFilter != Filter.INCLUDE) {
+            steps.add("filter " + residualFilter);
+        }
+        if (reprojectInMemory && targetCRS != null) {
+            steps.add("reproject to " + name(targetCRS));
+        }
+        if (sortInMemory) {
+            steps.add("sort by " + Arrays.asList(sortBy));
+        }
+        if (offsetInMemory) {
+            steps.add("skip to start index");
+        }
+        if (limitInMemory) {
+            steps.add("limit");
+        }
+        if (retypeInMemory && propertyNames != Query.ALL_NAMES) {
+            steps.add("retype to " + Arrays.asList(propertyNames));
+        }
+        return steps;
+    }
+
+    static String name(CoordinateReferenceSystem crs) {
+        return crs.getName() != null ? crs.getName().getCode() : crs.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("QueryPlan[").append(typeName).append("]\n");
+        if (nativeQuery != null) {
+            sb.append("  native query: ").append(nativeQuery).append("\n");
+        }
+        if (index != null) {
+            sb.append("  index: ").append(index).append("\n");
+        }
+        sb.append("  native filter: ").append(nativeFilter).append("\n");
+        if (targetCRS != null && !reprojectInMemory) {
+            sb.append("  native reprojection to ").append(name(targetCRS)).append("\n");
+        }
+        for (String step : getMemorySteps()) {
+            sb.append("  in memory: ").append(step).append("\n");
+        }
+        sb.append("  estimated rows: ").append(estimatedRows == UNKNOWN ? "unknown" : estimatedRows);
+        sb.append(", cost: ").append(estimatedCost == UNKNOWN ? "unknown" : estimatedCost);
+        return sb.toString();
+    }
+}
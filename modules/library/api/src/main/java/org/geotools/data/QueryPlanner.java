@@ -0,0 +1,45 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the {@link FeatureSource}s able to describe how they run a query.
+ * <p>
+ * Example use:
+ * <pre><code>
+ * if (source instanceof QueryPlanner) {
+ *     QueryPlan plan = ((QueryPlanner) source).explain(query);
+ *     if (plan.getResidualFilter() != Filter.INCLUDE) {
+ *         // part of the filter is going to be evaluated in memory
+ *     }
+ * }
+ * </code></pre>
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public interface QueryPlanner {
+
+    /**
+     * Describes how the query would be run, without running it. Building the plan may still
+     * access the native storage to gather metadata, but not the features.
+     */
+    QueryPlan explain(Query query) throws IOException;
+}
@@ -37,6 +37,8 @@ import org.geotools.data.Query;
 import org.geotools.data.ServiceInfo;
 import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.statistics.StatisticsCatalog;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.NameImpl;
@@ -152,6 +154,11 @@ public abstract class ContentDataStore implements DataStore {
      */
     protected DataStoreFactorySpi dataStoreFactory;
     
+    /**
+     * statistics of the entries, null if not enabled
+     */
+    protected StatisticsCatalog statisticsCatalog;
+    
     public ContentDataStore() {
         // get a concurrent map so that we can do reads in parallel with writes (writes vs writes
         // are actually synchronized to prevent double work, see getEntry()).
@@ -247,6 +254,29 @@ public abstract class ContentDataStore implements DataStore {
         this.dataStoreFactory = dataStoreFactory;
     }
     
+    /**
+     * The catalog of the statistics of the datastore entries.
+     * 
+     * @return The statistics catalog, <code>null</code> if statistics are not enabled.
+     */
+    public StatisticsCatalog getStatisticsCatalog() {
+        return statisticsCatalog;
+    }
+    
+    /**
+     * Enables statistics for the datastore entries.
+     * <p>
+     * Once the statistics of an entry have been collected with 
+     * {@link StatisticsCatalog#refresh(SimpleFeatureSource)} the 
+     * writers of the datastore keep them up to date, and the feature sources use them to 
+     * return estimated counts and bounds when allowed by {@link Hints#STATISTICS_ESTIMATES}.
+     * </p>
+     * @param statisticsCatalog The statistics catalog, <code>null</code> to disable statistics.
+     */
+    public void setStatisticsCatalog(StatisticsCatalog statisticsCatalog) {
+        this.statisticsCatalog = statisticsCatalog;
+    }
+    
     /**
      * The namespace uri of the datastore.
      * 
@@ -33,14 +33,20 @@ import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.MaxFeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
+import org.geotools.data.QueryPlan;
+import org.geotools.data.QueryPlanner;
 import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.ResourceInfo;
+import org.geotools.data.SortedFeatureReader;
 import org.geotools.data.Transaction;
 import org.geotools.data.crs.ReprojectFeatureReader;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.statistics.FeatureTypeStatistics;
+import org.geotools.data.statistics.StatisticsCatalog;
 import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.FeatureCalc;
 import org.geotools.filter.function.Collection_AverageFunction;
 import org.geotools.filter.function.Collection_BoundsFunction;
 import org.geotools.filter.function.Collection_MaxFunction;
@@ -87,7 +93,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  *
  * @source $URL$
  */
-public abstract class ContentFeatureSource implements SimpleFeatureSource {
+public abstract class ContentFeatureSource implements SimpleFeatureSource, QueryPlanner {
     /**
      * The entry for the feature source.
      */
@@ -353,6 +359,15 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
     public final ReferencedEnvelope getBounds(Query query) throws IOException {
         query = joinQuery( query );
         query = resolvePropertyNames(query);
+        
+        // estimate from the statistics if allowed
+        if ( query.getCoordinateSystemReproject() == null 
+                && StatisticsCatalog.isEstimateAllowed( query.getHints() ) ) {
+            FeatureTypeStatistics statistics = getStatistics();
+            if ( statistics != null && statistics.getBounds() != null ) {
+                return statistics.estimateBounds( query.getFilter() );
+            }
+        }
         /*
         if ( query == Query.ALL ) {
             //check the cache
@@ -398,6 +413,18 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
     public final int getCount(Query query) throws IOException {
         query = joinQuery( query );
         query = resolvePropertyNames( query );
+        
+        // estimate from the statistics if allowed
+        if ( StatisticsCatalog.isEstimateAllowed( query.getHints() ) ) {
+            FeatureTypeStatistics statistics = getStatistics();
+            if ( statistics != null ) {
+                int estimate = statistics.estimateCount( query.getFilter() );
+                if ( query.getStartIndex() != null ) {
+                    estimate = Math.max( 0, estimate - query.getStartIndex() );
+                }
+                return Math.min( estimate, query.getMaxFeatures() );
+            }
+        }
         /*
         if ( query == Query.ALL ) {
             //check the cache
@@ -431,6 +458,18 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
      */
     protected abstract int getCountInternal(Query query) throws IOException;
     
+    /**
+     * Returns the statistics of the feature type, or <code>null</code> if the datastore
+     * has no statistics catalog, or the statistics have not been collected or are stale.
+     */
+    protected FeatureTypeStatistics getStatistics() throws IOException {
+        StatisticsCatalog catalog = getDataStore().getStatisticsCatalog();
+        if ( catalog == null ) {
+            return null;
+        }
+        return catalog.getCurrentStatistics( entry.getTypeName() );
+    }
+    
     /**
      * Returns the feature collection of all the features of the feature source.
      */
@@ -480,7 +519,19 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
             query = dq;
         }
         
-        FeatureReader<SimpleFeatureType, SimpleFeature> reader = getReaderInternal( query );
+        // sorting is done after filtering and reprojection, but before offset and limit,
+        // so when the subclass cannot sort it must not page nor limit either
+        boolean sort = !canSort() && !SortedFeatureReader.isNaturalOrder(query.getSortBy());
+        if ( sort && !SortedFeatureReader.canSort(getSchema(), query.getSortBy()) ) {
+            throw new UnsupportedOperationException( "sorting unsupported" );
+        }
+        
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+        if ( sort ) {
+            reader = getReaderInternal( SortedFeatureReader.getSourceQuery( query ) );
+        } else {
+            reader = getReaderInternal( query );
+        }
         
         //
         //apply wrappers based on subclass capabilities
@@ -488,7 +539,13 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
         //filtering
         if ( !canFilter() ) {
             if (query.getFilter() != null && query.getFilter() != Filter.INCLUDE ) {
-                reader = new FilteringFeatureReader<SimpleFeatureType, SimpleFeature>( reader, query.getFilter() );
+                // evaluate the most selective conditions first
+                Filter filter = query.getFilter();
+                FeatureTypeStatistics statistics = getStatistics();
+                if ( statistics != null ) {
+                    filter = statistics.optimize( filter );
+                }
+                reader = new FilteringFeatureReader<SimpleFeatureType, SimpleFeature>( reader, filter );
             }    
         }
         
@@ -506,8 +563,13 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
             }    
         }
         
+        //sorting
+        if ( sort ) {
+            reader = new SortedFeatureReader( reader, query );
+        }
+        
         // offset
-        if( !canOffset() && offset > 0 ) {
+        if( (!canOffset() || sort) && offset > 0 ) {
             // skip the first n records
             for(int i = 0; i < offset && reader.hasNext(); i++) {
                 reader.next();
@@ -515,21 +577,14 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
         }
         
         // max feature limit
-        if ( !canLimit() ) {
+        if ( !canLimit() || sort ) {
             if (query.getMaxFeatures() != -1 && query.getMaxFeatures() < Integer.MAX_VALUE ) {
                 reader = new MaxFeatureReader<SimpleFeatureType, SimpleFeature>(reader, query.getMaxFeatures());
             }    
         }
         
-        //sorting
-        if ( !canSort() ) {
-            if ( query.getSortBy() != null && query.getSortBy().length != 0 ) {
-                throw new UnsupportedOperationException( "sorting unsupported" );
-            }
-        }
-        
-        //retyping
-        if ( !canRetype() ) {
+        //retyping, the sort attributes might have been added to the requested ones
+        if ( !canRetype() || sort ) {
             if ( query.getPropertyNames() != Query.ALL_NAMES ) {
                 //rebuild the type and wrap the reader
                 SimpleFeatureType target = 
@@ -546,6 +601,85 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
         return reader;
     }
     
+    /**
+     * Describes how {@link #getReader(Query)} runs a query, following the same decisions
+     * based on the subclass capabilities. Subclasses describe their native query in
+     * {@link #explainInternal(Query, QueryPlan)}.
+     * <p>
+     * The estimates are based on the statistics of the type, when the store has a
+     * {@linkplain ContentDataStore#getStatisticsCatalog() statistics catalog}.
+     * </p>
+     */
+    public QueryPlan explain(Query query) throws IOException {
+        query = joinQuery( query );
+        query = resolvePropertyNames(query);
+        
+        final int offset = query.getStartIndex() != null ? query.getStartIndex() : 0;
+        if(offset > 0 && query.getSortBy() == null) {
+            Query dq = new Query(query);
+            dq.setSortBy(new SortBy[] {SortBy.NATURAL_ORDER});
+            query = dq;
+        }
+        boolean sort = !canSort() && !SortedFeatureReader.isNaturalOrder(query.getSortBy());
+        
+        QueryPlan plan = new QueryPlan( getSchema().getTypeName() );
+        Filter filter = query.getFilter() != null ? query.getFilter() : Filter.INCLUDE;
+        FeatureTypeStatistics statistics = getStatistics();
+        if ( canFilter() ) {
+            plan.setNativeFilter( filter );
+        } else {
+            plan.setResidualFilter( statistics != null ? statistics.optimize( filter ) : filter );
+        }
+        plan.setSortBy( query.getSortBy() );
+        plan.setSortInMemory( sort );
+        if ( query.getCoordinateSystemReproject() != null ) {
+            plan.setReprojection( getSchema().getCoordinateReferenceSystem(), 
+                    query.getCoordinateSystemReproject(), !canReproject() );
+        }
+        plan.setOffsetInMemory( (!canOffset() || sort) && offset > 0 );
+        plan.setLimitInMemory( (!canLimit() || sort) && query.getMaxFeatures() != -1 
+                && query.getMaxFeatures() < Integer.MAX_VALUE );
+        plan.setPropertyNames( query.getPropertyNames() );
+        plan.setRetypeInMemory( (!canRetype() || sort) && query.getPropertyNames() != Query.ALL_NAMES );
+        
+        explainInternal( sort ? SortedFeatureReader.getSourceQuery( query ) : query, plan );
+        
+        if ( statistics != null ) {
+            // features read from the storage, plus n log(n) when sorting in memory
+            Filter selection = plan.getNativeFilter();
+            if ( plan.getResidualFilter() != Filter.INCLUDE ) {
+                selection = selection == Filter.INCLUDE ? plan.getResidualFilter() 
+                        : getDataStore().getFilterFactory().and( selection, plan.getResidualFilter() );
+            }
+            long selected = statistics.estimateCount( selection );
+            double cost = statistics.estimateCount( plan.getNativeFilter() );
+            if ( sort && selected > 1 ) {
+                cost += selected * (Math.log( selected ) / Math.log( 2 ));
+            }
+            long rows = Math.max( 0, selected - offset );
+            if ( query.getMaxFeatures() >= 0 ) {
+                rows = Math.min( rows, query.getMaxFeatures() );
+            }
+            plan.setEstimatedRows( rows );
+            plan.setEstimatedCost( cost );
+        }
+        return plan;
+    }
+    
+    /**
+     * Subclass hook to describe the native part of a query plan.
+     * <p>
+     * The plan has already been set up from the capabilities of the subclass, with the
+     * whole filter marked as native if {@link #canFilter()} is true. Subclasses fill in the
+     * native query and the index used, and move the parts of the filter they cannot handle
+     * to the residual filter. The default implementation does nothing.
+     * </p>
+     * @param query The query, as passed to {@link #getReaderInternal(Query)}
+     * @param plan The plan to complete
+     */
+    protected void explainInternal( Query query, QueryPlan plan ) throws IOException {
+    }
+    
     /**
      * Visit the features matching the provided query.
      * <p>
@@ -581,6 +715,14 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
             return;
         }
 
+        // aggregate visitors do not hold onto the features, the reader can recycle them
+        if ( visitor instanceof FeatureCalc ) {
+            query = new Query( query );
+            Hints hints = new Hints( query.getHints() );
+            hints.put( Hints.FEATURE_REUSE, Boolean.TRUE );
+            query.setHints( hints );
+        }
+
         //subclass could not handle, resort to manually walkign through
         FeatureReader<SimpleFeatureType, SimpleFeature> reader = getReader(query);
         try{
@@ -746,8 +888,9 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
      * or throw an exception. 
      * </p>
      * <p>
-     * Not overriding this method or returning <code>false</code> will cause an 
-     * exception to be thrown when the query specifies sorting.
+     * Not overriding this method or returning <code>false</code> will cause the
+     * feature reader created by the subclass to be wrapped in a sorting feature
+     * reader when the query specifies sorting, see {@link SortedFeatureReader}.
      */
     protected boolean canSort() {
         return false;
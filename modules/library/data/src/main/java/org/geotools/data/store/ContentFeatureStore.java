@@ -35,6 +35,7 @@ import org.geotools.data.LockingManager;
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.data.statistics.StatisticsCatalog;
 import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.NameImpl;
@@ -149,6 +150,12 @@ public abstract class ContentFeatureStore extends ContentFeatureSource implement
         
         FeatureWriter<SimpleFeatureType, SimpleFeature> writer = getWriterInternal( query, flags );
         
+        // keep the statistics up to date
+        StatisticsCatalog catalog = getDataStore().getStatisticsCatalog();
+        if ( catalog != null ) {
+            writer = catalog.wrap( writer, entry.getTypeName(), transaction );
+        }
+        
         //TODO: apply wrappers
         
         //TODO: turn locking on / off
@@ -0,0 +1,241 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.factory.Hints;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Turns features into the rows handed to
+ * {@link SQLDialect#bulkLoad(SimpleFeatureType, String[], Class[], int[], Iterator, Connection)}.
+ * <p>
+ * Since bulk loading does not report generated keys, the values of all the primary key
+ * columns are computed before loading, and the auto generated columns are loaded with
+ * explicit values:
+ * <ul>
+ * <li>provided feature ids are used as is, when {@link Hints#USE_PROVIDED_FID} is set</li>
+ * <li>values of sequences, and of the sequences behind auto generated columns, are reserved
+ * in blocks</li>
+ * <li>numeric keys without a sequence are incremented from the current maximum</li>
+ * </ul>
+ * Auto generated columns not backed by a sequence cannot be computed, see
+ * {@link #canComputeKeys()}.
+ * </p>
+ *
+ * @source $URL$
+ */
+class JDBCBulkLoader implements Iterator<Object[]> {
+
+    JDBCDataStore dataStore;
+
+    SimpleFeatureType featureType;
+
+    PrimaryKey key;
+
+    Iterator<SimpleFeature> features;
+
+    Connection cx;
+
+    /**
+     * The number of sequence values reserved at once
+     */
+    int blockSize;
+
+    /**
+     * The loaded attributes, primary key columns excluded
+     */
+    List<AttributeDescriptor> attributes = new ArrayList<AttributeDescriptor>();
+
+    String[] columns;
+
+    Class[] bindings;
+
+    int[] srids;
+
+    /**
+     * The sequence providing the values of each key column, null if the column has none
+     */
+    String[] sequences;
+
+    /**
+     * The reserved sequence values, for each key column
+     */
+    List<LinkedList<Object>> reserved = new ArrayList<LinkedList<Object>>();
+
+    /**
+     * The last value computed for each key column
+     */
+    Object[] lastValues;
+
+    JDBCBulkLoader(JDBCDataStore dataStore, SimpleFeatureType featureType,
+            Iterator<SimpleFeature> features, Connection cx, int blockSize) throws IOException,
+            SQLException {
+        this.dataStore = dataStore;
+        this.featureType = featureType;
+        this.features = features;
+        this.cx = cx;
+        this.blockSize = blockSize;
+        this.key = dataStore.getPrimaryKey(featureType);
+
+        Set<String> pkColumnNames = dataStore.getColumnNames(key);
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            // skip the pk columns in case we have exposed them
+            if (!pkColumnNames.contains(att.getLocalName())) {
+                attributes.add(att);
+            }
+        }
+
+        List<PrimaryKeyColumn> keyColumns = key.getColumns();
+        int count = attributes.size() + keyColumns.size();
+        columns = new String[count];
+        bindings = new Class[count];
+        srids = new int[count];
+        for (int i = 0; i < attributes.size(); i++) {
+            AttributeDescriptor att = attributes.get(i);
+            columns[i] = att.getLocalName();
+            bindings[i] = att.getType().getBinding();
+            srids[i] = att instanceof GeometryDescriptor ? dataStore.getDescriptorSRID(att) : -1;
+        }
+
+        sequences = new String[keyColumns.size()];
+        lastValues = new Object[keyColumns.size()];
+        for (int i = 0; i < keyColumns.size(); i++) {
+            PrimaryKeyColumn col = keyColumns.get(i);
+            columns[attributes.size() + i] = col.getName();
+            bindings[attributes.size() + i] = col.getType();
+            srids[attributes.size() + i] = -1;
+            if (col instanceof SequencedPrimaryKeyColumn) {
+                sequences[i] = ((SequencedPrimaryKeyColumn) col).getSequenceName();
+            } else if (col instanceof AutoGeneratedPrimaryKeyColumn) {
+                sequences[i] = dataStore.getSQLDialect().getSequenceForColumn(
+                        dataStore.getDatabaseSchema(), key.getTableName(), col.getName(), cx);
+            }
+            reserved.add(new LinkedList<Object>());
+        }
+    }
+
+    /**
+     * Returns true if the key values of the features can be computed before loading them
+     */
+    boolean canComputeKeys() {
+        for (int i = 0; i < sequences.length; i++) {
+            if (key.getColumns().get(i) instanceof AutoGeneratedPrimaryKeyColumn
+                    && sequences[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean hasNext() {
+        return features.hasNext();
+    }
+
+    public Object[] next() {
+        SimpleFeature feature = features.next();
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < attributes.size(); i++) {
+            row[i] = feature.getAttribute(columns[i]);
+        }
+
+        List<Object> keyValues;
+        try {
+            keyValues = keyValues(feature);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not compute the primary key of feature "
+                    + feature.getID(), e);
+        }
+        for (int i = 0; i < keyValues.size(); i++) {
+            row[attributes.size() + i] = keyValues.get(i);
+        }
+
+        // report the feature id as user data since we cant set the fid
+        feature.getUserData().put("fid",
+                featureType.getTypeName() + "." + dataStore.encodeFID(keyValues));
+        return row;
+    }
+
+    List<Object> keyValues(SimpleFeature feature) throws IOException, SQLException {
+        if (Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID))) {
+            return dataStore.decodeFID(key, feature.getID(), true);
+        }
+
+        List<Object> keyValues = new ArrayList<Object>();
+        for (int i = 0; i < sequences.length; i++) {
+            PrimaryKeyColumn col = key.getColumns().get(i);
+            Object value = null;
+            if (sequences[i] != null) {
+                LinkedList<Object> values = reserved.get(i);
+                if (values.isEmpty()) {
+                    List<Object> next = dataStore.getSQLDialect().getNextSequenceValues(
+                            dataStore.getDatabaseSchema(), sequences[i], blockSize, cx);
+                    if (next == null || next.isEmpty()) {
+                        throw new IOException("Could not get the next values of sequence "
+                                + sequences[i]);
+                    }
+                    values.addAll(next);
+                }
+                value = values.removeFirst();
+            } else if (lastValues[i] != null) {
+                // the previous rows are not in the table yet, increment locally
+                value = increment(lastValues[i]);
+            }
+            if (value == null) {
+                value = dataStore.getNextValue(col, key, cx);
+            }
+            lastValues[i] = value;
+            keyValues.add(value);
+        }
+        return keyValues;
+    }
+
+    /**
+     * Returns the value following an integral key value, or null for other types
+     */
+    static Object increment(Object value) {
+        if (value instanceof Integer) {
+            return (Integer) value + 1;
+        } else if (value instanceof Long) {
+            return (Long) value + 1;
+        } else if (value instanceof Short) {
+            return (short) ((Short) value + 1);
+        } else if (value instanceof BigInteger) {
+            return ((BigInteger) value).add(BigInteger.ONE);
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).add(BigDecimal.ONE);
+        }
+        return null;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -39,8 +39,10 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import javax.sql.DataSource;
@@ -49,6 +51,7 @@ import javax.xml.transform.TransformerException;
 import org.geotools.data.DataStore;
 import org.geotools.data.DefaultQuery;
 import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureStore;
 import org.geotools.data.GmlObjectStore;
 import org.geotools.data.InProcessLockingManager;
@@ -57,8 +60,12 @@ import org.geotools.data.Transaction;
 import org.geotools.data.Transaction.State;
 import org.geotools.data.jdbc.FilterToSQL;
 import org.geotools.data.jdbc.FilterToSQLException;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
 import org.geotools.data.jdbc.datasource.ManageableDataSource;
+import org.geotools.data.jdbc.datasource.UnWrapper;
 import org.geotools.data.jdbc.fidmapper.FIDMapper;
+import org.geotools.data.join.SpatialJoin;
+import org.geotools.data.join.SpatialJoinSupport;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.store.ContentDataStore;
@@ -69,6 +76,7 @@ import org.geotools.factory.Hints;
 import org.geotools.feature.NameImpl;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.GroupByVisitor;
 import org.geotools.filter.FilterCapabilities;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -134,7 +142,7 @@ import com.vividsolutions.jts.geom.Point;
  * @source $URL$
  */
 public final class JDBCDataStore extends ContentDataStore
-    implements GmlObjectStore {
+    implements GmlObjectStore, SpatialJoinSupport {
     
     /**
      * The native SRID associated to a certain descriptor
@@ -246,6 +254,41 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected int fetchSize;
     
+    /**
+     * The minimum number of features sent to the database at once by
+     * {@link #bulkLoad(Iterator, SimpleFeatureType, Connection)}
+     */
+    static final int BULK_LOAD_BATCH_SIZE = 1000;
+    
+    /**
+     * The driver statements handed out by {@link #prepareStatement(Connection, String, int, int)},
+     * weakly referenced so that the statements closed by the pool are dropped
+     */
+    Map<Statement, Boolean> preparedStatements = Collections
+            .synchronizedMap(new WeakHashMap<Statement, Boolean>());
+
+    /**
+     * Unwraps the statements handed out by the pool, null if the statements cannot be unwrapped
+     */
+    volatile UnWrapper statementUnWrapper;
+
+    volatile boolean statementUnWrapperLookedUp;
+
+    /**
+     * The cache of query results, null if disabled
+     */
+    volatile JDBCQueryCache queryCache;
+
+    AtomicLong statementCacheHits = new AtomicLong();
+
+    AtomicLong statementCacheMisses = new AtomicLong();
+    
+    /**
+     * The number of features inserted with a single batch of statements, defaulting to 1
+     * (no batching).
+     */
+    protected int batchInsertSize = 1;
+    
     /**
      * flag controlling whether primary key columns of a table are exposed via the 
      * feature type.
@@ -342,6 +385,126 @@ public final class JDBCDataStore extends ContentDataStore
         this.fetchSize = fetchSize;
     }
 
+    /**
+     * The number of features sent to the database with a single batch of insert
+     * statements.
+     * @see #setBatchInsertSize(int)
+     */
+    public int getBatchInsertSize() {
+        return batchInsertSize;
+    }
+
+    /**
+     * Changes the number of features sent to the database with a single batch of insert
+     * statements. Values less or equal to 1 insert features one at a time.
+     * <p>
+     * Batching applies to features whose primary key values can be obtained before the
+     * insert without looking at the table contents: provided feature ids, keys backed by a
+     * sequence (fetched in blocks, see
+     * {@link SQLDialect#getNextSequenceValues(String, String, int, Connection)}), string keys
+     * and tables without a primary key. Features whose key is generated by the database, or
+     * computed from the current maximum value, are still inserted one at a time since their
+     * identifier depends on the rows inserted before them.
+     * </p>
+     * <p>
+     * When writing with a feature writer the pending batch is sent when full and when the
+     * writer is closed, so insert errors might be reported by a later call to
+     * {@link org.geotools.data.FeatureWriter#write()} or by
+     * {@link org.geotools.data.FeatureWriter#close()}.
+     * </p>
+     */
+    public void setBatchInsertSize(int batchInsertSize) {
+        this.batchInsertSize = batchInsertSize;
+    }
+
+    /**
+     * Returns the number of queries that reused a prepared statement cached by the connection
+     * pool, since the data store creation or the last call to
+     * {@link #resetStatementCacheStatistics()}.
+     * <p>
+     * With a {@link PreparedStatementSQLDialect} literals are encoded as parameters, so queries
+     * differing only in their literals (such as the bounding boxes of map tiles) share the same
+     * SQL, and the pool can hand out the statement prepared for the first one, sparing the
+     * server the parsing and planning. Reuse is tracked by identifying the driver statement
+     * behind the pooled ones, so the statistics are only kept when an {@link UnWrapper} is
+     * available for the pool (such as DBCP with access to the underlying connections).
+     * </p>
+     * @since 2.8
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * Returns the number of queries that required preparing a new statement, see
+     * {@link #getStatementCacheHits()}.
+     * @since 2.8
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    /**
+     * Returns the fraction of queries that reused a cached prepared statement, or 0 if no
+     * query has been tracked yet, see {@link #getStatementCacheHits()}.
+     * @since 2.8
+     */
+    public double getStatementCacheHitRatio() {
+        long hits = statementCacheHits.get();
+        long total = hits + statementCacheMisses.get();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    /**
+     * Resets the prepared statement cache statistics
+     * @since 2.8
+     */
+    public void resetStatementCacheStatistics() {
+        statementCacheHits.set(0);
+        statementCacheMisses.set(0);
+    }
+
+    /**
+     * Returns the cache of query results, or null if results are not cached (the default)
+     * @since 2.8
+     */
+    public JDBCQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Sets the cache of query results, null to disable caching. The cache should not be shared
+     * among data stores.
+     * @see JDBCQueryCache
+     * @since 2.8
+     */
+    public void setQueryCache(JDBCQueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Notifies the query cache that the features of a type have been modified in the given
+     * transaction. In auto commit mode the cached results are dropped right away, otherwise
+     * when the transaction commits.
+     */
+    void featuresModified(String typeName, Transaction tx) {
+        JDBCQueryCache cache = queryCache;
+        if (cache == null) {
+            return;
+        }
+        JDBCTransactionState tstate = null;
+        if (tx != null && tx != Transaction.AUTO_COMMIT) {
+            tstate = (JDBCTransactionState) tx.getState(this);
+        }
+        if (tstate == null || tstate.external) {
+            // we won't know when an external transaction commits
+            cache.invalidate(typeName);
+        }
+        if (tstate != null) {
+            tstate.modifiedTypes.add(typeName);
+        }
+    }
+
     /**
      * Determines if the datastore creates feature types which include those columns / attributes
      * which compose the primary key.
@@ -661,6 +824,14 @@ public final class JDBCDataStore extends ContentDataStore
         }
     }
 
+    /**
+     * Runs the spatial join as a single SQL query, if the dialect supports it.
+     */
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getJoinReader(SpatialJoin join)
+            throws IOException {
+        return new JDBCSpatialJoin(this, join).getReader();
+    }
+
     /**
      * 
      */
@@ -1082,7 +1253,13 @@ public final class JDBCDataStore extends ContentDataStore
         ResultSet rs = null;
         ReferencedEnvelope bounds = new ReferencedEnvelope(featureType.getCoordinateReferenceSystem());
         try {
-            List<ReferencedEnvelope> result = dialect.getOptimizedBounds(databaseSchema, featureType, cx);
+            // the optimized bounds are computed over the whole table
+            List<ReferencedEnvelope> result = null;
+            if ((query.getFilter() == null || query.getFilter() == Filter.INCLUDE)
+                    && query.getMaxFeatures() == Integer.MAX_VALUE
+                    && (query.getStartIndex() == null || query.getStartIndex() == 0)) {
+                result = dialect.getOptimizedBounds(databaseSchema, featureType, cx);
+            }
             if(result != null && !result.isEmpty()) {
                 // merge the envelopes into one
                 for (ReferencedEnvelope envelope : result) {
@@ -1182,21 +1359,16 @@ public final class JDBCDataStore extends ContentDataStore
     protected Object getAggregateValue(FeatureVisitor visitor, SimpleFeatureType featureType, Query query, Connection cx ) 
         throws IOException {
         
+        if ( visitor instanceof GroupByVisitor ) {
+            return getGroupByValue( (GroupByVisitor) visitor, featureType, query, cx );
+        }
+        
         //get the name of the function
-        String function = getAggregateFunctions().get( visitor.getClass() );
+        String function = getAggregateFunction( visitor );
         if ( function == null ) {
-            //try walking up the hierarchy
-            Class clazz = visitor.getClass();
-            while( clazz != null && function == null ) {
-                clazz = clazz.getSuperclass();
-                function = getAggregateFunctions().get( clazz );
-            }
-            
-            if ( function == null ) {
-                //not supported
-                LOGGER.info( "Unable to find aggregate function matching visitor: " + visitor.getClass());
-                return null;
-            }
+            //not supported
+            LOGGER.info( "Unable to find aggregate function matching visitor: " + visitor.getClass());
+            return null;
         }
         
         AttributeDescriptor att = null;
@@ -1246,6 +1418,105 @@ public final class JDBCDataStore extends ContentDataStore
         }
     }
 
+    /**
+     * Results the values of an aggregate function over the groups of a query, computed with a
+     * <code>GROUP BY</code>. Returns null if the grouping cannot be done in the database, that
+     * is when the aggregate is not supported or does not return a single row for each group,
+     * or when the groups are not defined by plain attributes.
+     */
+    protected Object getGroupByValue(GroupByVisitor visitor, SimpleFeatureType featureType,
+            Query query, Connection cx) throws IOException {
+        FeatureVisitor aggregate = visitor.getAggregateVisitor();
+        String function = getAggregateFunction( aggregate );
+        if ( function == null || "distinct".equalsIgnoreCase( function ) ) {
+            LOGGER.info( "Unable to group by aggregate function matching visitor: " + aggregate.getClass());
+            return null;
+        }
+        
+        AttributeDescriptor att = null;
+        Expression expression = getExpression(aggregate);
+        if ( expression != null ) {
+            att = (AttributeDescriptor) expression.evaluate( featureType );
+            if ( att == null ) {
+                return null;
+            }
+        }
+        
+        List<AttributeDescriptor> groupBy = new ArrayList<AttributeDescriptor>();
+        for ( Expression e : visitor.getGroupByExpressions() ) {
+            Object descriptor = e instanceof PropertyName ? e.evaluate( featureType ) : null;
+            if ( !(descriptor instanceof AttributeDescriptor) || descriptor instanceof GeometryDescriptor ) {
+                return null;
+            }
+            groupBy.add( (AttributeDescriptor) descriptor );
+        }
+        
+        try {
+            Statement st = null;
+            ResultSet rs = null;
+            
+            try {
+                if ( dialect instanceof PreparedStatementSQLDialect ) {
+                    st = selectAggregateSQLPS(function, att, groupBy, featureType, query, cx);
+                    rs = ((PreparedStatement)st).executeQuery();
+                } 
+                else {
+                    String sql = selectAggregateSQL(function, att, groupBy, featureType, query);
+                    LOGGER.fine( sql );
+                    
+                    st = cx.createStatement();
+                    rs = st.executeQuery( sql );
+                }
+                
+                visitor.reset();
+                while ( rs.next() ) {
+                    List<Object> key = new ArrayList<Object>( groupBy.size() );
+                    for ( int i = 0; i < groupBy.size(); i++ ) {
+                        Object value = rs.getObject( i + 1 );
+                        Class binding = groupBy.get( i ).getType().getBinding();
+                        if ( value != null && !binding.isInstance( value ) ) {
+                            Object converted = Converters.convert( value, binding );
+                            if ( converted != null ) {
+                                value = converted;
+                            }
+                        }
+                        key.add( value );
+                    }
+                    
+                    FeatureVisitor group = visitor.getGroup( key );
+                    Object value = rs.getObject( groupBy.size() + 1 );
+                    if ( value != null && !setResult( group, value ) ) {
+                        visitor.reset();
+                        return null;
+                    }
+                }
+            } finally {
+                closeSafe( rs );
+                closeSafe( st );
+            }
+            
+            return visitor.getGroupValues();
+        }
+        catch( SQLException e ) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+    
+    /**
+     * Returns the aggregate function matching a visitor, or one of its super classes, null if
+     * there is none
+     */
+    String getAggregateFunction(FeatureVisitor visitor) {
+        String function = getAggregateFunctions().get( visitor.getClass() );
+        //try walking up the hierarchy
+        Class clazz = visitor.getClass();
+        while( clazz != null && function == null ) {
+            clazz = clazz.getSuperclass();
+            function = getAggregateFunctions().get( clazz );
+        }
+        return function;
+    }
+
     /**
      * Helper method for getting the expression from a visitor
      * TODO: Remove this method when there is an interface for aggregate visitors.
@@ -1327,64 +1598,71 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected void insert(Collection features, SimpleFeatureType featureType, Connection cx)
         throws IOException {
-        PrimaryKey key = getPrimaryKey(featureType);
-
         // we do this in a synchronized block because we need to do two queries,
         // first to figure out what the id will be, then the insert statement
         synchronized (this) {
-            Statement st = null;
-
+            JDBCInsertBatch batch = new JDBCInsertBatch(this, featureType, cx, batchInsertSize);
             try {
-                if ( !(dialect instanceof PreparedStatementSQLDialect) ) {
-                    st = cx.createStatement();    
-                }
-                
-                // figure out if we should determine what the fid is pre or post insert
-                boolean postInsert = dialect.lookupGeneratedValuesPostInsert() && isGenerated(key);
-                
                 for (Iterator f = features.iterator(); f.hasNext();) {
                     SimpleFeature feature = (SimpleFeature) f.next();
                     
-                    List<Object> keyValues = null;
-                    boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
-                    if(useExisting) {
-                        keyValues = decodeFID(key, feature.getID(), true);
-                    } else if (!postInsert) {
-                        keyValues = getNextValues( key, cx );
-                    }
-                    
-
-                    if ( dialect instanceof PreparedStatementSQLDialect ) {
-                        PreparedStatement ps = insertSQLPS( featureType, feature, keyValues, cx );
-                        try {
-                            ps.execute();    
-                        } finally {
-                            closeSafe( ps );
-                        }
-                    } else {
-                        String sql = insertSQL(featureType, feature, keyValues, cx);
-                        LOGGER.log(Level.FINE, "Inserting new feature: {0}", sql);
-
-                        //TODO: execute in batch to improve performance?
-                        st.execute(sql);
-                    }
-                    
-                    if ( keyValues == null ) {
-                        //grab the key values post insert
-                        keyValues = getLastValues(key,cx);
-                    }
-                    
                     //report the feature id as user data since we cant set the fid
-                    String fid = featureType.getTypeName() + "." + encodeFID(keyValues);
+                    String fid = batch.add(feature);
                     feature.getUserData().put("fid", fid);
                 }
-
-                //st.executeBatch();
+                batch.flush();
             } catch (SQLException e) {
                 String msg = "Error inserting features";
                 throw (IOException) new IOException(msg).initCause(e);
             } finally {
-                closeSafe(st);
+                batch.close();
+            }
+        }
+    }
+
+    /**
+     * Loads features into the database for a particular feature type / table, using the bulk
+     * loading mechanism of the dialect when available, batches of insert statements otherwise.
+     * <p>
+     * As with {@link #insert(Collection, SimpleFeatureType, Connection)} the id of each feature
+     * is reported as the "fid" user data.
+     * </p>
+     * @return the number of loaded features
+     */
+    protected long bulkLoad(Iterator<SimpleFeature> features, SimpleFeatureType featureType,
+            Connection cx) throws IOException {
+        int batchSize = Math.max(batchInsertSize, BULK_LOAD_BATCH_SIZE);
+        
+        // synchronized since keys without a sequence are computed from the table contents
+        synchronized (this) {
+            try {
+                if (dialect.isBulkLoadSupported()) {
+                    JDBCBulkLoader loader = new JDBCBulkLoader(this, featureType, features, cx,
+                            batchSize);
+                    if (loader.canComputeKeys()) {
+                        return dialect.bulkLoad(featureType, loader.columns, loader.bindings,
+                                loader.srids, loader, cx);
+                    }
+                    LOGGER.fine("The primary key of " + featureType.getTypeName() + " is "
+                            + "generated without a sequence, loading with insert statements");
+                }
+                
+                long count = 0;
+                JDBCInsertBatch batch = new JDBCInsertBatch(this, featureType, cx, batchSize);
+                try {
+                    while (features.hasNext()) {
+                        SimpleFeature feature = features.next();
+                        feature.getUserData().put("fid", batch.add(feature));
+                        count++;
+                    }
+                    batch.flush();
+                } finally {
+                    batch.close();
+                }
+                return count;
+            } catch (SQLException e) {
+                String msg = "Error loading features";
+                throw (IOException) new IOException(msg).initCause(e);
             }
         }
     }
@@ -2744,6 +3022,37 @@ public final class JDBCDataStore extends ContentDataStore
      *            sort conditions
      */
     protected String selectSQL(SimpleFeatureType featureType, Query query) throws IOException, SQLException {
+        FilterToSQL toSQL = null;
+        Filter filter = query.getFilter();
+        if (filter != null && !Filter.INCLUDE.equals(filter)) {
+            // grab the full feature type, as we might be encoding a filter
+            // that uses attributes that aren't returned in the results
+            toSQL = createFilterToSQL(getSchema(featureType.getTypeName()));
+        }
+        return selectSQL(featureType, query, toSQL);
+    }
+
+    /**
+     * Returns the SQL statement a query is run with, prepared statements having their
+     * parameters left as placeholders. Used to explain a query without running it.
+     */
+    String explainSQL(SimpleFeatureType featureType, Query query) throws IOException, SQLException {
+        if (!(dialect instanceof PreparedStatementSQLDialect)) {
+            return selectSQL(featureType, query);
+        }
+        PreparedFilterToSQL toSQL = null;
+        Filter filter = query.getFilter();
+        if (filter != null && !Filter.INCLUDE.equals(filter)) {
+            toSQL = createPreparedFilterToSQL(getSchema(featureType.getTypeName()));
+        }
+        return selectSQL(featureType, query, toSQL);
+    }
+
+    /**
+     * Builds the 'SELECT p1, p2, ... FROM ... WHERE ...' statement shared by plain and prepared
+     * statements, the filter being encoded by the provided encoder, if not null.
+     */
+    String selectSQL(SimpleFeatureType featureType, Query query, FilterToSQL toSQL) throws IOException, SQLException {
         StringBuffer sql = new StringBuffer();
         sql.append("SELECT ");
 
@@ -2789,15 +3098,10 @@ public final class JDBCDataStore extends ContentDataStore
         encodeTableName(featureType.getTypeName(), sql, query.getHints());
 
         //filtering
-        Filter filter = query.getFilter();
-        if (filter != null && !Filter.INCLUDE.equals(filter)) {
+        if (toSQL != null) {
             //encode filter
             try {
-                // grab the full feature type, as we might be encoding a filter
-                // that uses attributes that aren't returned in the results
-                SimpleFeatureType fullSchema = getSchema(featureType.getTypeName());
-                FilterToSQL toSQL = createFilterToSQL(fullSchema);
-                sql.append(" ").append(toSQL.encodeToString(filter));
+                sql.append(" ").append(toSQL.encodeToString(query.getFilter()));
             } catch (FilterToSQLException e) {
                 throw new RuntimeException(e);
             }
@@ -2873,73 +3177,18 @@ public final class JDBCDataStore extends ContentDataStore
     protected PreparedStatement selectSQLPS( SimpleFeatureType featureType, Query query, Connection cx )
         throws SQLException, IOException {
         
-        StringBuffer sql = new StringBuffer();
-        sql.append("SELECT ");
-
-        // primary key
-        PrimaryKey key = null;
-
-        try {
-            key = getPrimaryKey(featureType);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        Set<String> pkColumnNames = getColumnNames(key);
-
-        for ( PrimaryKeyColumn col : key.getColumns() ) {
-            dialect.encodeColumnName(col.getName(), sql);
-            sql.append(",");
-        }
-        
-        //other columns
-        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
-            // skip the eventually exposed pk column values
-            String columnName = att.getLocalName();
-            if(pkColumnNames.contains(columnName))
-                continue;
-            
-            if (att instanceof GeometryDescriptor) {
-                //encode as geometry
-            	encodeGeometryColumn((GeometryDescriptor) att, sql, query.getHints());
-
-                //alias it to be the name of the original geometry
-                dialect.encodeColumnAlias(columnName, sql);
-            } else {
-                dialect.encodeColumnName(columnName, sql);
-            }
-
-            sql.append(",");
-        }
-
-        sql.setLength(sql.length() - 1);
-
-        sql.append(" FROM ");
-        encodeTableName(featureType.getTypeName(), sql, query.getHints());
-
         //filtering
         PreparedFilterToSQL toSQL = null;
         Filter filter = query.getFilter();
         if (filter != null && !Filter.INCLUDE.equals(filter)) {
-            //encode filter
-            try {
-                // grab the full feature type, as we might be encoding a filter
-                // that uses attributes that aren't returned in the results
-                SimpleFeatureType fullSchema = getSchema(featureType.getTypeName());
-                toSQL = createPreparedFilterToSQL(fullSchema);
-                sql.append(" ").append(toSQL.encodeToString(filter));
-            } catch (FilterToSQLException e) {
-                throw new RuntimeException(e);
-            }
+            // grab the full feature type, as we might be encoding a filter
+            // that uses attributes that aren't returned in the results
+            toSQL = createPreparedFilterToSQL(getSchema(featureType.getTypeName()));
         }
+        String sql = selectSQL(featureType, query, toSQL);
 
-        //sorting
-        sort(featureType, query.getSortBy(), key, sql);
-        
-        // finally encode limit/offset, if necessary
-        applyLimitOffset(sql, query);
-
-        LOGGER.fine( sql.toString() );
-        PreparedStatement ps = cx.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        LOGGER.fine( sql );
+        PreparedStatement ps = prepareStatement(cx, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
         ps.setFetchSize(fetchSize);
         
         if ( toSQL != null ) {
@@ -2949,6 +3198,47 @@ public final class JDBCDataStore extends ContentDataStore
         return ps;
     }
     
+    /**
+     * Prepares a query statement, keeping track of the statements reused from the connection
+     * pool cache (see {@link #getStatementCacheHits()}).
+     */
+    PreparedStatement prepareStatement(Connection cx, String sql, int resultSetType,
+            int resultSetConcurrency) throws SQLException {
+        PreparedStatement ps = cx.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        
+        UnWrapper uw = getStatementUnWrapper(ps);
+        if (uw != null) {
+            Statement driverStatement = uw.unwrap(ps);
+            if (preparedStatements.put(driverStatement, Boolean.TRUE) != null) {
+                statementCacheHits.incrementAndGet();
+            } else {
+                statementCacheMisses.incrementAndGet();
+            }
+        }
+        return ps;
+    }
+    
+    /**
+     * Looks up the unwrapper for the statements of the pool the first time a statement is
+     * prepared
+     */
+    UnWrapper getStatementUnWrapper(PreparedStatement ps) {
+        if (!statementUnWrapperLookedUp) {
+            try {
+                UnWrapper uw = DataSourceFinder.getUnWrapper(ps);
+                // an unwrapper returning the statement itself cannot tell pooled statements
+                if (uw != null && uw.unwrap(ps) != ps) {
+                    statementUnWrapper = uw;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not unwrap statement, prepared statement cache "
+                        + "statistics will not be available", e);
+            }
+            statementUnWrapperLookedUp = true;
+        }
+        return statementUnWrapper;
+    }
+    
     /**
      * Helper method for setting the values of the WHERE class of a prepared statement.
      * 
@@ -3097,7 +3387,8 @@ public final class JDBCDataStore extends ContentDataStore
         
 
         LOGGER.fine( sql.toString() );
-        PreparedStatement ps = cx.prepareStatement(sql.toString());
+        PreparedStatement ps = prepareStatement(cx, sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
         
         if ( toSQL != null ) {
             setPreparedFilterValues(ps, toSQL, 0, cx);
@@ -3150,6 +3441,17 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected String selectAggregateSQL(String function, AttributeDescriptor att, 
             SimpleFeatureType featureType, Query query) throws SQLException {
+        return selectAggregateSQL(function, att, null, featureType, query);
+    }
+    
+    /**
+     * Generates a 'SELECT <groupBy>, <function>() FROM ... GROUP BY <groupBy>' statement.
+     * 
+     * @param groupBy the columns the rows are grouped by, may be null
+     */
+    protected String selectAggregateSQL(String function, AttributeDescriptor att, 
+            List<AttributeDescriptor> groupBy, SimpleFeatureType featureType, Query query) 
+            throws SQLException {
         StringBuffer sql = new StringBuffer();
 
         boolean limitOffset = checkLimitOffset(query);
@@ -3157,6 +3459,7 @@ public final class JDBCDataStore extends ContentDataStore
             sql.append("SELECT * FROM ");
         } else {
             sql.append("SELECT ");
+            encodeGroupByColumns(groupBy, sql);
             encodeFunction(function,att,query,sql);
             sql.append( " FROM ");
         }
@@ -3177,12 +3480,14 @@ public final class JDBCDataStore extends ContentDataStore
             applyLimitOffset(sql, query);
             
             StringBuffer sql2 = new StringBuffer("SELECT ");
+            encodeGroupByColumns(groupBy, sql2);
             encodeFunction(function,att,query,sql2);
             sql2.append(" AS gt_result_");
             sql2.append(" FROM (");
             sql.insert(0,sql2.toString());
             sql.append(") gt_limited_");
         }
+        encodeGroupBy(groupBy, sql);
 
         return sql.toString();
     }
@@ -3192,6 +3497,18 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected PreparedStatement selectAggregateSQLPS(String function, AttributeDescriptor att, SimpleFeatureType featureType, Query query, Connection cx)
         throws SQLException {
+        return selectAggregateSQLPS(function, att, null, featureType, query, cx);
+    }
+    
+    /**
+     * Generates a 'SELECT <groupBy>, <function>() FROM ... GROUP BY <groupBy>' prepared
+     * statement.
+     * 
+     * @param groupBy the columns the rows are grouped by, may be null
+     */
+    protected PreparedStatement selectAggregateSQLPS(String function, AttributeDescriptor att, 
+            List<AttributeDescriptor> groupBy, SimpleFeatureType featureType, Query query, 
+            Connection cx) throws SQLException {
         
         StringBuffer sql = new StringBuffer();
 
@@ -3200,6 +3517,7 @@ public final class JDBCDataStore extends ContentDataStore
             sql.append("SELECT * FROM ");
         } else {
             sql.append("SELECT ");
+            encodeGroupByColumns(groupBy, sql);
             encodeFunction(function,att,query,sql);
             sql.append( " FROM ");
         }
@@ -3221,15 +3539,17 @@ public final class JDBCDataStore extends ContentDataStore
             applyLimitOffset(sql, query);
             
             StringBuffer sql2 = new StringBuffer("SELECT ");
+            encodeGroupByColumns(groupBy, sql2);
             encodeFunction(function,att,query,sql2);
             sql2.append(" AS gt_result_");
             sql2.append(" FROM (");
             sql.insert(0,sql2.toString());
             sql.append(") gt_limited_");
         }
+        encodeGroupBy(groupBy, sql);
         
         LOGGER.fine( sql.toString() );
-        PreparedStatement ps = cx.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = prepareStatement(cx, sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
         ps.setFetchSize(fetchSize);
         
         if ( toSQL != null ) {
@@ -3239,6 +3559,33 @@ public final class JDBCDataStore extends ContentDataStore
         return ps;
     }
     
+    /**
+     * Encodes the grouping columns at the start of the select list
+     */
+    void encodeGroupByColumns( List<AttributeDescriptor> groupBy, StringBuffer sql ) {
+        if ( groupBy != null ) {
+            for ( AttributeDescriptor att : groupBy ) {
+                dialect.encodeColumnName( att.getLocalName(), sql );
+                sql.append( ", " );
+            }
+        }
+    }
+    
+    /**
+     * Encodes the GROUP BY clause, if there are grouping columns
+     */
+    void encodeGroupBy( List<AttributeDescriptor> groupBy, StringBuffer sql ) {
+        if ( groupBy != null && !groupBy.isEmpty() ) {
+            sql.append( " GROUP BY " );
+            for ( int i = 0; i < groupBy.size(); i++ ) {
+                if ( i > 0 ) {
+                    sql.append( ", " );
+                }
+                dialect.encodeColumnName( groupBy.get( i ).getLocalName(), sql );
+            }
+        }
+    }
+    
     protected void encodeFunction( String function, AttributeDescriptor att, Query query, StringBuffer sql ) {
         sql.append(function).append("(");
         if ( att == null ) {
@@ -3433,6 +3780,21 @@ public final class JDBCDataStore extends ContentDataStore
      * Generates a 'INSERT INFO' prepared statement.
      */
     protected PreparedStatement insertSQLPS(SimpleFeatureType featureType, SimpleFeature feature, List keyValues, Connection cx) 
+        throws IOException, SQLException {
+        String sql = insertSQLPSString(featureType, feature);
+        LOGGER.log(Level.FINE, "Inserting new feature with ps: {0}", sql);
+        
+        //create the prepared statement
+        PreparedStatement ps = cx.prepareStatement(sql);
+        setInsertValues(ps, featureType, feature, keyValues, cx);
+        return ps;
+    }
+    
+    /**
+     * Generates the sql of a 'INSERT INTO' prepared statement. Features whose statement
+     * sql is the same can be inserted with the same prepared statement.
+     */
+    String insertSQLPSString(SimpleFeatureType featureType, SimpleFeature feature) 
         throws IOException, SQLException {
         PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
         
@@ -3502,10 +3864,19 @@ public final class JDBCDataStore extends ContentDataStore
         
         sql.setLength(sql.length()-1);
         sql.append(")");
-        LOGGER.log(Level.FINE, "Inserting new feature with ps: {0}", sql);
-        
-        //create the prepared statement
-        PreparedStatement ps = cx.prepareStatement(sql.toString());
+        return sql.toString();
+    }
+    
+    /**
+     * Sets the values of a feature on a statement created from
+     * {@link #insertSQLPSString(SimpleFeatureType, SimpleFeature)}.
+     */
+    void setInsertValues(PreparedStatement ps, SimpleFeatureType featureType,
+            SimpleFeature feature, List keyValues, Connection cx) throws IOException, SQLException {
+        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
+        PrimaryKey key = getPrimaryKey(featureType);
+        Set<String> pkColumnNames = getColumnNames(key);
+        boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
         
         //set the attribute values
         int i = 1;
@@ -3555,8 +3926,6 @@ public final class JDBCDataStore extends ContentDataStore
                 }
             }
         }
-        
-        return ps;
     }
     
     /**
@@ -95,6 +95,21 @@ public abstract class JDBCDataStoreFactory extends AbstractDataStoreFactory {
     public static final Param FETCHSIZE = new Param("fetch size", Integer.class,
             "number of records read with each iteraction with the dbms", false, 1000);
     
+    /** Number of features inserted with each batch of statements sent to the dbms */
+    public static final Param BATCH_INSERT_SIZE = new Param("Batch insert size", Integer.class,
+            "number of records inserted with each batch of statements sent to the dbms, "
+            + "1 inserts records one at a time", false, 1);
+    
+    /** Memory budget of the query result cache, in megabytes **/
+    public static final Param QUERY_CACHE_SIZE = new Param("Query cache size", Integer.class,
+            "megabytes of memory used to cache the results of repeated queries, "
+            + "0 disables the cache", false, 0);
+    
+    /** Time to live of the cached query results, in seconds **/
+    public static final Param QUERY_CACHE_TTL = new Param("Query cache time to live", Integer.class,
+            "number of seconds the cached query results are served before being read again, "
+            + "0 keeps them until the features are modified through the data store", false, 0);
+    
     /** Maximum amount of time the pool will wait when trying to grab a new connection **/
     public static final Param MAXWAIT = new Param("Connection timeout", Integer.class,
             "number of seconds the connection pool will wait before timing out attempting to get a new connection (default, 20 seconds)", false, 20);
@@ -167,6 +182,21 @@ public abstract class JDBCDataStoreFactory extends AbstractDataStoreFactory {
         Integer fetchSize = (Integer) FETCHSIZE.lookUp(params);
         if(fetchSize != null && fetchSize > 0)
             dataStore.setFetchSize(fetchSize);
+        
+        // batch insert size
+        Integer batchInsertSize = (Integer) BATCH_INSERT_SIZE.lookUp(params);
+        if(batchInsertSize != null && batchInsertSize > 0)
+            dataStore.setBatchInsertSize(batchInsertSize);
+        
+        // query cache
+        Integer queryCacheSize = (Integer) QUERY_CACHE_SIZE.lookUp(params);
+        if(queryCacheSize != null && queryCacheSize > 0) {
+            JDBCQueryCache cache = new JDBCQueryCache(queryCacheSize * 1024L * 1024L);
+            Integer queryCacheTTL = (Integer) QUERY_CACHE_TTL.lookUp(params);
+            if(queryCacheTTL != null && queryCacheTTL > 0)
+                cache.setTimeToLive(queryCacheTTL * 1000L);
+            dataStore.setQueryCache(cache);
+        }
 
         // namespace
         String namespace = (String) NAMESPACE.lookUp(params);
@@ -287,6 +317,9 @@ public abstract class JDBCDataStoreFactory extends AbstractDataStoreFactory {
         parameters.put(MAXCONN.key, MAXCONN);
         parameters.put(MINCONN.key, MINCONN);
         parameters.put(FETCHSIZE.key, FETCHSIZE);
+        parameters.put(BATCH_INSERT_SIZE.key, BATCH_INSERT_SIZE);
+        parameters.put(QUERY_CACHE_SIZE.key, QUERY_CACHE_SIZE);
+        parameters.put(QUERY_CACHE_TTL.key, QUERY_CACHE_TTL);
         parameters.put(MAXWAIT.key, MAXWAIT);
         if(getValidationQuery() != null)
             parameters.put(VALIDATECONN.key, VALIDATECONN);
@@ -195,6 +195,10 @@ public class JDBCFeatureReader implements  FeatureReader<SimpleFeatureType, Simp
         if(ff == null)
             ff = featureSource.getDataStore().getFeatureFactory();
         builder = new SimpleFeatureBuilder(featureType, ff);
+        // recycle the feature object if the caller is not going to hold onto it
+        if(Boolean.TRUE.equals(hints.get(Hints.FEATURE_REUSE))) {
+            builder.setFeatureReuse(true);
+        }
         
         // find the primary key
         try {
@@ -315,7 +319,7 @@ public class JDBCFeatureReader implements  FeatureReader<SimpleFeatureType, Simp
                         try {
                             value = dataStore.getSQLDialect()
                                              .decodeGeometryValue(gatt, rs, attributeRsIndex[i],
-                                    geometryFactory, cx);
+                                    geometryFactory, cx, hints);
                         } catch (IOException e) {
                             throw new RuntimeException(e);
                         }
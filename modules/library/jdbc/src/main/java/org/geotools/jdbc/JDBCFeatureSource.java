@@ -17,6 +17,8 @@
 package org.geotools.jdbc;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -29,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,10 +40,12 @@ import org.geotools.data.FeatureReader;
 import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
+import org.geotools.data.QueryPlan;
 import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.Transaction;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.factory.GeoTools;
 import org.geotools.factory.Hints;
 import org.geotools.factory.Hints.Key;
 import org.geotools.feature.AttributeTypeBuilder;
@@ -57,6 +62,8 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -92,6 +99,8 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         // mark the features as detached, that is, the user can directly alter them
         // without altering the state of the datastore
         hints.add(Hints.FEATURE_DETACHED);
+        // the features returned by the reader can be recycled on demand
+        hints.add(Hints.FEATURE_REUSE);
         getDataStore().getSQLDialect().addSupportedHints(hints);
     }
 
@@ -500,6 +509,23 @@ public class JDBCFeatureSource extends ContentFeatureSource {
     }
     
     protected  FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query) throws IOException {
+        // serve the results from the cache if possible, the transactions might have changes
+        // that are not committed yet, so only auto commit reads are cached
+        JDBCQueryCache cache = getDataStore().getQueryCache();
+        if (cache != null && getState().getTransaction() != Transaction.AUTO_COMMIT) {
+            cache = null;
+        }
+        String typeName = getEntry().getTypeName();
+        long generation = 0;
+        if (cache != null) {
+            FeatureReader<SimpleFeatureType, SimpleFeature> cached = cache.getReader(typeName,
+                    query, getDataStore());
+            if (cached != null) {
+                return cached;
+            }
+            generation = cache.getGeneration(typeName);
+        }
+        
         // split the filter
         Filter[] split = splitFilter(query.getFilter());
         Filter preFilter = split[0];
@@ -511,27 +537,8 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         
         // Build the feature type returned by this query. Also build an eventual extra feature type
         // containing the attributes we might need in order to evaluate the post filter
-        SimpleFeatureType querySchema;
-        SimpleFeatureType returnedSchema;
-        if(query.getPropertyNames() == Query.ALL_NAMES) {
-            returnedSchema = querySchema = getSchema();
-        } else {
-            returnedSchema = SimpleFeatureTypeBuilder.retype(getSchema(), query.getPropertyNames());
-            FilterAttributeExtractor extractor = new FilterAttributeExtractor(getSchema());
-            postFilter.accept(extractor, null);
-            String[] extraAttributes = extractor.getAttributeNames();
-            if(extraAttributes == null || extraAttributes.length == 0) {
-                querySchema = returnedSchema;
-            } else {
-                List<String> allAttributes = new ArrayList<String>(Arrays.asList(query.getPropertyNames())); 
-                for (String extraAttribute : extraAttributes) {
-                    if(!allAttributes.contains(extraAttribute))
-                        allAttributes.add(extraAttribute);
-                }
-                String[] allAttributeArray =  (String[]) allAttributes.toArray(new String[allAttributes.size()]);
-                querySchema = SimpleFeatureTypeBuilder.retype(getSchema(), allAttributeArray);
-            }
-        }
+        SimpleFeatureType returnedSchema = getReturnedSchema(query);
+        SimpleFeatureType querySchema = getQuerySchema(query, returnedSchema, postFilter);
         
         //grab connection
         Connection cx = getDataStore().getConnection(getState());
@@ -570,10 +577,219 @@ public class JDBCFeatureSource extends ContentFeatureSource {
             if(!returnedSchema.equals(querySchema))
                 reader = new ReTypeFeatureReader(reader, returnedSchema);
         }
+        
+        if (cache != null) {
+            reader = cache.cache(typeName, query, generation, reader);
+        }
 
         return reader;
     }
 
+    /**
+     * Returns a reader over the features matching the query, splitting the query in
+     * partitions read in parallel, each on its own connection.
+     * <p>
+     * The query is split on ranges of the primary key values, between the minimum and maximum
+     * found in the table, which requires a single column numeric primary key exposed as an
+     * attribute (see {@link #setExposePrimaryKeyColumns(boolean)}). The features are returned in
+     * no particular order. When the query cannot be split (other primary keys, sorting or paging
+     * requested, or a transaction other than
+     * {@link Transaction#AUTO_COMMIT} in use, as its changes would not be visible from the other
+     * connections) a regular reader is returned.
+     * </p>
+     * <p>
+     * The number of partitions should not exceed the number of connections of the pool, the
+     * partitions waiting for a connection would otherwise run one after the other.
+     * </p>
+     * 
+     * @param query the query to run
+     * @param partitions the number of partitions to read in parallel
+     * @param executor the executor running the partitions, if null the
+     *        {@link Hints#EXECUTOR_SERVICE} of the {@linkplain GeoTools#getDefaultHints default
+     *        hints} is used, or a thread is started for each partition
+     * @since 2.8
+     */
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getPartitionedReader(Query query,
+            int partitions, ExecutorService executor) throws IOException {
+        List<Filter> filters = getPartitionFilters(query, partitions);
+        if (filters == null) {
+            return getReader(query);
+        }
+
+        // features are handed over to another thread, they cannot be recycled
+        Hints hints = new Hints();
+        if (query.getHints() != null) {
+            hints.add(query.getHints());
+            hints.remove(Hints.FEATURE_REUSE);
+        }
+        List<Query> queries = new ArrayList<Query>();
+        for (Filter filter : filters) {
+            Query partition = new Query(query);
+            partition.setFilter(filter);
+            partition.setHints(hints);
+            queries.add(partition);
+        }
+        if (executor == null) {
+            executor = (ExecutorService) GeoTools.getDefaultHints().get(Hints.EXECUTOR_SERVICE);
+        }
+        return new JDBCPartitionedFeatureReader(this, queries, executor, query.getMaxFeatures());
+    }
+
+    /**
+     * Splits the query filter in ranges of primary key values, returns null if the query
+     * cannot be split
+     */
+    List<Filter> getPartitionFilters(Query query, int partitions) throws IOException {
+        if (partitions < 2 || getState().getTransaction() != Transaction.AUTO_COMMIT
+                || (query.getSortBy() != null && query.getSortBy().length > 0)
+                || (query.getStartIndex() != null && query.getStartIndex() > 0)) {
+            return null;
+        }
+        if (primaryKey == null || primaryKey.getColumns().size() != 1) {
+            return null;
+        }
+        PrimaryKeyColumn column = primaryKey.getColumns().get(0);
+        if (!Number.class.isAssignableFrom(column.getType())
+                || Float.class.equals(column.getType()) || Double.class.equals(column.getType())) {
+            return null;
+        }
+        // the ranges are expressed as filters on the key, which must be an attribute
+        if (getSchema().getDescriptor(column.getName()) == null) {
+            return null;
+        }
+
+        // grab the key range
+        Long min, max;
+        JDBCDataStore dataStore = getDataStore();
+        SQLDialect dialect = dataStore.getSQLDialect();
+        Connection cx = dataStore.getConnection(getState());
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            StringBuffer sql = new StringBuffer("SELECT MIN(");
+            dialect.encodeColumnName(column.getName(), sql);
+            sql.append("), MAX(");
+            dialect.encodeColumnName(column.getName(), sql);
+            sql.append(") FROM ");
+            dataStore.encodeTableName(getSchema().getTypeName(), sql, query.getHints());
+            dataStore.getLogger().fine(sql.toString());
+
+            st = cx.createStatement();
+            rs = st.executeQuery(sql.toString());
+            rs.next();
+            min = toLong(rs.getObject(1));
+            max = toLong(rs.getObject(2));
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        } finally {
+            dataStore.closeSafe(rs);
+            dataStore.closeSafe(st);
+            dataStore.closeSafe(cx);
+        }
+        if (min == null || max == null) {
+            return null;
+        }
+        
+        // the first and last ranges are open, covering the keys added in the meantime
+        long step = Math.max(1, (max - min) / partitions + 1);
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyName key = ff.property(column.getName());
+        List<Filter> filters = new ArrayList<Filter>();
+        for (long from = min; from <= max; from += step) {
+            List<Filter> conditions = new ArrayList<Filter>();
+            if (query.getFilter() != null && query.getFilter() != Filter.INCLUDE) {
+                conditions.add(query.getFilter());
+            }
+            if (from > min) {
+                conditions.add(ff.greaterOrEqual(key, ff.literal(from)));
+            }
+            if (max - from >= step) {
+                conditions.add(ff.less(key, ff.literal(from + step)));
+            }
+            filters.add(conditions.size() == 1 ? conditions.get(0) : ff.and(conditions));
+            if (from > Long.MAX_VALUE - step) {
+                break;
+            }
+        }
+        return filters.size() > 1 ? filters : null;
+    }
+
+    /**
+     * Returns the value of an integral key as a long, or null if it is not representable
+     */
+    static Long toLong(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return ((BigInteger) value).longValue();
+        } else if (value instanceof BigDecimal) {
+            try {
+                return ((BigDecimal) value).longValueExact();
+            } catch (ArithmeticException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The feature type returned by a query
+     */
+    SimpleFeatureType getReturnedSchema(Query query) {
+        if(query.getPropertyNames() == Query.ALL_NAMES) {
+            return getSchema();
+        }
+        return SimpleFeatureTypeBuilder.retype(getSchema(), query.getPropertyNames());
+    }
+    
+    /**
+     * The feature type read from the database, the returned one plus the attributes needed
+     * to evaluate the post filter
+     */
+    SimpleFeatureType getQuerySchema(Query query, SimpleFeatureType returnedSchema, Filter postFilter) {
+        if(query.getPropertyNames() == Query.ALL_NAMES) {
+            return returnedSchema;
+        }
+        FilterAttributeExtractor extractor = new FilterAttributeExtractor(getSchema());
+        postFilter.accept(extractor, null);
+        String[] extraAttributes = extractor.getAttributeNames();
+        if(extraAttributes == null || extraAttributes.length == 0) {
+            return returnedSchema;
+        }
+        List<String> allAttributes = new ArrayList<String>(Arrays.asList(query.getPropertyNames())); 
+        for (String extraAttribute : extraAttributes) {
+            if(!allAttributes.contains(extraAttribute))
+                allAttributes.add(extraAttribute);
+        }
+        String[] allAttributeArray =  (String[]) allAttributes.toArray(new String[allAttributes.size()]);
+        return SimpleFeatureTypeBuilder.retype(getSchema(), allAttributeArray);
+    }
+    
+    @Override
+    protected void explainInternal(Query query, QueryPlan plan) throws IOException {
+        // same split as getReaderInternal
+        Filter[] split = splitFilter(query.getFilter());
+        Filter preFilter = split[0];
+        Filter postFilter = split[1];
+        plan.setNativeFilter(preFilter);
+        plan.setResidualFilter(postFilter);
+        
+        DefaultQuery preQuery = new DefaultQuery(query);
+        preQuery.setFilter(preFilter);
+        SimpleFeatureType returnedSchema = getReturnedSchema(query);
+        SimpleFeatureType querySchema = getQuerySchema(query, returnedSchema, postFilter);
+        if (postFilter != Filter.INCLUDE && !returnedSchema.equals(querySchema)) {
+            // the attributes only needed by the post filter are removed in memory
+            plan.setRetypeInMemory(true);
+        }
+        try {
+            plan.setNativeQuery(getDataStore().explainSQL(querySchema, preQuery));
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
     @Override
     protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
         //grab connection
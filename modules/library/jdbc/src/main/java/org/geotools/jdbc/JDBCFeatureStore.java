@@ -22,7 +22,9 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.geotools.data.DefaultQuery;
 import org.geotools.data.FeatureEvent;
@@ -31,13 +33,16 @@ import org.geotools.data.FeatureWriter;
 import org.geotools.data.FilteringFeatureWriter;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
+import org.geotools.data.QueryPlan;
 import org.geotools.data.ResourceInfo;
 import org.geotools.data.Transaction;
 import org.geotools.data.FeatureEvent.Type;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureStore;
 import org.geotools.data.store.ContentState;
+import org.geotools.data.statistics.StatisticsCatalog;
 import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
@@ -162,6 +167,74 @@ public final class JDBCFeatureStore extends ContentFeatureStore {
         return delegate.isExposePrimaryKeyColumns();
     }
     
+    /**
+     * Loads a large number of features into the table.
+     * <p>
+     * Unlike {@link #addFeatures(FeatureCollection)} the features are streamed to the database
+     * with its bulk loading mechanism when the dialect supports one (such as COPY for
+     * PostgreSQL), and with batches of insert statements otherwise. The load is part of the
+     * current transaction, and the primary key values are generated as for any insert. The
+     * feature ids are not returned, but reported as the "fid" user data of each feature, and a
+     * single event covering all the loaded features is issued to the listeners.
+     * </p>
+     * 
+     * @return the number of loaded features
+     * @since 2.8
+     */
+    public long bulkLoad(FeatureCollection<SimpleFeatureType, SimpleFeature> features)
+            throws IOException {
+        ContentState state = getEntry().getState(transaction);
+        final boolean listening = state.hasListener();
+        final ReferencedEnvelope bounds = new ReferencedEnvelope(getSchema()
+                .getCoordinateReferenceSystem());
+        
+        Connection cx = getDataStore().getConnection(getState());
+        final Iterator<SimpleFeature> it = features.iterator();
+        try {
+            // gather the bounds of the loaded features for the event
+            Iterator<SimpleFeature> loaded = new Iterator<SimpleFeature>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public SimpleFeature next() {
+                    SimpleFeature feature = it.next();
+                    if (listening) {
+                        bounds.expandToInclude(ReferencedEnvelope.reference(feature.getBounds()));
+                    }
+                    return feature;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            long count = getDataStore().bulkLoad(loaded, getSchema(), cx);
+            bulkModified();
+            
+            if (listening && count > 0) {
+                state.fireFeatureEvent(new FeatureEvent(this, Type.ADDED, bounds, Filter.INCLUDE));
+            }
+            return count;
+        } finally {
+            features.close(it);
+            getDataStore().releaseConnection(cx, getState());
+        }
+    }
+    
+    /**
+     * Notifies the datastore of features modified with a single statement. The statement
+     * bypasses the writers keeping the statistics up to date, so the statistics of the type
+     * become stale.
+     */
+    void bulkModified() throws IOException {
+        getDataStore().featuresModified(getEntry().getTypeName(), getTransaction());
+        StatisticsCatalog catalog = getDataStore().getStatisticsCatalog();
+        if (catalog != null) {
+            catalog.invalidate(getEntry().getTypeName());
+        }
+    }
+    
     @Override
     protected SimpleFeatureType buildFeatureType() throws IOException {
         return delegate.buildFeatureType();
@@ -208,6 +281,21 @@ public final class JDBCFeatureStore extends ContentFeatureStore {
             Query query) throws IOException {
         return delegate.getReaderInternal(query);
     }
+
+    /**
+     * Returns a reader over the features matching the query, read by several connections in
+     * parallel, see {@link JDBCFeatureSource#getPartitionedReader(Query, int, ExecutorService)}.
+     * @since 2.8
+     */
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getPartitionedReader(Query query,
+            int partitions, ExecutorService executor) throws IOException {
+        return delegate.getPartitionedReader(query, partitions, executor);
+    }
+    
+    @Override
+    protected void explainInternal(Query query, QueryPlan plan) throws IOException {
+        delegate.explainInternal(query, plan);
+    }
     
     @Override
     protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
@@ -356,6 +444,7 @@ public final class JDBCFeatureStore extends ContentFeatureStore {
             } catch(SQLException e) {
                 throw (IOException) (new IOException(e.getMessage()).initCause(e));
             }
+            bulkModified();
             
             if( state.hasListener() ){
                 // gather any updated bounds due to a geometry modification
@@ -404,6 +493,7 @@ public final class JDBCFeatureStore extends ContentFeatureStore {
                 }
             }            
             getDataStore().delete(featureType, preFilter, cx);
+            bulkModified();
             if( state.hasListener() ){
                 // issue notification
                 FeatureEvent event = new FeatureEvent(this, Type.REMOVED, bounds, preFilter );
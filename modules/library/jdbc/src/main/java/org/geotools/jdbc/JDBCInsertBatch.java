@@ -0,0 +1,239 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.geotools.factory.Hints;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Inserts features into a table, sending the insert statements to the database in batches.
+ * <p>
+ * The primary key values of the features are computed before the insert whenever possible,
+ * sequence values being fetched in blocks, so that the feature ids are known without waiting
+ * for the batch to be executed. Features whose key can only be known after the previous rows
+ * have been inserted (keys generated by the database or computed from the table contents)
+ * are inserted one at a time, after the pending batch has been sent.
+ * </p>
+ * <p>
+ * Callers are expected to synchronize on the data store while calling {@link #add(SimpleFeature)}
+ * and {@link #flush()}, as {@link JDBCDataStore#insert(java.util.Collection, SimpleFeatureType, Connection)}
+ * does.
+ * </p>
+ *
+ * @source $URL$
+ */
+class JDBCInsertBatch {
+
+    JDBCDataStore dataStore;
+
+    SimpleFeatureType featureType;
+
+    PrimaryKey key;
+
+    Connection cx;
+
+    int batchSize;
+
+    /**
+     * Whether the generated key values are looked up after the insert
+     */
+    boolean postInsert;
+
+    /**
+     * Whether the key values can be computed while previous rows are still pending
+     */
+    boolean batchableKeys = true;
+
+    /**
+     * The sequence values fetched in advance, for each key column
+     */
+    List<LinkedList<Object>> sequenceValues;
+
+    /**
+     * The statement the pending rows have been added to
+     */
+    Statement st;
+
+    /**
+     * The sql of {@link #st} when using prepared statements
+     */
+    String sql;
+
+    /**
+     * The number of rows added to the batch and not yet executed
+     */
+    int pending;
+
+    JDBCInsertBatch(JDBCDataStore dataStore, SimpleFeatureType featureType, Connection cx,
+            int batchSize) throws IOException {
+        this.dataStore = dataStore;
+        this.featureType = featureType;
+        this.cx = cx;
+        this.key = dataStore.getPrimaryKey(featureType);
+        this.postInsert = dataStore.getSQLDialect().lookupGeneratedValuesPostInsert()
+                && dataStore.isGenerated(key);
+
+        sequenceValues = new ArrayList<LinkedList<Object>>();
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            sequenceValues.add(new LinkedList<Object>());
+            if (col instanceof AutoGeneratedPrimaryKeyColumn
+                    || (col instanceof NonIncrementingPrimaryKeyColumn
+                            && !CharSequence.class.isAssignableFrom(col.getType()))) {
+                batchableKeys = false;
+            }
+        }
+
+        try {
+            if (batchSize > 1 && !cx.getMetaData().supportsBatchUpdates()) {
+                dataStore.getLogger().fine("Driver does not support batch updates, "
+                        + "inserting features one at a time");
+                batchSize = 1;
+            }
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds a feature to the batch, executing the batch if it is full.
+     *
+     * @return the id of the inserted feature
+     */
+    String add(SimpleFeature feature) throws IOException, SQLException {
+        List<Object> keyValues = null;
+        boolean batched = batchSize > 1;
+        boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(
+                Hints.USE_PROVIDED_FID));
+        if (useExisting) {
+            keyValues = dataStore.decodeFID(key, feature.getID(), true);
+        } else if (postInsert) {
+            // the key is looked up right after the insert
+            batched = false;
+        } else if (batched && batchableKeys) {
+            keyValues = nextKeyValues();
+        } else {
+            // the next key depends on the rows inserted so far
+            flush();
+            keyValues = dataStore.getNextValues(key, cx);
+            batched = false;
+        }
+        if (!batched) {
+            flush();
+        }
+
+        if (dataStore.getSQLDialect() instanceof PreparedStatementSQLDialect) {
+            String rowSql = dataStore.insertSQLPSString(featureType, feature);
+            if (st == null || !rowSql.equals(sql)) {
+                flush();
+                dataStore.closeSafe(st);
+                dataStore.getLogger().log(Level.FINE, "Inserting new features with ps: {0}",
+                        rowSql);
+                st = cx.prepareStatement(rowSql);
+                sql = rowSql;
+            }
+            PreparedStatement ps = (PreparedStatement) st;
+            dataStore.setInsertValues(ps, featureType, feature, keyValues, cx);
+            if (batched) {
+                ps.addBatch();
+                pending++;
+            } else {
+                ps.execute();
+            }
+        } else {
+            if (st == null) {
+                st = cx.createStatement();
+            }
+            String rowSql = dataStore.insertSQL(featureType, feature, keyValues, cx);
+            dataStore.getLogger().log(Level.FINE, "Inserting new feature: {0}", rowSql);
+            if (batched) {
+                st.addBatch(rowSql);
+                pending++;
+            } else {
+                st.execute(rowSql);
+            }
+        }
+
+        if (pending >= batchSize) {
+            flush();
+        }
+        if (keyValues == null) {
+            // grab the key values post insert
+            keyValues = dataStore.getLastValues(key, cx);
+        }
+        return featureType.getTypeName() + "." + dataStore.encodeFID(keyValues);
+    }
+
+    /**
+     * Computes the key values of a feature whose key does not depend on the rows still pending
+     */
+    List<Object> nextKeyValues() throws IOException, SQLException {
+        List<Object> keyValues = new ArrayList<Object>();
+        for (int i = 0; i < key.getColumns().size(); i++) {
+            PrimaryKeyColumn col = key.getColumns().get(i);
+            if (col instanceof SequencedPrimaryKeyColumn) {
+                LinkedList<Object> values = sequenceValues.get(i);
+                if (values.isEmpty()) {
+                    String sequenceName = ((SequencedPrimaryKeyColumn) col).getSequenceName();
+                    List<Object> next = dataStore.getSQLDialect().getNextSequenceValues(
+                            dataStore.getDatabaseSchema(), sequenceName, batchSize, cx);
+                    if (next == null || next.isEmpty()) {
+                        throw new IOException("Could not get the next values of sequence "
+                                + sequenceName);
+                    }
+                    values.addAll(next);
+                }
+                keyValues.add(values.removeFirst());
+            } else {
+                keyValues.add(dataStore.getNextValue(col, key, cx));
+            }
+        }
+        return keyValues;
+    }
+
+    /**
+     * Executes the pending rows, if any
+     */
+    void flush() throws SQLException {
+        if (pending > 0) {
+            dataStore.getLogger().log(Level.FINE, "Executing batch of {0} inserts", pending);
+            pending = 0;
+            st.executeBatch();
+        }
+    }
+
+    /**
+     * Releases the statement, discarding the pending rows
+     */
+    void close() {
+        dataStore.closeSafe(st);
+        st = null;
+        sql = null;
+        pending = 0;
+    }
+}
@@ -33,6 +33,11 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
     
     ResultSetFeature last;
     
+    /**
+     * the pending inserts, created on the first write
+     */
+    JDBCInsertBatch batch;
+    
     public JDBCInsertFeatureWriter(String sql, Connection cx,
             JDBCFeatureSource featureSource, Hints hints) throws SQLException, IOException {
         super(sql, cx, featureSource, featureSource.getSchema(), hints);
@@ -67,27 +72,60 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
 
     public void write() throws IOException {
         try {
-            //do the insert
-            dataStore.insert(last, featureType, st.getConnection());
+            if ( batch == null ) {
+                batch = new JDBCInsertBatch( dataStore, featureType, st.getConnection(), 
+                        dataStore.getBatchInsertSize() );
+            }
             
-            //the datastore sets as userData, grab it and update the fid
-            String fid = (String) last.getUserData().get( "fid" );
+            //do the insert, the values are copied over to the statement so last can be 
+            // reused even if the insert is still pending
+            String fid;
+            synchronized ( dataStore ) {
+                fid = batch.add( last );
+            }
+            last.getUserData().put( "fid", fid );
             last.setID( fid );
             
             ContentEntry entry = featureSource.getEntry();
             ContentState state = entry.getState( this.tx );            
             state.fireFeatureAdded( featureSource, last );
+            dataStore.featuresModified( entry.getTypeName(), tx );
         } catch (SQLException e) {
             throw (IOException) new IOException().initCause(e);
         }
     }
 
+    /**
+     * Sends the pending inserts to the database and releases the insert statement.
+     */
+    void flush() throws IOException {
+        if ( batch == null ) {
+            return;
+        }
+        try {
+            synchronized ( dataStore ) {
+                batch.flush();
+            }
+            // the batched inserts were not in the database yet when write() was called 
+            dataStore.featuresModified( featureSource.getEntry().getTypeName(), tx );
+        } catch (SQLException e) {
+            throw (IOException) new IOException( "Error inserting features" ).initCause(e);
+        } finally {
+            batch.close();
+            batch = null;
+        }
+    }
+
     public void close() throws IOException {
-        super.close();
-        
-        if ( last != null ) {
-            last.close();
-            last = null;
+        try {
+            flush();
+        } finally {
+            super.close();
+            
+            if ( last != null ) {
+                last.close();
+                last = null;
+            }
         }
     }
 }
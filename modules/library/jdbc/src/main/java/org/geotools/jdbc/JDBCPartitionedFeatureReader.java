@@ -0,0 +1,260 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Merges the features of several partitions of a query, each partition being read on its own
+ * connection by a separate thread.
+ * <p>
+ * The features are handed over through a bounded queue, so the partitions only read ahead of
+ * the consumer by a limited amount. The order of the features is not defined. Closing the
+ * reader stops the partitions still running and releases their connections.
+ * </p>
+ *
+ * @source $URL$
+ */
+class JDBCPartitionedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    /**
+     * The number of features read ahead of the consumer
+     */
+    static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Marks the end of a partition in the queue
+     */
+    static final Object END = new Object();
+
+    static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    JDBCFeatureSource featureSource;
+
+    SimpleFeatureType featureType;
+
+    BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+
+    List<Partition> partitions = new ArrayList<Partition>();
+
+    /**
+     * The executor created for this reader, if none was provided
+     */
+    ExecutorService ownExecutor;
+
+    /**
+     * The number of partitions not done yet
+     */
+    int running;
+
+    int maxFeatures;
+
+    int returned;
+
+    SimpleFeature next;
+
+    volatile boolean closed;
+
+    JDBCPartitionedFeatureReader(JDBCFeatureSource featureSource, List<Query> queries,
+            ExecutorService executor, int maxFeatures) throws IOException {
+        this.featureSource = featureSource;
+        this.maxFeatures = maxFeatures;
+
+        // open the first partition right away, to know the feature type and report errors
+        FeatureReader<SimpleFeatureType, SimpleFeature> first = featureSource.getReader(queries
+                .get(0));
+        this.featureType = first.getFeatureType();
+
+        if (executor == null) {
+            executor = ownExecutor = Executors.newFixedThreadPool(queries.size(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "gt-jdbc-partition-"
+                                    + THREAD_COUNT.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+
+        for (Query query : queries) {
+            Partition partition = new Partition(query);
+            if (partitions.isEmpty()) {
+                partition.reader = first;
+            }
+            partitions.add(partition);
+        }
+        running = partitions.size();
+        try {
+            for (Partition partition : partitions) {
+                executor.execute(partition);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        if (next != null) {
+            return true;
+        }
+        if (closed || (maxFeatures >= 0 && returned >= maxFeatures)) {
+            return false;
+        }
+
+        while (running > 0) {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                close();
+                throw (IOException) new IOException(
+                        "Interrupted while waiting for the partitions").initCause(e);
+            }
+            if (item == END) {
+                running--;
+            } else if (item instanceof Throwable) {
+                close();
+                throw (IOException) new IOException("Failed to read a partition of "
+                        + featureType.getTypeName()).initCause((Throwable) item);
+            } else {
+                next = (SimpleFeature) item;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+        SimpleFeature feature = next;
+        next = null;
+        returned++;
+        return feature;
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // partitions that did not start yet won't, close their readers here
+        for (Partition partition : partitions) {
+            if (partition.started.compareAndSet(false, true) && partition.reader != null) {
+                partition.closeReader();
+            }
+        }
+        // unblock the partitions waiting for room in the queue
+        queue.clear();
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Puts an item in the queue, waiting for room unless the reader gets closed
+     */
+    void put(Object item) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a partition into the queue
+     */
+    class Partition implements Runnable {
+
+        Query query;
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+
+        AtomicBoolean started = new AtomicBoolean();
+
+        Partition(Query query) {
+            this.query = query;
+        }
+
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                // the reader was closed before we got to run
+                return;
+            }
+            try {
+                if (reader == null) {
+                    reader = featureSource.getReader(query);
+                }
+                while (!closed && reader.hasNext()) {
+                    put(reader.next());
+                }
+            } catch (InterruptedException e) {
+                // stop reading
+            } catch (Throwable t) {
+                try {
+                    put(t);
+                } catch (InterruptedException e) {
+                    // the error is lost, but nobody is waiting anymore
+                }
+            } finally {
+                closeReader();
+                try {
+                    put(END);
+                } catch (InterruptedException e) {
+                    // the reader is being closed
+                }
+            }
+        }
+
+        void closeReader() {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    featureSource.getDataStore().getLogger().log(Level.WARNING,
+                            "Error closing the reader of a partition", e);
+                }
+            }
+        }
+    }
+}
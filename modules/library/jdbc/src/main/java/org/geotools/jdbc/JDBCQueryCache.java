@@ -0,0 +1,587 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.collection.OffHeapFeatureCodec;
+import org.geotools.factory.Hints;
+import org.geotools.resources.XArray;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Caches the features returned by the queries run against a {@link JDBCDataStore}, so that
+ * repeated queries against layers that rarely change do not hit the database.
+ * <p>
+ * The cache is keyed by the query type name, filter, properties, sorting, paging and hints.
+ * Only the geometry factory hints are left out, as they do not change the features returned.
+ * The features are kept encoded in a compact binary form, see {@link OffHeapFeatureCodec}.
+ * When the memory budget is exceeded, the least recently used results are evicted. Results
+ * larger than a quarter of the budget are not cached, and neither are results that were not
+ * read to the end.
+ * </p>
+ * <p>
+ * Only the queries run in {@link Transaction#AUTO_COMMIT} are cached. The cached results of a
+ * feature type are invalidated when features are written through the store. Auto commit
+ * writes invalidate them right away, transactions do so when they commit. Changes made by
+ * other applications are not detected. A time to live bounds how long such stale results can
+ * be served.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class JDBCQueryCache {
+
+    /**
+     * Hints that do not change the features returned by a query
+     */
+    static final Set<Object> IGNORED_HINTS = new HashSet<Object>(Arrays.asList(
+            Hints.JTS_GEOMETRY_FACTORY, Hints.JTS_COORDINATE_SEQUENCE_FACTORY,
+            Hints.JTS_PRECISION_MODEL, Hints.JTS_SRID, Hints.FEATURE_REUSE,
+            Hints.FEATURE_DETACHED, Hints.EXECUTOR_SERVICE));
+
+    /**
+     * Rough estimate of the memory used by an entry besides the encoded features
+     */
+    static final int ENTRY_OVERHEAD = 256;
+
+    long maxSize;
+
+    long timeToLive;
+
+    long size;
+
+    /**
+     * The cached results, in access order
+     */
+    LinkedHashMap<QueryKey, Entry> entries = new LinkedHashMap<QueryKey, Entry>(16, 0.75f, true);
+
+    /**
+     * Incremented each time the results of a type are invalidated, the results read across an
+     * invalidation are not cached
+     */
+    Map<String, Long> generations = new HashMap<String, Long>();
+
+    Map<String, Statistics> statistics = new HashMap<String, Statistics>();
+
+    /**
+     * @param maxSize the memory budget, in bytes
+     */
+    public JDBCQueryCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the memory budget of the cache, in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the estimated memory used by the cached results, in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns how long, in milliseconds, the results are served before being read again from
+     * the database. Zero or less means no limit.
+     */
+    public synchronized long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets how long, in milliseconds, the results are served before being read again from the
+     * database. Zero or less, the default, means no limit.
+     */
+    public synchronized void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Drops the cached results of a feature type
+     */
+    public synchronized void invalidate(String typeName) {
+        Long generation = generations.get(typeName);
+        generations.put(typeName, generation == null ? 1 : generation + 1);
+        for (Iterator<Map.Entry<QueryKey, Entry>> it = entries.entrySet().iterator(); it
+                .hasNext();) {
+            Map.Entry<QueryKey, Entry> entry = it.next();
+            if (entry.getKey().typeName.equals(typeName)) {
+                remove(entry.getValue());
+                it.remove();
+            }
+        }
+        getStatisticsInternal(typeName).invalidations++;
+    }
+
+    /**
+     * Drops all the cached results
+     */
+    public synchronized void clear() {
+        for (String typeName : new HashSet<String>(statistics.keySet())) {
+            invalidate(typeName);
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of a feature type
+     */
+    public synchronized Statistics getStatistics(String typeName) {
+        return new Statistics(getStatisticsInternal(typeName));
+    }
+
+    Statistics getStatisticsInternal(String typeName) {
+        Statistics result = statistics.get(typeName);
+        if (result == null) {
+            result = new Statistics();
+            statistics.put(typeName, result);
+        }
+        return result;
+    }
+
+    synchronized long getGeneration(String typeName) {
+        Long generation = generations.get(typeName);
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * Returns a reader over the cached results of the query, or null if they are not cached
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getReader(String typeName, Query query,
+            JDBCDataStore dataStore) {
+        QueryKey key = new QueryKey(typeName, query);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && timeToLive > 0
+                    && System.currentTimeMillis() - entry.created > timeToLive) {
+                entries.remove(key);
+                remove(entry);
+                entry = null;
+            }
+            Statistics stats = getStatisticsInternal(typeName);
+            if (entry == null) {
+                stats.misses++;
+                return null;
+            }
+            stats.hits++;
+        }
+        return new CachedFeatureReader(entry, getGeometryFactory(query.getHints(), dataStore));
+    }
+
+    /**
+     * Wraps a reader over the results of the query, caching them if they are fully read
+     *
+     * @param generation the generation of the type before the query was run
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> cache(String typeName, Query query,
+            long generation, FeatureReader<SimpleFeatureType, SimpleFeature> reader) {
+        if (!OffHeapFeatureCodec.canEncode(reader.getFeatureType())) {
+            return reader;
+        }
+        return new CachingFeatureReader(new QueryKey(typeName, query), generation, reader);
+    }
+
+    synchronized void put(QueryKey key, Entry entry, long generation) {
+        if (generation != getGeneration(key.typeName)) {
+            // the results have been modified while reading
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            remove(previous);
+        }
+        add(entry);
+        for (Iterator<Map.Entry<QueryKey, Entry>> it = entries.entrySet().iterator(); it
+                .hasNext()
+                && size > maxSize;) {
+            Map.Entry<QueryKey, Entry> eldest = it.next();
+            remove(eldest.getValue());
+            it.remove();
+            getStatisticsInternal(eldest.getKey().typeName).evictions++;
+        }
+    }
+
+    void add(Entry entry) {
+        size += entry.getSize();
+        Statistics stats = getStatisticsInternal(entry.typeName);
+        stats.entries++;
+        stats.size += entry.getSize();
+    }
+
+    void remove(Entry entry) {
+        size -= entry.getSize();
+        Statistics stats = getStatisticsInternal(entry.typeName);
+        stats.entries--;
+        stats.size -= entry.getSize();
+    }
+
+    /**
+     * Returns the geometry factory requested by the hints, the same way the
+     * {@link JDBCFeatureReader} picks it
+     */
+    static GeometryFactory getGeometryFactory(Hints hints, JDBCDataStore dataStore) {
+        GeometryFactory factory = null;
+        if (hints != null) {
+            factory = (GeometryFactory) hints.get(Hints.JTS_GEOMETRY_FACTORY);
+            if (factory == null) {
+                CoordinateSequenceFactory csFactory = (CoordinateSequenceFactory) hints
+                        .get(Hints.JTS_COORDINATE_SEQUENCE_FACTORY);
+                if (csFactory != null) {
+                    factory = new GeometryFactory(csFactory);
+                }
+            }
+        }
+        return factory != null ? factory : dataStore.getGeometryFactory();
+    }
+
+    /**
+     * The cache statistics of a feature type
+     */
+    public static class Statistics {
+        long hits;
+
+        long misses;
+
+        long evictions;
+
+        long invalidations;
+
+        long entries;
+
+        long size;
+
+        Statistics() {
+        }
+
+        Statistics(Statistics other) {
+            this.hits = other.hits;
+            this.misses = other.misses;
+            this.evictions = other.evictions;
+            this.invalidations = other.invalidations;
+            this.entries = other.entries;
+            this.size = other.size;
+        }
+
+        /**
+         * The number of queries answered from the cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * The number of queries run against the database
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * The number of results evicted to stay within the memory budget
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * The number of times the results have been invalidated by writes
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * The number of results currently cached
+         */
+        public long getEntries() {
+            return entries;
+        }
+
+        /**
+         * The estimated memory used by the cached results, in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                    + ", invalidations=" + invalidations + ", entries=" + entries + ", size="
+                    + size;
+        }
+    }
+
+    /**
+     * The normalized query the results are cached for
+     */
+    static class QueryKey {
+        String typeName;
+
+        Filter filter;
+
+        List<String> propertyNames;
+
+        List<Object> sortBy;
+
+        Integer startIndex;
+
+        int maxFeatures;
+
+        Map<Object, Object> hints = new HashMap<Object, Object>();
+
+        QueryKey(String typeName, Query query) {
+            this.typeName = typeName;
+            this.filter = query.getFilter() != null ? query.getFilter() : Filter.INCLUDE;
+            this.propertyNames = query.getPropertyNames() != null ? Arrays.asList(query
+                    .getPropertyNames()) : null;
+            this.sortBy = query.getSortBy() != null && query.getSortBy().length > 0 ? Arrays
+                    .asList((Object[]) query.getSortBy()) : null;
+            this.startIndex = query.getStartIndex();
+            this.maxFeatures = query.getMaxFeatures();
+            if (query.getHints() != null) {
+                for (Map.Entry<Object, Object> entry : query.getHints().entrySet()) {
+                    if (!IGNORED_HINTS.contains(entry.getKey())) {
+                        hints.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return typeName.equals(other.typeName) && filter.equals(other.filter)
+                    && equal(propertyNames, other.propertyNames) && equal(sortBy, other.sortBy)
+                    && equal(startIndex, other.startIndex) && maxFeatures == other.maxFeatures
+                    && hints.equals(other.hints);
+        }
+
+        static boolean equal(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = typeName.hashCode();
+            result = 31 * result + filter.hashCode();
+            result = 31 * result + (propertyNames == null ? 0 : propertyNames.hashCode());
+            result = 31 * result + (sortBy == null ? 0 : sortBy.hashCode());
+            result = 31 * result + (startIndex == null ? 0 : startIndex.hashCode());
+            result = 31 * result + maxFeatures;
+            return 31 * result + hints.hashCode();
+        }
+    }
+
+    /**
+     * The encoded results of a query
+     */
+    static class Entry {
+        String typeName;
+
+        SimpleFeatureType featureType;
+
+        byte[] features;
+
+        int count;
+
+        long created = System.currentTimeMillis();
+
+        Entry(String typeName, SimpleFeatureType featureType, byte[] features, int count) {
+            this.typeName = typeName;
+            this.featureType = featureType;
+            this.features = features;
+            this.count = count;
+        }
+
+        long getSize() {
+            return features.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Encodes the features read from the database, caching them once the reader is exhausted
+     */
+    class CachingFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+        SimpleFeatureType featureType;
+
+        QueryKey key;
+
+        long generation;
+
+        OffHeapFeatureCodec codec;
+
+        ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+        /**
+         * The encoded features, null if they grew past the maximum entry size
+         */
+        byte[] features = new byte[4096];
+
+        int length;
+
+        int count;
+
+        boolean exhausted;
+
+        CachingFeatureReader(QueryKey key, long generation,
+                FeatureReader<SimpleFeatureType, SimpleFeature> delegate) {
+            this.key = key;
+            this.generation = generation;
+            this.delegate = delegate;
+            // the JDBC readers drop their feature type when closed
+            this.featureType = delegate.getFeatureType();
+            // the geometry factory is not used for encoding
+            this.codec = new OffHeapFeatureCodec(featureType, new GeometryFactory());
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return featureType;
+        }
+
+        public boolean hasNext() throws IOException {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext) {
+                exhausted = true;
+            }
+            return hasNext;
+        }
+
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            SimpleFeature feature = delegate.next();
+            if (features != null) {
+                scratch = codec.encode(feature, scratch);
+                int needed = length + scratch.remaining();
+                if (needed + ENTRY_OVERHEAD > maxSize / 4) {
+                    // too large to be cached
+                    features = null;
+                } else {
+                    if (needed > features.length) {
+                        features = XArray.resize(features, Math.max(needed, features.length * 2));
+                    }
+                    scratch.get(features, length, scratch.remaining());
+                    length = needed;
+                    count++;
+                }
+            }
+            return feature;
+        }
+
+        public void close() throws IOException {
+            delegate.close();
+            if (exhausted && features != null) {
+                put(key, new Entry(key.typeName, featureType, XArray.resize(features, length),
+                        count), generation);
+            }
+            features = null;
+        }
+    }
+
+    /**
+     * Decodes the cached features
+     */
+    static class CachedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+        SimpleFeatureType featureType;
+
+        OffHeapFeatureCodec codec;
+
+        ByteBuffer features;
+
+        int remaining;
+
+        CachedFeatureReader(Entry entry, GeometryFactory geometryFactory) {
+            this.featureType = entry.featureType;
+            this.codec = new OffHeapFeatureCodec(featureType, geometryFactory);
+            this.features = ByteBuffer.wrap(entry.features);
+            this.remaining = entry.count;
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return featureType;
+        }
+
+        public boolean hasNext() throws IOException {
+            return remaining > 0;
+        }
+
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            if (remaining <= 0) {
+                throw new NoSuchElementException("No more features");
+            }
+            SimpleFeature feature = codec.decode(features);
+            remaining--;
+
+            // the JDBC reader sets the crs on the geometries
+            for (int i = 0; i < featureType.getAttributeCount(); i++) {
+                AttributeDescriptor ad = featureType.getDescriptor(i);
+                Object value = feature.getAttribute(i);
+                if (ad instanceof GeometryDescriptor && value instanceof Geometry
+                        && ((Geometry) value).getUserData() == null) {
+                    ((Geometry) value).setUserData(((GeometryDescriptor) ad)
+                            .getCoordinateReferenceSystem());
+                }
+            }
+            return feature;
+        }
+
+        public void close() throws IOException {
+            remaining = 0;
+            features = null;
+        }
+    }
+}
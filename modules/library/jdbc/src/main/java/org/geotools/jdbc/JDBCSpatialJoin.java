@@ -0,0 +1,367 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.data.jdbc.FilterToSQLException;
+import org.geotools.data.join.SpatialJoin;
+import org.geotools.data.join.JoinTypeBuilder;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Runs a {@link SpatialJoin} between two tables of the same database as a single SQL query.
+ * <p>
+ * Each side is encoded as a sub query selecting the primary key, the joined attributes and the
+ * raw geometry, the two sub queries are then joined using the spatial predicate encoded by
+ * {@link SQLDialect#encodeSpatialJoinPredicate(SpatialJoin.Predicate, String, String, double, StringBuffer)}:
+ * <pre>
+ * SELECT ... FROM (SELECT ... FROM left WHERE ...) l, (SELECT ... FROM right WHERE ...) r
+ *  WHERE ST_Intersects(l.lg, r.rg)
+ * </pre>
+ * The join is not pushed down, and the caller falls back on an in memory join, when the
+ * dialect cannot encode the predicate, the source filters cannot be fully encoded in SQL, or
+ * the sources require reprojection.
+ * </p>
+ *
+ * @source $URL$
+ */
+class JDBCSpatialJoin {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.jdbc");
+
+    JDBCDataStore store;
+
+    SpatialJoin join;
+
+    Side left;
+
+    Side right;
+
+    /**
+     * One side of the join
+     */
+    static class Side {
+        String alias;
+
+        JDBCFeatureSource source;
+
+        SimpleFeatureType schema;
+
+        PrimaryKey key;
+
+        Filter filter;
+
+        GeometryDescriptor geometry;
+
+        /**
+         * Maps the source attribute names to their column alias
+         */
+        Map<String, String> columns = new LinkedHashMap<String, String>();
+    }
+
+    JDBCSpatialJoin(JDBCDataStore store, SpatialJoin join) {
+        this.store = store;
+        this.join = join;
+    }
+
+    /**
+     * Returns a reader over the joined features, or null if the join cannot be run in SQL
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getReader() throws IOException {
+        left = side("l", join.getLeft(), join.getLeftQuery(), join.getLeftGeometry(), true);
+        right = side("r", join.getRight(), join.getRightQuery(), join.getRightGeometry(), false);
+        if (left == null || right == null) {
+            return null;
+        }
+
+        // both sides have to share the same transaction, and the same coordinate system
+        Transaction transaction = left.source.getTransaction();
+        if (transaction != right.source.getTransaction()) {
+            return null;
+        }
+        CoordinateReferenceSystem leftCRS = left.geometry.getCoordinateReferenceSystem();
+        CoordinateReferenceSystem rightCRS = right.geometry.getCoordinateReferenceSystem();
+        if (leftCRS != null && rightCRS != null && !CRS.equalsIgnoreMetadata(leftCRS, rightCRS)) {
+            return null;
+        }
+
+        StringBuffer sql = new StringBuffer();
+        try {
+            if (!encode(sql)) {
+                return null;
+            }
+        } catch (SQLException e) {
+            throw (IOException) new IOException("Failed to encode the spatial join").initCause(e);
+        } catch (FilterToSQLException e) {
+            // should not happen, the filters have been checked already
+            LOGGER.log(Level.FINE, "Could not encode the join filters", e);
+            return null;
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Spatial join; " + sql);
+        }
+        Connection cx = store.getConnection(transaction);
+        Statement st = null;
+        try {
+            st = cx.createStatement();
+            st.setFetchSize(store.getFetchSize());
+            ResultSet rs = st.executeQuery(sql.toString());
+            return new JoinReader(cx, st, rs, transaction);
+        } catch (SQLException e) {
+            store.closeSafe(st);
+            if (transaction == Transaction.AUTO_COMMIT) {
+                store.closeSafe(cx);
+            }
+            throw (IOException) new IOException("Failed to run the spatial join").initCause(e);
+        }
+    }
+
+    Side side(String alias, SimpleFeatureSource source, Query query, String geometry,
+            boolean fromLeft) throws IOException {
+        Side side = new Side();
+        side.alias = alias;
+        if (source instanceof JDBCFeatureStore) {
+            side.source = ((JDBCFeatureStore) source).delegate;
+        } else if (source instanceof JDBCFeatureSource) {
+            side.source = (JDBCFeatureSource) source;
+        } else {
+            return null;
+        }
+        if (query.getCoordinateSystem() != null || query.getCoordinateSystemReproject() != null) {
+            return null;
+        }
+
+        side.schema = side.source.getSchema();
+        side.key = side.source.getPrimaryKey();
+        side.geometry = (GeometryDescriptor) side.schema.getDescriptor(geometry);
+
+        // the whole filter has to be encoded in sql
+        Filter[] split = side.source.splitFilter(query.getFilter());
+        if (split[1] != null && split[1] != Filter.INCLUDE) {
+            return null;
+        }
+        side.filter = split[0];
+        if (side.filter != Filter.INCLUDE && !(store.getSQLDialect() instanceof BasicSQLDialect)) {
+            return null;
+        }
+
+        int i = 0;
+        for (JoinTypeBuilder.Mapping mapping : join.getTypeBuilder().getMappings()) {
+            String name = mapping.getDescriptor().getLocalName();
+            if (mapping.isFromLeft() == fromLeft && !side.columns.containsKey(name)) {
+                side.columns.put(name, alias + i++);
+            }
+        }
+        return side;
+    }
+
+    boolean encode(StringBuffer sql) throws SQLException, FilterToSQLException, IOException {
+        SQLDialect dialect = store.getSQLDialect();
+        sql.append("SELECT ");
+        for (Side side : new Side[] { left, right }) {
+            for (int i = 0; i < side.key.getColumns().size(); i++) {
+                column(side, side.alias + "k" + i, sql);
+                sql.append(", ");
+            }
+            for (String column : side.columns.values()) {
+                column(side, column, sql);
+                sql.append(", ");
+            }
+        }
+        sql.setLength(sql.length() - 2);
+
+        sql.append(" FROM ");
+        encodeSide(left, join.getLeftQuery(), sql);
+        sql.append(", ");
+        encodeSide(right, join.getRightQuery(), sql);
+
+        sql.append(" WHERE ");
+        StringBuffer leftGeometry = new StringBuffer();
+        column(left, left.alias + "g", leftGeometry);
+        StringBuffer rightGeometry = new StringBuffer();
+        column(right, right.alias + "g", rightGeometry);
+        return dialect.encodeSpatialJoinPredicate(join.getPredicate(), leftGeometry.toString(),
+                rightGeometry.toString(), join.getDistance(), sql);
+    }
+
+    void column(Side side, String column, StringBuffer sql) {
+        SQLDialect dialect = store.getSQLDialect();
+        dialect.encodeTableName(side.alias, sql);
+        sql.append(".");
+        dialect.encodeColumnName(column, sql);
+    }
+
+    void encodeSide(Side side, Query query, StringBuffer sql) throws SQLException,
+            FilterToSQLException {
+        SQLDialect dialect = store.getSQLDialect();
+        sql.append("(SELECT ");
+        List<PrimaryKeyColumn> keyColumns = side.key.getColumns();
+        for (int i = 0; i < keyColumns.size(); i++) {
+            dialect.encodeColumnName(keyColumns.get(i).getName(), sql);
+            dialect.encodeColumnAlias(side.alias + "k" + i, sql);
+            sql.append(", ");
+        }
+        for (Map.Entry<String, String> column : side.columns.entrySet()) {
+            AttributeDescriptor att = side.schema.getDescriptor(column.getKey());
+            if (att instanceof GeometryDescriptor) {
+                store.encodeGeometryColumn((GeometryDescriptor) att, sql, query.getHints());
+            } else {
+                dialect.encodeColumnName(column.getKey(), sql);
+            }
+            dialect.encodeColumnAlias(column.getValue(), sql);
+            sql.append(", ");
+        }
+        dialect.encodeColumnName(side.geometry.getLocalName(), sql);
+        dialect.encodeColumnAlias(side.alias + "g", sql);
+
+        sql.append(" FROM ");
+        store.encodeTableName(side.schema.getTypeName(), sql, query.getHints());
+        if (side.filter != null && side.filter != Filter.INCLUDE) {
+            FilterToSQL toSQL = store.createFilterToSQL(side.schema);
+            sql.append(" ").append(toSQL.encodeToString(side.filter));
+        }
+        sql.append(")");
+        dialect.encodeTableAlias(side.alias, sql);
+    }
+
+    /**
+     * Reads the joined features off the result set
+     */
+    class JoinReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+        Connection cx;
+
+        Statement st;
+
+        ResultSet rs;
+
+        Transaction transaction;
+
+        SimpleFeatureBuilder builder;
+
+        Boolean next;
+
+        JoinReader(Connection cx, Statement st, ResultSet rs, Transaction transaction) {
+            this.cx = cx;
+            this.st = st;
+            this.rs = rs;
+            this.transaction = transaction;
+            this.builder = new SimpleFeatureBuilder(join.getFeatureType());
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return join.getFeatureType();
+        }
+
+        public boolean hasNext() throws IOException {
+            if (next == null) {
+                if (rs == null) {
+                    return false;
+                }
+                try {
+                    next = Boolean.valueOf(rs.next());
+                } catch (SQLException e) {
+                    throw (IOException) new IOException().initCause(e);
+                }
+            }
+            return next.booleanValue();
+        }
+
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more joined features");
+            }
+            next = null;
+            try {
+                for (JoinTypeBuilder.Mapping mapping : join.getTypeBuilder().getMappings()) {
+                    Side side = mapping.isFromLeft() ? left : right;
+                    builder.add(value(mapping.getDescriptor(), side.columns.get(mapping
+                            .getDescriptor().getLocalName())));
+                }
+                return builder.buildFeature(fid(left) + "-" + fid(right));
+            } catch (SQLException e) {
+                throw (IOException) new IOException().initCause(e);
+            }
+        }
+
+        Object value(AttributeDescriptor att, String column) throws SQLException, IOException {
+            if (att instanceof GeometryDescriptor) {
+                return store.getSQLDialect().decodeGeometryValue((GeometryDescriptor) att, rs,
+                        column, store.getGeometryFactory(), cx);
+            }
+            Object value = rs.getObject(column);
+            Class<?> binding = att.getType().getBinding();
+            if (value != null && !binding.isInstance(value)) {
+                Object converted = Converters.convert(value, binding);
+                if (converted != null) {
+                    value = converted;
+                }
+            }
+            return value;
+        }
+
+        String fid(Side side) throws SQLException {
+            int size = side.key.getColumns().size();
+            if (size == 0) {
+                return SimpleFeatureBuilder.createDefaultFeatureId();
+            }
+            List<Object> values = new ArrayList<Object>();
+            for (int i = 0; i < size; i++) {
+                values.add(rs.getString(side.alias + "k" + i));
+            }
+            return side.schema.getTypeName() + "." + store.encodeFID(values);
+        }
+
+        public void close() throws IOException {
+            if (rs != null) {
+                store.closeSafe(rs);
+                store.closeSafe(st);
+                if (transaction == Transaction.AUTO_COMMIT) {
+                    store.closeSafe(cx);
+                }
+                rs = null;
+            }
+        }
+    }
+}
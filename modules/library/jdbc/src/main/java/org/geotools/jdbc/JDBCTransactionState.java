@@ -19,6 +19,8 @@ package org.geotools.jdbc;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.geotools.data.Transaction;
@@ -47,6 +49,11 @@ final class JDBCTransactionState implements State {
      * case no attempt to commit, rollback or close will be done)
      */
     boolean external;
+    /**
+     * The feature types modified in the transaction, whose cached query results are
+     * invalidated on commit
+     */
+    Set<String> modifiedTypes = new HashSet<String>();
 
     public JDBCTransactionState(Connection cx, JDBCDataStore dataStore) {
         this(cx, dataStore, false);
@@ -89,6 +96,7 @@ final class JDBCTransactionState implements State {
                 throw (IOException) new IOException(msg).initCause(e);
             }        
         }
+        invalidateModifiedTypes();
     }
 
     public void rollback() throws IOException {
@@ -100,6 +108,17 @@ final class JDBCTransactionState implements State {
                 throw (IOException) new IOException(msg).initCause(e);
             }
         }
+        modifiedTypes.clear();
+    }
+
+    void invalidateModifiedTypes() {
+        JDBCQueryCache cache = dataStore.getQueryCache();
+        if (cache != null) {
+            for (String typeName : modifiedTypes) {
+                cache.invalidate(typeName);
+            }
+        }
+        modifiedTypes.clear();
     }
     
     @Override
@@ -82,6 +82,7 @@ public class JDBCUpdateFeatureWriter extends JDBCFeatureReader implements
             
             // issue notification
             ContentEntry entry = featureSource.getEntry();
+            dataStore.featuresModified(entry.getTypeName(), tx);
             ContentState state = entry.getState( this.tx );
             if( state.hasListener() ){
                 state.fireFeatureRemoved( featureSource, last );
@@ -117,6 +118,7 @@ public class JDBCUpdateFeatureWriter extends JDBCFeatureReader implements
             
             // issue notification
             ContentEntry entry = featureSource.getEntry();
+            dataStore.featuresModified(entry.getTypeName(), tx);
             ContentState state = entry.getState( this.tx );
             if( state.hasListener() ){
                 state.fireFeatureUpdated( featureSource, last, lastBounds );
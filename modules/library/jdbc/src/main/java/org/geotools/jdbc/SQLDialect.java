@@ -26,6 +26,8 @@ import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +35,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.Query;
+import org.geotools.data.join.SpatialJoin;
 import org.geotools.factory.Hints;
 import org.geotools.feature.visitor.CountVisitor;
 import org.geotools.feature.visitor.MaxVisitor;
@@ -689,6 +692,35 @@ public abstract class SQLDialect {
         throw new UnsupportedOperationException("Geometry simplification not supported");
     }
 
+    /**
+     * Encodes the spatial predicate of a {@link SpatialJoin} between two geometry columns,
+     * which have already been encoded and are provided as SQL snippets.
+     * <p>
+     * Example:
+     * </p>
+     * <pre>
+     *   <code>
+     *   sql.append( "ST_Intersects(" ).append( left ).append( ", " );
+     *   sql.append( right ).append( ")" );
+     *   </code>
+     * </pre>
+     * <p>
+     * This default implementation returns false, meaning the database cannot run spatial
+     * joins, subclasses should override.
+     * </p>
+     * @param predicate The join predicate
+     * @param left The left geometry column
+     * @param right The right geometry column
+     * @param distance The join distance, used by {@link SpatialJoin.Predicate#DWITHIN}
+     * @param sql The buffer to append to
+     * 
+     * @return true if the predicate has been encoded, false otherwise
+     */
+    public boolean encodeSpatialJoinPredicate(SpatialJoin.Predicate predicate, String left,
+            String right, double distance, StringBuffer sql) {
+        return false;
+    }
+
 
     /**
      * Decodes a geometry value from the result of a query.
@@ -736,6 +768,21 @@ public abstract class SQLDialect {
         return decodeGeometryValue(descriptor, rs, columnName, factory, cx);
     }
     
+    /**
+     * Decodes a geometry value from the result of a query, taking into account the hints of
+     * the query, such as {@link Hints#FEATURE_2D}.
+     * <p>
+     * The default implementation ignores the hints, subclasses decoding the geometries
+     * themselves can use them to avoid building what the caller does not need.
+     * </p>
+     * @see {@link #decodeGeometryValue(GeometryDescriptor, ResultSet, int, GeometryFactory, Connection)}.
+     * @since 2.8
+     */
+    public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs,
+        int column, GeometryFactory factory, Connection cx, Hints hints ) throws IOException, SQLException {
+        return decodeGeometryValue(descriptor, rs, column, factory, cx);
+    }
+    
     /**
      * Encodes the primary key definition in a CREATE TABLE statement.
      * <p>
@@ -973,6 +1020,82 @@ public abstract class SQLDialect {
         return null;
     }
     
+    /**
+     * Obtains the next <tt>count</tt> values of a sequence, incrementing the sequence
+     * accordingly.
+     * <p>
+     * This method is used when inserting features in batches, see
+     * {@link JDBCDataStore#setBatchInsertSize(int)}. The default implementation calls
+     * {@link #getNextSequenceValue(String, String, Connection)} <tt>count</tt> times,
+     * subclasses should override if the database can return several values in a single
+     * round trip.
+     * </p>
+     * <p>
+     * This method is given a direct connection to the database, but this connection
+     * should never be closed. However any statements or result sets instantiated
+     * from the connection must be closed.
+     * </p>
+     * @param schemaName The schema name, this might be <code>null</code>.
+     * @param sequenceName The name of the sequence.
+     * @param count The number of values to fetch.
+     * @param cx The database connection.
+     *
+     * @return The next values of the sequence, or <code>null</code>.
+     */
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        List<Object> values = new ArrayList<Object>(count);
+        for (int i = 0; i < count; i++) {
+            Object value = getNextSequenceValue(schemaName, sequenceName, cx);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    /**
+     * Returns true if the dialect can load rows in bulk with
+     * {@link #bulkLoad(SimpleFeatureType, String[], Class[], int[], Iterator, Connection)}.
+     * <p>
+     * This default implementation returns <code>false</code>, in which case
+     * {@link JDBCFeatureStore#bulkLoad(org.geotools.feature.FeatureCollection)} inserts the
+     * features with batches of insert statements.
+     * </p>
+     */
+    public boolean isBulkLoadSupported() {
+        return false;
+    }
+
+    /**
+     * Loads rows into the table of a feature type using a database specific bulk loading
+     * mechanism, such as the PostgreSQL COPY command.
+     * <p>
+     * Each row holds the values of <tt>columns</tt>, in the same order, primary key values
+     * included. The srid array gives, for the geometry columns, the srid the geometries should
+     * be stored with.
+     * </p>
+     * <p>
+     * The connection is the one of the current transaction, it should never be closed nor
+     * committed. However any statements or result sets instantiated from the connection must
+     * be closed.
+     * </p>
+     * @param featureType The feature type of the table to load.
+     * @param columns The names of the loaded columns.
+     * @param bindings The java types of the column values.
+     * @param srids The srid of each column, only meaningful for geometry columns.
+     * @param rows The rows to load.
+     * @param cx The database connection.
+     *
+     * @return The number of rows loaded.
+     */
+    public long bulkLoad(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids, Iterator<Object[]> rows, Connection cx) throws SQLException, IOException {
+        throw new UnsupportedOperationException("Bulk loading is not supported by "
+                + getClass().getName());
+    }
+
     /**
      * Returns true if this dialect can encode both {@linkplain Query#getStartIndex()}
      * and {@linkplain Query#getMaxFeatures()} into native SQL. 
@@ -16,11 +16,17 @@
  */
 package org.geotools.jdbc;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.geotools.data.DefaultQuery;
 import org.geotools.data.Query;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.GroupByVisitor;
 import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MergeableFeatureCalc;
 import org.geotools.feature.visitor.MinVisitor;
 import org.geotools.feature.visitor.SumVisitor;
 import org.geotools.feature.visitor.UniqueVisitor;
@@ -281,4 +287,61 @@ public abstract class JDBCAggregateFunctionTest extends JDBCTestSupport {
         Set result = v.getResult().toSet();
         assertEquals(2, result.size());
     }
+    
+    class MyGroupByVisitor extends GroupByVisitor {
+
+        public MyGroupByVisitor(Expression groupBy, MergeableFeatureCalc aggregate) {
+            super(groupBy, aggregate);
+        }
+        
+        public void visit(Feature feature) {
+            super.visit(feature);
+            visited = true;
+        }
+        public void visit(SimpleFeature feature) {
+            super.visit(feature);
+            visited = true;
+        }
+    }
+    
+    public void testGroupBy() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyName group = ff.property( aname("stringProperty") );
+        PropertyName p = ff.property( aname("doubleProperty") );
+        
+        GroupByVisitor v = new MyGroupByVisitor(group, new SumVisitor(p));
+        Filter f = ff.greater( ff.property( aname("intProperty") ), ff.literal(0) );
+        Query q = new Query( tname("ft1"), f);
+        dataStore.getFeatureSource(tname("ft1")).accepts(q, v, null);
+        assertFalse(visited);
+        Map<List<Object>, Object> sums = v.getGroupValues();
+        assertEquals(2, sums.size());
+        assertEquals(1.1, ((Number) sums.get(Arrays.asList("one"))).doubleValue(), 0.01);
+        assertEquals(2.2, ((Number) sums.get(Arrays.asList("two"))).doubleValue(), 0.01);
+    }
+    
+    public void testGroupByCount() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyName group = ff.property( aname("stringProperty") );
+        
+        GroupByVisitor v = new MyGroupByVisitor(group, new CountVisitor());
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        assertFalse(visited);
+        Map<List<Object>, Object> counts = v.getGroupValues();
+        assertEquals(3, counts.size());
+        for (Object count : counts.values()) {
+            assertEquals(1, ((Number) count).intValue());
+        }
+    }
+    
+    public void testGroupByUniqueInMemory() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyName group = ff.property( aname("stringProperty") );
+        
+        // unique cannot be grouped in the database
+        GroupByVisitor v = new MyGroupByVisitor(group, new UniqueVisitor(ff.property( aname("intProperty") )));
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        assertTrue(visited);
+        assertEquals(3, v.getGroupValues().size());
+    }
 }
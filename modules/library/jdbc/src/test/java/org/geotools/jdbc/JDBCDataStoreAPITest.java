@@ -59,6 +59,7 @@ import org.opengis.filter.FilterFactory;
 import org.opengis.filter.PropertyIsEqualTo;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
@@ -1703,4 +1704,27 @@ public abstract class JDBCDataStoreAPITest extends JDBCTestSupport {
 	    
 	    assertTrue(original.getNumPoints()>=simplified.getNumPoints());
 	}
+
+	public void testSimplificationKeepsSmallFeatures() throws Exception {
+		SimpleFeatureSource fs = dataStore.getFeatureSource(tname("lake"));
+		
+		if (fs.getSupportedHints().contains(Hints.GEOMETRY_SIMPLIFICATION)==false)
+			return;
+		
+		// the lake is 4 units wide, far smaller than the distance
+	    DefaultQuery query = new DefaultQuery();
+	    query.setHints(new Hints(Hints.GEOMETRY_SIMPLIFICATION, 10d));
+	    
+	    SimpleFeatureCollection fColl = fs.getFeatures(query);
+	    SimpleFeatureIterator iterator = fColl.features();
+	    try {
+	        assertTrue(iterator.hasNext());
+	        Geometry simplified = (Geometry) iterator.next().getDefaultGeometry();
+	        assertNotNull(simplified);
+	        assertFalse(simplified.isEmpty());
+	        assertTrue(simplified.getEnvelopeInternal().intersects(new Envelope(12, 16, 4, 8)));
+	    } finally {
+	        fColl.close(iterator);
+	    }
+	}
 }
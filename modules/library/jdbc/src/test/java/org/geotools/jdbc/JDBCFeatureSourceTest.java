@@ -16,12 +16,17 @@
  */
 package org.geotools.jdbc;
 
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.geotools.data.DefaultQuery;
+import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
+import org.geotools.data.QueryPlan;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.store.ContentFeatureSource;
@@ -35,6 +40,7 @@ import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.And;
+import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.PropertyIsEqualTo;
@@ -198,6 +204,126 @@ public abstract class JDBCFeatureSourceTest extends JDBCTestSupport {
         features.close(iterator);
     }
     
+    public void testStatementCache() throws Exception {
+        if (!(dataStore.getSQLDialect() instanceof PreparedStatementSQLDialect)) {
+            return;
+        }
+        FilterFactory ff = dataStore.getFilterFactory();
+        dataStore.resetStatementCacheStatistics();
+
+        // same query shape, different literals
+        for (String value : new String[] { "zero", "one", "two" }) {
+            PropertyIsEqualTo filter = ff.equals(ff.property(aname("stringProperty")), ff
+                    .literal(value));
+            SimpleFeatureIterator it = featureSource.getFeatures(filter).features();
+            try {
+                assertTrue(it.hasNext());
+                assertEquals(value, it.next().getAttribute(aname("stringProperty")));
+            } finally {
+                it.close();
+            }
+        }
+
+        // the test data source pools prepared statements
+        assertEquals(3, dataStore.getStatementCacheHits() + dataStore.getStatementCacheMisses());
+        assertTrue(dataStore.getStatementCacheHits() >= 1);
+        assertTrue(dataStore.getStatementCacheHitRatio() > 0);
+    }
+    
+    /**
+     * Returns a feature store exposing the primary key, which the partitions are built on
+     */
+    JDBCFeatureStore getExposedPkStore() throws Exception {
+        JDBCFeatureStore fs = (JDBCFeatureStore) dataStore.getFeatureSource(tname("ft1"));
+        fs.setExposePrimaryKeyColumns(true);
+        return fs;
+    }
+
+    Set<String> readIds(FeatureReader<SimpleFeatureType, SimpleFeature> reader)
+            throws Exception {
+        Set<String> ids = new HashSet<String>();
+        try {
+            while (reader.hasNext()) {
+                assertTrue(ids.add(reader.next().getID()));
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    public void testPartitionedReader() throws Exception {
+        Set<String> expected = new HashSet<String>();
+        SimpleFeatureIterator it = featureSource.getFeatures().features();
+        try {
+            while (it.hasNext()) {
+                expected.add(it.next().getID());
+            }
+        } finally {
+            it.close();
+        }
+
+        JDBCFeatureStore fs = getExposedPkStore();
+        List<Filter> partitions = fs.delegate.getPartitionFilters(Query.ALL, 2);
+        assertNotNull(partitions);
+        assertEquals(2, partitions.size());
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = fs.getPartitionedReader(
+                Query.ALL, 2, null);
+        assertTrue(reader instanceof JDBCPartitionedFeatureReader);
+        assertEquals(expected, readIds(reader));
+    }
+
+    public void testPartitionedReaderFallback() throws Exception {
+        // the key is not exposed, the ranges cannot be expressed as filters
+        JDBCFeatureStore fs = (JDBCFeatureStore) featureSource;
+        if (fs.isExposePrimaryKeyColumns()) {
+            return;
+        }
+        assertNull(fs.delegate.getPartitionFilters(Query.ALL, 2));
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = fs.getPartitionedReader(
+                Query.ALL, 2, null);
+        assertFalse(reader instanceof JDBCPartitionedFeatureReader);
+        assertEquals(3, readIds(reader).size());
+    }
+
+    public void testPartitionedReaderFilterMax() throws Exception {
+        JDBCFeatureStore fs = getExposedPkStore();
+        FilterFactory ff = dataStore.getFilterFactory();
+        Query query = new Query(tname("ft1"), ff.greater(ff.property(aname("intProperty")), ff
+                .literal(0)));
+        List<Filter> partitions = fs.delegate.getPartitionFilters(query, 3);
+        assertNotNull(partitions);
+        assertTrue(partitions.size() > 1);
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = fs.getPartitionedReader(query,
+                3, null);
+        assertTrue(reader instanceof JDBCPartitionedFeatureReader);
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                SimpleFeature f = reader.next();
+                assertTrue(((Number) f.getAttribute(aname("intProperty"))).intValue() > 0);
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(2, count);
+
+        query.setMaxFeatures(1);
+        reader = fs.getPartitionedReader(query, 3, null);
+        assertTrue(reader instanceof JDBCPartitionedFeatureReader);
+        try {
+            assertTrue(reader.hasNext());
+            reader.next();
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+    
     public void testGetFeaturesWithInvalidQuery() {
         FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
         PropertyIsEqualTo f = ff.equals(ff.property("invalidAttribute"), ff.literal(5));
@@ -437,4 +563,22 @@ public abstract class JDBCFeatureSourceTest extends JDBCTestSupport {
         assertEquals(1, featureSource.getCount(new Query(null, f)));
     }
     
+    public void testExplain() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyIsEqualTo filter = ff.equals(ff.property(aname("stringProperty")), ff.literal("one"));
+        DefaultQuery query = new DefaultQuery(tname("ft1"), filter);
+        query.setSortBy(new SortBy[] {ff.sort(aname("intProperty"), SortOrder.ASCENDING)});
+        
+        QueryPlan plan = featureSource.explain(query);
+        assertEquals(tname("ft1"), plan.getTypeName());
+        assertEquals(filter, plan.getNativeFilter());
+        assertEquals(Filter.INCLUDE, plan.getResidualFilter());
+        assertFalse(plan.isSortInMemory());
+        assertTrue(plan.getMemorySteps().isEmpty());
+        String sql = plan.getNativeQuery().toUpperCase();
+        assertTrue(sql.startsWith("SELECT"));
+        assertTrue(sql.contains("WHERE"));
+        assertTrue(sql.contains("ORDER BY"));
+    }
+    
 }
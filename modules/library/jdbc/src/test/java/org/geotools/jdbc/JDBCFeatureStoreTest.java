@@ -16,6 +16,7 @@
  */
 package org.geotools.jdbc;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.sql.Connection;
@@ -29,14 +30,18 @@ import java.util.List;
 import org.geotools.data.CollectionFeatureReader;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
 import org.geotools.data.Transaction;
 import org.geotools.data.FeatureEvent.Type;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.statistics.StatisticsCatalog;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
 import org.geotools.feature.AttributeTypeBuilder;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
@@ -102,6 +107,31 @@ public abstract class JDBCFeatureStoreTest extends JDBCTestSupport {
             features.close(iterator);
         }
     }
+
+    public void testBulkLoad() throws IOException {
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder(featureStore.getSchema());
+        DefaultFeatureCollection collection = new DefaultFeatureCollection(null,
+                featureStore.getSchema());
+
+        FeatureEventWatcher watcher = new FeatureEventWatcher();
+
+        for (int i = 3; i < 6; i++) {
+            b.set(aname("intProperty"), new Integer(i));
+            b.set(aname("geometry"), new GeometryFactory().createPoint(new Coordinate(i, i)));
+            collection.add(b.buildFeature(null));
+        }
+        featureStore.addFeatureListener(watcher);
+        assertEquals(3, featureStore.bulkLoad(collection));
+        assertEquals(watcher.bounds, collection.getBounds());
+        assertEquals(Type.ADDED, watcher.type);
+        assertEquals(1, watcher.count);
+
+        assertEquals(6, featureStore.getFeatures().size());
+
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyIsEqualTo filter = ff.equals(ff.property(aname("intProperty")), ff.literal(4));
+        assertEquals(1, featureStore.getFeatures(filter).size());
+    }
     
     public void testAddFeaturesUseProvidedFid() throws IOException {
         // check we advertise the ability to reuse feature ids
@@ -385,6 +415,143 @@ public abstract class JDBCFeatureStoreTest extends JDBCTestSupport {
         assertEquals(0, features.size());
     }
     
+    public void testQueryCache() throws IOException {
+        JDBCQueryCache cache = new JDBCQueryCache(1024 * 1024);
+        dataStore.setQueryCache(cache);
+        String typeName = featureStore.getEntry().getTypeName();
+        
+        assertEquals(3, countFeatures(featureStore.getFeatures()));
+        assertEquals(3, countFeatures(featureStore.getFeatures()));
+        JDBCQueryCache.Statistics stats = cache.getStatistics(typeName);
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getEntries());
+        
+        // the features read from the cache are the same
+        FilterFactory ff = dataStore.getFilterFactory();
+        Filter filter = ff.equals(ff.property(aname("intProperty")), ff.literal(1));
+        SimpleFeature expected = readFeature(featureStore.getFeatures(filter));
+        SimpleFeature cached = readFeature(featureStore.getFeatures(filter));
+        assertEquals(2, cache.getStatistics(typeName).getHits());
+        assertEquals(expected.getID(), cached.getID());
+        assertEquals(expected.getAttribute(aname("stringProperty")), cached
+                .getAttribute(aname("stringProperty")));
+        assertTrue(((Geometry) expected.getDefaultGeometry()).equalsExact((Geometry) cached
+                .getDefaultGeometry()));
+        
+        // writes drop the cached results
+        featureStore.removeFeatures(filter);
+        assertEquals(0, cache.getStatistics(typeName).getEntries());
+        assertEquals(2, countFeatures(featureStore.getFeatures()));
+    }
+    
+    public void testQueryCacheInTransaction() throws IOException {
+        JDBCQueryCache cache = new JDBCQueryCache(1024 * 1024);
+        dataStore.setQueryCache(cache);
+        String typeName = featureStore.getEntry().getTypeName();
+        
+        // fill the cache
+        assertEquals(3, countFeatures(featureStore.getFeatures()));
+        assertEquals(1, cache.getStatistics(typeName).getEntries());
+        
+        Transaction t = new DefaultTransaction();
+        try {
+            featureStore.setTransaction(t);
+            FilterFactory ff = dataStore.getFilterFactory();
+            featureStore.removeFeatures(ff.equals(ff.property(aname("intProperty")), ff.literal(1)));
+            
+            // the transaction sees its own uncommitted changes
+            assertEquals(2, countFeatures(featureStore.getFeatures()));
+            
+            // committing drops the cached results
+            t.commit();
+            assertEquals(0, cache.getStatistics(typeName).getEntries());
+        } finally {
+            featureStore.setTransaction(Transaction.AUTO_COMMIT);
+            t.close();
+        }
+        assertEquals(2, countFeatures(featureStore.getFeatures()));
+    }
+    
+    SimpleFeature readFeature(SimpleFeatureCollection features) {
+        SimpleFeatureIterator it = features.features();
+        try {
+            SimpleFeature feature = it.next();
+            assertFalse(it.hasNext());
+            return feature;
+        } finally {
+            it.close();
+        }
+    }
+    
+    int countFeatures(SimpleFeatureCollection features) {
+        SimpleFeatureIterator it = features.features();
+        try {
+            int count = 0;
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            return count;
+        } finally {
+            it.close();
+        }
+    }
+    
+    public void testStatisticsStaleAfterBulkChanges() throws IOException {
+        File directory = File.createTempFile("statistics", "dir");
+        directory.delete();
+        StatisticsCatalog catalog = new StatisticsCatalog(directory);
+        dataStore.setStatisticsCatalog(catalog);
+        try {
+            String typeName = featureStore.getEntry().getTypeName();
+            Query query = new Query(typeName);
+            query.setHints(new Hints(Hints.STATISTICS_ESTIMATES, Boolean.TRUE));
+            FilterFactory ff = dataStore.getFilterFactory();
+            
+            catalog.refresh(featureStore);
+            assertFalse(catalog.getStatistics(typeName).isStale());
+            assertEquals(3, featureStore.getCount(query));
+            
+            // deletes run as a single statement, the statistics cannot follow them
+            featureStore.removeFeatures(ff.equals(ff.property(aname("intProperty")), ff.literal(1)));
+            assertTrue(catalog.getStatistics(typeName).isStale());
+            assertEquals(2, featureStore.getCount(query));
+            
+            // same for the updates
+            catalog.refresh(featureStore);
+            assertEquals(2, featureStore.getCount(query));
+            SimpleFeatureType t = featureStore.getSchema();
+            Point point = new GeometryFactory().createPoint(new Coordinate(-10, 0));
+            featureStore.modifyFeatures(new AttributeDescriptor[] { t.getDescriptor(aname("geometry")) },
+                new Object[] { point }, Filter.INCLUDE);
+            assertTrue(catalog.getStatistics(typeName).isStale());
+            ReferencedEnvelope bounds = featureStore.getBounds(query);
+            assertEquals(-10, bounds.getMinX(), 0d);
+            assertEquals(-10, bounds.getMaxX(), 0d);
+            
+            // and the bulk loads
+            catalog.refresh(featureStore);
+            SimpleFeatureBuilder b = new SimpleFeatureBuilder(t);
+            DefaultFeatureCollection collection = new DefaultFeatureCollection(null, t);
+            b.set(aname("intProperty"), new Integer(3));
+            b.set(aname("geometry"), new GeometryFactory().createPoint(new Coordinate(3, 3)));
+            collection.add(b.buildFeature(null));
+            featureStore.bulkLoad(collection);
+            assertTrue(catalog.getStatistics(typeName).isStale());
+            assertEquals(3, featureStore.getCount(query));
+        } finally {
+            dataStore.setStatisticsCatalog(null);
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+    
     public void testRemoveFeaturesWithInvalidFilter() throws IOException {
         SimpleFeatureType t = featureStore.getSchema();
         FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
@@ -16,8 +16,11 @@
  */
 package org.geotools.jdbc;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
+import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureStore;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
@@ -26,6 +29,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.Id;
+import org.opengis.filter.identity.FeatureId;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -78,6 +82,51 @@ public abstract class JDBCPrimaryKeyTest extends JDBCTestSupport {
         assertPrimaryKeyValues(features,4);
     }
     
+    public void testSequencedPrimaryKeyBatchInsert() throws Exception {
+        dataStore.setBatchInsertSize(2);
+        JDBCFeatureStore fs = (JDBCFeatureStore) dataStore.getFeatureSource(tname("seq"));
+        
+        addFeatures(fs, 5);
+        assertPrimaryKeyValues(fs.getFeatures(), 8);
+    }
+    
+    public void testAutoGeneratedPrimaryKeyBatchInsert() throws Exception {
+        // keys generated by the database are inserted one at a time
+        dataStore.setBatchInsertSize(2);
+        JDBCFeatureStore fs = (JDBCFeatureStore) dataStore.getFeatureSource(tname("auto"));
+        
+        addFeatures(fs, 5);
+        assertPrimaryKeyValues(fs.getFeatures(), 8);
+    }
+    
+    void addFeatures( JDBCFeatureStore fs, int count ) throws Exception {
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder( fs.getSchema() );
+        List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+        for ( int i = 0; i < count; i++ ) {
+            b.add( "batch" + i );
+            b.add( new GeometryFactory().createPoint( new Coordinate(i,i) ) );
+            list.add( b.buildFeature(null) );
+        }
+        List<FeatureId> ids = fs.addFeatures( DataUtilities.collection( list ) );
+        assertEquals( count, ids.size() );
+        
+        // the reported ids match the inserted rows
+        FilterFactory ff = dataStore.getFilterFactory();
+        for ( SimpleFeature f : list ) {
+            String fid = (String) f.getUserData().get( "fid" );
+            Id id = ff.id( Collections.singleton( ff.featureId( fid ) ) );
+            FeatureIterator it = fs.getFeatures( id ).features();
+            try {
+                assertTrue( it.hasNext() );
+                assertEquals( f.getAttribute( aname("name") ), 
+                    ((SimpleFeature) it.next()).getAttribute( aname("name") ) );
+            }
+            finally {
+                it.close();
+            }
+        }
+    }
+    
     void addFeature( SimpleFeatureType featureType, FeatureCollection features ) throws Exception {
         SimpleFeatureBuilder b = new SimpleFeatureBuilder( featureType );
         b.add("four");
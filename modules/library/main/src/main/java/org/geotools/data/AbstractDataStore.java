@@ -400,6 +400,32 @@ public abstract class AbstractDataStore implements DataStore {
         return reader;
     }
 
+    /**
+     * Describes how {@link #getFeatureReader(Query, Transaction)} runs a query: the filter
+     * returned by {@link #getUnsupportedFilter(String, Filter)} is evaluated in memory, as are
+     * the retyping and the maximum number of features.
+     * <p>
+     * Subclasses that can describe their native access, such as the index they use, should
+     * override this method and complete the plan built by the super class.
+     * </p>
+     * @param query a query whose type name is set
+     */
+    protected QueryPlan explain(Query query) throws IOException {
+        String typeName = query.getTypeName();
+        QueryPlan plan = new QueryPlan(typeName);
+        Filter filter = query.getFilter() != null ? query.getFilter() : Filter.INCLUDE;
+        Filter unsupported = getUnsupportedFilter(typeName, filter);
+        if (!unsupported.equals(filter)) {
+            // the subclass handles the filter, or part of it 
+            plan.setNativeFilter(filter);
+        }
+        plan.setResidualFilter(unsupported);
+        plan.setPropertyNames(query.getPropertyNames());
+        plan.setRetypeInMemory(query.getPropertyNames() != Query.ALL_NAMES);
+        plan.setLimitInMemory(query.getMaxFeatures() != Query.DEFAULT_MAX);
+        return plan;
+    }
+
     /**
      * GR: this method is called from inside getFeatureReader(Query ,Transaction )
      * to allow subclasses return an optimized  FeatureReader<SimpleFeatureType, SimpleFeature> wich supports the
@@ -32,6 +32,7 @@ import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.store.EmptyFeatureCollection;
 import org.geotools.feature.SchemaException;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
@@ -74,7 +75,7 @@ import com.vividsolutions.jts.geom.Envelope;
  * @author Jody Garnett, Refractions Research Inc
  * @source $URL$
  */
-public abstract class AbstractFeatureSource implements SimpleFeatureSource {
+public abstract class AbstractFeatureSource implements SimpleFeatureSource, QueryPlanner {
     /** The logger for the filter module. */
     private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data");
     
@@ -202,7 +203,8 @@ public abstract class AbstractFeatureSource implements SimpleFeatureSource {
         }
         
         final QueryCapabilities queryCapabilities = getQueryCapabilities();
-        if(!queryCapabilities.supportsSorting(query.getSortBy())){
+        if(!queryCapabilities.supportsSorting(query.getSortBy())
+                && !SortedFeatureReader.canSort(schema, query.getSortBy())){
             throw new DataSourceException("DataStore cannot provide the requested sort order");
         }
         
@@ -308,6 +310,57 @@ public abstract class AbstractFeatureSource implements SimpleFeatureSource {
             return ((AbstractDataStore) dataStore).getBounds( namedQuery( query ) );
         }
     }
+
+    /**
+     * Describes how the features of a query are read. The native part of the plan is provided
+     * by the store when it is an {@link AbstractDataStore}, the sorting, paging and
+     * reprojection steps are the ones performed by {@link DefaultFeatureResults}.
+     */
+    public QueryPlan explain(Query query) throws IOException {
+        DefaultQuery named = new DefaultQuery(query);
+        named.setTypeName(getSchema().getTypeName());
+        
+        DataStore dataStore = getDataStore();
+        QueryPlan plan;
+        if (dataStore instanceof AbstractDataStore) {
+            plan = ((AbstractDataStore) dataStore).explain(named);
+        } else {
+            // all we know is that the store gets the whole query
+            plan = new QueryPlan(named.getTypeName());
+            plan.setNativeFilter(named.getFilter());
+            plan.setPropertyNames(named.getPropertyNames());
+        }
+        
+        QueryCapabilities caps = getQueryCapabilities();
+        boolean sort = !SortedFeatureReader.isNaturalOrder(named.getSortBy())
+                && !caps.supportsSorting(named.getSortBy());
+        int offset = named.getStartIndex() != null ? named.getStartIndex() : 0;
+        plan.setSortBy(named.getSortBy());
+        plan.setSortInMemory(sort);
+        plan.setOffsetInMemory(offset > 0 && (sort || !caps.isOffsetSupported()));
+        if (named.getMaxFeatures() != Query.DEFAULT_MAX) {
+            plan.setLimitInMemory(true);
+        }
+        CoordinateReferenceSystem source = getSchema().getCoordinateReferenceSystem();
+        CoordinateReferenceSystem target = named.getCoordinateSystemReproject();
+        if (target != null && source != null && !CRS.equalsIgnoreMetadata(source, target)) {
+            plan.setReprojection(source, target, true);
+        }
+        
+        int count = getCount(named);
+        if (count >= 0) {
+            plan.setEstimatedRows(Math.max(0, count - offset));
+            if (plan.getEstimatedCost() == QueryPlan.UNKNOWN
+                    && plan.getResidualFilter() == Filter.INCLUDE) {
+                plan.setEstimatedCost(count);
+            }
+        }
+        if (sort && plan.getEstimatedCost() != QueryPlan.UNKNOWN && count > 1) {
+            plan.setEstimatedCost(plan.getEstimatedCost() + count * Math.log(count) / Math.log(2));
+        }
+        return plan;
+    }
+    
     /**
      * Ensure query modified with typeName.
      * <p>
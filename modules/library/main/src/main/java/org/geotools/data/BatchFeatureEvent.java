@@ -16,7 +16,10 @@
  */
 package org.geotools.data;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.filter.identity.FeatureIdImpl;
@@ -24,10 +27,10 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.util.WeakHashSet;
 import org.opengis.feature.Feature;
 import org.opengis.feature.type.FeatureType;
-import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.Id;
+import org.opengis.filter.Or;
 import org.opengis.filter.identity.Identifier;
 
 /**
@@ -105,13 +108,25 @@ public class BatchFeatureEvent extends FeatureEvent {
         if (filter == Filter.EXCLUDE) {
             // we are just starting out
             filter = change.getFilter();
-        } else if (filter instanceof And) {
-            And and = (And) filter;
-            List<Filter> children = and.getChildren();
-            children.add(change.getFilter());
+        } else if (filter instanceof Id && change.getFilter() instanceof Id) {
+            // the features of both changes
+            Set<Identifier> ids = new LinkedHashSet<Identifier>();
+            ids.addAll(((Id) filter).getIdentifiers());
+            ids.addAll(((Id) change.getFilter()).getIdentifiers());
+            FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+            filter = ff.id(ids);
         } else {
+            // a feature matching any of the changes has been modified, the filters are
+            // copied rather than modified as they might be shared with the original events
+            List<Filter> children = new ArrayList<Filter>();
+            if (filter instanceof Or) {
+                children.addAll(((Or) filter).getChildren());
+            } else {
+                children.add(filter);
+            }
+            children.add(change.getFilter());
             FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
-            filter = ff.and(filter, change.getFilter());
+            filter = ff.or(children);
         }
     }
 
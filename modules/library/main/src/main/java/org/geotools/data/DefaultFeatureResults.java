@@ -27,18 +27,24 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.data.store.DataFeatureCollection;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.IllegalAttributeException;
 import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.feature.type.GeometryDescriptorImpl;
+import org.geotools.feature.visitor.FeatureCalc;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
+import org.geotools.util.NullProgressListener;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
+import org.opengis.util.ProgressListener;
 
 
 /**
@@ -208,10 +214,52 @@ public class DefaultFeatureResults extends DataFeatureCollection {
      * @throws IOException If results could not be obtained
      */
     public  FeatureReader<SimpleFeatureType, SimpleFeature> reader() throws IOException {
+        return reader(query);
+    }
+    
+    /**
+     * Retrieve a FeatureReader for a variation of this Query (e.g., different hints)
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> reader(Query query) throws IOException {
         FeatureReader<SimpleFeatureType, SimpleFeature> reader;
-        reader = ((DataStore) featureSource.getDataStore()).getFeatureReader(query,
-                getTransaction());
-        
+        boolean sort = !SortedFeatureReader.isNaturalOrder(query.getSortBy())
+                && !featureSource.getQueryCapabilities().supportsSorting(query.getSortBy());
+        int offset = query.getStartIndex() != null ? query.getStartIndex() : 0;
+        boolean skip = offset > 0
+                && (sort || !featureSource.getQueryCapabilities().isOffsetSupported());
+        if (sort) {
+            // the store cannot sort, get all the features and sort them ourselves
+            reader = ((DataStore) featureSource.getDataStore()).getFeatureReader(
+                    SortedFeatureReader.getSourceQuery(query), getTransaction());
+            reader = new SortedFeatureReader(reader, query);
+        } else if (skip) {
+            // the limit can only be applied after skipping
+            DefaultQuery source = new DefaultQuery(query);
+            source.setStartIndex(null);
+            source.setMaxFeatures(Query.DEFAULT_MAX);
+            reader = ((DataStore) featureSource.getDataStore()).getFeatureReader(source,
+                    getTransaction());
+        } else {
+            reader = ((DataStore) featureSource.getDataStore()).getFeatureReader(query,
+                    getTransaction());
+        }
+
+        // the store cannot skip, the features are returned in a stable order though
+        if (skip) {
+            for (int i = 0; i < offset && reader.hasNext(); i++) {
+                reader.next();
+            }
+        }
+
+        if (sort && query.getPropertyNames() != Query.ALL_NAMES) {
+            // remove the sort attributes that were not requested
+            SimpleFeatureType target = SimpleFeatureTypeBuilder.retype(reader.getFeatureType(),
+                    query.getPropertyNames());
+            if (!target.equals(reader.getFeatureType())) {
+                reader = new ReTypeFeatureReader(reader, target, false);
+            }
+        }
+
         int maxFeatures = query.getMaxFeatures();
         if (maxFeatures != Integer.MAX_VALUE) {
             reader = new MaxFeatureReader<SimpleFeatureType, SimpleFeature>(reader, maxFeatures);
@@ -237,6 +285,7 @@ public class DefaultFeatureResults extends DataFeatureCollection {
         
         DefaultQuery q = new DefaultQuery(query);
         q.setPropertyNames(attributes);
+        q.setHints(reuseHints(query));
          FeatureReader<SimpleFeatureType, SimpleFeature> reader = ((DataStore) featureSource
                 .getDataStore()).getFeatureReader(q, getTransaction());
         int maxFeatures = query.getMaxFeatures();
@@ -317,6 +366,11 @@ public class DefaultFeatureResults extends DataFeatureCollection {
         count = featureSource.getCount(query);
 
         if (count != -1) {
+            // remove the skipped features if the store did not
+            if (query.getStartIndex() != null
+                    && !featureSource.getQueryCapabilities().isOffsetSupported()) {
+                count = Math.max(0, count - query.getStartIndex());
+            }
             // optimization worked, return maxFeatures if count is
             // greater.
             int maxFeatures = query.getMaxFeatures();
@@ -327,7 +381,14 @@ public class DefaultFeatureResults extends DataFeatureCollection {
         try {
             count = 0;
 
-            FeatureReader<SimpleFeatureType, SimpleFeature> reader = reader();
+            // the order does not matter when counting
+            DefaultQuery q = new DefaultQuery(query);
+            q.setHints(reuseHints(query));
+            if (!SortedFeatureReader.isNaturalOrder(q.getSortBy())
+                    && !featureSource.getQueryCapabilities().supportsSorting(q.getSortBy())) {
+                q.setSortBy(null);
+            }
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = reader(q);
             try {
             	for (; reader.hasNext(); count++) {
             		reader.next();
@@ -342,6 +403,56 @@ public class DefaultFeatureResults extends DataFeatureCollection {
         }
     }
 
+    /**
+     * Aggregate visitors do not hold onto the features they are given, so the reader
+     * is asked to recycle them
+     */
+    public void accepts(FeatureVisitor visitor, ProgressListener progress) {
+        if (!(visitor instanceof FeatureCalc)) {
+            super.accepts(visitor, progress);
+            return;
+        }
+
+        if (progress == null) progress = new NullProgressListener();
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = null;
+        try {
+            float size = size();
+            float position = 0;
+            progress.started();
+            DefaultQuery q = new DefaultQuery(query);
+            q.setHints(reuseHints(query));
+            reader = reader(q);
+            for (; !progress.isCanceled() && reader.hasNext(); progress.progress(100.0f * position++ / size)) {
+                try {
+                    visitor.visit(reader.next());
+                } catch (Exception erp) {
+                    progress.exceptionOccurred(erp);
+                }
+            }
+        } catch (IOException e) {
+            progress.exceptionOccurred(e);
+        } finally {
+            progress.complete();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Error closing the reader", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the query hints adding {@link Hints#FEATURE_REUSE}, for the loops that do not
+     * retain the features
+     */
+    static Hints reuseHints(Query query) {
+        Hints hints = new Hints(query.getHints());
+        hints.put(Hints.FEATURE_REUSE, Boolean.TRUE);
+        return hints;
+    }
+
     public SimpleFeatureCollection collection() throws IOException {
         try {
             SimpleFeatureCollection collection = FeatureCollections.newCollection();
@@ -16,14 +16,17 @@
  */
 package org.geotools.data;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.geometry.BoundingBox;
@@ -32,7 +35,24 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.index.SpatialIndex;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
 
+/**
+ * The changes made to a feature type during a transaction, the added features, and the modified
+ * and removed ones by fid.
+ * <p>
+ * Added and modified features are kept in a spatial index, by fid, so that readers with a spatial
+ * filter only go over the changes in the area of interest. Once more than
+ * {@link Hints#MAX_MEMORY_DIFF} features have been changed the further ones are moved to a
+ * temporary file, and read back on access.
+ * </p>
+ *
+ * @source $URL$
+ */
 public class Diff{
+	/**
+	 * Default number of changed features kept in memory
+	 */
+	public static final int DEFAULT_MAX_MEMORY_FEATURES = 1000000;
+	
 	private final Map modifiedFeatures;
 	private final Map addedFeatures;
 	
@@ -80,8 +100,9 @@ public class Diff{
 	Object mutex;
 	
 	public Diff( ){
-		modifiedFeatures=new ConcurrentHashMap();
-		addedFeatures=new ConcurrentHashMap();
+		int max = getMaxMemoryFeatures();
+		modifiedFeatures=new SpillingFeatureMap(max);
+		addedFeatures=new SpillingFeatureMap(max);
 		modified2=Collections.unmodifiableMap(modifiedFeatures);
 		added=Collections.unmodifiableMap(addedFeatures);
 		spatialIndex=new Quadtree();
@@ -103,9 +124,25 @@ public class Diff{
 		}
 	}
 
+	/**
+	 * The maximum number of changed features kept in memory, from {@link Hints#MAX_MEMORY_DIFF}
+	 */
+	static int getMaxMemoryFeatures() {
+		Object max = GeoTools.getDefaultHints().get(Hints.MAX_MEMORY_DIFF);
+		if (max instanceof Number) {
+			return Math.max(1, ((Number) max).intValue());
+		}
+		return DEFAULT_MAX_MEMORY_FEATURES;
+	}
+	
 	public Diff(Diff other){
-		modifiedFeatures=Collections.synchronizedMap(new HashMap(other.modifiedFeatures));
-		addedFeatures=Collections.synchronizedMap(new HashMap(other.addedFeatures));
+		int max = getMaxMemoryFeatures();
+		synchronized (other.mutex) {
+			modifiedFeatures=new SpillingFeatureMap(max);
+			modifiedFeatures.putAll(other.modifiedFeatures);
+			addedFeatures=new SpillingFeatureMap(max);
+			addedFeatures.putAll(other.addedFeatures);
+		}
 		modified2=Collections.unmodifiableMap(modifiedFeatures);
 		added=Collections.unmodifiableMap(addedFeatures);
 		spatialIndex=copySTRtreeFrom(other);
@@ -123,25 +160,42 @@ public class Diff{
             	old=(SimpleFeature) modifiedFeatures.get(fid);
                 modifiedFeatures.put(fid, f);
             }
-            if(old != null) {
-            	spatialIndex.remove(ReferencedEnvelope.reference(old.getBounds()), old);
-            }
-            addToSpatialIndex(f);
+            removeFromSpatialIndex(fid, old);
+            addToSpatialIndex(fid, f);
 		}
 	}
 	
 	public void add(String fid, SimpleFeature f) {
 		synchronized (mutex) {
 			addedFeatures.put(fid, f);
-			addToSpatialIndex(f);
+			addToSpatialIndex(fid, f);
 		}
 	}
 	
-	protected void addToSpatialIndex(SimpleFeature f) {
-		if (f.getDefaultGeometry() != null) {
+	/**
+	 * Indexes the feature by fid, the feature itself is not kept by the index so that it can be
+	 * moved to disk
+	 */
+	protected void addToSpatialIndex(String fid, SimpleFeature f) {
+		if (f != null && f != TransactionStateDiff.NULL && f.getDefaultGeometry() != null) {
 			BoundingBox bounds = f.getBounds();
 			if( !bounds.isEmpty() )
-				spatialIndex.insert(ReferencedEnvelope.reference(bounds), f);
+				spatialIndex.insert(ReferencedEnvelope.reference(bounds), fid);
+		}
+	}
+	
+	/**
+	 * @deprecated use {@link #addToSpatialIndex(String, SimpleFeature)}
+	 */
+	protected void addToSpatialIndex(SimpleFeature f) {
+		addToSpatialIndex(f.getID(), f);
+	}
+	
+	void removeFromSpatialIndex(String fid, SimpleFeature old) {
+		if (old != null && old != TransactionStateDiff.NULL && old.getDefaultGeometry() != null) {
+			BoundingBox bounds = old.getBounds();
+			if( !bounds.isEmpty() )
+				spatialIndex.remove(ReferencedEnvelope.reference(bounds), fid);
 		}
 	}
 	
@@ -156,15 +210,32 @@ public class Diff{
 				old = (SimpleFeature) modifiedFeatures.get(fid);
 				modifiedFeatures.put(fid, TransactionStateDiff.NULL);
 			}
-			if( old != null ) {
-				spatialIndex.remove(ReferencedEnvelope.reference(old.getBounds()), old);
-			}			
+			removeFromSpatialIndex(fid, old);
 		}
 	}
 	
+	/**
+	 * Returns the added and modified features whose bounds might intersect the envelope
+	 */
 	public List queryIndex(Envelope env) {
 		synchronized (mutex) {
-			return spatialIndex.query(env);
+			List result = new ArrayList();
+			if (env == null || env.isNull()) {
+				return result;
+			}
+			// the index is a quadtree, it returns false positives and possibly the same fid
+			// more than once
+			Set<String> fids = new LinkedHashSet<String>(spatialIndex.query(env));
+			for (String fid : fids) {
+				Object f = addedFeatures.get(fid);
+				if (f == null) {
+					f = modifiedFeatures.get(fid);
+				}
+				if (f != null && f != TransactionStateDiff.NULL) {
+					result.add(f);
+				}
+			}
+			return result;
 		}
 	}
 	
@@ -172,20 +243,17 @@ public class Diff{
 		Quadtree tree = new Quadtree();
 		
 		synchronized (diff) {
-			Iterator i = diff.added.entrySet().iterator();
-			while (i.hasNext()) {
-				Entry e = (Map.Entry) i.next();
-				SimpleFeature f = (SimpleFeature) e.getValue();
-				if (!diff.modifiedFeatures.containsKey(f.getID())) {
-					tree.insert(ReferencedEnvelope.reference(f.getBounds()), f);
+			for (Map map : new Map[] { diff.added, diff.modified2 }) {
+				Iterator i = map.entrySet().iterator();
+				while (i.hasNext()) {
+					Entry e = (Map.Entry) i.next();
+					SimpleFeature f = (SimpleFeature) e.getValue();
+					if (f != TransactionStateDiff.NULL && f.getDefaultGeometry() != null
+							&& !f.getBounds().isEmpty()) {
+						tree.insert(ReferencedEnvelope.reference(f.getBounds()), e.getKey());
+					}
 				}
 			}
-			Iterator j = diff.modified2.entrySet().iterator();
-			while( j.hasNext() ){
-				Entry e = (Map.Entry) j.next();
-				SimpleFeature f = (SimpleFeature) e.getValue();
-				tree.insert(ReferencedEnvelope.reference(f.getBounds()), f);
-			}
 		}
 		
 		return tree;
@@ -22,11 +22,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.geotools.feature.IllegalAttributeException;
 import org.geotools.filter.AttributeExpression;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
 import org.opengis.feature.Feature;
 import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.PropertyDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.Id;
 import org.opengis.filter.identity.Identifier;
@@ -53,6 +58,8 @@ import com.vividsolutions.jts.geom.Geometry;
  *         http://svn.geotools.org/geotools/branches/2.2.x/module/main/src/org/geotools/data/DiffFeatureReader.java $
  */
 public class DiffFeatureReader<T extends FeatureType, F extends Feature> implements  FeatureReader<T, F> {
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data");
+
     FeatureReader<T, F> reader;
     Diff diff;
 
@@ -68,6 +75,7 @@ public class DiffFeatureReader<T extends FeatureType, F extends Feature> impleme
 	
 	private boolean indexedGeometryFilter = false;
 	private boolean fidFilter = false;
+	private Envelope indexBounds;
 	
     /**
      * This constructor grabs a "copy" of the current diff.
@@ -103,6 +111,9 @@ public class DiffFeatureReader<T extends FeatureType, F extends Feature> impleme
         	fidFilter=true;
         }else if( isSubsetOfBboxFilter(filter) ){
         	indexedGeometryFilter=true;
+        }else{
+        	indexBounds = getIndexBounds(filter);
+        	indexedGeometryFilter = indexBounds != null;
         }
         
         synchronized (diff) {
@@ -252,11 +263,45 @@ public class DiffFeatureReader<T extends FeatureType, F extends Feature> impleme
     
     protected List getIndexedFeatures() {
         // TODO: check geom is default geom.
-    	Envelope env = null;
-    	env = extractBboxForSpatialIndexQuery((BinarySpatialOperator)filter);
+    	Envelope env = indexBounds;
+    	if (env == null) {
+    		env = extractBboxForSpatialIndexQuery((BinarySpatialOperator)filter);
+    	}
         return diff.queryIndex(env);
     }
     
+    /**
+     * Returns the area the filter limits the features to, or null if the filter is not bounded
+     * and the whole diff has to be scanned. Only used when the features have a single geometry,
+     * as the index is built on the bounds of all of them.
+     */
+    Envelope getIndexBounds(Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE || reader == null) {
+            return null;
+        }
+        int geometries = 0;
+        for (PropertyDescriptor pd : reader.getFeatureType().getDescriptors()) {
+            if (pd instanceof GeometryDescriptor) {
+                geometries++;
+            }
+        }
+        if (geometries != 1) {
+            return null;
+        }
+        Envelope envelope = null;
+        try {
+            envelope = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+        } catch (RuntimeException e) {
+            // some filters are not handled by the visitor, fall back on a full scan
+            LOGGER.log(Level.FINEST, "Could not extract the bounds of " + filter, e);
+        }
+        if (envelope == null || Double.isInfinite(envelope.getWidth())
+                || Double.isInfinite(envelope.getHeight()) || Double.isNaN(envelope.getWidth())) {
+            return null;
+        }
+        return envelope;
+    }
+    
     protected Envelope extractBboxForSpatialIndexQuery(BinarySpatialOperator filter){
     	org.opengis.filter.expression.Expression leftGeom = filter.getExpression1();
     	org.opengis.filter.expression.Expression rightGeom = filter.getExpression2();
@@ -139,6 +139,15 @@ public class FIDFeatureReader implements  FeatureReader<SimpleFeatureType, Simpl
     public SimpleFeatureType getFeatureType() {
         return schema;
     }
+    
+    /**
+     * Enables recycling of the returned feature object, see 
+     * {@link org.geotools.factory.Hints#FEATURE_REUSE}
+     * @param featureReuse
+     */
+    public void setFeatureReuse(boolean featureReuse) {
+        builder.setFeatureReuse(featureReuse);
+    }
 
     public boolean hasNext() throws IOException {
         if(hasNextFlag == null) {
@@ -17,18 +17,29 @@
 package org.geotools.data;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.event.EventListenerList;
 
+import org.geotools.data.FeatureEvent.Type;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.Feature;
 import org.opengis.feature.type.FeatureType;
+import org.opengis.filter.Filter;
 
 /**
  * This class is used by DataStore implementations to provide FeatureListener
@@ -40,12 +51,102 @@ import org.opengis.feature.type.FeatureType;
  * </p>
  * This class has been updated to store listeners using weak references
  * in order to cut down on memory leaks.
+ * <p>
+ * Events are delivered on the thread firing them, unless an executor is set with
+ * {@link #setExecutor(ExecutorService)} (or {@link Hints#ASYNC_FEATURE_EVENTS} is set among the
+ * default hints when the manager is created). Each listener then has a bounded queue of pending
+ * events delivered in order on the executor. Consecutive added, changed or removed events of a
+ * same transaction waiting in the queue are coalesced into a {@link BatchFeatureEvent} covering
+ * their merged bounds, and the threads firing events wait when a queue is full. The delivery
+ * latency of each listener is tracked in its {@link DeliveryStatistics}.
+ * </p>
  *
  * @author Jody Garnett, Refractions Research
  * @source $URL$
  */
 public class FeatureListenerManager {
 	private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data");	
+
+    /**
+     * The default number of pending events a listener queue holds before the firing thread
+     * waits for the listener to catch up
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * The maximum number of events coalesced in a single batch, keeps the batch filter of a bulk
+     * import from growing without bounds
+     */
+    static final int MAX_COALESCED = 1000;
+
+    /**
+     * Executor used when {@link Hints#ASYNC_FEATURE_EVENTS} is set but no
+     * {@link Hints#EXECUTOR_SERVICE} is provided
+     */
+    static ExecutorService defaultExecutor;
+
+    static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                int count;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FeatureListenerManager-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Executor delivering the events, or null to deliver them on the thread firing them
+     */
+    ExecutorService executor;
+
+    int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * The pending events of each listener when delivering asynchronously
+     */
+    Map<FeatureListener, ListenerQueue> queues = new WeakHashMap<FeatureListener, ListenerQueue>();
+
+    public FeatureListenerManager() {
+        Hints hints = GeoTools.getDefaultHints();
+        if (Boolean.TRUE.equals(hints.get(Hints.ASYNC_FEATURE_EVENTS))) {
+            ExecutorService executor = (ExecutorService) hints.get(Hints.EXECUTOR_SERVICE);
+            setExecutor(executor != null ? executor : getDefaultExecutor());
+        }
+    }
+
+    /**
+     * Sets the executor the events are delivered on, or null to deliver them on the thread
+     * firing them (the default)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the number of pending events each listener queue holds before the threads firing
+     * events wait for the listener to catch up. Coalesced events count as one.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: "
+                    + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
     /**
      * Hold on to provided FeatureListener using a weak reference.
      * <p>
@@ -270,9 +371,10 @@ public class FeatureListenerManager {
                 FeatureSource featureSource = (FeatureSource) entry.getKey();
                 FeatureListener[] listeners = (FeatureListener[]) entry.getValue();
                 event.setFeatureSource( featureSource );
+                FeatureEvent sourceEvent = executor != null ? copy( event ) : event;
                 for (FeatureListener listener : listeners ){
                 	try {
-                		listener.changed(event);
+                		dispatch(listener, sourceEvent, transaction);
                 	}
                 	catch( Throwable t ){
                 		LOGGER.log( Level.FINE, "Could not deliver "+event+" to "+listener+":"+t.getMessage(), t );
@@ -289,9 +391,10 @@ public class FeatureListenerManager {
                 FeatureSource featureSource = (FeatureSource) entry.getKey();
                 FeatureListener[] listeners = (FeatureListener[]) entry.getValue();
                 event.setFeatureSource( featureSource );
+                FeatureEvent sourceEvent = executor != null ? copy( event ) : event;
                 for (FeatureListener listener : listeners ){
                 	try {
-                		listener.changed(event);
+                		dispatch(listener, sourceEvent, transaction);
                 	}
                 	catch( Throwable t ){
                 		LOGGER.log( Level.FINE, "Could not deliver "+event+" to "+listener+":"+t.getMessage(), t );
@@ -405,7 +508,7 @@ public class FeatureListenerManager {
             event = new FeatureEvent(featureSource, type, bounds);
 
             for (int l = 0; l < listeners.length; l++) {
-                listeners[l].changed(event);
+                dispatch(listeners[l], event, transaction);
             }
         }
     }
@@ -429,7 +532,7 @@ public class FeatureListenerManager {
             event = new FeatureEvent(featureSource,type, bounds);
 
             for (int l = 0; l < listeners.length; l++) {
-                listeners[l].changed(event);
+                dispatch(listeners[l], event, transaction);
             }
         }
     }
@@ -468,4 +571,343 @@ public class FeatureListenerManager {
             fireEvent(typeName, transaction, FeatureEvent.FEATURES_REMOVED, bounds );
         }
     }
+
+    /**
+     * Delivers the event to the listener, right away or through its queue when an executor is
+     * set
+     */
+    void dispatch(FeatureListener listener, FeatureEvent event, Transaction transaction) {
+        if (executor == null) {
+            listener.changed(event);
+        } else {
+            queue(listener).offer(event, transaction);
+        }
+    }
+
+    ListenerQueue queue(FeatureListener listener) {
+        synchronized (queues) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue == null) {
+                queue = new ListenerQueue(listener);
+                queues.put(listener, queue);
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * Copies an event shared among several feature sources, the copy is delivered later
+     */
+    static FeatureEvent copy(FeatureEvent event) {
+        FeatureEvent copy;
+        if (event instanceof BatchFeatureEvent) {
+            BatchFeatureEvent batch = new BatchFeatureEvent(event.getFeatureSource(),
+                    event.getBounds(), event.getFilter());
+            batch.setType(event.getType());
+            batch.fids = ((BatchFeatureEvent) event).fids;
+            copy = batch;
+        } else {
+            copy = new FeatureEvent(event.getSource(), event.getType(), event.getBounds(),
+                    event.getFilter());
+        }
+        copy.setFeatureSource(event.getFeatureSource());
+        return copy;
+    }
+
+    /**
+     * Returns the delivery statistics of a listener, or null if no event has been queued for
+     * it
+     */
+    public DeliveryStatistics getStatistics(FeatureListener listener) {
+        ListenerQueue queue;
+        synchronized (queues) {
+            queue = queues.get(listener);
+        }
+        return queue == null ? null : queue.statistics();
+    }
+
+    /**
+     * Waits for the pending events to be delivered
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return true if all the events have been delivered, false if the timeout expired first
+     */
+    public boolean flush(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        List<ListenerQueue> pending;
+        synchronized (queues) {
+            pending = new ArrayList<ListenerQueue>(queues.values());
+        }
+        for (ListenerQueue queue : pending) {
+            if (!queue.await(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An event waiting for delivery, possibly coalesced with the ones fired after it
+     */
+    static class PendingEvent {
+        FeatureEvent event;
+
+        Transaction transaction;
+
+        int count = 1;
+
+        long fired = System.nanoTime();
+
+        PendingEvent(FeatureEvent event, Transaction transaction) {
+            this.event = event;
+            this.transaction = transaction;
+        }
+
+        boolean accepts(FeatureEvent next, Transaction transaction) {
+            return count < MAX_COALESCED && this.transaction == transaction
+                    && event.getType() == next.getType()
+                    && event.getFeatureSource() == next.getFeatureSource()
+                    && next.getType() != Type.COMMIT && next.getType() != Type.ROLLBACK;
+        }
+
+        void merge(FeatureEvent next) {
+            if (count == 1) {
+                BatchFeatureEvent batch = new BatchFeatureEvent(event.getFeatureSource());
+                batch.setType(event.getType());
+                add(batch, event);
+                event = batch;
+            }
+            add((BatchFeatureEvent) event, next);
+            count++;
+        }
+
+        static void add(BatchFeatureEvent batch, FeatureEvent change) {
+            if (change.getFilter() != null && change.getBounds() != null
+                    && batch.filter != Filter.INCLUDE) {
+                batch.add(change);
+                return;
+            }
+            // events fired through the methods of this class only tell the bounds of the
+            // change, the batch still merges them but cannot tell which features changed
+            if (change.getBounds() == null || batch.bounds == ReferencedEnvelope.EVERYTHING) {
+                batch.bounds = ReferencedEnvelope.EVERYTHING;
+            } else {
+                batch.bounds.expandToInclude(change.getBounds());
+            }
+            batch.filter = Filter.INCLUDE;
+        }
+    }
+
+    /**
+     * The pending events of a listener, drained in order on the executor
+     */
+    class ListenerQueue implements Runnable {
+        WeakReference<FeatureListener> reference;
+
+        LinkedList<PendingEvent> pending = new LinkedList<PendingEvent>();
+
+        boolean scheduled;
+
+        /**
+         * The thread delivering the events, never made to wait on its own queue
+         */
+        Thread delivering;
+
+        long fired;
+
+        long delivered;
+
+        long totalLatency;
+
+        long maxLatency;
+
+        long totalTime;
+
+        long maxTime;
+
+        ListenerQueue(FeatureListener listener) {
+            reference = new WeakReference<FeatureListener>(listener);
+        }
+
+        void offer(FeatureEvent event, Transaction transaction) {
+            boolean inline = false;
+            synchronized (this) {
+                fired++;
+                if (!pending.isEmpty() && pending.getLast().accepts(event, transaction)) {
+                    pending.getLast().merge(event);
+                    return;
+                }
+                while (pending.size() >= queueCapacity && scheduled
+                        && delivering != Thread.currentThread()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                pending.add(new PendingEvent(event, transaction));
+                if (!scheduled) {
+                    scheduled = true;
+                    try {
+                        executor.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        LOGGER.log(Level.FINE, "Executor rejected the delivery of " + event
+                                + ", delivering on the current thread", e);
+                        inline = true;
+                    }
+                }
+            }
+            if (inline) {
+                run();
+            }
+        }
+
+        public void run() {
+            synchronized (this) {
+                delivering = Thread.currentThread();
+            }
+            while (true) {
+                PendingEvent next;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        scheduled = false;
+                        delivering = null;
+                        notifyAll();
+                        return;
+                    }
+                    next = pending.removeFirst();
+                    notifyAll();
+                }
+                deliver(next);
+            }
+        }
+
+        void deliver(PendingEvent next) {
+            FeatureListener listener = reference.get();
+            if (listener == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                listener.changed(next.event);
+            } catch (Throwable t) {
+                LOGGER.log(Level.FINE, "Could not deliver " + next.event + " to " + listener
+                        + ":" + t.getMessage(), t);
+            }
+            long end = System.nanoTime();
+            synchronized (this) {
+                delivered++;
+                totalLatency += end - next.fired;
+                maxLatency = Math.max(maxLatency, end - next.fired);
+                totalTime += end - start;
+                maxTime = Math.max(maxTime, end - start);
+            }
+        }
+
+        synchronized boolean await(long deadline) throws InterruptedException {
+            while (scheduled || !pending.isEmpty()) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                wait(wait);
+            }
+            return true;
+        }
+
+        synchronized DeliveryStatistics statistics() {
+            return new DeliveryStatistics(fired, delivered, pending.size(), totalLatency,
+                    maxLatency, totalTime, maxTime);
+        }
+    }
+
+    /**
+     * A snapshot of the asynchronous deliveries to a listener. The latency of an event runs from
+     * the time it is fired (the first one fired for a coalesced event) to the end of its
+     * delivery, the time only covers the listener handling it.
+     */
+    public static class DeliveryStatistics {
+        long fired;
+
+        long delivered;
+
+        int pending;
+
+        long totalLatency;
+
+        long maxLatency;
+
+        long totalTime;
+
+        long maxTime;
+
+        DeliveryStatistics(long fired, long delivered, int pending, long totalLatency,
+                long maxLatency, long totalTime, long maxTime) {
+            this.fired = fired;
+            this.delivered = delivered;
+            this.pending = pending;
+            this.totalLatency = totalLatency;
+            this.maxLatency = maxLatency;
+            this.totalTime = totalTime;
+            this.maxTime = maxTime;
+        }
+
+        /**
+         * The number of events fired for the listener
+         */
+        public long getFiredCount() {
+            return fired;
+        }
+
+        /**
+         * The number of events delivered to the listener, lower than the fired ones when events
+         * have been coalesced
+         */
+        public long getDeliveredCount() {
+            return delivered;
+        }
+
+        /**
+         * The number of events waiting for delivery
+         */
+        public int getPendingCount() {
+            return pending;
+        }
+
+        /**
+         * The average latency of the delivered events, in milliseconds
+         */
+        public double getAverageLatency() {
+            return delivered == 0 ? 0 : totalLatency / 1e6 / delivered;
+        }
+
+        /**
+         * The maximum latency of the delivered events, in milliseconds
+         */
+        public double getMaxLatency() {
+            return maxLatency / 1e6;
+        }
+
+        /**
+         * The average time the listener took to handle an event, in milliseconds
+         */
+        public double getAverageTime() {
+            return delivered == 0 ? 0 : totalTime / 1e6 / delivered;
+        }
+
+        /**
+         * The maximum time the listener took to handle an event, in milliseconds
+         */
+        public double getMaxTime() {
+            return maxTime / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return "DeliveryStatistics[fired=" + fired + ", delivered=" + delivered
+                    + ", pending=" + pending + ", avgLatency=" + getAverageLatency()
+                    + "ms, maxLatency=" + getMaxLatency() + "ms]";
+        }
+    }
 }
@@ -0,0 +1,465 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.collection.OffHeapFeatureCodec;
+import org.geotools.factory.Hints;
+import org.geotools.feature.IllegalAttributeException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * A FeatureReader sorting the features of the delegate reader, used for the stores that cannot
+ * sort natively.
+ * <p>
+ * The features are sorted in memory in runs of at most {@link Hints#MAX_MEMORY_SORT} features
+ * ({@link #DEFAULT_MAX_FEATURES} if the hint is not set). If the delegate returns more features
+ * than that the runs are written to temporary files and merged back while reading.
+ * </p>
+ * <p>
+ * Features comparing equal are returned in the order the delegate provided them, and
+ * {@link SortBy#NATURAL_ORDER} is taken to be the delegate order, so that paging over the
+ * sorted results is stable. The delegate reader must not recycle its features, see
+ * {@link #getSourceQuery(Query)}.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class SortedFeatureReader implements
+        DelegatingFeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data");
+
+    /**
+     * The default number of features sorted in memory
+     */
+    public static final int DEFAULT_MAX_FEATURES = 1000000;
+
+    final FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+    /** The delegate is closed as soon as it has been read, some readers drop their type then */
+    final SimpleFeatureType featureType;
+
+    final Comparator<Entry> comparator;
+
+    final int maxFeatures;
+
+    boolean delegateClosed;
+
+    /** The sorted features, when all of them fit in memory */
+    List<Entry> entries;
+
+    int position;
+
+    /** The runs spilled to disk */
+    List<Run> runs;
+
+    /** The runs being merged, ordered by their current feature */
+    PriorityQueue<Run> queue;
+
+    OffHeapFeatureCodec codec;
+
+    /**
+     * Sorts the delegate features according to the query sort by, reading the maximum number of
+     * features kept in memory from the query hints
+     */
+    public SortedFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            Query query) {
+        this(delegate, query.getSortBy(), getMaxFeatures(query));
+    }
+
+    /**
+     * Sorts the delegate features keeping at most <code>maxFeatures</code> in memory
+     */
+    public SortedFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            SortBy[] sortBy, int maxFeatures) {
+        if (!canSort(delegate.getFeatureType(), sortBy)) {
+            throw new IllegalArgumentException("The features of type "
+                    + delegate.getFeatureType().getTypeName() + " cannot be sorted by "
+                    + Arrays.asList(sortBy));
+        }
+        if (maxFeatures < 1) {
+            throw new IllegalArgumentException("At least one feature must be kept in memory");
+        }
+        this.delegate = delegate;
+        this.featureType = delegate.getFeatureType();
+        this.comparator = new EntryComparator(sortBy);
+        this.maxFeatures = maxFeatures;
+    }
+
+    static int getMaxFeatures(Query query) {
+        Object max = query.getHints().get(Hints.MAX_MEMORY_SORT);
+        if (max instanceof Number) {
+            return ((Number) max).intValue();
+        }
+        return DEFAULT_MAX_FEATURES;
+    }
+
+    /**
+     * Returns true if the features of the specified type can be sorted by this reader: the sort
+     * attributes must be comparable and the attribute values must be storable in the temporary
+     * files
+     */
+    public static boolean canSort(SimpleFeatureType schema, SortBy[] sortBy) {
+        if (sortBy == null) {
+            return true;
+        }
+        for (SortBy sort : sortBy) {
+            if (sort == SortBy.NATURAL_ORDER || sort == SortBy.REVERSE_ORDER) {
+                continue;
+            }
+            if (sort.getPropertyName() == null) {
+                return false;
+            }
+            AttributeDescriptor ad = schema.getDescriptor(sort.getPropertyName()
+                    .getPropertyName());
+            if (ad == null) {
+                return false;
+            }
+            Class<?> binding = ad.getType().getBinding();
+            if (!Comparable.class.isAssignableFrom(binding) && !binding.isPrimitive()) {
+                return false;
+            }
+        }
+        return OffHeapFeatureCodec.canEncode(schema);
+    }
+
+    /**
+     * Returns true if the sort by is empty or just asks for the natural order, in which case
+     * the features can be returned in the order the store provides them
+     */
+    public static boolean isNaturalOrder(SortBy[] sortBy) {
+        if (sortBy != null) {
+            for (SortBy sort : sortBy) {
+                if (sort != SortBy.NATURAL_ORDER) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the query to be run against a store for its results to be sorted by this reader.
+     * Sorting, offset and limit are removed since they have to be applied after the sort, the
+     * sort attributes are added to the requested ones and the features are not recycled. The
+     * caller will have to apply the offset and limit, and retype the features, on top of the
+     * sorted reader.
+     */
+    public static Query getSourceQuery(Query query) {
+        Query source = new Query(query);
+        source.setSortBy(null);
+        source.setStartIndex(null);
+        source.setMaxFeatures(Query.DEFAULT_MAX);
+
+        Hints hints = new Hints(query.getHints());
+        hints.remove(Hints.FEATURE_REUSE);
+        source.setHints(hints);
+
+        String[] names = query.getPropertyNames();
+        if (names != null && query.getSortBy() != null) {
+            List<String> extended = new ArrayList<String>(Arrays.asList(names));
+            for (SortBy sort : query.getSortBy()) {
+                if (sort.getPropertyName() != null) {
+                    String name = sort.getPropertyName().getPropertyName();
+                    if (!extended.contains(name)) {
+                        extended.add(name);
+                    }
+                }
+            }
+            source.setPropertyNames(extended);
+        }
+        return source;
+    }
+
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getDelegate() {
+        return delegate;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        if (entries == null && queue == null) {
+            sort();
+        }
+        if (entries != null) {
+            return position < entries.size();
+        } else {
+            return !queue.isEmpty();
+        }
+    }
+
+    public SimpleFeature next() throws IOException, IllegalAttributeException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features in the sorted reader");
+        }
+        if (entries != null) {
+            // let the returned features be collected
+            return entries.set(position++, null).feature;
+        }
+
+        Run run = queue.poll();
+        SimpleFeature feature = run.current.feature;
+        if (run.advance()) {
+            queue.add(run);
+        }
+        return feature;
+    }
+
+    /**
+     * Reads the delegate, sorting the features in memory and spilling the runs to disk if there
+     * are too many of them
+     */
+    void sort() throws IOException {
+        List<Entry> run = new ArrayList<Entry>();
+        long sequence = 0;
+        try {
+            while (delegate.hasNext()) {
+                run.add(new Entry(delegate.next(), sequence++));
+                if (run.size() == maxFeatures) {
+                    spill(run);
+                    run.clear();
+                }
+            }
+        } finally {
+            // release the store resources as soon as possible
+            delegateClosed = true;
+            delegate.close();
+        }
+
+        if (runs == null) {
+            Collections.sort(run, comparator);
+            entries = run;
+        } else {
+            if (!run.isEmpty()) {
+                spill(run);
+            }
+            queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+                public int compare(Run r1, Run r2) {
+                    return comparator.compare(r1.current, r2.current);
+                }
+            });
+            for (Run r : runs) {
+                r.open();
+                if (r.advance()) {
+                    queue.add(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the run and writes it out to a temporary file
+     */
+    void spill(List<Entry> run) throws IOException {
+        if (runs == null) {
+            runs = new ArrayList<Run>();
+            codec = new OffHeapFeatureCodec(getFeatureType(), new GeometryFactory());
+        }
+        Collections.sort(run, comparator);
+
+        File file = File.createTempFile("sort", ".features");
+        Run spilled = new Run(file, run.size());
+        runs.add(spilled);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            for (Entry entry : run) {
+                buffer = codec.encode(entry.feature, buffer);
+                out.writeLong(entry.sequence);
+                out.writeInt(buffer.limit());
+                out.write(buffer.array(), 0, buffer.limit());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            if (!delegateClosed) {
+                delegateClosed = true;
+                delegate.close();
+            }
+        } finally {
+            entries = null;
+            if (runs != null) {
+                for (Run run : runs) {
+                    run.close();
+                }
+                runs = null;
+            }
+            queue = null;
+        }
+    }
+
+    /**
+     * A feature along with its position in the delegate reader
+     */
+    static final class Entry {
+        final SimpleFeature feature;
+
+        final long sequence;
+
+        Entry(SimpleFeature feature, long sequence) {
+            this.feature = feature;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Compares the entries according to the sort by, then according to their original position
+     */
+    static final class EntryComparator implements Comparator<Entry> {
+        final SortBy[] sortBy;
+
+        EntryComparator(SortBy[] sortBy) {
+            this.sortBy = sortBy;
+        }
+
+        public int compare(Entry e1, Entry e2) {
+            for (SortBy sort : sortBy) {
+                int result;
+                if (sort == SortBy.NATURAL_ORDER) {
+                    result = compareSequence(e1, e2);
+                } else if (sort == SortBy.REVERSE_ORDER) {
+                    result = -compareSequence(e1, e2);
+                } else {
+                    result = compareValues(sort.getPropertyName().evaluate(e1.feature), sort
+                            .getPropertyName().evaluate(e2.feature));
+                    if (sort.getSortOrder() == SortOrder.DESCENDING) {
+                        result = -result;
+                    }
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return compareSequence(e1, e2);
+        }
+
+        int compareSequence(Entry e1, Entry e2) {
+            return e1.sequence < e2.sequence ? -1 : (e1.sequence == e2.sequence ? 0 : 1);
+        }
+
+        /**
+         * Compares two values, nulls sort first
+         */
+        @SuppressWarnings("unchecked")
+        int compareValues(Object v1, Object v2) {
+            if (v1 == null || v2 == null) {
+                return v1 == null ? (v2 == null ? 0 : -1) : 1;
+            }
+            if (v1 instanceof Comparable && v1.getClass().isInstance(v2)) {
+                return ((Comparable<Object>) v1).compareTo(v2);
+            }
+            if (v2 instanceof Comparable && v2.getClass().isInstance(v1)) {
+                return -((Comparable<Object>) v2).compareTo(v1);
+            }
+            if (v1 instanceof Number && v2 instanceof Number) {
+                return Double.compare(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+            }
+            return v1.toString().compareTo(v2.toString());
+        }
+    }
+
+    /**
+     * A sorted run written to disk
+     */
+    final class Run {
+        final File file;
+
+        final int count;
+
+        int read;
+
+        DataInputStream in;
+
+        byte[] bytes = new byte[1024];
+
+        Entry current;
+
+        Run(File file, int count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        void open() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /**
+         * Reads the next entry, returns false if the run is exhausted
+         */
+        boolean advance() throws IOException {
+            if (read == count) {
+                current = null;
+                return false;
+            }
+            long sequence = in.readLong();
+            int length = in.readInt();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.readFully(bytes, 0, length);
+            current = new Entry(codec.decode(ByteBuffer.wrap(bytes, 0, length)), sequence);
+            read++;
+            return true;
+        }
+
+        void close() {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing the sort run " + file, e);
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.collection.OffHeapFeatureCodec;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * A map of features by fid used by {@link Diff}, keeping at most a given number of features in
+ * memory. Once the limit is reached further features are encoded in a temporary file, only
+ * their offset is kept in memory, and they are decoded back on access.
+ * <p>
+ * The {@link TransactionStateDiff#NULL} marker and features whose attributes cannot be encoded
+ * are always kept in memory. Iterators are weakly consistent, as the ones of the concurrent
+ * maps previously used by {@link Diff}.
+ * </p>
+ *
+ * @source $URL$
+ */
+class SpillingFeatureMap extends AbstractMap<String, Object> {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data");
+
+    final int maxMemoryFeatures;
+
+    final Map<String, Object> memory = new ConcurrentHashMap<String, Object>();
+
+    final Map<String, Long> spilled = new ConcurrentHashMap<String, Long>();
+
+    File file;
+
+    RandomAccessFile storage;
+
+    OffHeapFeatureCodec codec;
+
+    /**
+     * Set to false when the features cannot be encoded
+     */
+    boolean canSpill = true;
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    SpillingFeatureMap(int maxMemoryFeatures) {
+        this.maxMemoryFeatures = maxMemoryFeatures;
+    }
+
+    @Override
+    public int size() {
+        return memory.size() + spilled.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return memory.containsKey(key) || spilled.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        Object value = memory.get(key);
+        if (value == null) {
+            Long offset = spilled.get(key);
+            if (offset != null) {
+                value = read(offset.longValue());
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        Object old = get(key);
+        if (memory.size() < maxMemoryFeatures || memory.containsKey(key)
+                || !(value instanceof SimpleFeature) || value == TransactionStateDiff.NULL
+                || !spill(key, (SimpleFeature) value)) {
+            memory.put(key, value);
+            spilled.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        Object old = get(key);
+        memory.remove(key);
+        spilled.remove(key);
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        memory.clear();
+        spilled.clear();
+        if (storage != null) {
+            try {
+                storage.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing the diff storage " + file, e);
+            }
+            storage = null;
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Writes the feature to the temporary file, returns false if it cannot be done
+     */
+    boolean spill(String key, SimpleFeature feature) {
+        if (!canSpill) {
+            return false;
+        }
+        try {
+            if (codec == null) {
+                if (!OffHeapFeatureCodec.canEncode(feature.getFeatureType())) {
+                    canSpill = false;
+                    return false;
+                }
+                codec = new OffHeapFeatureCodec(feature.getFeatureType(), new GeometryFactory());
+            }
+            if (storage == null) {
+                file = File.createTempFile("diff", ".features");
+                file.deleteOnExit();
+                storage = new RandomAccessFile(file, "rw");
+            }
+            buffer = codec.encode(feature, buffer);
+            long offset = storage.length();
+            storage.seek(offset);
+            storage.writeInt(buffer.limit());
+            storage.write(buffer.array(), 0, buffer.limit());
+            spilled.put(key, Long.valueOf(offset));
+            memory.remove(key);
+            return true;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to move the transaction changes to disk, "
+                    + "keeping them in memory", e);
+            canSpill = false;
+            return false;
+        }
+    }
+
+    synchronized SimpleFeature read(long offset) {
+        try {
+            storage.seek(offset);
+            int length = storage.readInt();
+            byte[] bytes = new byte[length];
+            storage.readFully(bytes);
+            return codec.decode(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read back the transaction changes", e);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return SpillingFeatureMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the in memory entries, then over the spilled ones, which are decoded one at
+     * a time
+     */
+    class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        Iterator<Map.Entry<String, Object>> inMemory = memory.entrySet().iterator();
+
+        Iterator<String> onDisk;
+
+        Map.Entry<String, Object> next;
+
+        String last;
+
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (inMemory.hasNext()) {
+                Map.Entry<String, Object> e = inMemory.next();
+                next = new SimpleImmutableEntry(e.getKey(), e.getValue());
+                return true;
+            }
+            if (onDisk == null) {
+                // snapshot the keys, the values are read lazily
+                List<String> keys = new ArrayList<String>(spilled.keySet());
+                onDisk = keys.iterator();
+            }
+            while (onDisk.hasNext()) {
+                String key = onDisk.next();
+                Object value;
+                synchronized (SpillingFeatureMap.this) {
+                    Long offset = spilled.get(key);
+                    value = offset != null ? read(offset.longValue()) : null;
+                }
+                if (value != null) {
+                    next = new SimpleImmutableEntry(key, value);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, Object> result = next;
+            last = result.getKey();
+            next = null;
+            return result;
+        }
+
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            SpillingFeatureMap.this.remove(last);
+            last = null;
+        }
+    }
+
+    /**
+     * An immutable map entry (AbstractMap.SimpleImmutableEntry requires Java 6)
+     */
+    static class SimpleImmutableEntry implements Map.Entry<String, Object> {
+        String key;
+
+        Object value;
+
+        SimpleImmutableEntry(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey())
+                    && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+    }
+}
@@ -186,7 +186,7 @@ public class CollectionFeatureSource implements SimpleFeatureSource {
             return new EmptyFeatureCollection( getSchema() );
         }
         if (query.getFilter() != null && query.getFilter() != Filter.INCLUDE) {
-            features = new FilteringSimpleFeatureCollection(features, query.getFilter());
+            features = filter(features, query.getFilter());
         }
         // step two: reproject
         if (query.getCoordinateSystemReproject() != null) {
@@ -233,6 +233,14 @@ public class CollectionFeatureSource implements SimpleFeatureSource {
         return new SubCollection( query, features );
     }
 
+    /**
+     * Returns the features matching the filter. Subclasses wrapping an indexed collection
+     * can override to avoid a full scan.
+     */
+    protected SimpleFeatureCollection filter(SimpleFeatureCollection features, Filter filter) {
+        return new FilteringSimpleFeatureCollection(features, filter);
+    }
+
     /**
      * SubCollection for CollectionFeatureSource.
      * <p>
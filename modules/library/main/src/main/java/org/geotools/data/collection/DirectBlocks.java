@@ -0,0 +1,116 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A growable array of longs or doubles, stored in fixed size direct buffers. Growing only adds
+ * blocks, the values are never copied, and the array is not limited to the 2GB a single buffer
+ * can address.
+ * <p>
+ * Values are addressed by index, eight bytes each. The same instance should store either longs
+ * or doubles, not a mix of them.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class DirectBlocks {
+
+    /** Default size of the blocks, in bytes */
+    static final int BLOCK_SIZE = 1024 * 1024;
+
+    /** log2 of the number of values in a block */
+    final int shift;
+
+    final long mask;
+
+    List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+
+    DirectBlocks() {
+        this(BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize The size of the blocks in bytes, a power of two holding at least one value
+     */
+    DirectBlocks(int blockSize) {
+        if (blockSize < 8 || Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("The block size must be a power of two, "
+                    + "and at least 8 bytes: " + blockSize);
+        }
+        this.shift = Integer.numberOfTrailingZeros(blockSize >>> 3);
+        this.mask = (1L << shift) - 1;
+    }
+
+    /**
+     * Returns the number of values the allocated blocks can hold
+     */
+    long capacity() {
+        return (long) blocks.size() << shift;
+    }
+
+    /**
+     * Allocates blocks until <code>size</code> values can be stored
+     */
+    void ensureCapacity(long size) {
+        if (size > 0) {
+            int needed = block(size - 1) + 1;
+            while (blocks.size() < needed) {
+                blocks.add(ByteBuffer.allocateDirect(8 << shift).order(ByteOrder.nativeOrder()));
+            }
+        }
+    }
+
+    /**
+     * Returns the block holding the value at the specified index
+     */
+    int block(long index) {
+        long block = index >>> shift;
+        if (block > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Index " + index + " is out of the addressable "
+                    + "range");
+        }
+        return (int) block;
+    }
+
+    /**
+     * Returns the position, in bytes, of the value at the specified index inside its block
+     */
+    int position(long index) {
+        return (int) (index & mask) << 3;
+    }
+
+    long getLong(long index) {
+        return blocks.get(block(index)).getLong(position(index));
+    }
+
+    void putLong(long index, long value) {
+        blocks.get(block(index)).putLong(position(index), value);
+    }
+
+    double getDouble(long index) {
+        return blocks.get(block(index)).getDouble(position(index));
+    }
+
+    void putDouble(long index, double value) {
+        blocks.get(block(index)).putDouble(position(index), value);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.InStream;
+import com.vividsolutions.jts.io.OutStream;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Compact binary encoding of simple features, used by {@link OffHeapFeatureCollection} and by
+ * the sorting reader to spill features to disk.
+ * <p>
+ * Each feature is written as its id followed by the attribute values, each one prefixed by a
+ * one byte tag identifying its type. Numbers, booleans and dates are written as primitives,
+ * strings in UTF-8, geometries as WKB prefixed by their SRID. Other values are written using
+ * java serialization.
+ * </p>
+ * <p>
+ * Instances keep some state around to avoid allocations, so they are not thread safe.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class OffHeapFeatureCodec {
+
+    static final byte NULL = 0;
+
+    static final byte BOOLEAN = 1;
+
+    static final byte BYTE = 2;
+
+    static final byte SHORT = 3;
+
+    static final byte INTEGER = 4;
+
+    static final byte LONG = 5;
+
+    static final byte FLOAT = 6;
+
+    static final byte DOUBLE = 7;
+
+    static final byte STRING = 8;
+
+    static final byte DATE = 9;
+
+    static final byte SQL_DATE = 10;
+
+    static final byte SQL_TIME = 11;
+
+    static final byte SQL_TIMESTAMP = 12;
+
+    static final byte GEOMETRY = 13;
+
+    static final byte BIG_DECIMAL = 14;
+
+    static final byte BIG_INTEGER = 15;
+
+    static final byte SERIALIZED = 16;
+
+    final SimpleFeatureType schema;
+
+    final SimpleFeatureBuilder builder;
+
+    final WKBReader wkbReader;
+
+    /** The buffer the encoder and the WKB streams work against */
+    ByteBuffer buffer;
+
+    /** Scratch array used to move bytes in and out of the buffers */
+    byte[] bytes = new byte[64];
+
+    public OffHeapFeatureCodec(SimpleFeatureType schema, GeometryFactory geometryFactory) {
+        this.schema = schema;
+        this.builder = new SimpleFeatureBuilder(schema);
+        this.wkbReader = new WKBReader(geometryFactory);
+    }
+
+    /**
+     * Returns true if the values of all the attributes of the schema can be encoded
+     */
+    public static boolean canEncode(SimpleFeatureType schema) {
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            if (!canEncode(ad.getType().getBinding())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if values of the specified class can be encoded. Interfaces are accepted since
+     * the actual values might still be serializable
+     */
+    static boolean canEncode(Class<?> binding) {
+        return binding.isPrimitive() || Serializable.class.isAssignableFrom(binding)
+                || Geometry.class.isAssignableFrom(binding) || binding.isInterface()
+                || binding == Object.class;
+    }
+
+    /**
+     * Encodes the feature into the provided heap buffer, growing it as needed, and returns the
+     * buffer holding the encoded feature, flipped and ready to be read
+     */
+    public ByteBuffer encode(SimpleFeature feature, ByteBuffer target) {
+        while (true) {
+            target.clear();
+            buffer = target;
+            try {
+                writeString(feature.getID());
+                int count = schema.getAttributeCount();
+                for (int i = 0; i < count; i++) {
+                    writeValue(feature.getAttribute(i));
+                }
+                target.flip();
+                return target;
+            } catch (java.nio.BufferOverflowException e) {
+                target = ByteBuffer.allocate(target.capacity() * 2);
+            } finally {
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Decodes the feature starting at the current position of the source buffer
+     */
+    public SimpleFeature decode(ByteBuffer source) {
+        buffer = source;
+        try {
+            String id = readString();
+            int count = schema.getAttributeCount();
+            for (int i = 0; i < count; i++) {
+                builder.add(readValue());
+            }
+            return builder.buildFeature(id);
+        } finally {
+            buffer = null;
+        }
+    }
+
+    void writeValue(Object value) {
+        if (value == null) {
+            buffer.put(NULL);
+        } else if (value instanceof Geometry) {
+            buffer.put(GEOMETRY);
+            writeGeometry((Geometry) value);
+        } else if (value instanceof String) {
+            buffer.put(STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            buffer.put(INTEGER);
+            buffer.putInt(((Integer) value).intValue());
+        } else if (value instanceof Double) {
+            buffer.put(DOUBLE);
+            buffer.putDouble(((Double) value).doubleValue());
+        } else if (value instanceof Long) {
+            buffer.put(LONG);
+            buffer.putLong(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            buffer.put(FLOAT);
+            buffer.putFloat(((Float) value).floatValue());
+        } else if (value instanceof Boolean) {
+            buffer.put(BOOLEAN);
+            buffer.put(((Boolean) value).booleanValue() ? (byte) 1 : (byte) 0);
+        } else if (value instanceof Short) {
+            buffer.put(SHORT);
+            buffer.putShort(((Short) value).shortValue());
+        } else if (value instanceof Byte) {
+            buffer.put(BYTE);
+            buffer.put(((Byte) value).byteValue());
+        } else if (value instanceof Timestamp) {
+            buffer.put(SQL_TIMESTAMP);
+            buffer.putLong(((Timestamp) value).getTime());
+            buffer.putInt(((Timestamp) value).getNanos());
+        } else if (value instanceof Time) {
+            buffer.put(SQL_TIME);
+            buffer.putLong(((Time) value).getTime());
+        } else if (value instanceof java.sql.Date) {
+            buffer.put(SQL_DATE);
+            buffer.putLong(((java.sql.Date) value).getTime());
+        } else if (value.getClass() == Date.class) {
+            buffer.put(DATE);
+            buffer.putLong(((Date) value).getTime());
+        } else if (value instanceof BigDecimal) {
+            buffer.put(BIG_DECIMAL);
+            writeString(value.toString());
+        } else if (value instanceof BigInteger) {
+            buffer.put(BIG_INTEGER);
+            writeString(value.toString());
+        } else if (value instanceof Serializable) {
+            buffer.put(SERIALIZED);
+            writeSerialized(value);
+        } else {
+            throw new IllegalArgumentException("Cannot store values of type "
+                    + value.getClass().getName() + " off the heap");
+        }
+    }
+
+    Object readValue() {
+        byte tag = buffer.get();
+        switch (tag) {
+        case NULL:
+            return null;
+        case BOOLEAN:
+            return Boolean.valueOf(buffer.get() != 0);
+        case BYTE:
+            return Byte.valueOf(buffer.get());
+        case SHORT:
+            return Short.valueOf(buffer.getShort());
+        case INTEGER:
+            return Integer.valueOf(buffer.getInt());
+        case LONG:
+            return Long.valueOf(buffer.getLong());
+        case FLOAT:
+            return Float.valueOf(buffer.getFloat());
+        case DOUBLE:
+            return Double.valueOf(buffer.getDouble());
+        case STRING:
+            return readString();
+        case DATE:
+            return new Date(buffer.getLong());
+        case SQL_DATE:
+            return new java.sql.Date(buffer.getLong());
+        case SQL_TIME:
+            return new Time(buffer.getLong());
+        case SQL_TIMESTAMP:
+            Timestamp timestamp = new Timestamp(buffer.getLong());
+            timestamp.setNanos(buffer.getInt());
+            return timestamp;
+        case GEOMETRY:
+            return readGeometry();
+        case BIG_DECIMAL:
+            return new BigDecimal(readString());
+        case BIG_INTEGER:
+            return new BigInteger(readString());
+        case SERIALIZED:
+            return readSerialized();
+        default:
+            throw new IllegalStateException("Unknown value tag " + tag
+                    + ", the off heap storage is corrupted");
+        }
+    }
+
+    void writeString(String value) {
+        try {
+            byte[] encoded = value.getBytes("UTF-8");
+            buffer.putInt(encoded.length);
+            buffer.put(encoded);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    String readString() {
+        int length = buffer.getInt();
+        byte[] encoded = scratch(length);
+        buffer.get(encoded, 0, length);
+        try {
+            return new String(encoded, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    void writeGeometry(Geometry geometry) {
+        int dimension = 2;
+        if (!geometry.isEmpty() && !Double.isNaN(geometry.getCoordinate().z)) {
+            dimension = 3;
+        }
+        buffer.putInt(geometry.getSRID());
+        try {
+            new WKBWriter(dimension).write(geometry, new OutStream() {
+                public void write(byte[] buf, int len) throws IOException {
+                    buffer.put(buf, 0, len);
+                }
+            });
+        } catch (IOException e) {
+            // the stream does not throw any
+            throw new RuntimeException(e);
+        }
+    }
+
+    Geometry readGeometry() {
+        int srid = buffer.getInt();
+        try {
+            Geometry geometry = wkbReader.read(new InStream() {
+                public void read(byte[] buf) throws IOException {
+                    buffer.get(buf);
+                }
+            });
+            geometry.setSRID(srid);
+            return geometry;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode a geometry from the off heap storage", e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Failed to decode a geometry from the off heap storage", e);
+        }
+    }
+
+    void writeSerialized(Object value) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+            byte[] serialized = bos.toByteArray();
+            buffer.putInt(serialized.length);
+            buffer.put(serialized);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize value " + value, e);
+        }
+    }
+
+    Object readSerialized() {
+        int length = buffer.getInt();
+        byte[] serialized = new byte[length];
+        buffer.get(serialized);
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized));
+            return ois.readObject();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to deserialize a value from the off heap storage", e);
+        }
+    }
+
+    byte[] scratch(int length) {
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.feature.collection.FilteringSimpleFeatureCollection;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * FeatureCollection storing its features outside of the java heap, in a compact binary encoding.
+ * <p>
+ * Features are encoded as they are added, and stored either in direct byte buffers or in a
+ * memory mapped file, and are decoded back lazily while iterating. The heap footprint is limited
+ * to a few bytes per feature, making this collection suitable for staging large intermediate
+ * results without putting pressure on the garbage collector.
+ * </p>
+ * <p>
+ * A packed R-tree on the default geometry is built on the first spatial query, and used to
+ * answer {@link #subCollection(Filter)} without scanning all the features (wrap the collection
+ * into a {@link OffHeapFeatureSource} to run queries against it). Adding features
+ * discards the index, the collection is best filled once and then queried.
+ * </p>
+ * <p>
+ * Features can be added, but not removed. Adding features while iterating over the collection is
+ * not supported. Call {@link #dispose()} once done to release the storage as soon as possible.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class OffHeapFeatureCollection extends AbstractFeatureCollection {
+
+    static final Logger LOGGER = Logging.getLogger(OffHeapFeatureCollection.class);
+
+    /** Default size of the storage chunks */
+    static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** Size of the storage chunks */
+    final int chunkSize;
+
+    /** The storage file, or null if direct buffers are used */
+    File file;
+
+    FileChannel channel;
+
+    /** Size of the storage file mapped so far */
+    long mapped;
+
+    /** The storage chunks */
+    List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+    /** The location of each feature, chunk number in the high 32 bits, position in the low ones */
+    DirectBlocks offsets = new DirectBlocks();
+
+    /** The envelope of each feature (minx, miny, maxx, maxy), NaN if the feature has no geometry */
+    DirectBlocks envelopes = new DirectBlocks();
+
+    int count;
+
+    ReferencedEnvelope bounds;
+
+    OffHeapFeatureCodec encoder;
+
+    ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+    GeometryFactory geometryFactory = new GeometryFactory();
+
+    /** The spatial index, built on demand */
+    PackedRTree index;
+
+    /**
+     * Creates a new collection storing its features in direct buffers
+     */
+    public OffHeapFeatureCollection(SimpleFeatureType schema) {
+        this(schema, CHUNK_SIZE);
+    }
+
+    OffHeapFeatureCollection(SimpleFeatureType schema, int chunkSize) {
+        super(schema);
+        this.chunkSize = chunkSize;
+        this.encoder = new OffHeapFeatureCodec(schema, geometryFactory);
+        this.bounds = new ReferencedEnvelope(schema.getCoordinateReferenceSystem());
+        validate(schema);
+    }
+
+    /**
+     * Creates a new collection storing its features in a memory mapped file. The file will be
+     * overwritten, and deleted when the collection is disposed.
+     *
+     * @param schema The feature type
+     * @param file The storage file, usually a temporary one
+     * @throws IOException If the file cannot be created
+     */
+    public OffHeapFeatureCollection(SimpleFeatureType schema, File file) throws IOException {
+        this(schema, file, CHUNK_SIZE);
+    }
+
+    OffHeapFeatureCollection(SimpleFeatureType schema, File file, int chunkSize)
+            throws IOException {
+        this(schema, chunkSize);
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Checks all attributes can be stored
+     */
+    void validate(SimpleFeatureType schema) {
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            Class<?> binding = ad.getType().getBinding();
+            if (!OffHeapFeatureCodec.canEncode(binding)) {
+                throw new IllegalArgumentException("Attribute " + ad.getLocalName()
+                        + " values of type " + binding.getName() + " cannot be stored off the heap");
+            }
+        }
+    }
+
+    static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Encodes and stores the feature. The feature object is not retained.
+     */
+    public synchronized boolean add(SimpleFeature feature) {
+        if (chunks == null) {
+            throw new IllegalStateException("The collection has been disposed");
+        }
+        if (count == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The collection cannot hold more than "
+                    + Integer.MAX_VALUE + " features");
+        }
+        ByteBuffer encoded = encoder.encode(feature, scratch);
+        scratch = encoded;
+        int size = encoded.remaining();
+
+        // find room for the feature, features do not span chunks
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = newChunk(Math.max(size, chunkSize));
+            chunks.add(chunk);
+        }
+        long offset = (((long) chunks.size() - 1) << 32) | chunk.position();
+        chunk.put(encoded);
+
+        // record the location and envelope
+        offsets.ensureCapacity(count + 1L);
+        envelopes.ensureCapacity((count + 1L) * 4);
+        offsets.putLong(count, offset);
+        Object geometry = feature.getDefaultGeometry();
+        long base = count * 4L;
+        if (geometry instanceof Geometry && !((Geometry) geometry).isEmpty()) {
+            Envelope envelope = ((Geometry) geometry).getEnvelopeInternal();
+            envelopes.putDouble(base, envelope.getMinX());
+            envelopes.putDouble(base + 1, envelope.getMinY());
+            envelopes.putDouble(base + 2, envelope.getMaxX());
+            envelopes.putDouble(base + 3, envelope.getMaxY());
+            bounds.expandToInclude(envelope);
+        } else {
+            for (int i = 0; i < 4; i++) {
+                envelopes.putDouble(base + i, Double.NaN);
+            }
+        }
+        count++;
+        index = null;
+
+        return true;
+    }
+
+    ByteBuffer newChunk(int size) {
+        if (channel == null) {
+            return allocate(size);
+        }
+        try {
+            ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, mapped, size);
+            mapped += size;
+            return chunk;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to grow the feature storage file " + file, e);
+        }
+    }
+
+    /**
+     * Returns the spatial index, building it if necessary
+     */
+    synchronized PackedRTree getIndex() {
+        if (index == null) {
+            index = new PackedRTree(envelopes, count);
+        }
+        return index;
+    }
+
+    /**
+     * Uses the spatial index to find the features that might match the filter, if the schema has
+     * a single geometry attribute and the filter has a spatial component that limits the area of
+     * interest.
+     */
+    public SimpleFeatureCollection subCollection(Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE) {
+            return this;
+        }
+        Envelope envelope = null;
+        if (hasSingleGeometry()) {
+            try {
+                envelope = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR,
+                        null);
+            } catch (RuntimeException e) {
+                // some filters are not handled by the visitor, fall back on a full scan
+                LOGGER.log(Level.FINEST, "Could not extract the bounds of " + filter, e);
+            }
+        }
+        if (envelope == null || Double.isInfinite(envelope.getWidth())
+                || Double.isInfinite(envelope.getHeight()) || Double.isNaN(envelope.getWidth())) {
+            return new FilteringSimpleFeatureCollection(this, filter);
+        }
+        int[] candidates = getIndex().search(envelope);
+        return new FilteringSimpleFeatureCollection(new Subset(candidates), filter);
+    }
+
+    boolean hasSingleGeometry() {
+        int geometries = 0;
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            if (ad instanceof GeometryDescriptor) {
+                geometries++;
+            }
+        }
+        return geometries == 1;
+    }
+
+    @Override
+    protected Iterator<SimpleFeature> openIterator() {
+        return new OffHeapIterator(null, count);
+    }
+
+    @Override
+    protected void closeIterator(Iterator<SimpleFeature> close) {
+        // nothing to release
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized ReferencedEnvelope getBounds() {
+        return new ReferencedEnvelope(bounds);
+    }
+
+    /**
+     * Releases the storage. The collection cannot be used anymore afterwards.
+     */
+    public synchronized void dispose() {
+        chunks = null;
+        offsets = null;
+        envelopes = null;
+        index = null;
+        count = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close the feature storage file", e);
+            }
+            channel = null;
+            // the mapped buffers might keep the file locked until they are garbage collected
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Decodes the features at the specified positions, or all of them
+     */
+    class OffHeapIterator implements Iterator<SimpleFeature> {
+        final int[] positions;
+
+        final int size;
+
+        final OffHeapFeatureCodec decoder = new OffHeapFeatureCodec(schema, geometryFactory);
+
+        /** Views of the chunks, so that each iterator can move freely */
+        final ByteBuffer[] views;
+
+        int next;
+
+        OffHeapIterator(int[] positions, int size) {
+            this.positions = positions;
+            this.size = size;
+            synchronized (OffHeapFeatureCollection.this) {
+                if (chunks == null) {
+                    throw new IllegalStateException("The collection has been disposed");
+                }
+                this.views = new ByteBuffer[chunks.size()];
+            }
+        }
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public SimpleFeature next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            int position = positions == null ? next : positions[next];
+            next++;
+
+            long offset = offsets.getLong(position);
+            int chunk = (int) (offset >>> 32);
+            ByteBuffer view = views[chunk];
+            if (view == null) {
+                view = chunks.get(chunk).duplicate();
+                views[chunk] = view;
+            }
+            view.limit(view.capacity());
+            view.position((int) offset);
+            return decoder.decode(view);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove features from "
+                    + "an off heap collection");
+        }
+    }
+
+    /**
+     * The features at the specified positions
+     */
+    class Subset extends AbstractFeatureCollection {
+        final int[] positions;
+
+        Subset(int[] positions) {
+            super(OffHeapFeatureCollection.this.schema);
+            this.positions = positions;
+        }
+
+        @Override
+        protected Iterator<SimpleFeature> openIterator() {
+            return new OffHeapIterator(positions, positions.length);
+        }
+
+        @Override
+        protected void closeIterator(Iterator<SimpleFeature> close) {
+            // nothing to release
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        @Override
+        public ReferencedEnvelope getBounds() {
+            ReferencedEnvelope result = new ReferencedEnvelope(schema
+                    .getCoordinateReferenceSystem());
+            for (int position : positions) {
+                long base = position * 4L;
+                if (Double.isNaN(envelopes.getDouble(base))) {
+                    continue;
+                }
+                result.expandToInclude(envelopes.getDouble(base), envelopes.getDouble(base + 1));
+                result.expandToInclude(envelopes.getDouble(base + 2), envelopes
+                        .getDouble(base + 3));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.opengis.filter.Filter;
+
+/**
+ * A read only FeatureSource over an {@link OffHeapFeatureCollection}, using its spatial index to
+ * answer queries.
+ * 
+ * <pre>
+ * OffHeapFeatureCollection collection = new OffHeapFeatureCollection(schema);
+ * collection.addAll(features);
+ * SimpleFeatureSource source = new OffHeapFeatureSource(collection);
+ * </pre>
+ * 
+ * @source $URL$
+ */
+public class OffHeapFeatureSource extends CollectionFeatureSource {
+
+    public OffHeapFeatureSource(OffHeapFeatureCollection collection) {
+        super(collection);
+    }
+
+    @Override
+    protected SimpleFeatureCollection filter(SimpleFeatureCollection features, Filter filter) {
+        if (features instanceof OffHeapFeatureCollection) {
+            return features.subCollection(filter);
+        }
+        return super.filter(features, filter);
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A static, packed R-tree stored in direct buffers, used by {@link OffHeapFeatureCollection}.
+ * <p>
+ * The items are sorted along a Hilbert curve and packed bottom up in nodes of
+ * {@link #NODE_SIZE} entries, all levels are stored one after the other in the same buffers.
+ * The tree cannot be modified once built, it has to be rebuilt from scratch when items are
+ * added.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class PackedRTree {
+
+    static final int NODE_SIZE = 16;
+
+    /** Hilbert curve resolution, the extent is split in a 2^16 x 2^16 grid */
+    static final int HILBERT_MAX = (1 << 16) - 1;
+
+    /** Number of indexed items */
+    final int numItems;
+
+    /** Total number of nodes, leaves included */
+    final int numNodes;
+
+    /** The (exclusive) end node position of each level, starting from the leaves */
+    final int[] levelBounds;
+
+    /** The node boxes, minx, miny, maxx, maxy */
+    final DirectBlocks boxes = new DirectBlocks();
+
+    /** For the leaves the item position, for the inner nodes the position of the first child */
+    final IntBuffer indices;
+
+    /**
+     * Builds the tree from the envelopes, which hold four doubles (minx, miny, maxx, maxy) for
+     * each of the <code>count</code> items. Items whose envelope has NaN coordinates are not
+     * indexed.
+     */
+    PackedRTree(DirectBlocks envelopes, int count) {
+        // find out the items to be indexed and their overall extent
+        Envelope extent = new Envelope();
+        int items = 0;
+        for (int i = 0; i < count; i++) {
+            long base = i * 4L;
+            double minX = envelopes.getDouble(base);
+            if (!Double.isNaN(minX)) {
+                extent.expandToInclude(minX, envelopes.getDouble(base + 1));
+                extent.expandToInclude(envelopes.getDouble(base + 2), envelopes
+                        .getDouble(base + 3));
+                items++;
+            }
+        }
+        this.numItems = items;
+
+        // compute the level structure
+        List<Integer> bounds = new ArrayList<Integer>();
+        long n = items;
+        long total = n;
+        bounds.add(Integer.valueOf((int) total));
+        while (n > 1) {
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+            total += n;
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many items to be indexed: " + items);
+            }
+            bounds.add(Integer.valueOf((int) total));
+        }
+        this.numNodes = (int) total;
+        this.levelBounds = new int[bounds.size()];
+        for (int i = 0; i < levelBounds.length; i++) {
+            levelBounds[i] = bounds.get(i).intValue();
+        }
+        this.boxes.ensureCapacity(numNodes * 4L);
+        this.indices = allocate(numNodes * 4L).asIntBuffer();
+        if (items == 0) {
+            return;
+        }
+
+        // sort the items along the Hilbert curve
+        IntBuffer values = allocate(items * 4L).asIntBuffer();
+        double width = extent.getWidth() > 0 ? extent.getWidth() : 1;
+        double height = extent.getHeight() > 0 ? extent.getHeight() : 1;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            long base = i * 4L;
+            double minX = envelopes.getDouble(base);
+            if (!Double.isNaN(minX)) {
+                double cx = (minX + envelopes.getDouble(base + 2)) / 2;
+                double cy = (envelopes.getDouble(base + 1) + envelopes.getDouble(base + 3)) / 2;
+                int x = (int) Math.floor(HILBERT_MAX * (cx - extent.getMinX()) / width);
+                int y = (int) Math.floor(HILBERT_MAX * (cy - extent.getMinY()) / height);
+                // flip the sign bit so that signed comparison follows the unsigned curve order
+                values.put(pos, hilbert(x, y) ^ Integer.MIN_VALUE);
+                indices.put(pos, i);
+                pos++;
+            }
+        }
+        sort(values, indices, 0, items - 1);
+
+        // fill the leaves
+        for (int i = 0; i < items; i++) {
+            int item = indices.get(i);
+            for (int j = 0; j < 4; j++) {
+                boxes.putDouble(i * 4L + j, envelopes.getDouble(item * 4L + j));
+            }
+        }
+
+        // and then build the upper levels
+        pos = 0;
+        for (int level = 0; level < levelBounds.length - 1; level++) {
+            int end = levelBounds[level];
+            int parent = end;
+            while (pos < end) {
+                int first = pos;
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < NODE_SIZE && pos < end; i++, pos++) {
+                    long base = pos * 4L;
+                    minX = Math.min(minX, boxes.getDouble(base));
+                    minY = Math.min(minY, boxes.getDouble(base + 1));
+                    maxX = Math.max(maxX, boxes.getDouble(base + 2));
+                    maxY = Math.max(maxY, boxes.getDouble(base + 3));
+                }
+                long base = parent * 4L;
+                boxes.putDouble(base, minX);
+                boxes.putDouble(base + 1, minY);
+                boxes.putDouble(base + 2, maxX);
+                boxes.putDouble(base + 3, maxY);
+                indices.put(parent, first);
+                parent++;
+            }
+        }
+    }
+
+    static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot allocate a buffer of " + bytes
+                    + " bytes, the index is too large");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the positions of the items whose envelope intersects the search one, in ascending
+     * order
+     */
+    int[] search(Envelope envelope) {
+        if (numItems == 0 || envelope.isNull()) {
+            return new int[0];
+        }
+        double minX = envelope.getMinX();
+        double minY = envelope.getMinY();
+        double maxX = envelope.getMaxX();
+        double maxY = envelope.getMaxY();
+
+        int[] results = new int[16];
+        int resultCount = 0;
+        int[] stack = new int[16];
+        int stackSize = 0;
+
+        // the root is the last node
+        int node = numNodes - 1;
+        while (true) {
+            int end = Math.min(node + NODE_SIZE, levelEnd(node));
+            for (int pos = node; pos < end; pos++) {
+                long base = pos * 4L;
+                if (maxX < boxes.getDouble(base) || maxY < boxes.getDouble(base + 1)
+                        || minX > boxes.getDouble(base + 2) || minY > boxes.getDouble(base + 3)) {
+                    continue;
+                }
+                int index = indices.get(pos);
+                if (node < numItems) {
+                    if (resultCount == results.length) {
+                        results = grow(results);
+                    }
+                    results[resultCount++] = index;
+                } else {
+                    if (stackSize == stack.length) {
+                        stack = grow(stack);
+                    }
+                    stack[stackSize++] = index;
+                }
+            }
+            if (stackSize == 0) {
+                break;
+            }
+            node = stack[--stackSize];
+        }
+
+        int[] sorted = new int[resultCount];
+        System.arraycopy(results, 0, sorted, 0, resultCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    int levelEnd(int node) {
+        for (int i = 0; i < levelBounds.length; i++) {
+            if (levelBounds[i] > node) {
+                return levelBounds[i];
+            }
+        }
+        return numNodes;
+    }
+
+    static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    /**
+     * Quicksort of the values and their associated indices. Only sorts across node boundaries,
+     * the order inside a node does not matter. Recurses on the smaller partition to keep the
+     * stack depth logarithmic.
+     */
+    static void sort(IntBuffer values, IntBuffer indices, int left, int right) {
+        while (left / NODE_SIZE < right / NODE_SIZE) {
+            int pivot = values.get((left + right) >>> 1);
+            int i = left - 1;
+            int j = right + 1;
+            while (true) {
+                do {
+                    i++;
+                } while (values.get(i) < pivot);
+                do {
+                    j--;
+                } while (values.get(j) > pivot);
+                if (i >= j) {
+                    break;
+                }
+                swap(values, i, j);
+                swap(indices, i, j);
+            }
+            if (j - left < right - j) {
+                sort(values, indices, left, j);
+                left = j + 1;
+            } else {
+                sort(values, indices, j + 1, right);
+                right = j;
+            }
+        }
+    }
+
+    static void swap(IntBuffer buffer, int i, int j) {
+        int tmp = buffer.get(i);
+        buffer.put(i, buffer.get(j));
+        buffer.put(j, tmp);
+    }
+
+    /**
+     * Position of the x,y cell along the Hilbert curve, see "Fast Hilbert curve generation,
+     * sorting, and range queries" (http://threadlocalmutex.com/?p=126)
+     */
+    static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+}
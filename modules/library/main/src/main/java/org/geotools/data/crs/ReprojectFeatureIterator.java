@@ -17,22 +17,20 @@
 package org.geotools.data.crs;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
-import org.geotools.data.DataSourceException;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.IllegalAttributeException;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
-import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
+import org.geotools.geometry.jts.BatchGeometryTransformer;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.operation.MathTransform;
-import org.opengis.referencing.operation.MathTransform2D;
 import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Geometry;
-
 
 /**
  * ReprojectFeatureReader provides a reprojection for FeatureTypes.
@@ -70,13 +68,25 @@ import com.vividsolutions.jts.geom.Geometry;
 public class ReprojectFeatureIterator implements Iterator {
     FeatureIterator<SimpleFeature> reader;
     SimpleFeatureType schema;
-    GeometryCoordinateSequenceTransformer transformer = new GeometryCoordinateSequenceTransformer();
+    BatchGeometryTransformer transformer;
+
+    /**
+     * The reprojected values of the features read ahead, and their ids
+     */
+    List<Object[]> batch = new ArrayList<Object[]>();
+    List<String> ids = new ArrayList<String>();
+    int index;
+
+    /**
+     * The errors of the features of the batch that could not be reprojected, null if none
+     */
+    TransformException[] failures;
 
     public ReprojectFeatureIterator(FeatureIterator<SimpleFeature> reader, SimpleFeatureType schema,
         MathTransform transform) {
         this.reader = reader;
         this.schema = schema;
-        transformer.setMathTransform((MathTransform2D)transform);
+        transformer = new BatchGeometryTransformer(transform);
         
         //set hte target coordinate system
         transformer.setCoordinateReferenceSystem(schema.getCoordinateReferenceSystem());
@@ -124,22 +134,38 @@ public class ReprojectFeatureIterator implements Iterator {
             throw new IllegalStateException("Reader has already been closed");
         }
 
-        //grab the next feature
-        SimpleFeature next = reader.next();
-        
-        Object[] attributes = next.getAttributes().toArray();
-
-        try {
-            for (int i = 0; i < attributes.length; i++) {
-                if (attributes[i] instanceof Geometry) {
-                    attributes[i] = transformer.transform((Geometry) attributes[i]);
-                }
-            }
-        } catch (TransformException e) {
-            throw (IllegalStateException)new IllegalStateException("A transformation exception occurred while reprojecting data on the fly").initCause(e);
+        if (index == batch.size()) {
+            readBatch();
+        }
+        Object[] attributes = batch.get(index);
+        String id = ids.get(index);
+        batch.set(index, null);
+        if (failures != null && failures[index] != null) {
+            throw (IllegalStateException)new IllegalStateException("A transformation exception occurred while reprojecting data on the fly").initCause(failures[index++]);
+        }
+        index++;
+
+        return SimpleFeatureBuilder.build(schema, attributes, id);
+    }
+
+    /**
+     * Reads the next batch of features and reprojects them at once, a feature that cannot be
+     * reprojected fails only its own call to {@link #next()}
+     */
+    void readBatch() {
+        batch.clear();
+        ids.clear();
+        index = 0;
+        while (batch.size() < BatchGeometryTransformer.DEFAULT_BATCH_SIZE && reader.hasNext()) {
+            SimpleFeature next = reader.next();
+            batch.add(next.getAttributes().toArray());
+            ids.add(next.getID());
+        }
+        if (batch.isEmpty()) {
+            throw new NoSuchElementException("No more features");
         }
 
-        return SimpleFeatureBuilder.build(schema, attributes, next.getID());
+        failures = transformer.transformEach(batch);
     }
 
     public void remove() {
@@ -163,7 +189,7 @@ public class ReprojectFeatureIterator implements Iterator {
             throw new IllegalStateException("Reader has already been closed");
         }
 
-        return reader.hasNext();
+        return index < batch.size() || reader.hasNext();
     }
 
     /**
@@ -185,5 +211,7 @@ public class ReprojectFeatureIterator implements Iterator {
         reader.close();
         reader = null;
         schema = null;
+        batch = null;
+        ids = null;
     }
 }
@@ -17,6 +17,8 @@
 package org.geotools.data.crs;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.geotools.data.DataSourceException;
@@ -26,19 +28,16 @@ import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.IllegalAttributeException;
 import org.geotools.feature.SchemaException;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
-import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
+import org.geotools.geometry.jts.BatchGeometryTransformer;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
-import org.opengis.referencing.operation.MathTransform2D;
 import org.opengis.referencing.operation.OperationNotFoundException;
 import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Geometry;
-
 
 /**
  * ReprojectFeatureReader provides a reprojection for FeatureTypes.
@@ -64,6 +63,11 @@ import com.vividsolutions.jts.geom.Geometry;
  * assertEquals( reprojectCS, newCS );
  * </code></pre>
  * </p>
+ * <p>
+ * The features are read ahead and reprojected in batches of
+ * {@link BatchGeometryTransformer#DEFAULT_BATCH_SIZE}, so that the coordinates of a whole
+ * batch go through the math transform at once.
+ * </p>
  * TODO: handle the case where there is more than one geometry and the other
  * geometries have a different CS than the default geometry
  *
@@ -77,7 +81,19 @@ public class ReprojectFeatureReader implements DelegatingFeatureReader<SimpleFea
     
     FeatureReader<SimpleFeatureType, SimpleFeature> reader;
     SimpleFeatureType schema;
-    GeometryCoordinateSequenceTransformer transformer = new GeometryCoordinateSequenceTransformer();
+    BatchGeometryTransformer transformer;
+
+    /**
+     * The reprojected values of the features read ahead, and their ids
+     */
+    List<Object[]> batch = new ArrayList<Object[]>();
+    List<String> ids = new ArrayList<String>();
+    int index;
+
+    /**
+     * The errors of the features of the batch that could not be reprojected, null if none
+     */
+    TransformException[] failures;
     
     /**
      * Direct constructor reprojecting the provided reader into the schema indicated (using the supplied math transformation).
@@ -92,7 +108,7 @@ public class ReprojectFeatureReader implements DelegatingFeatureReader<SimpleFea
         MathTransform transform) {
         this.reader = reader;
         this.schema = schema;
-        transformer.setMathTransform((MathTransform2D)transform);
+        this.transformer = new BatchGeometryTransformer(transform);
     }
     /**
      * Constructor that will generate schema and mathTransform for the results.
@@ -118,7 +134,7 @@ public class ReprojectFeatureReader implements DelegatingFeatureReader<SimpleFea
         
         this.schema = FeatureTypes.transform(type, cs);
         this.reader = reader;
-        transformer.setMathTransform(CRS.findMathTransform(original, cs, true));
+        this.transformer = new BatchGeometryTransformer(CRS.findMathTransform(original, cs, true));
     }
 
     public FeatureReader<SimpleFeatureType, SimpleFeature> getDelegate() {
@@ -167,21 +183,40 @@ public class ReprojectFeatureReader implements DelegatingFeatureReader<SimpleFea
             throw new IllegalStateException("Reader has already been closed");
         }
 
-        SimpleFeature next = reader.next();
-        Object[] attributes = next.getAttributes().toArray();
-
-        try {
-            for (int i = 0; i < attributes.length; i++) {
-                if (attributes[i] instanceof Geometry) {
-                    attributes[i] = transformer.transform((Geometry) attributes[i]);
-                }
-            }
-        } catch (TransformException e) {
+        if (index == batch.size()) {
+            readBatch();
+        }
+        Object[] attributes = batch.get(index);
+        String id = ids.get(index);
+        batch.set(index, null);
+        if (failures != null && failures[index] != null) {
             throw new DataSourceException("A transformation exception occurred while reprojecting data on the fly",
-                e);
+                failures[index++]);
+        }
+        index++;
+
+        return SimpleFeatureBuilder.build(schema, attributes, id);
+    }
+
+    /**
+     * Reads the next batch of features and reprojects them. The attributes are copied as they
+     * are read, the delegate may be reusing the same feature. A feature that cannot be
+     * reprojected fails only its own call to {@link #next()}.
+     */
+    void readBatch() throws IOException {
+        batch.clear();
+        ids.clear();
+        index = 0;
+        while (batch.size() < BatchGeometryTransformer.DEFAULT_BATCH_SIZE && reader.hasNext()) {
+            SimpleFeature next = reader.next();
+            batch.add(next.getAttributes().toArray());
+            ids.add(next.getID());
+        }
+        if (batch.isEmpty()) {
+            throw new NoSuchElementException("No more features");
         }
 
-        return SimpleFeatureBuilder.build(schema, attributes, next.getID());
+        failures = transformer.transformEach(batch);
     }
 
     /**
@@ -202,7 +237,7 @@ public class ReprojectFeatureReader implements DelegatingFeatureReader<SimpleFea
             throw new IllegalStateException("Reader has already been closed");
         }
 
-        return reader.hasNext();
+        return index < batch.size() || reader.hasNext();
     }
 
     /**
@@ -225,5 +260,7 @@ public class ReprojectFeatureReader implements DelegatingFeatureReader<SimpleFea
         reader.close();
         reader = null;
         schema = null;
+        batch = null;
+        ids = null;
     }
 }
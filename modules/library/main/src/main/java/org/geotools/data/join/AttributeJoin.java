@@ -0,0 +1,298 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.collection.CollectionFeatureSource;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Joins the features of two sources having equal values in a key attribute, for example
+ * relating a shapefile to a lookup table read from a CSV file or a database.
+ * <p>
+ * Example use:
+ * <pre>
+ * AttributeJoin join = new AttributeJoin(states, census, "STATE_FIPS", "fips");
+ * join.setType(AttributeJoin.Type.LEFT_OUTER);
+ * SimpleFeatureSource joined = join.getFeatureSource();
+ * </pre>
+ * Each joined feature combines a left feature with a matching right one, its attributes are
+ * chosen with a {@link JoinTypeBuilder} and its id is the left feature id followed by the right
+ * one, separated by a dash. In a {@link Type#LEFT_OUTER left outer} join the left features
+ * without a match are returned as well, with null right attributes and their own id.
+ * </p>
+ * <p>
+ * The join is a hash join: the side expected to be smaller is loaded in a hash table, and the
+ * other side is streamed against it. If the table grows past {@link #getMaxMemoryFeatures()}
+ * both sides are partitioned by key hash in temporary files, and each partition is then joined
+ * on its own. Keys are compared by value, numbers of different types and their textual
+ * representation match each other, e.g. <code>10</code>, <code>10.0</code> and
+ * <code>"10"</code>.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class AttributeJoin {
+
+    /**
+     * The kind of join
+     */
+    public enum Type {
+        /** Only the features having a match are returned */
+        INNER,
+        /** All left features are returned, matched or not */
+        LEFT_OUTER
+    }
+
+    /**
+     * Default maximum number of features kept in the join hash table
+     */
+    public static final int DEFAULT_MAX_MEMORY_FEATURES = 100000;
+
+    SimpleFeatureSource left;
+
+    SimpleFeatureSource right;
+
+    String leftAttribute;
+
+    String rightAttribute;
+
+    Type type = Type.INNER;
+
+    Query leftQuery = Query.ALL;
+
+    Query rightQuery = Query.ALL;
+
+    JoinTypeBuilder typeBuilder;
+
+    SimpleFeatureType featureType;
+
+    int maxMemoryFeatures = DEFAULT_MAX_MEMORY_FEATURES;
+
+    boolean numericKeys;
+
+    public AttributeJoin(SimpleFeatureSource left, SimpleFeatureSource right,
+            String leftAttribute, String rightAttribute) {
+        this.left = left;
+        this.right = right;
+        this.leftAttribute = leftAttribute;
+        this.rightAttribute = rightAttribute;
+        this.numericKeys = isNumeric(left.getSchema(), leftAttribute)
+                || isNumeric(right.getSchema(), rightAttribute);
+    }
+
+    static boolean isNumeric(SimpleFeatureType schema, String attribute) {
+        AttributeDescriptor ad = schema.getDescriptor(attribute);
+        if (ad == null) {
+            throw new IllegalArgumentException("Attribute " + attribute + " not found in "
+                    + schema.getTypeName());
+        }
+        return Number.class.isAssignableFrom(ad.getType().getBinding());
+    }
+
+    public SimpleFeatureSource getLeft() {
+        return left;
+    }
+
+    public SimpleFeatureSource getRight() {
+        return right;
+    }
+
+    public String getLeftAttribute() {
+        return leftAttribute;
+    }
+
+    public String getRightAttribute() {
+        return rightAttribute;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * The query selecting the left features, only its filter and coordinate reference system
+     * are used
+     */
+    public Query getLeftQuery() {
+        return leftQuery;
+    }
+
+    public void setLeftQuery(Query leftQuery) {
+        this.leftQuery = leftQuery == null ? Query.ALL : leftQuery;
+    }
+
+    /**
+     * The query selecting the right features, only its filter and coordinate reference system
+     * are used
+     */
+    public Query getRightQuery() {
+        return rightQuery;
+    }
+
+    public void setRightQuery(Query rightQuery) {
+        this.rightQuery = rightQuery == null ? Query.ALL : rightQuery;
+    }
+
+    /**
+     * The builder of the joined feature type, by default
+     * {@link JoinTypeBuilder#defaults(SimpleFeatureType, SimpleFeatureType)}
+     */
+    public JoinTypeBuilder getTypeBuilder() {
+        if (typeBuilder == null) {
+            typeBuilder = JoinTypeBuilder.defaults(left.getSchema(), right.getSchema());
+        }
+        return typeBuilder;
+    }
+
+    public void setTypeBuilder(JoinTypeBuilder typeBuilder) {
+        this.typeBuilder = typeBuilder;
+        this.featureType = null;
+    }
+
+    /**
+     * Returns the type of the joined features
+     */
+    public SimpleFeatureType getFeatureType() {
+        if (featureType == null) {
+            featureType = getTypeBuilder().buildFeatureType();
+        }
+        return featureType;
+    }
+
+    /**
+     * The maximum number of features kept in the join hash table, larger joins are partitioned
+     * on disk
+     */
+    public int getMaxMemoryFeatures() {
+        return maxMemoryFeatures;
+    }
+
+    public void setMaxMemoryFeatures(int maxMemoryFeatures) {
+        this.maxMemoryFeatures = maxMemoryFeatures;
+    }
+
+    /**
+     * Returns the joined features. The join is run each time the collection is read.
+     */
+    public SimpleFeatureCollection getFeatures() {
+        GeometryDescriptor gd = getFeatureType().getGeometryDescriptor();
+        CoordinateReferenceSystem crs = gd != null ? gd.getCoordinateReferenceSystem() : null;
+        return new JoinFeatureCollection(getFeatureType(), crs) {
+            @Override
+            public FeatureReader<SimpleFeatureType, SimpleFeature> reader() throws IOException {
+                return new HashJoinReader(AttributeJoin.this);
+            }
+        };
+    }
+
+    /**
+     * Returns a feature source over the joined features, which can be queried like any other
+     * source, e.g. by the renderer
+     */
+    public SimpleFeatureSource getFeatureSource() {
+        return new CollectionFeatureSource(getFeatures());
+    }
+
+    /**
+     * Builds the query loading one side of the join, with the attributes the join needs
+     */
+    Query getSourceQuery(boolean fromLeft) {
+        Query original = fromLeft ? leftQuery : rightQuery;
+        SimpleFeatureSource source = fromLeft ? left : right;
+        DefaultQuery query = new DefaultQuery(original);
+        query.setTypeName(source.getSchema().getTypeName());
+        query.setSortBy(null);
+        query.setStartIndex(null);
+        query.setMaxFeatures(Query.DEFAULT_MAX);
+
+        Set<String> names = new LinkedHashSet<String>();
+        names.add(fromLeft ? leftAttribute : rightAttribute);
+        for (JoinTypeBuilder.Mapping mapping : getTypeBuilder().getMappings()) {
+            if (mapping.isFromLeft() == fromLeft) {
+                names.add(mapping.getDescriptor().getLocalName());
+            }
+        }
+        query.setPropertyNames(names.toArray(new String[names.size()]));
+        return query;
+    }
+
+    /**
+     * Returns the hash table key of a feature, or null if the feature cannot match anything
+     */
+    Object getKey(SimpleFeature feature, boolean fromLeft) {
+        Object value = feature.getAttribute(fromLeft ? leftAttribute : rightAttribute);
+        if (value == null || !numericKeys) {
+            return value;
+        }
+        if (!(value instanceof Number)) {
+            value = Converters.convert(value, Double.class);
+            if (value == null) {
+                return null;
+            }
+        }
+        // normalize the numbers so that equal values of different types match
+        if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return Long.valueOf(((Number) value).longValue());
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return Long.valueOf(((BigInteger) value).longValue());
+        }
+        double d = ((Number) value).doubleValue();
+        if (d == Math.rint(d) && Math.abs(d) < Long.MAX_VALUE) {
+            return Long.valueOf((long) d);
+        }
+        return Double.valueOf(d);
+    }
+
+    /**
+     * Builds the joined feature out of a left and right feature, the latter being null for
+     * unmatched features of outer joins
+     */
+    SimpleFeature buildFeature(SimpleFeatureBuilder builder, SimpleFeature leftFeature,
+            SimpleFeature rightFeature) {
+        for (JoinTypeBuilder.Mapping mapping : getTypeBuilder().getMappings()) {
+            SimpleFeature source = mapping.isFromLeft() ? leftFeature : rightFeature;
+            builder.add(source == null ? null : source.getAttribute(mapping.getDescriptor()
+                    .getLocalName()));
+        }
+        if (rightFeature == null) {
+            return builder.buildFeature(leftFeature.getID());
+        }
+        return builder.buildFeature(leftFeature.getID() + "-" + rightFeature.getID());
+    }
+}
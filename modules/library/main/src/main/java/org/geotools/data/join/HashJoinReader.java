@@ -0,0 +1,317 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.collection.OffHeapFeatureCodec;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Runs an {@link AttributeJoin} as a hash join.
+ * <p>
+ * The build side, the smaller one when both sizes are known, the right one otherwise, is
+ * loaded in a hash table keyed by the join attribute, then the probe side is streamed against
+ * it. When the table grows past the memory limit the build features are moved to partition
+ * files, chosen by key hash, and so are the probe features. Each pair of partition files is
+ * then joined in memory.
+ * </p>
+ * <p>
+ * For left outer joins the unmatched left features are returned while probing when the left
+ * side is the probe side, or once the probe side is exhausted when it's the build side.
+ * </p>
+ *
+ * @source $URL$
+ */
+class HashJoinReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    /**
+     * Maximum number of partitions, each is an open file while partitioning
+     */
+    static final int MAX_PARTITIONS = 256;
+
+    AttributeJoin join;
+
+    SimpleFeatureBuilder builder;
+
+    boolean buildLeft;
+
+    boolean outer;
+
+    Map<Object, List<BuildEntry>> table = new HashMap<Object, List<BuildEntry>>();
+
+    /**
+     * All the build features, to move them to partitions, or return the unmatched ones
+     */
+    List<BuildEntry> entries = new ArrayList<BuildEntry>();
+
+    SimpleFeatureIterator probe;
+
+    SpillFile[] buildPartitions;
+
+    SpillFile[] probePartitions;
+
+    int partition = -1;
+
+    LinkedList<SimpleFeature> pending = new LinkedList<SimpleFeature>();
+
+    /**
+     * A feature of the build side
+     */
+    static class BuildEntry {
+        SimpleFeature feature;
+
+        boolean matched;
+
+        BuildEntry(SimpleFeature feature) {
+            this.feature = feature;
+        }
+    }
+
+    HashJoinReader(AttributeJoin join) throws IOException {
+        this.join = join;
+        this.builder = new SimpleFeatureBuilder(join.getFeatureType());
+        this.outer = join.getType() == AttributeJoin.Type.LEFT_OUTER;
+
+        Query leftQuery = join.getSourceQuery(true);
+        Query rightQuery = join.getSourceQuery(false);
+        int leftCount = join.getLeft().getCount(leftQuery);
+        int rightCount = join.getRight().getCount(rightQuery);
+        buildLeft = leftCount >= 0 && rightCount >= 0 && leftCount < rightCount;
+        int buildCount = buildLeft ? leftCount : rightCount;
+
+        try {
+            load(buildLeft ? join.getLeft().getFeatures(leftQuery) : join.getRight().getFeatures(
+                    rightQuery), buildCount);
+            SimpleFeatureCollection probeFeatures = buildLeft ? join.getRight().getFeatures(
+                    rightQuery) : join.getLeft().getFeatures(leftQuery);
+            if (buildPartitions == null) {
+                probe = probeFeatures.features();
+            } else {
+                partitionProbe(probeFeatures);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the build side in the hash table, moving to partitions if it gets too large
+     */
+    void load(SimpleFeatureCollection features, int count) throws IOException {
+        int max = Math.max(1, join.getMaxMemoryFeatures());
+        boolean canSpill = OffHeapFeatureCodec.canEncode(join.getLeft().getSchema())
+                && OffHeapFeatureCodec.canEncode(join.getRight().getSchema());
+        SimpleFeatureIterator fi = features.features();
+        try {
+            int loaded = 0;
+            while (fi.hasNext()) {
+                SimpleFeature feature = fi.next();
+                Object key = join.getKey(feature, buildLeft);
+                if (key == null && !(outer && buildLeft)) {
+                    // can never be part of the output
+                    continue;
+                }
+                if (buildPartitions != null) {
+                    buildPartitions[partition(key)].write(feature);
+                    continue;
+                }
+                add(feature, key);
+                if (++loaded > max && canSpill) {
+                    int partitions = count > 0 ? (int) Math.ceil(2.0 * count / max) : 16;
+                    partitions = Math.min(MAX_PARTITIONS, Math.max(2, partitions));
+                    if (SpatialJoin.LOGGER.isLoggable(Level.FINE)) {
+                        SpatialJoin.LOGGER.fine("Join table larger than " + max
+                                + " features, partitioning it in " + partitions + " files");
+                    }
+                    buildPartitions = new SpillFile[partitions];
+                    for (int i = 0; i < partitions; i++) {
+                        buildPartitions[i] = new SpillFile(features.getSchema());
+                    }
+                    for (BuildEntry entry : entries) {
+                        Object k = join.getKey(entry.feature, buildLeft);
+                        buildPartitions[partition(k)].write(entry.feature);
+                    }
+                    table.clear();
+                    entries.clear();
+                }
+            }
+        } finally {
+            fi.close();
+        }
+        if (buildPartitions != null) {
+            for (SpillFile file : buildPartitions) {
+                file.finish();
+            }
+        }
+    }
+
+    void add(SimpleFeature feature, Object key) {
+        BuildEntry entry = new BuildEntry(feature);
+        entries.add(entry);
+        if (key != null) {
+            List<BuildEntry> matches = table.get(key);
+            if (matches == null) {
+                matches = new ArrayList<BuildEntry>(1);
+                table.put(key, matches);
+            }
+            matches.add(entry);
+        }
+    }
+
+    /**
+     * Moves the probe side to the partition files
+     */
+    void partitionProbe(SimpleFeatureCollection features) throws IOException {
+        probePartitions = new SpillFile[buildPartitions.length];
+        for (int i = 0; i < probePartitions.length; i++) {
+            probePartitions[i] = new SpillFile(features.getSchema());
+        }
+        SimpleFeatureIterator fi = features.features();
+        try {
+            while (fi.hasNext()) {
+                SimpleFeature feature = fi.next();
+                Object key = join.getKey(feature, !buildLeft);
+                if (key == null && !(outer && !buildLeft)) {
+                    continue;
+                }
+                probePartitions[partition(key)].write(feature);
+            }
+        } finally {
+            fi.close();
+        }
+        for (SpillFile file : probePartitions) {
+            file.finish();
+        }
+    }
+
+    /**
+     * Picks the partition of a key. The hash is scrambled, or the keys of a partition would end
+     * up in a few buckets of the partition hash table
+     */
+    int partition(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h >>> 8) % buildPartitions.length;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return join.getFeatureType();
+    }
+
+    public boolean hasNext() throws IOException {
+        while (pending.isEmpty()) {
+            if (probe != null && probe.hasNext()) {
+                probe(probe.next());
+            } else if (probe != null) {
+                probe.close();
+                probe = null;
+                if (outer && buildLeft) {
+                    for (BuildEntry entry : entries) {
+                        if (!entry.matched) {
+                            pending.add(join.buildFeature(builder, entry.feature, null));
+                        }
+                    }
+                }
+                table.clear();
+                entries.clear();
+            } else if (buildPartitions != null && partition < buildPartitions.length - 1) {
+                nextPartition();
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void nextPartition() {
+        partition++;
+        SpillFile build = buildPartitions[partition];
+        try {
+            while (build.hasNext()) {
+                SimpleFeature feature = build.next();
+                add(feature, join.getKey(feature, buildLeft));
+            }
+        } finally {
+            build.close();
+        }
+        probe = probePartitions[partition];
+    }
+
+    void probe(SimpleFeature feature) {
+        Object key = join.getKey(feature, !buildLeft);
+        List<BuildEntry> matches = key != null ? table.get(key) : null;
+        if (matches != null) {
+            for (BuildEntry entry : matches) {
+                entry.matched = true;
+                if (buildLeft) {
+                    pending.add(join.buildFeature(builder, entry.feature, feature));
+                } else {
+                    pending.add(join.buildFeature(builder, feature, entry.feature));
+                }
+            }
+        } else if (outer && !buildLeft) {
+            pending.add(join.buildFeature(builder, feature, null));
+        }
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more joined features");
+        }
+        return pending.removeFirst();
+    }
+
+    public void close() throws IOException {
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+        for (SpillFile[] files : new SpillFile[][] { buildPartitions, probePartitions }) {
+            if (files != null) {
+                for (SpillFile file : files) {
+                    file.close();
+                }
+            }
+        }
+        buildPartitions = null;
+        probePartitions = null;
+        table.clear();
+        entries.clear();
+        pending.clear();
+    }
+}
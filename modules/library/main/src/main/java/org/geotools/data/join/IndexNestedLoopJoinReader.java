@@ -0,0 +1,205 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Joins by loading the right features in a STR tree, and then streaming the left ones against
+ * it.
+ * <p>
+ * When a tile is provided only the features overlapping it are read, and only the pairs whose
+ * reference point falls in the tile are returned, so that joining all the tiles of a grid
+ * returns each pair exactly once. The reference point is the lower left corner of the
+ * intersection between the left envelope, expanded by the join distance, and the right one.
+ * </p>
+ *
+ * @source $URL$
+ */
+class IndexNestedLoopJoinReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    SpatialJoin join;
+
+    SimpleFeatureType featureType;
+
+    SimpleFeatureBuilder builder;
+
+    STRtree index;
+
+    SimpleFeatureIterator leftFeatures;
+
+    String leftGeometry;
+
+    double distance;
+
+    ReferencedEnvelope tile;
+
+    boolean lastColumn;
+
+    boolean lastRow;
+
+    LinkedList<SimpleFeature> pending = new LinkedList<SimpleFeature>();
+
+    /**
+     * Opens a reader joining all the features
+     */
+    static IndexNestedLoopJoinReader open(SpatialJoin join) throws IOException {
+        return open(join, null, false, false);
+    }
+
+    /**
+     * Opens a reader joining the features overlapping the tile, the flags tell if the tile is
+     * on the last column or row of the grid
+     */
+    static IndexNestedLoopJoinReader open(SpatialJoin join, ReferencedEnvelope tile,
+            boolean lastColumn, boolean lastRow) throws IOException {
+        IndexNestedLoopJoinReader reader = new IndexNestedLoopJoinReader(join, tile);
+        reader.lastColumn = lastColumn;
+        reader.lastRow = lastRow;
+        try {
+            reader.loadIndex();
+            if (reader.index.size() > 0) {
+                reader.openLeft();
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        } catch (RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    IndexNestedLoopJoinReader(SpatialJoin join, ReferencedEnvelope tile) {
+        this.join = join;
+        this.featureType = join.getFeatureType();
+        this.builder = new SimpleFeatureBuilder(featureType);
+        this.leftGeometry = join.getLeftGeometry();
+        this.distance = join.getPredicate() == SpatialJoin.Predicate.DWITHIN ? join.getDistance()
+                : 0;
+        this.tile = tile;
+    }
+
+    void loadIndex() throws IOException {
+        index = new STRtree();
+        Filter filter = Filter.INCLUDE;
+        if (tile != null) {
+            filter = join.getBBoxFilter(false, tile);
+        }
+        String rightGeometry = join.getRightGeometry();
+        SimpleFeatureIterator fi = join.getRight().getFeatures(join.getSourceQuery(false, filter))
+                .features();
+        try {
+            while (fi.hasNext()) {
+                SimpleFeature f = fi.next();
+                Geometry g = (Geometry) f.getAttribute(rightGeometry);
+                if (g != null && !g.isEmpty()) {
+                    index.insert(g.getEnvelopeInternal(), new IndexedFeature(f, g));
+                }
+            }
+        } finally {
+            fi.close();
+        }
+        index.build();
+    }
+
+    void openLeft() throws IOException {
+        Filter filter = Filter.INCLUDE;
+        if (tile != null) {
+            ReferencedEnvelope area = new ReferencedEnvelope(tile);
+            area.expandBy(distance);
+            filter = join.getBBoxFilter(true, area);
+        }
+        leftFeatures = join.getLeft().getFeatures(join.getSourceQuery(true, filter)).features();
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        while (pending.isEmpty() && leftFeatures != null && leftFeatures.hasNext()) {
+            joinFeature(leftFeatures.next());
+        }
+        return !pending.isEmpty();
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more joined features");
+        }
+        return pending.removeFirst();
+    }
+
+    @SuppressWarnings("unchecked")
+    void joinFeature(SimpleFeature leftFeature) {
+        Geometry g = (Geometry) leftFeature.getAttribute(leftGeometry);
+        if (g == null || g.isEmpty()) {
+            return;
+        }
+        Envelope envelope = new Envelope(g.getEnvelopeInternal());
+        if (distance > 0) {
+            envelope.expandBy(distance);
+        }
+        List<IndexedFeature> candidates = index.query(envelope);
+        for (IndexedFeature candidate : candidates) {
+            if (tile != null && !isInTile(envelope, candidate.geometry.getEnvelopeInternal())) {
+                continue;
+            }
+            if (join.matches(g, candidate)) {
+                pending.add(join.buildFeature(builder, leftFeature, candidate.feature));
+            }
+        }
+    }
+
+    /**
+     * Checks if the reference point of the pair falls in the tile. Tiles contain their lower
+     * and left edges, the tiles at the end of the grid contain their upper and right ones too.
+     */
+    boolean isInTile(Envelope left, Envelope right) {
+        double x = Math.max(left.getMinX(), right.getMinX());
+        double y = Math.max(left.getMinY(), right.getMinY());
+        return x >= tile.getMinX() && (x < tile.getMaxX() || lastColumn && x == tile.getMaxX())
+                && y >= tile.getMinY() && (y < tile.getMaxY() || lastRow && y == tile.getMaxY());
+    }
+
+    public void close() throws IOException {
+        if (leftFeatures != null) {
+            leftFeatures.close();
+            leftFeatures = null;
+        }
+        index = null;
+        pending.clear();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * A right feature stored in the join index. The geometry is prepared the first time it's
+ * tested, features never matched don't pay for it.
+ *
+ * @source $URL$
+ */
+class IndexedFeature {
+
+    static final PreparedGeometryFactory PREPARED_FACTORY = new PreparedGeometryFactory();
+
+    SimpleFeature feature;
+
+    Geometry geometry;
+
+    PreparedGeometry prepared;
+
+    IndexedFeature(SimpleFeature feature, Geometry geometry) {
+        this.feature = feature;
+        this.geometry = geometry;
+    }
+
+    PreparedGeometry getPrepared() {
+        if (prepared == null) {
+            prepared = PREPARED_FACTORY.create(geometry);
+        }
+        return prepared;
+    }
+}
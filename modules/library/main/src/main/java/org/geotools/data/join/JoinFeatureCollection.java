@@ -0,0 +1,95 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.util.logging.Level;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.store.DataFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * The features returned by a join, the join is run every time the collection is read.
+ *
+ * @source $URL$
+ */
+abstract class JoinFeatureCollection extends DataFeatureCollection {
+
+    CoordinateReferenceSystem crs;
+
+    JoinFeatureCollection(SimpleFeatureType featureType, CoordinateReferenceSystem crs) {
+        super(null, featureType);
+        this.crs = crs;
+    }
+
+    /**
+     * Runs the join
+     */
+    @Override
+    public abstract FeatureReader<SimpleFeatureType, SimpleFeature> reader() throws IOException;
+
+    @Override
+    public ReferencedEnvelope getBounds() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(crs);
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = null;
+        try {
+            reader = reader();
+            while (reader.hasNext()) {
+                BoundingBox featureBounds = reader.next().getBounds();
+                if (!featureBounds.isEmpty()) {
+                    bounds.include(featureBounds);
+                }
+            }
+        } catch (IOException e) {
+            SpatialJoin.LOGGER.log(Level.WARNING, "Failed to compute the joined features bounds",
+                    e);
+        } finally {
+            close(reader);
+        }
+        return bounds;
+    }
+
+    @Override
+    public int getCount() throws IOException {
+        int count = 0;
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = reader();
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+                count++;
+            }
+        } finally {
+            close(reader);
+        }
+        return count;
+    }
+
+    void close(FeatureReader<SimpleFeatureType, SimpleFeature> reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                SpatialJoin.LOGGER.log(Level.FINE, "Failed to close the join reader", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Builds the feature type returned by a {@link SpatialJoin} or an {@link AttributeJoin},
+ * picking attributes from the left and right feature types.
+ * <p>
+ * Example use:
+ * <pre>
+ * JoinTypeBuilder builder = new JoinTypeBuilder(parcels, districts);
+ * builder.setName("parcel_districts");
+ * builder.addLeft("the_geom");
+ * builder.addLeft("parcel_id");
+ * builder.addRight("name", "district");
+ * </pre>
+ * The first geometry attribute added becomes the default geometry of the joined type.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class JoinTypeBuilder {
+
+    SimpleFeatureType left;
+
+    SimpleFeatureType right;
+
+    String name;
+
+    /**
+     * The attributes of the joined type, in order
+     */
+    List<Mapping> mappings = new ArrayList<Mapping>();
+
+    public JoinTypeBuilder(SimpleFeatureType left, SimpleFeatureType right) {
+        this.left = left;
+        this.right = right;
+        this.name = left.getTypeName() + "_" + right.getTypeName();
+    }
+
+    /**
+     * Returns a builder exposing all the left attributes, followed by the non geometric right
+     * ones. Right attributes whose name is already used are prefixed with the right type name.
+     */
+    public static JoinTypeBuilder defaults(SimpleFeatureType left, SimpleFeatureType right) {
+        JoinTypeBuilder builder = new JoinTypeBuilder(left, right);
+        Set<String> names = new HashSet<String>();
+        for (AttributeDescriptor ad : left.getAttributeDescriptors()) {
+            builder.addLeft(ad.getLocalName());
+            names.add(ad.getLocalName());
+        }
+        for (AttributeDescriptor ad : right.getAttributeDescriptors()) {
+            if (ad instanceof GeometryDescriptor) {
+                continue;
+            }
+            String alias = ad.getLocalName();
+            if (names.contains(alias)) {
+                alias = right.getTypeName() + "_" + alias;
+            }
+            builder.addRight(ad.getLocalName(), alias);
+            names.add(alias);
+        }
+        return builder;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a left attribute with its own name
+     */
+    public void addLeft(String attribute) {
+        addLeft(attribute, attribute);
+    }
+
+    /**
+     * Adds a left attribute, renaming it to <code>alias</code> in the joined type
+     */
+    public void addLeft(String attribute, String alias) {
+        add(true, attribute, alias);
+    }
+
+    /**
+     * Adds a right attribute with its own name
+     */
+    public void addRight(String attribute) {
+        addRight(attribute, attribute);
+    }
+
+    /**
+     * Adds a right attribute, renaming it to <code>alias</code> in the joined type
+     */
+    public void addRight(String attribute, String alias) {
+        add(false, attribute, alias);
+    }
+
+    void add(boolean fromLeft, String attribute, String alias) {
+        SimpleFeatureType source = fromLeft ? left : right;
+        AttributeDescriptor descriptor = source.getDescriptor(attribute);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("Attribute " + attribute + " not found in "
+                    + source.getTypeName());
+        }
+        for (Mapping mapping : mappings) {
+            if (mapping.alias.equals(alias)) {
+                throw new IllegalArgumentException("Attribute " + alias + " is already part of "
+                        + "the joined type");
+            }
+        }
+        mappings.add(new Mapping(fromLeft, descriptor, alias));
+    }
+
+    /**
+     * Returns the joined feature type
+     */
+    public SimpleFeatureType buildFeatureType() {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName(name);
+        tb.setNamespaceURI(left.getName().getNamespaceURI());
+        String defaultGeometry = null;
+        for (Mapping mapping : mappings) {
+            AttributeTypeBuilder ab = new AttributeTypeBuilder();
+            ab.init(mapping.descriptor);
+            tb.add(ab.buildDescriptor(mapping.alias));
+            if (defaultGeometry == null && mapping.descriptor instanceof GeometryDescriptor) {
+                defaultGeometry = mapping.alias;
+            }
+        }
+        if (defaultGeometry != null) {
+            tb.setDefaultGeometry(defaultGeometry);
+        }
+        return tb.buildFeatureType();
+    }
+
+    /**
+     * Returns the source of each attribute of the joined type
+     */
+    public List<Mapping> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * Links an attribute of the joined type to its source
+     */
+    public static class Mapping {
+        boolean fromLeft;
+
+        AttributeDescriptor descriptor;
+
+        String alias;
+
+        Mapping(boolean fromLeft, AttributeDescriptor descriptor, String alias) {
+            this.fromLeft = fromLeft;
+            this.descriptor = descriptor;
+            this.alias = alias;
+        }
+
+        /**
+         * True if the attribute comes from the left feature type, false if it comes from the
+         * right one
+         */
+        public boolean isFromLeft() {
+            return fromLeft;
+        }
+
+        /**
+         * The source attribute
+         */
+        public AttributeDescriptor getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * The name of the attribute in the joined type
+         */
+        public String getAlias() {
+            return alias;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * Joins by splitting the area covered by the left features in a grid, and running an index
+ * nested loop join on each tile. Only the right features overlapping a tile are loaded in
+ * memory at any given time.
+ * <p>
+ * The grid is sized so that, assuming an even distribution, each tile holds about a quarter of
+ * the {@link SpatialJoin#getMaxIndexSize() maximum index size}. Features overlapping several
+ * tiles are read once per tile, the pairs they generate are returned by one tile only.
+ * </p>
+ *
+ * @source $URL$
+ */
+class PartitionJoinReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    SpatialJoin join;
+
+    ReferencedEnvelope extent;
+
+    int tiles;
+
+    int current = -1;
+
+    IndexNestedLoopJoinReader delegate;
+
+    PartitionJoinReader(SpatialJoin join) throws IOException {
+        this.join = join;
+
+        Query leftQuery = join.getSourceQuery(true, Filter.INCLUDE);
+        ReferencedEnvelope bounds = join.getLeft().getBounds(leftQuery);
+        if (bounds == null) {
+            SimpleFeatureCollection features = join.getLeft().getFeatures(leftQuery);
+            bounds = features.getBounds();
+        }
+        if (bounds != null && !bounds.isEmpty()) {
+            extent = new ReferencedEnvelope(bounds);
+            if (join.getPredicate() == SpatialJoin.Predicate.DWITHIN) {
+                extent.expandBy(join.getDistance());
+            }
+            int count = join.getRight().getCount(join.getSourceQuery(false, Filter.INCLUDE));
+            if (count < 0) {
+                count = join.getRight().getFeatures(join.getSourceQuery(false, Filter.INCLUDE))
+                        .size();
+            }
+            int maxIndexSize = Math.max(1, join.getMaxIndexSize());
+            tiles = Math.max(2, (int) Math.ceil(Math.sqrt(4.0 * count / maxIndexSize)));
+            if (SpatialJoin.LOGGER.isLoggable(java.util.logging.Level.FINE)) {
+                SpatialJoin.LOGGER.fine("Partitioning the join area " + extent + " in " + tiles
+                        + "x" + tiles + " tiles");
+            }
+        }
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return join.getFeatureType();
+    }
+
+    public boolean hasNext() throws IOException {
+        while (delegate == null || !delegate.hasNext()) {
+            if (delegate != null) {
+                delegate.close();
+                delegate = null;
+            }
+            if (extent == null || current >= tiles * tiles - 1) {
+                return false;
+            }
+            current++;
+            delegate = IndexNestedLoopJoinReader.open(join, getTile(current),
+                    current % tiles == tiles - 1, current / tiles == tiles - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the envelope of the specified tile, the tiles at the end of the grid are aligned
+     * to the grid extent to avoid rounding errors
+     */
+    ReferencedEnvelope getTile(int i) {
+        int col = i % tiles;
+        int row = i / tiles;
+        double w = extent.getWidth() / tiles;
+        double h = extent.getHeight() / tiles;
+        double minX = extent.getMinX() + col * w;
+        double maxX = col == tiles - 1 ? extent.getMaxX() : extent.getMinX() + (col + 1) * w;
+        double minY = extent.getMinY() + row * h;
+        double maxY = row == tiles - 1 ? extent.getMaxY() : extent.getMinY() + (row + 1) * h;
+        return new ReferencedEnvelope(minX, maxX, minY, maxY, extent
+                .getCoordinateReferenceSystem());
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more joined features");
+        }
+        return delegate.next();
+    }
+
+    public void close() throws IOException {
+        if (delegate != null) {
+            delegate.close();
+            delegate = null;
+        }
+        current = tiles * tiles;
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataAccess;
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.collection.CollectionFeatureSource;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Joins the features of two sources whose geometries satisfy a spatial predicate, for example
+ * assigning each parcel to the district it falls within.
+ * <p>
+ * Example use:
+ * <pre>
+ * SpatialJoin join = new SpatialJoin(parcels, districts, SpatialJoin.Predicate.WITHIN);
+ * SimpleFeatureCollection joined = join.getFeatures();
+ * </pre>
+ * Each joined feature combines a left feature with a matching right one, its attributes are
+ * chosen with a {@link JoinTypeBuilder} and its id is the left feature id followed by the
+ * right one, separated by a dash.
+ * </p>
+ * <p>
+ * The join is run with one of the following strategies:
+ * <ul>
+ * <li>{@link Strategy#PUSHDOWN}: when both sources come from the same store, and the store
+ * implements {@link SpatialJoinSupport}, the store runs the whole join, e.g. as a single SQL
+ * query</li>
+ * <li>{@link Strategy#INDEX_NESTED_LOOP}: the right features are loaded in a memory spatial
+ * index, the left features are streamed and matched against it</li>
+ * <li>{@link Strategy#PARTITION}: the area covered by the left features is split in a grid,
+ * each tile is joined as above loading only the right features overlapping it</li>
+ * </ul>
+ * By default the strategy is picked automatically, preferring the pushdown, then the index
+ * nested loop when the right side has no more than {@link #getMaxIndexSize()} features.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class SpatialJoin {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data.join");
+
+    static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    /**
+     * The spatial relationship between the left and right geometries
+     */
+    public enum Predicate {
+        /** The geometries intersect */
+        INTERSECTS,
+        /** The left geometry is within the right one */
+        WITHIN,
+        /** The geometries are within the join distance */
+        DWITHIN
+    }
+
+    /**
+     * How the join is run
+     */
+    public enum Strategy {
+        AUTO, PUSHDOWN, INDEX_NESTED_LOOP, PARTITION
+    }
+
+    /**
+     * Default number of right features the index nested loop strategy loads in memory
+     */
+    public static final int DEFAULT_MAX_INDEX_SIZE = 100000;
+
+    SimpleFeatureSource left;
+
+    SimpleFeatureSource right;
+
+    Predicate predicate;
+
+    double distance;
+
+    Query leftQuery = Query.ALL;
+
+    Query rightQuery = Query.ALL;
+
+    String leftGeometry;
+
+    String rightGeometry;
+
+    JoinTypeBuilder typeBuilder;
+
+    SimpleFeatureType featureType;
+
+    Strategy strategy = Strategy.AUTO;
+
+    int maxIndexSize = DEFAULT_MAX_INDEX_SIZE;
+
+    public SpatialJoin(SimpleFeatureSource left, SimpleFeatureSource right, Predicate predicate) {
+        this.left = left;
+        this.right = right;
+        this.predicate = predicate;
+        this.leftGeometry = geometryName(left.getSchema());
+        this.rightGeometry = geometryName(right.getSchema());
+    }
+
+    static String geometryName(SimpleFeatureType schema) {
+        GeometryDescriptor gd = schema.getGeometryDescriptor();
+        if (gd == null) {
+            throw new IllegalArgumentException(schema.getTypeName() + " has no geometry");
+        }
+        return gd.getLocalName();
+    }
+
+    public SimpleFeatureSource getLeft() {
+        return left;
+    }
+
+    public SimpleFeatureSource getRight() {
+        return right;
+    }
+
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * The distance used by {@link Predicate#DWITHIN}, in the units of the left coordinate
+     * reference system
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * The query selecting the left features, only its filter and coordinate reference system
+     * are used
+     */
+    public Query getLeftQuery() {
+        return leftQuery;
+    }
+
+    public void setLeftQuery(Query leftQuery) {
+        this.leftQuery = leftQuery == null ? Query.ALL : leftQuery;
+    }
+
+    /**
+     * The query selecting the right features, only its filter is used. The right features are
+     * reprojected to the left coordinate reference system if needed
+     */
+    public Query getRightQuery() {
+        return rightQuery;
+    }
+
+    public void setRightQuery(Query rightQuery) {
+        this.rightQuery = rightQuery == null ? Query.ALL : rightQuery;
+    }
+
+    /**
+     * The left geometry the predicate is evaluated on, the default geometry unless otherwise
+     * specified
+     */
+    public String getLeftGeometry() {
+        return leftGeometry;
+    }
+
+    public void setLeftGeometry(String leftGeometry) {
+        this.leftGeometry = leftGeometry;
+    }
+
+    public String getRightGeometry() {
+        return rightGeometry;
+    }
+
+    public void setRightGeometry(String rightGeometry) {
+        this.rightGeometry = rightGeometry;
+    }
+
+    /**
+     * The builder of the joined feature type, by default
+     * {@link JoinTypeBuilder#defaults(SimpleFeatureType, SimpleFeatureType)}
+     */
+    public JoinTypeBuilder getTypeBuilder() {
+        if (typeBuilder == null) {
+            typeBuilder = JoinTypeBuilder.defaults(left.getSchema(), right.getSchema());
+        }
+        return typeBuilder;
+    }
+
+    public void setTypeBuilder(JoinTypeBuilder typeBuilder) {
+        this.typeBuilder = typeBuilder;
+        this.featureType = null;
+    }
+
+    /**
+     * Returns the type of the joined features
+     */
+    public SimpleFeatureType getFeatureType() {
+        if (featureType == null) {
+            featureType = getTypeBuilder().buildFeatureType();
+        }
+        return featureType;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * The maximum number of right features loaded in memory at any given time, by the index
+     * nested loop join, or in each tile of the partitioned join
+     */
+    public int getMaxIndexSize() {
+        return maxIndexSize;
+    }
+
+    public void setMaxIndexSize(int maxIndexSize) {
+        this.maxIndexSize = maxIndexSize;
+    }
+
+    /**
+     * Returns the joined features. The join is run each time the collection is read.
+     */
+    public SimpleFeatureCollection getFeatures() {
+        return new JoinFeatureCollection(getFeatureType(), getCRS()) {
+            @Override
+            public FeatureReader<SimpleFeatureType, SimpleFeature> reader() throws IOException {
+                return SpatialJoin.this.reader();
+            }
+        };
+    }
+
+    /**
+     * Returns a feature source over the joined features, which can be queried like any other
+     * source, e.g. by the renderer
+     */
+    public SimpleFeatureSource getFeatureSource() {
+        return new CollectionFeatureSource(getFeatures());
+    }
+
+    /**
+     * Opens a reader over the joined features, with the configured strategy
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> reader() throws IOException {
+        Strategy actual = strategy;
+        if (actual == Strategy.AUTO || actual == Strategy.PUSHDOWN) {
+            DataAccess store = getDataStore(left);
+            if (store instanceof SpatialJoinSupport && store == getDataStore(right)) {
+                FeatureReader<SimpleFeatureType, SimpleFeature> reader = ((SpatialJoinSupport) store)
+                        .getJoinReader(this);
+                if (reader != null) {
+                    return reader;
+                }
+            }
+            if (actual == Strategy.PUSHDOWN) {
+                throw new IOException("The join cannot be run by the data store");
+            }
+        }
+
+        if (actual == Strategy.AUTO) {
+            int count = right.getCount(getSourceQuery(false, Filter.INCLUDE));
+            if (count < 0) {
+                count = right.getFeatures(getSourceQuery(false, Filter.INCLUDE)).size();
+            }
+            actual = count <= maxIndexSize ? Strategy.INDEX_NESTED_LOOP : Strategy.PARTITION;
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Joining " + left.getSchema().getTypeName() + " and "
+                        + right.getSchema().getTypeName() + " with strategy " + actual
+                        + ", " + count + " right features");
+            }
+        }
+
+        if (actual == Strategy.INDEX_NESTED_LOOP) {
+            return IndexNestedLoopJoinReader.open(this);
+        } else {
+            return new PartitionJoinReader(this);
+        }
+    }
+
+    /**
+     * Returns the store of the source, or null for sources not backed by a store, such as the
+     * collection ones
+     */
+    static DataAccess getDataStore(SimpleFeatureSource source) {
+        try {
+            return source.getDataStore();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The coordinate reference system of the joined features
+     */
+    CoordinateReferenceSystem getCRS() {
+        if (leftQuery.getCoordinateSystemReproject() != null) {
+            return leftQuery.getCoordinateSystemReproject();
+        } else if (leftQuery.getCoordinateSystem() != null) {
+            return leftQuery.getCoordinateSystem();
+        }
+        return left.getSchema().getDescriptor(leftGeometry) instanceof GeometryDescriptor ? ((GeometryDescriptor) left
+                .getSchema().getDescriptor(leftGeometry)).getCoordinateReferenceSystem()
+                : null;
+    }
+
+    /**
+     * Builds the query loading one side of the join, with the attributes the join needs and an
+     * additional filter
+     */
+    Query getSourceQuery(boolean fromLeft, Filter filter) {
+        Query original = fromLeft ? leftQuery : rightQuery;
+        SimpleFeatureSource source = fromLeft ? left : right;
+        DefaultQuery query = new DefaultQuery(original);
+        query.setTypeName(source.getSchema().getTypeName());
+        query.setSortBy(null);
+        query.setStartIndex(null);
+        query.setMaxFeatures(Query.DEFAULT_MAX);
+
+        Set<String> names = new LinkedHashSet<String>();
+        names.add(fromLeft ? leftGeometry : rightGeometry);
+        for (JoinTypeBuilder.Mapping mapping : getTypeBuilder().getMappings()) {
+            if (mapping.isFromLeft() == fromLeft) {
+                names.add(mapping.getDescriptor().getLocalName());
+            }
+        }
+        query.setPropertyNames(names.toArray(new String[names.size()]));
+
+        if (filter != Filter.INCLUDE) {
+            Filter base = original.getFilter();
+            query.setFilter(base == null || base == Filter.INCLUDE ? filter : ff.and(base, filter));
+        }
+
+        if (!fromLeft) {
+            CoordinateReferenceSystem target = getCRS();
+            CoordinateReferenceSystem native_ = getNativeCRS(false);
+            if (target != null && native_ != null && !CRS.equalsIgnoreMetadata(target, native_)) {
+                query.setCoordinateSystemReproject(target);
+            }
+        }
+        return query;
+    }
+
+    CoordinateReferenceSystem getNativeCRS(boolean fromLeft) {
+        SimpleFeatureType schema = fromLeft ? left.getSchema() : right.getSchema();
+        GeometryDescriptor gd = (GeometryDescriptor) schema.getDescriptor(fromLeft ? leftGeometry
+                : rightGeometry);
+        return gd.getCoordinateReferenceSystem();
+    }
+
+    /**
+     * Returns a filter selecting the features of one side overlapping the envelope, expressed
+     * in the joined features coordinate reference system
+     */
+    Filter getBBoxFilter(boolean fromLeft, ReferencedEnvelope envelope) throws IOException {
+        CoordinateReferenceSystem native_ = getNativeCRS(fromLeft);
+        ReferencedEnvelope bbox = envelope;
+        if (native_ != null && envelope.getCoordinateReferenceSystem() != null
+                && !CRS.equalsIgnoreMetadata(native_, envelope.getCoordinateReferenceSystem())) {
+            try {
+                bbox = envelope.transform(native_, true);
+            } catch (Exception e) {
+                throw (IOException) new IOException("Failed to reproject the join area")
+                        .initCause(e);
+            }
+        }
+        return ff.bbox(ff.property(fromLeft ? leftGeometry : rightGeometry), bbox);
+    }
+
+    /**
+     * Evaluates the join predicate
+     */
+    boolean matches(Geometry leftGeom, IndexedFeature right) {
+        switch (predicate) {
+        case INTERSECTS:
+            return right.getPrepared().intersects(leftGeom);
+        case WITHIN:
+            return right.getPrepared().contains(leftGeom);
+        default:
+            return leftGeom.isWithinDistance(right.geometry, distance);
+        }
+    }
+
+    /**
+     * Builds the joined feature out of a left and right feature
+     */
+    SimpleFeature buildFeature(SimpleFeatureBuilder builder, SimpleFeature leftFeature,
+            SimpleFeature rightFeature) {
+        for (JoinTypeBuilder.Mapping mapping : getTypeBuilder().getMappings()) {
+            SimpleFeature source = mapping.isFromLeft() ? leftFeature : rightFeature;
+            builder.add(source.getAttribute(mapping.getDescriptor().getLocalName()));
+        }
+        return builder.buildFeature(leftFeature.getID() + "-" + rightFeature.getID());
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Implemented by data stores able to run a {@link SpatialJoin} natively, for example as a
+ * single SQL query, when both sides of the join come from the same store.
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public interface SpatialJoinSupport {
+
+    /**
+     * Returns a reader over the joined features, of type {@link SpatialJoin#getFeatureType()}
+     * and with ids made of the left and right feature ids separated by a dash, or null if the
+     * store cannot run this join.
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getJoinReader(SpatialJoin join)
+            throws IOException;
+}
@@ -0,0 +1,123 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+
+import org.geotools.data.collection.OffHeapFeatureCodec;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * A temporary file holding a partition of the features of one side of a join. Features are
+ * first written, then read back once, the file is removed on close.
+ *
+ * @source $URL$
+ */
+class SpillFile implements SimpleFeatureIterator {
+
+    File file;
+
+    OffHeapFeatureCodec codec;
+
+    DataOutputStream out;
+
+    DataInputStream in;
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    byte[] bytes = new byte[1024];
+
+    int count;
+
+    int read;
+
+    SpillFile(SimpleFeatureType schema) throws IOException {
+        codec = new OffHeapFeatureCodec(schema, new GeometryFactory());
+        file = File.createTempFile("join", ".features");
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    void write(SimpleFeature feature) throws IOException {
+        buffer = codec.encode(feature, buffer);
+        out.writeInt(buffer.limit());
+        out.write(buffer.array(), 0, buffer.limit());
+        count++;
+    }
+
+    /**
+     * Stops writing, the features can then be read back
+     */
+    void finish() throws IOException {
+        out.close();
+        out = null;
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    public boolean hasNext() {
+        return in != null && read < count;
+    }
+
+    public SimpleFeature next() throws NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more spilled features");
+        }
+        try {
+            int length = in.readInt();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.readFully(bytes, 0, length);
+            read++;
+            return codec.decode(ByteBuffer.wrap(bytes, 0, length));
+        } catch (IOException e) {
+            throw (NoSuchElementException) new NoSuchElementException(
+                    "Failed to read back the spilled features").initCause(e);
+        }
+    }
+
+    public void close() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (in != null) {
+                in.close();
+            }
+        } catch (IOException e) {
+            SpatialJoin.LOGGER.log(Level.FINE, "Error closing the join partition " + file, e);
+        }
+        out = null;
+        in = null;
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
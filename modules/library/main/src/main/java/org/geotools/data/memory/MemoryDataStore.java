@@ -17,12 +17,16 @@
 package org.geotools.data.memory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 
 import org.geotools.data.AbstractDataStore;
@@ -42,6 +46,7 @@ import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.IllegalAttributeException;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -65,6 +70,21 @@ import com.vividsolutions.jts.geom.Geometry;
  * <p>
  * This class will also illustrate the use of In-Process locking when the time comes.
  * </p>
+ * 
+ * <p>
+ * Queries are answered using a spatial index on the default geometry, and optional
+ * attribute indexes (see {@link #createIndex(String, String, boolean)}), so that BBOX, equality and
+ * range filters do not need to scan all the features. The indexes are built lazily and
+ * discarded when the contents of the feature type change, so this store works best with
+ * data that is read much more often than it is modified.
+ * </p>
+ * 
+ * <p>
+ * Access is guarded by a read/write lock, concurrent readers do not block each other. Readers
+ * and writers work against a snapshot of the features taken when they are opened, and the stored
+ * features are replaced rather than modified in place, so an open reader is never affected by
+ * later modifications.
+ * </p>
  *
  * @author jgarnett
  * @source $URL$
@@ -76,6 +96,15 @@ public class MemoryDataStore extends AbstractDataStore {
     /** Schema holds FeatureType by typeName */
     protected Map<String,SimpleFeatureType> schema = new HashMap<String,SimpleFeatureType>();
 
+    /** Guards memory and schema, readers share the lock, modifications are exclusive */
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The current contents snapshot and indexes by typeName, dropped on modification */
+    Map<String,MemoryIndex> indexes = new HashMap<String,MemoryIndex>();
+
+    /** The attribute indexes by typeName, the value tells whether the index is sorted */
+    Map<String,Map<String,Boolean>> attributeIndexes = new HashMap<String,Map<String,Boolean>>();
+
     public MemoryDataStore() {
         super(true);
     }
@@ -142,8 +171,14 @@ public class MemoryDataStore extends AbstractDataStore {
                 featureMap.put(feature.getID(), feature);
             }
 
-            schema.put(typeName, featureType);
-            memory.put(typeName, featureMap);
+            lock.writeLock().lock();
+            try {
+                schema.put(typeName, featureType);
+                memory.put(typeName, featureMap);
+                modified(typeName);
+            } finally {
+                lock.writeLock().unlock();
+            }
         } catch (IllegalAttributeException e) {
             throw new DataSourceException("Problem using reader", e);
         }
@@ -183,8 +218,14 @@ public class MemoryDataStore extends AbstractDataStore {
                 featureMap.put(feature.getID(), feature);
             }
 
-            schema.put(typeName, featureType);
-            memory.put(typeName, featureMap);
+            lock.writeLock().lock();
+            try {
+                schema.put(typeName, featureType);
+                memory.put(typeName, featureMap);
+                modified(typeName);
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
         finally {
             reader.close();
@@ -206,17 +247,21 @@ public class MemoryDataStore extends AbstractDataStore {
             throw new IllegalArgumentException("Provided SimpleFeatureCollection is empty");
         }
 
-        synchronized (memory) {
+        lock.writeLock().lock();
+        try {
             for (Iterator<?> i = collection.iterator(); i.hasNext();) {
                 addFeatureInternal((SimpleFeature) i.next());
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
     public void addFeatures(FeatureCollection<SimpleFeatureType,SimpleFeature> collection) {
         if ((collection == null) ) {
             throw new IllegalArgumentException("Provided SimpleFeatureCollection is empty");
         }
-        synchronized (memory) {
+        lock.writeLock().lock();
+        try {
             try {
                 collection.accepts( new FeatureVisitor(){
                     public void visit(Feature feature) {
@@ -227,6 +272,8 @@ public class MemoryDataStore extends AbstractDataStore {
             catch( IOException ignore){
                 LOGGER.log( Level.FINE, "Unable to add all features", ignore );
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
     /**
@@ -241,10 +288,13 @@ public class MemoryDataStore extends AbstractDataStore {
             throw new IllegalArgumentException("Provided features are empty");
         }
 
-        synchronized (memory) {
+        lock.writeLock().lock();
+        try {
             for (int i = 0; i < features.length; i++) {
                 addFeatureInternal(features[i]);
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -263,8 +313,11 @@ public class MemoryDataStore extends AbstractDataStore {
      * @param feature Individual feature to add
      */
     public void addFeature(SimpleFeature feature) {
-        synchronized (memory) {
+        lock.writeLock().lock();
+        try {
             addFeatureInternal(feature);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -292,6 +345,7 @@ public class MemoryDataStore extends AbstractDataStore {
 
         featuresMap = memory.get(typeName);
         featuresMap.put(feature.getID(), feature);
+        modified(typeName);
     }
 
     /**
@@ -299,20 +353,116 @@ public class MemoryDataStore extends AbstractDataStore {
      *
      * @param typeName
      *
+     * <p>
+     * The map is the live contents of the feature type, callers should hold the {@link #lock}
+     * while using it, and call {@link #modified(String)} after changing it.
+     * </p>
+     *
      * @return A Map of Features by FID
      *
      * @throws IOException If typeName cannot be found
      */
     protected Map<String,SimpleFeature> features(String typeName) throws IOException {
-        synchronized (memory) {
+        lock.readLock().lock();
+        try {
             if (memory.containsKey(typeName)) {
                 return memory.get(typeName);
             }
+        } finally {
+            lock.readLock().unlock();
         }
 
         throw new IOException("Type name " + typeName + " not found");
     }
 
+    /**
+     * Returns the current snapshot of the contents of <code>typeName</code>, along with its
+     * indexes.
+     *
+     * @throws IOException If typeName cannot be found
+     */
+    MemoryIndex index(String typeName) throws IOException {
+        lock.readLock().lock();
+        try {
+            synchronized (indexes) {
+                MemoryIndex index = indexes.get(typeName);
+                if (index == null) {
+                    index = new MemoryIndex(getSchema(typeName), features(typeName).values(),
+                            attributeIndexes.get(typeName));
+                    indexes.put(typeName, index);
+                }
+                return index;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discards the snapshot and indexes of <code>typeName</code>, to be called with the write
+     * lock held after its contents have been modified.
+     */
+    protected void modified(String typeName) {
+        synchronized (indexes) {
+            indexes.remove(typeName);
+        }
+    }
+
+    /**
+     * Adds an index on the specified attribute, that will be used to answer equality
+     * comparisons against literal values and, if the index is sorted, range comparisons as well.
+     * The default geometry is always indexed, there is no need to index it explicitly.
+     *
+     * @param typeName The feature type name
+     * @param attributeName The attribute to be indexed
+     * @param sorted If true a sorted index is built, otherwise a hash based one. Sorted indexes
+     *        require the attribute binding to be {@link Comparable}
+     * @throws IOException If typeName cannot be found
+     * @throws IllegalArgumentException If the attribute cannot be found or cannot be sorted
+     */
+    public void createIndex(String typeName, String attributeName, boolean sorted)
+            throws IOException {
+        lock.writeLock().lock();
+        try {
+            AttributeDescriptor descriptor = getSchema(typeName).getDescriptor(attributeName);
+            if (descriptor == null) {
+                throw new IllegalArgumentException("Attribute " + attributeName
+                        + " not found in " + typeName);
+            }
+            if (sorted && !Comparable.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                throw new IllegalArgumentException("Cannot build a sorted index on "
+                        + attributeName + ", its values are not comparable");
+            }
+            Map<String,Boolean> attributes = attributeIndexes.get(typeName);
+            if (attributes == null) {
+                attributes = new HashMap<String,Boolean>();
+                attributeIndexes.put(typeName, attributes);
+            }
+            attributes.put(attributeName, Boolean.valueOf(sorted));
+            modified(typeName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the index on the specified attribute, if any.
+     *
+     * @param typeName The feature type name
+     * @param attributeName The indexed attribute
+     */
+    public void removeIndex(String typeName, String attributeName) {
+        lock.writeLock().lock();
+        try {
+            Map<String,Boolean> attributes = attributeIndexes.get(typeName);
+            if (attributes != null && attributes.remove(attributeName) != null) {
+                modified(typeName);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     /**
      * List of available types provided by this DataStore.
      *
@@ -321,7 +471,8 @@ public class MemoryDataStore extends AbstractDataStore {
      * @see org.geotools.data.AbstractDataStore#getFeatureTypes()
      */
     public String[] getTypeNames() {
-        synchronized (memory) {
+        lock.readLock().lock();
+        try {
             String[] types = new String[schema.size()];
             int index = 0;
 
@@ -330,6 +481,8 @@ public class MemoryDataStore extends AbstractDataStore {
             }
 
             return types;
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -346,11 +499,14 @@ public class MemoryDataStore extends AbstractDataStore {
      * @see org.geotools.data.AbstractDataStore#getSchema(java.lang.String)
      */
     public SimpleFeatureType getSchema(String typeName) throws IOException {
-        synchronized (memory) {
+        lock.readLock().lock();
+        try {
             if (schema.containsKey(typeName)) {
                 return schema.get(typeName);
             }
                 throw new SchemaNotFoundException(typeName);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -371,14 +527,20 @@ public class MemoryDataStore extends AbstractDataStore {
     public void createSchema(SimpleFeatureType featureType) throws IOException {
         String typeName = featureType.getTypeName();
 
-        if (memory.containsKey(typeName)) {
-            // we have a conflict
-            throw new IOException(typeName + " already exists");
-        }
+        lock.writeLock().lock();
+        try {
+            if (memory.containsKey(typeName)) {
+                // we have a conflict
+                throw new IOException(typeName + " already exists");
+            }
             // insertion order preserving map
             Map<String,SimpleFeature> featuresMap = new LinkedHashMap<String,SimpleFeature>();
             schema.put(typeName, featureType);
             memory.put(typeName, featuresMap);
+            modified(typeName);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -398,9 +560,34 @@ public class MemoryDataStore extends AbstractDataStore {
      */
     public  FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(final String typeName)
         throws IOException {
+        return reader(index(typeName), null);
+    }
+
+    /**
+     * Provides a FeatureReader over the features of <code>typeName</code> that might match the
+     * query filter, as found by the indexes.
+     * <p>
+     * The filter is still fully evaluated by AbstractDataStore on the returned features.
+     * </p>
+     *
+     * @see org.geotools.data.AbstractDataStore#getFeatureReader(java.lang.String,
+     *      org.geotools.data.Query)
+     */
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName,
+            Query query) throws IOException {
+        MemoryIndex index = index(typeName);
+        return reader(index, index.candidates(query.getFilter()));
+    }
+
+    /**
+     * Returns a reader over the snapshot, optionally limited to the specified candidates
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> reader(final MemoryIndex index,
+            final BitSet candidates) {
         return new FeatureReader<SimpleFeatureType, SimpleFeature>() {
-                SimpleFeatureType featureType = getSchema(typeName);
-                Iterator<SimpleFeature> iterator = features(typeName).values().iterator();
+                SimpleFeatureType featureType = index.featureType;
+                SimpleFeature[] features = index.features;
+                int position = index.next(candidates, 0);
 
                 public SimpleFeatureType getFeatureType() {
                     return featureType;
@@ -408,24 +595,26 @@ public class MemoryDataStore extends AbstractDataStore {
 
                 public SimpleFeature next()
                     throws IOException, IllegalAttributeException, NoSuchElementException {
-                    if (iterator == null) {
+                    if (features == null) {
                         throw new IOException("Feature Reader has been closed");
                     }
-
-                    try {
-                        return SimpleFeatureBuilder.copy((SimpleFeature) iterator.next());
-                    } catch (NoSuchElementException end) {
-                        throw new DataSourceException("There are no more Features", end);
+                    if (position >= features.length) {
+                        throw new DataSourceException("There are no more Features",
+                                new NoSuchElementException());
                     }
+
+                    SimpleFeature feature = features[position];
+                    position = index.next(candidates, position + 1);
+                    return SimpleFeatureBuilder.copy(feature);
                 }
 
                 public boolean hasNext(){
-                    return (iterator != null) && iterator.hasNext();
+                    return (features != null) && position < features.length;
                 }
 
                 public void close(){
-                    if (iterator != null) {
-                        iterator = null;
+                    if (features != null) {
+                        features = null;
                     }
 
                     if (featureType != null) {
@@ -456,7 +645,7 @@ public class MemoryDataStore extends AbstractDataStore {
         return new FeatureWriter<SimpleFeatureType, SimpleFeature>() {
                 SimpleFeatureType featureType = getSchema(typeName);
                 Map<String,SimpleFeature> contents = features(typeName);
-                Iterator<SimpleFeature> iterator = contents.values().iterator();
+                Iterator<SimpleFeature> iterator = Arrays.asList(index(typeName).features).iterator();
                 SimpleFeature live = null;
 
                 SimpleFeature current = null; // current Feature returned to user        
@@ -502,7 +691,13 @@ public class MemoryDataStore extends AbstractDataStore {
 
                     if (live != null) {
                         // remove existing content
-                        iterator.remove();
+                        lock.writeLock().lock();
+                        try {
+                            contents.remove(live.getID());
+                            modified(typeName);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
                         listenerManager.fireFeaturesRemoved(typeName, transaction,
                             new ReferencedEnvelope(live.getBounds()), true);
                         live = null;
@@ -529,13 +724,15 @@ public class MemoryDataStore extends AbstractDataStore {
                             live = null;
                             current = null;
                         } else {
-                            // accept modifications
+                            // accept modifications, replacing the feature so that
+                            // the readers working off a snapshot are not affected
                             //
+                            lock.writeLock().lock();
                             try {
-                                live.setAttributes(current.getAttributes());
-                            } catch (Exception e) {
-                                throw new DataSourceException("Unable to accept modifications to "
-                                    + live.getID() + " on " + typeName);
+                                contents.put(live.getID(), current);
+                                modified(typeName);
+                            } finally {
+                                lock.writeLock().unlock();
                             }
 
                             ReferencedEnvelope bounds = new ReferencedEnvelope();
@@ -549,7 +746,13 @@ public class MemoryDataStore extends AbstractDataStore {
                     } else {
                         // add new content
                         //
-                        contents.put(current.getID(), current);
+                        lock.writeLock().lock();
+                        try {
+                            contents.put(current.getID(), current);
+                            modified(typeName);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
                         listenerManager.fireFeaturesAdded(typeName, transaction,
                         		new ReferencedEnvelope(current.getBounds()), true);
                         current = null;
@@ -586,22 +789,25 @@ public class MemoryDataStore extends AbstractDataStore {
      */
     protected ReferencedEnvelope getBounds(Query query)
         throws IOException {
-        String typeName = query.getTypeName();
-        Map<String,SimpleFeature> contents = features(typeName);
-        Iterator<SimpleFeature> iterator = contents.values().iterator();
+        MemoryIndex index = index(query.getTypeName());
+        Filter filter = query.getFilter();
+        BitSet candidates = index.candidates(filter);
 
         CoordinateReferenceSystem coordinateSystem = query.getCoordinateSystem();
         ReferencedEnvelope envelope = null;
         
-        Filter filter = query.getFilter();
-        
+        SimpleFeature[] features = index.features;
         int count = 0;
-        while(iterator.hasNext() && (count < query.getMaxFeatures())) {
-            count ++;
-            SimpleFeature feature = iterator.next();
+        for (int i = index.next(candidates, 0); i < features.length
+                && count < query.getMaxFeatures(); i = index.next(candidates, i + 1)) {
+            SimpleFeature feature = features[i];
             if(filter.evaluate(feature)) {
                 count++;
-                Envelope env = ((Geometry) feature.getDefaultGeometry()).getEnvelopeInternal();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null) {
+                    continue;
+                }
+                Envelope env = geometry.getEnvelopeInternal();
                 if (null == envelope) {
                     envelope = new ReferencedEnvelope(coordinateSystem);
                 }
@@ -617,16 +823,16 @@ public class MemoryDataStore extends AbstractDataStore {
      */
     protected int getCount(Query query)
         throws IOException {
-        String typeName = query.getTypeName();
-        Map<String,SimpleFeature> contents = features(typeName);
-        Iterator<SimpleFeature> iterator = contents.values().iterator();
+        MemoryIndex index = index(query.getTypeName());
+        Filter filter = query.getFilter();
+        BitSet candidates = index.candidates(filter);
 
         int count = 0;
 
-        Filter filter = query.getFilter();
-
-        while (iterator.hasNext() && (count < query.getMaxFeatures())) {
-            if (filter.evaluate(iterator.next())) {
+        SimpleFeature[] features = index.features;
+        for (int i = index.next(candidates, 0); i < features.length
+                && count < query.getMaxFeatures(); i = index.next(candidates, i + 1)) {
+            if (filter.evaluate(features[i])) {
                 count++;
             }
         }
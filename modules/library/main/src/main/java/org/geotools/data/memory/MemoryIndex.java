@@ -0,0 +1,484 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.memory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Disjoint;
+import org.opengis.filter.spatial.DistanceBufferOperator;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * A read only snapshot of the contents of a feature type held in {@link MemoryDataStore}, along
+ * with the indexes used to find the features matching a filter without scanning them all.
+ * <p>
+ * The indexes are built lazily, by the first query that can use them, and are thrown away
+ * along with the snapshot as soon as the feature type contents are modified. The spatial index
+ * works against the default geometry, the attribute indexes have to be requested with
+ * {@link MemoryDataStore#createIndex(String, String, boolean)}.
+ * </p>
+ * <p>
+ * The index only narrows down the set of candidate features, the filter still needs to be
+ * evaluated against each of them.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class MemoryIndex {
+
+    final SimpleFeatureType featureType;
+
+    /** The features, in insertion order */
+    final SimpleFeature[] features;
+
+    /** The indexed attributes, associated to true if the index is sorted */
+    final Map<String, Boolean> indexed;
+
+    /** Feature id to position, built on demand */
+    Map<String, Integer> positions;
+
+    /** Spatial index of the default geometries, built on demand */
+    STRtree spatialIndex;
+
+    /** The attribute indexes built so far */
+    Map<String, AttributeIndex> attributeIndexes = new HashMap<String, AttributeIndex>();
+
+    MemoryIndex(SimpleFeatureType featureType, Collection<SimpleFeature> features,
+            Map<String, Boolean> indexed) {
+        this.featureType = featureType;
+        this.features = (SimpleFeature[]) features.toArray(new SimpleFeature[features.size()]);
+        if (indexed == null) {
+            this.indexed = Collections.emptyMap();
+        } else {
+            this.indexed = new HashMap<String, Boolean>(indexed);
+        }
+    }
+
+    /**
+     * Returns the position of the first candidate at or after <code>from</code>, or the number
+     * of features if there are no more candidates
+     */
+    int next(BitSet candidates, int from) {
+        if (candidates == null) {
+            return from;
+        }
+        int next = candidates.nextSetBit(from);
+        return next < 0 ? features.length : next;
+    }
+
+    /**
+     * Returns the positions of the features that might match the filter, or null if the indexes
+     * cannot help and all the features have to be scanned
+     */
+    BitSet candidates(Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE) {
+            return null;
+        } else if (filter == Filter.EXCLUDE) {
+            return new BitSet();
+        } else if (filter instanceof Id) {
+            return idCandidates((Id) filter);
+        } else if (filter instanceof And) {
+            // use all the indexes we can, each one narrows down the result
+            BitSet result = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                BitSet candidates = candidates(child);
+                if (candidates != null) {
+                    if (result == null) {
+                        result = candidates;
+                    } else {
+                        result.and(candidates);
+                    }
+                }
+            }
+            return result;
+        } else if (filter instanceof Or) {
+            // all the branches need to be indexed, otherwise we have to scan anyways
+            BitSet result = new BitSet();
+            for (Filter child : ((Or) filter).getChildren()) {
+                BitSet candidates = candidates(child);
+                if (candidates == null) {
+                    return null;
+                }
+                result.or(candidates);
+            }
+            return result;
+        } else if (filter instanceof BinarySpatialOperator) {
+            return spatialCandidates((BinarySpatialOperator) filter);
+        } else if (filter instanceof BinaryComparisonOperator) {
+            return comparisonCandidates((BinaryComparisonOperator) filter);
+        } else if (filter instanceof PropertyIsBetween) {
+            return betweenCandidates((PropertyIsBetween) filter);
+        }
+
+        return null;
+    }
+
+    BitSet idCandidates(Id filter) {
+        Map<String, Integer> positions = getPositions();
+        BitSet result = new BitSet();
+        for (Object id : filter.getIDs()) {
+            Integer position = positions.get(String.valueOf(id));
+            if (position != null) {
+                result.set(position.intValue());
+            }
+        }
+        return result;
+    }
+
+    BitSet spatialCandidates(BinarySpatialOperator filter) {
+        // these can match features far away from the reference geometry
+        if (filter instanceof Disjoint || filter instanceof DistanceBufferOperator) {
+            return null;
+        }
+
+        Envelope envelope;
+        if (filter instanceof BBOX) {
+            BBOX bbox = (BBOX) filter;
+            if (!(bbox.getExpression1() instanceof PropertyName)
+                    || !isDefaultGeometry(bbox.getPropertyName())) {
+                return null;
+            }
+            envelope = new Envelope(bbox.getMinX(), bbox.getMaxX(), bbox.getMinY(), bbox
+                    .getMaxY());
+        } else {
+            Expression e1 = filter.getExpression1();
+            Expression e2 = filter.getExpression2();
+            Literal literal;
+            if (e1 instanceof PropertyName && e2 instanceof Literal) {
+                if (!isDefaultGeometry(((PropertyName) e1).getPropertyName())) {
+                    return null;
+                }
+                literal = (Literal) e2;
+            } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+                if (!isDefaultGeometry(((PropertyName) e2).getPropertyName())) {
+                    return null;
+                }
+                literal = (Literal) e1;
+            } else {
+                return null;
+            }
+            envelope = toEnvelope(literal);
+            if (envelope == null) {
+                return null;
+            }
+        }
+
+        STRtree index = getSpatialIndex();
+        if (index == null) {
+            return null;
+        }
+        BitSet result = new BitSet();
+        if (index.size() > 0) {
+            for (Iterator it = index.query(envelope).iterator(); it.hasNext();) {
+                result.set(((Integer) it.next()).intValue());
+            }
+        }
+        return result;
+    }
+
+    BitSet comparisonCandidates(BinaryComparisonOperator filter) {
+        Expression e1 = filter.getExpression1();
+        Expression e2 = filter.getExpression2();
+        boolean swapped;
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            swapped = false;
+        } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            swapped = true;
+        } else {
+            return null;
+        }
+        String name = ((PropertyName) (swapped ? e2 : e1)).getPropertyName();
+        Object value = ((Literal) (swapped ? e1 : e2)).getValue();
+
+        AttributeIndex index = getAttributeIndex(name);
+        if (index == null || (!filter.isMatchingCase() && index.binding == String.class)) {
+            return null;
+        }
+        Object key = index.toKey(value);
+        if (key == null) {
+            return null;
+        }
+
+        if (filter instanceof PropertyIsEqualTo) {
+            return index.range(key, key);
+        } else if (!index.sorted) {
+            return null;
+        } else if (filter instanceof PropertyIsGreaterThan
+                || filter instanceof PropertyIsGreaterThanOrEqualTo) {
+            return swapped ? index.range(null, key) : index.range(key, null);
+        } else if (filter instanceof PropertyIsLessThan
+                || filter instanceof PropertyIsLessThanOrEqualTo) {
+            return swapped ? index.range(key, null) : index.range(null, key);
+        }
+        return null;
+    }
+
+    BitSet betweenCandidates(PropertyIsBetween filter) {
+        if (!(filter.getExpression() instanceof PropertyName)
+                || !(filter.getLowerBoundary() instanceof Literal)
+                || !(filter.getUpperBoundary() instanceof Literal)) {
+            return null;
+        }
+        AttributeIndex index = getAttributeIndex(((PropertyName) filter.getExpression())
+                .getPropertyName());
+        if (index == null || !index.sorted) {
+            return null;
+        }
+        Object lower = index.toKey(((Literal) filter.getLowerBoundary()).getValue());
+        Object upper = index.toKey(((Literal) filter.getUpperBoundary()).getValue());
+        if (lower == null || upper == null) {
+            return null;
+        }
+        return index.range(lower, upper);
+    }
+
+    boolean isDefaultGeometry(String name) {
+        GeometryDescriptor geometry = featureType.getGeometryDescriptor();
+        if (geometry == null) {
+            return false;
+        }
+        name = stripPrefix(name);
+        return name == null || "".equals(name) || name.equals(geometry.getLocalName());
+    }
+
+    Envelope toEnvelope(Literal literal) {
+        Object value = literal.getValue();
+        if (value instanceof Envelope) {
+            return (Envelope) value;
+        }
+        Geometry geometry;
+        if (value instanceof Geometry) {
+            geometry = (Geometry) value;
+        } else {
+            geometry = (Geometry) literal.evaluate(null, Geometry.class);
+        }
+        return geometry == null ? null : geometry.getEnvelopeInternal();
+    }
+
+    static String stripPrefix(String name) {
+        if (name != null && name.indexOf(':') >= 0) {
+            return name.substring(name.indexOf(':') + 1);
+        }
+        return name;
+    }
+
+    synchronized Map<String, Integer> getPositions() {
+        if (positions == null) {
+            positions = new HashMap<String, Integer>();
+            for (int i = 0; i < features.length; i++) {
+                positions.put(features[i].getID(), Integer.valueOf(i));
+            }
+        }
+        return positions;
+    }
+
+    synchronized STRtree getSpatialIndex() {
+        if (spatialIndex == null && featureType.getGeometryDescriptor() != null) {
+            STRtree index = new STRtree();
+            for (int i = 0; i < features.length; i++) {
+                Object geometry = features[i].getDefaultGeometry();
+                if (geometry instanceof Geometry) {
+                    index.insert(((Geometry) geometry).getEnvelopeInternal(), Integer.valueOf(i));
+                }
+            }
+            index.build();
+            spatialIndex = index;
+        }
+        return spatialIndex;
+    }
+
+    synchronized AttributeIndex getAttributeIndex(String name) {
+        name = stripPrefix(name);
+        Boolean sorted = indexed.get(name);
+        if (sorted == null) {
+            return null;
+        }
+        AttributeIndex index = attributeIndexes.get(name);
+        if (index == null) {
+            AttributeDescriptor descriptor = featureType.getDescriptor(name);
+            if (descriptor == null) {
+                return null;
+            }
+            index = new AttributeIndex(descriptor.getType().getBinding(), sorted.booleanValue());
+            int position = featureType.indexOf(name);
+            for (int i = 0; i < features.length; i++) {
+                index.add(features[i].getAttribute(position), i);
+            }
+            attributeIndexes.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * A hash or sorted index of the values of a single attribute
+     */
+    static final class AttributeIndex {
+        final Class<?> binding;
+
+        final boolean sorted;
+
+        final Map<Object, List<Integer>> values;
+
+        /**
+         * The features whose value could not be indexed, they are candidates for any query
+         */
+        final BitSet others = new BitSet();
+
+        AttributeIndex(Class<?> binding, boolean sorted) {
+            this.binding = binding;
+            this.sorted = sorted;
+            if (sorted) {
+                this.values = new TreeMap<Object, List<Integer>>();
+            } else {
+                this.values = new HashMap<Object, List<Integer>>();
+            }
+        }
+
+        void add(Object value, int position) {
+            // null values never match comparisons
+            if (value == null) {
+                return;
+            }
+            if (!binding.isInstance(value)) {
+                others.set(position);
+                return;
+            }
+            Object key = normalize(value);
+            try {
+                List<Integer> positions = values.get(key);
+                if (positions == null) {
+                    positions = new ArrayList<Integer>(1);
+                    values.put(key, positions);
+                }
+                positions.add(Integer.valueOf(position));
+            } catch (ClassCastException e) {
+                // mixed values in the sorted map
+                others.set(position);
+            }
+        }
+
+        /**
+         * Converts a literal value into an index key, returns null if the conversion is not
+         * possible or loses information, as lookups would then miss matching features
+         */
+        Object toKey(Object value) {
+            if (value == null) {
+                return null;
+            }
+            Object key = Converters.convert(value, binding);
+            if (key == null) {
+                return null;
+            }
+            if (key instanceof Number && !binding.isInstance(value)) {
+                Double original = Converters.convert(value, Double.class);
+                if (original == null
+                        || original.doubleValue() != ((Number) key).doubleValue()) {
+                    return null;
+                }
+            }
+            return normalize(key);
+        }
+
+        /**
+         * Folds the negative zero onto the positive one, they are equal for the filters
+         */
+        Object normalize(Object value) {
+            if (value instanceof Double) {
+                return Double.valueOf(((Double) value).doubleValue() + 0.0d);
+            } else if (value instanceof Float) {
+                return Float.valueOf(((Float) value).floatValue() + 0.0f);
+            }
+            return value;
+        }
+
+        /**
+         * Returns the positions of the features whose value is between the two keys, extremes
+         * included. A null key makes the range open on that side.
+         */
+        BitSet range(Object lower, Object upper) {
+            BitSet result = (BitSet) others.clone();
+            try {
+                if (lower != null && lower.equals(upper)) {
+                    addAll(result, values.get(lower));
+                } else {
+                    SortedMap<Object, List<Integer>> map = (SortedMap<Object, List<Integer>>) values;
+                    SortedMap<Object, List<Integer>> range;
+                    if (lower == null) {
+                        range = upper == null ? map : map.headMap(upper);
+                    } else if (upper == null) {
+                        range = map.tailMap(lower);
+                    } else if (((Comparable<Object>) lower).compareTo(upper) > 0) {
+                        return result;
+                    } else {
+                        range = map.subMap(lower, upper);
+                    }
+                    for (List<Integer> positions : range.values()) {
+                        addAll(result, positions);
+                    }
+                    // the upper extreme is excluded by the sub maps
+                    if (upper != null) {
+                        addAll(result, values.get(upper));
+                    }
+                }
+            } catch (ClassCastException e) {
+                return null;
+            }
+            return result;
+        }
+
+        void addAll(BitSet result, List<Integer> positions) {
+            if (positions != null) {
+                for (Integer position : positions) {
+                    result.set(position.intValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.visitor.DistinctCountVisitor;
+import org.geotools.feature.visitor.QuantileSketchVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.ExpressionVisitor;
+
+/**
+ * The statistics of the values of an attribute: null fraction, estimated number of distinct
+ * values and, for numbers and dates, an equi-depth histogram.
+ * <p>
+ * The histogram splits the values in buckets holding about the same number of values when it is
+ * built. Values added or removed later update the count of their bucket, the first and last
+ * buckets stretch to hold values out of the previous range. The distinct value estimate is a
+ * HyperLogLog sketch, it grows on additions but does not shrink on removals. Dates are handled
+ * as milliseconds since the epoch.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class AttributeStatistics {
+
+    /**
+     * Number of buckets of the histograms
+     */
+    public static final int BUCKETS = 50;
+
+    /**
+     * Precision of the distinct value sketch, about 3% error in 1KB
+     */
+    static final int DISTINCT_PRECISION = 10;
+
+    static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    String name;
+
+    boolean numeric;
+
+    long count;
+
+    long nullCount;
+
+    DistinctCountVisitor distinct;
+
+    /**
+     * The bucket limits, <code>BUCKETS + 1</code> values, or null if the attribute is not
+     * numeric or had no values
+     */
+    double[] limits;
+
+    long[] bucketCounts;
+
+    /**
+     * Sketch used while the statistics are collected
+     */
+    QuantileSketchVisitor sketch;
+
+    AttributeStatistics(String name, boolean numeric) {
+        this.name = name;
+        this.numeric = numeric;
+        this.distinct = new DistinctCountVisitor(ff.property(name), DISTINCT_PRECISION);
+        if (numeric) {
+            sketch = new QuantileSketchVisitor(new NumericValue(name));
+        }
+    }
+
+    /**
+     * The attribute name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * True if the attribute holds numbers or dates, and a histogram is kept
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * Number of features, null values included
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getNullCount() {
+        return nullCount;
+    }
+
+    /**
+     * Fraction of the features having a null value
+     */
+    public double getNullFraction() {
+        return count == 0 ? 0 : (double) nullCount / count;
+    }
+
+    /**
+     * Estimated number of distinct non null values
+     */
+    public long getDistinctCount() {
+        long estimate = distinct.getCount();
+        // the sketch does not forget removed values
+        return Math.max(0, Math.min(estimate, count - nullCount));
+    }
+
+    /**
+     * The smallest value, or NaN if there are no numeric values
+     */
+    public double getMin() {
+        return limits == null ? Double.NaN : limits[0];
+    }
+
+    /**
+     * The largest value, or NaN if there are no numeric values
+     */
+    public double getMax() {
+        return limits == null ? Double.NaN : limits[limits.length - 1];
+    }
+
+    /**
+     * The limits of the histogram buckets, bucket <code>i</code> going from
+     * <code>limits[i]</code> to <code>limits[i + 1]</code>. Returns null if there is no
+     * histogram.
+     */
+    public double[] getBucketLimits() {
+        return limits == null ? null : limits.clone();
+    }
+
+    /**
+     * The number of values in each histogram bucket
+     */
+    public long[] getBucketCounts() {
+        return bucketCounts == null ? null : bucketCounts.clone();
+    }
+
+    /**
+     * Returns the approximate value found at the specified fraction of the sorted non null
+     * values, or NaN if there is no histogram
+     */
+    public double getQuantile(double fraction) {
+        if (limits == null) {
+            return Double.NaN;
+        }
+        long total = total();
+        if (total == 0 || fraction <= 0) {
+            return limits[0];
+        } else if (fraction >= 1) {
+            return limits[limits.length - 1];
+        }
+        double target = fraction * total;
+        double cumulative = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            if (bucketCounts[i] > 0 && cumulative + bucketCounts[i] >= target) {
+                double f = (target - cumulative) / bucketCounts[i];
+                return limits[i] + f * (limits[i + 1] - limits[i]);
+            }
+            cumulative += bucketCounts[i];
+        }
+        return limits[limits.length - 1];
+    }
+
+    /**
+     * Returns the <code>classes + 1</code> breaks splitting the values in classes holding about
+     * the same number of values, as a quantile classification would, or null if there is no
+     * histogram
+     */
+    public double[] getBreaks(int classes) {
+        if (limits == null) {
+            return null;
+        }
+        double[] breaks = new double[classes + 1];
+        for (int i = 0; i <= classes; i++) {
+            breaks[i] = getQuantile((double) i / classes);
+        }
+        return breaks;
+    }
+
+    /**
+     * Estimates the fraction of the non null values lower than the value, or equal to it if
+     * <code>inclusive</code>. Returns NaN if there is no histogram.
+     */
+    public double estimateFractionBelow(double value, boolean inclusive) {
+        if (limits == null) {
+            return Double.NaN;
+        }
+        long total = total();
+        if (total == 0) {
+            return 0;
+        }
+        double below = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            double lo = limits[i];
+            double hi = limits[i + 1];
+            if (hi < value || (hi == value && (inclusive || lo < hi))) {
+                below += bucketCounts[i];
+            } else if (lo < value) {
+                below += bucketCounts[i] * (value - lo) / (hi - lo);
+            } else {
+                break;
+            }
+        }
+        return Math.min(1, below / total);
+    }
+
+    /**
+     * Estimates the fraction of the non null values equal to a given one, assuming the values
+     * are uniformly distributed
+     */
+    public double estimateEqualFraction() {
+        long distinctCount = getDistinctCount();
+        return distinctCount == 0 ? 0 : 1.0 / distinctCount;
+    }
+
+    long total() {
+        long total = 0;
+        for (long c : bucketCounts) {
+            total += c;
+        }
+        return total;
+    }
+
+    /**
+     * Converts the value to the double used by the histogram, or returns NaN
+     */
+    static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Adds the value of a feature while collecting the statistics
+     */
+    void collect(SimpleFeature feature) {
+        Object value = feature.getAttribute(name);
+        count++;
+        if (value == null) {
+            nullCount++;
+            return;
+        }
+        distinct.visit(feature);
+        if (numeric) {
+            sketch.visit(feature);
+        }
+    }
+
+    /**
+     * Builds the histogram out of the collected values
+     */
+    void finish() {
+        if (sketch != null && sketch.getCount() > 0) {
+            limits = sketch.getBreaks(BUCKETS);
+            bucketCounts = new long[BUCKETS];
+            long total = sketch.getCount();
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketCounts[i] = total * (i + 1) / BUCKETS - total * i / BUCKETS;
+            }
+        }
+        sketch = null;
+    }
+
+    /**
+     * Updates the statistics with the value of a new feature
+     */
+    void add(SimpleFeature feature) {
+        Object value = feature.getAttribute(name);
+        count++;
+        if (value == null) {
+            nullCount++;
+            return;
+        }
+        distinct.visit(feature);
+        double d = toDouble(value);
+        if (!numeric || Double.isNaN(d) || Double.isInfinite(d)) {
+            return;
+        }
+        if (limits == null) {
+            limits = new double[BUCKETS + 1];
+            Arrays.fill(limits, d);
+            bucketCounts = new long[BUCKETS];
+        }
+        if (d < limits[0]) {
+            limits[0] = d;
+        } else if (d > limits[BUCKETS]) {
+            limits[BUCKETS] = d;
+        }
+        bucketCounts[bucket(d)]++;
+    }
+
+    /**
+     * Updates the statistics removing the value of a feature
+     */
+    void remove(SimpleFeature feature) {
+        Object value = feature.getAttribute(name);
+        count = Math.max(0, count - 1);
+        if (value == null) {
+            nullCount = Math.max(0, nullCount - 1);
+            return;
+        }
+        double d = toDouble(value);
+        if (limits != null && !Double.isNaN(d) && !Double.isInfinite(d)) {
+            int bucket = bucket(Math.max(limits[0], Math.min(d, limits[BUCKETS])));
+            if (bucketCounts[bucket] > 0) {
+                bucketCounts[bucket]--;
+            }
+        }
+    }
+
+    /**
+     * Finds the bucket holding a value, the last one containing it when several do
+     */
+    int bucket(double d) {
+        int index = Arrays.binarySearch(limits, d);
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            // move to the last limit equal to the value
+            while (index < BUCKETS && limits[index + 1] == d) {
+                index++;
+            }
+        }
+        return Math.max(0, Math.min(BUCKETS - 1, index));
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeBoolean(numeric);
+        out.writeLong(count);
+        out.writeLong(nullCount);
+        byte[] registers = distinct.getRegisters();
+        out.writeInt(registers.length);
+        out.write(registers);
+        out.writeBoolean(limits != null);
+        if (limits != null) {
+            out.writeInt(bucketCounts.length);
+            for (int i = 0; i < bucketCounts.length; i++) {
+                out.writeDouble(limits[i]);
+                out.writeLong(bucketCounts[i]);
+            }
+            out.writeDouble(limits[bucketCounts.length]);
+        }
+    }
+
+    static AttributeStatistics read(DataInput in) throws IOException {
+        String name = in.readUTF();
+        AttributeStatistics stats = new AttributeStatistics(name, in.readBoolean());
+        stats.sketch = null;
+        stats.count = in.readLong();
+        stats.nullCount = in.readLong();
+        byte[] registers = new byte[in.readInt()];
+        in.readFully(registers);
+        stats.distinct.setRegisters(registers);
+        if (in.readBoolean()) {
+            int buckets = in.readInt();
+            if (buckets != BUCKETS) {
+                throw new IOException("Unexpected number of histogram buckets: " + buckets);
+            }
+            stats.limits = new double[buckets + 1];
+            stats.bucketCounts = new long[buckets];
+            for (int i = 0; i < buckets; i++) {
+                stats.limits[i] = in.readDouble();
+                stats.bucketCounts[i] = in.readLong();
+            }
+            stats.limits[buckets] = in.readDouble();
+        }
+        return stats;
+    }
+
+    /**
+     * Evaluates an attribute as the double used by the histogram
+     */
+    static class NumericValue implements Expression {
+        String name;
+
+        NumericValue(String name) {
+            this.name = name;
+        }
+
+        public Object evaluate(Object object) {
+            Object value = ((SimpleFeature) object).getAttribute(name);
+            return value == null ? null : Double.valueOf(toDouble(value));
+        }
+
+        public <T> T evaluate(Object object, Class<T> context) {
+            return context.cast(evaluate(object));
+        }
+
+        public Object accept(ExpressionVisitor visitor, Object extraData) {
+            return visitor.visit(ff.property(name), extraData);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AttributeStatistics[" + name + ", count=" + count + ", nulls=" + nullCount
+                + ", distinct=" + getDistinctCount()
+                + (limits != null ? ", min=" + getMin() + ", max=" + getMax() : "") + "]";
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Counts the features falling in each cell of a regular grid laid over the data extent, using
+ * the center of the feature bounds. Used to estimate how many features a spatial filter selects.
+ * <p>
+ * The grid extent is fixed when the statistics are collected, features added later outside of
+ * it are counted in the nearest border cell.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class DensityGrid {
+
+    /**
+     * Default number of cells along each axis
+     */
+    public static final int DEFAULT_SIZE = 32;
+
+    Envelope extent;
+
+    int size;
+
+    long[] counts;
+
+    public DensityGrid(Envelope extent, int size) {
+        this.extent = new Envelope(extent);
+        this.size = size;
+        this.counts = new long[size * size];
+    }
+
+    /**
+     * The area covered by the grid
+     */
+    public Envelope getExtent() {
+        return new Envelope(extent);
+    }
+
+    /**
+     * Number of cells along each axis
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of features whose center falls in a cell, row 0 being the southern one
+     */
+    public long getCount(int column, int row) {
+        return counts[row * size + column];
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    public void add(Envelope bounds) {
+        if (bounds != null && !bounds.isNull()) {
+            counts[cell(bounds)]++;
+        }
+    }
+
+    public void remove(Envelope bounds) {
+        if (bounds != null && !bounds.isNull()) {
+            int cell = cell(bounds);
+            if (counts[cell] > 0) {
+                counts[cell]--;
+            }
+        }
+    }
+
+    int cell(Envelope bounds) {
+        double x = (bounds.getMinX() + bounds.getMaxX()) / 2;
+        double y = (bounds.getMinY() + bounds.getMaxY()) / 2;
+        return index(y, extent.getMinY(), extent.getHeight()) * size
+                + index(x, extent.getMinX(), extent.getWidth());
+    }
+
+    int index(double ordinate, double min, double span) {
+        if (span <= 0) {
+            return 0;
+        }
+        int i = (int) Math.floor((ordinate - min) / span * size);
+        return Math.max(0, Math.min(size - 1, i));
+    }
+
+    /**
+     * Estimates the fraction of the features falling in the area, assuming they are uniformly
+     * distributed inside each cell
+     */
+    public double estimateFraction(Envelope area) {
+        long total = getTotal();
+        if (total == 0 || area == null || area.isNull()) {
+            return 0;
+        }
+        double cellWidth = extent.getWidth() / size;
+        double cellHeight = extent.getHeight() / size;
+        double selected = 0;
+        for (int row = 0; row < size; row++) {
+            double miny = extent.getMinY() + row * cellHeight;
+            double fy = overlap(miny, miny + cellHeight, area.getMinY(), area.getMaxY());
+            if (fy == 0) {
+                continue;
+            }
+            for (int col = 0; col < size; col++) {
+                long count = counts[row * size + col];
+                if (count == 0) {
+                    continue;
+                }
+                double minx = extent.getMinX() + col * cellWidth;
+                double fx = overlap(minx, minx + cellWidth, area.getMinX(), area.getMaxX());
+                selected += count * fx * fy;
+            }
+        }
+        return Math.min(1, selected / total);
+    }
+
+    /**
+     * The fraction of the cell span [min, max] covered by [from, to]
+     */
+    static double overlap(double min, double max, double from, double to) {
+        if (to < min || from > max) {
+            return 0;
+        }
+        if (max <= min) {
+            // degenerate grid, all the data on a line
+            return 1;
+        }
+        return (Math.min(max, to) - Math.max(min, from)) / (max - min);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeBoolean(extent.isNull());
+        out.writeDouble(extent.getMinX());
+        out.writeDouble(extent.getMaxX());
+        out.writeDouble(extent.getMinY());
+        out.writeDouble(extent.getMaxY());
+        out.writeInt(size);
+        for (long c : counts) {
+            out.writeLong(c);
+        }
+    }
+
+    static DensityGrid read(DataInput in) throws IOException {
+        boolean empty = in.readBoolean();
+        Envelope extent = new Envelope(in.readDouble(), in.readDouble(), in.readDouble(), in
+                .readDouble());
+        if (empty) {
+            extent.setToNull();
+        }
+        DensityGrid grid = new DensityGrid(extent, in.readInt());
+        for (int i = 0; i < grid.counts.length; i++) {
+            grid.counts[i] = in.readLong();
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Or;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * The statistics of a feature type: number of features, bounds, a {@link DensityGrid} of the
+ * default geometry and the {@link AttributeStatistics} of the other attributes.
+ * <p>
+ * Statistics are collected with a full scan by {@link #collect(SimpleFeatureCollection)}, then
+ * kept up to date on writes by the {@link StatisticsCatalog}. The count stays exact as long as all
+ * writes go through GeoTools, the bounds only grow, and the histograms and distinct estimates
+ * drift as features are modified. Once the modifications exceed a fifth of the features the
+ * statistics are {@linkplain #isStale() stale} and should be collected again.
+ * </p>
+ * Example use:
+ * <pre>
+ * FeatureTypeStatistics stats = catalog.getStatistics("roads");
+ * int estimate = stats.estimateCount(filter);
+ * double[] breaks = stats.getAttribute("length").getBreaks(5);
+ * </pre>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class FeatureTypeStatistics {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger("org.geotools.data.statistics");
+
+    static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    static final int MAGIC = 0x47545354;
+
+    static final int VERSION = 1;
+
+    /**
+     * Fraction of modified features past which the statistics are stale
+     */
+    public static final double STALE_FRACTION = 0.2;
+
+    String typeName;
+
+    long count;
+
+    ReferencedEnvelope bounds;
+
+    Map<String, AttributeStatistics> attributes = new LinkedHashMap<String, AttributeStatistics>();
+
+    DensityGrid grid;
+
+    long modifications;
+
+    long timestamp;
+
+    FeatureTypeStatistics(String typeName) {
+        this.typeName = typeName;
+    }
+
+    /**
+     * Collects the statistics of the features with a full scan, plus the computation of their
+     * bounds if the collection cannot provide them
+     */
+    public static FeatureTypeStatistics collect(SimpleFeatureCollection features)
+            throws IOException {
+        SimpleFeatureType schema = features.getSchema();
+        FeatureTypeStatistics stats = new FeatureTypeStatistics(schema.getTypeName());
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            if (ad instanceof GeometryDescriptor) {
+                continue;
+            }
+            Class<?> binding = ad.getType().getBinding();
+            boolean numeric = Number.class.isAssignableFrom(binding)
+                    || Date.class.isAssignableFrom(binding);
+            stats.attributes.put(ad.getLocalName(), new AttributeStatistics(ad.getLocalName(),
+                    numeric));
+        }
+
+        ReferencedEnvelope bounds = null;
+        GeometryDescriptor gd = schema.getGeometryDescriptor();
+        if (gd != null) {
+            bounds = features.getBounds();
+            if (bounds == null || bounds.isNull()) {
+                bounds = new ReferencedEnvelope(gd.getCoordinateReferenceSystem());
+                SimpleFeatureIterator fi = features.features();
+                try {
+                    while (fi.hasNext()) {
+                        bounds.expandToInclude(geometryBounds(fi.next()));
+                    }
+                } finally {
+                    fi.close();
+                }
+            }
+            stats.bounds = new ReferencedEnvelope(bounds);
+            stats.grid = new DensityGrid(bounds, DensityGrid.DEFAULT_SIZE);
+        }
+
+        SimpleFeatureIterator fi = features.features();
+        try {
+            while (fi.hasNext()) {
+                SimpleFeature feature = fi.next();
+                stats.count++;
+                for (AttributeStatistics as : stats.attributes.values()) {
+                    as.collect(feature);
+                }
+                if (stats.grid != null) {
+                    stats.grid.add(geometryBounds(feature));
+                }
+            }
+        } finally {
+            fi.close();
+        }
+        for (AttributeStatistics as : stats.attributes.values()) {
+            as.finish();
+        }
+        stats.timestamp = System.currentTimeMillis();
+        return stats;
+    }
+
+    static Envelope geometryBounds(SimpleFeature feature) {
+        Object geometry = feature.getDefaultGeometry();
+        if (geometry instanceof Geometry) {
+            return ((Geometry) geometry).getEnvelopeInternal();
+        }
+        return null;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * The number of features
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * The bounds of the features, or null if the type has no geometry
+     */
+    public synchronized ReferencedEnvelope getBounds() {
+        return bounds == null ? null : new ReferencedEnvelope(bounds);
+    }
+
+    /**
+     * Returns the statistics of an attribute, or null if the attribute is unknown or is a
+     * geometry
+     */
+    public AttributeStatistics getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public Collection<AttributeStatistics> getAttributes() {
+        return Collections.unmodifiableCollection(attributes.values());
+    }
+
+    /**
+     * The density grid of the default geometry, or null if the type has no geometry
+     */
+    public DensityGrid getDensityGrid() {
+        return grid;
+    }
+
+    /**
+     * Number of features added, modified or removed since the statistics were collected
+     */
+    public synchronized long getModifications() {
+        return modifications;
+    }
+
+    /**
+     * The time of the last collection or update, in milliseconds since the epoch
+     */
+    public synchronized long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * True if too many features changed since the statistics were collected
+     */
+    public synchronized boolean isStale() {
+        return modifications > Math.max(100, count * STALE_FRACTION);
+    }
+
+    /**
+     * Estimates the fraction of the features selected by the filter
+     */
+    public synchronized double estimateSelectivity(Filter filter) {
+        return new SelectivityEstimator(this).estimate(filter);
+    }
+
+    /**
+     * Estimates the number of features selected by the filter
+     */
+    public synchronized int estimateCount(Filter filter) {
+        long estimate = Math.round(count * estimateSelectivity(filter));
+        return (int) Math.min(Integer.MAX_VALUE, estimate);
+    }
+
+    /**
+     * Estimates the bounds of the features selected by the filter, the bounds of all the
+     * features restricted to the area the filter selects
+     */
+    public synchronized ReferencedEnvelope estimateBounds(Filter filter) {
+        if (bounds == null) {
+            return null;
+        }
+        ReferencedEnvelope result = new ReferencedEnvelope(bounds);
+        if (filter != null && filter != Filter.INCLUDE) {
+            Envelope area = null;
+            try {
+                area = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINEST, "Could not extract the bounds of " + filter, e);
+            }
+            if (area != null) {
+                Envelope intersection = result.intersection(area);
+                result = new ReferencedEnvelope(intersection, bounds
+                        .getCoordinateReferenceSystem());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an equivalent filter whose conditions are evaluated in a cheaper order: the most
+     * selective children of an And first, so that it fails early, and the least selective
+     * children of an Or first, so that it succeeds early
+     */
+    public synchronized Filter optimize(Filter filter) {
+        if (filter instanceof And || filter instanceof Or) {
+            final SelectivityEstimator estimator = new SelectivityEstimator(this);
+            final boolean and = filter instanceof And;
+            List<Filter> children = new ArrayList<Filter>();
+            List<Filter> original = and ? ((And) filter).getChildren() : ((Or) filter)
+                    .getChildren();
+            for (Filter child : original) {
+                children.add(optimize(child));
+            }
+            final Map<Filter, Double> selectivity = new LinkedHashMap<Filter, Double>();
+            for (Filter child : children) {
+                selectivity.put(child, estimator.estimate(child));
+            }
+            Collections.sort(children, new Comparator<Filter>() {
+                public int compare(Filter f1, Filter f2) {
+                    int c = Double.compare(selectivity.get(f1), selectivity.get(f2));
+                    return and ? c : -c;
+                }
+            });
+            return and ? ff.and(children) : ff.or(children);
+        }
+        return filter;
+    }
+
+    /**
+     * Updates the statistics with a new feature
+     */
+    synchronized void add(SimpleFeature feature) {
+        count++;
+        modifications++;
+        for (AttributeStatistics as : attributes.values()) {
+            as.add(feature);
+        }
+        Envelope envelope = geometryBounds(feature);
+        if (bounds != null && envelope != null) {
+            bounds.expandToInclude(envelope);
+        }
+        if (grid != null) {
+            grid.add(envelope);
+        }
+        timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Updates the statistics removing a feature
+     */
+    synchronized void remove(SimpleFeature feature) {
+        count = Math.max(0, count - 1);
+        modifications++;
+        for (AttributeStatistics as : attributes.values()) {
+            as.remove(feature);
+        }
+        if (grid != null) {
+            grid.remove(geometryBounds(feature));
+        }
+        timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Makes the statistics stale, used when changes could not be tracked
+     */
+    synchronized void invalidate() {
+        modifications = Long.MAX_VALUE / 2;
+    }
+
+    synchronized void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(typeName);
+        out.writeLong(count);
+        out.writeLong(modifications);
+        out.writeLong(timestamp);
+        out.writeBoolean(bounds != null);
+        if (bounds != null) {
+            out.writeBoolean(bounds.isNull());
+            out.writeDouble(bounds.getMinX());
+            out.writeDouble(bounds.getMaxX());
+            out.writeDouble(bounds.getMinY());
+            out.writeDouble(bounds.getMaxY());
+            String wkt = "";
+            CoordinateReferenceSystem crs = bounds.getCoordinateReferenceSystem();
+            if (crs != null) {
+                try {
+                    wkt = crs.toWKT();
+                } catch (UnsupportedOperationException e) {
+                    LOGGER.log(Level.FINE, "Cannot store the statistics CRS", e);
+                }
+            }
+            out.writeUTF(wkt);
+            grid.write(out);
+        }
+        out.writeInt(attributes.size());
+        for (AttributeStatistics as : attributes.values()) {
+            as.write(out);
+        }
+    }
+
+    static FeatureTypeStatistics read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a statistics file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported statistics version " + version);
+        }
+        FeatureTypeStatistics stats = new FeatureTypeStatistics(in.readUTF());
+        stats.count = in.readLong();
+        stats.modifications = in.readLong();
+        stats.timestamp = in.readLong();
+        if (in.readBoolean()) {
+            boolean empty = in.readBoolean();
+            Envelope envelope = new Envelope(in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble());
+            if (empty) {
+                envelope.setToNull();
+            }
+            String wkt = in.readUTF();
+            CoordinateReferenceSystem crs = null;
+            if (wkt.length() > 0) {
+                try {
+                    crs = CRS.parseWKT(wkt);
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Cannot parse the statistics CRS", e);
+                }
+            }
+            stats.bounds = new ReferencedEnvelope(envelope, crs);
+            stats.grid = DensityGrid.read(in);
+        }
+        int attributes = in.readInt();
+        for (int i = 0; i < attributes; i++) {
+            AttributeStatistics as = AttributeStatistics.read(in);
+            stats.attributes.put(as.getName(), as);
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureTypeStatistics[" + typeName + ", count=" + count + ", bounds=" + bounds
+                + ", modifications=" + modifications + "]";
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.util.Date;
+
+import org.geotools.util.Converters;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.ExcludeFilter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.IncludeFilter;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.Beyond;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.DWithin;
+import org.opengis.filter.spatial.Disjoint;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Estimates the fraction of the features a filter selects out of the statistics of a feature
+ * type. Filters the statistics cannot tell anything about get a default selectivity.
+ *
+ * @source $URL$
+ */
+class SelectivityEstimator {
+
+    /**
+     * Selectivity of the filters the statistics cannot estimate
+     */
+    static final double DEFAULT_SELECTIVITY = 1.0 / 3;
+
+    FeatureTypeStatistics stats;
+
+    SelectivityEstimator(FeatureTypeStatistics stats) {
+        this.stats = stats;
+    }
+
+    double estimate(Filter filter) {
+        if (filter == null || filter instanceof IncludeFilter) {
+            return 1;
+        } else if (filter instanceof ExcludeFilter) {
+            return 0;
+        } else if (filter instanceof And) {
+            double selectivity = 1;
+            for (Filter child : ((And) filter).getChildren()) {
+                selectivity *= estimate(child);
+            }
+            return selectivity;
+        } else if (filter instanceof Or) {
+            double unselected = 1;
+            for (Filter child : ((Or) filter).getChildren()) {
+                unselected *= 1 - estimate(child);
+            }
+            return 1 - unselected;
+        } else if (filter instanceof Not) {
+            return 1 - estimate(((Not) filter).getFilter());
+        } else if (filter instanceof Id) {
+            long count = stats.getCount();
+            return count == 0 ? 0 : Math.min(1, (double) ((Id) filter).getIDs().size() / count);
+        } else if (filter instanceof PropertyIsNull) {
+            AttributeStatistics as = attribute(((PropertyIsNull) filter).getExpression());
+            return as == null ? DEFAULT_SELECTIVITY : as.getNullFraction();
+        } else if (filter instanceof PropertyIsBetween) {
+            // between and spatial filters are checked first, their implementations are also
+            // binary comparisons
+            PropertyIsBetween between = (PropertyIsBetween) filter;
+            AttributeStatistics as = attribute(between.getExpression());
+            double lower = value(between.getLowerBoundary());
+            double upper = value(between.getUpperBoundary());
+            if (as == null || !as.isNumeric() || Double.isNaN(lower) || Double.isNaN(upper)) {
+                return DEFAULT_SELECTIVITY;
+            }
+            double fraction = as.estimateFractionBelow(upper, true)
+                    - as.estimateFractionBelow(lower, false);
+            return Math.max(0, fraction) * (1 - as.getNullFraction());
+        } else if (filter instanceof BinarySpatialOperator) {
+            return estimateSpatial((BinarySpatialOperator) filter);
+        } else if (filter instanceof BinaryComparisonOperator) {
+            return estimateComparison((BinaryComparisonOperator) filter);
+        }
+        return DEFAULT_SELECTIVITY;
+    }
+
+    double estimateComparison(BinaryComparisonOperator filter) {
+        Expression e1 = filter.getExpression1();
+        Expression e2 = filter.getExpression2();
+        boolean flipped = false;
+        if (e1 instanceof Literal && e2 instanceof PropertyName) {
+            Expression tmp = e1;
+            e1 = e2;
+            e2 = tmp;
+            flipped = true;
+        }
+        AttributeStatistics as = attribute(e1);
+        if (as == null || !(e2 instanceof Literal)) {
+            return DEFAULT_SELECTIVITY;
+        }
+        double nonNull = 1 - as.getNullFraction();
+        double value = as.isNumeric() ? value(e2) : Double.NaN;
+        if (filter instanceof PropertyIsEqualTo || filter instanceof PropertyIsNotEqualTo) {
+            double equal;
+            if (!Double.isNaN(value) && (value < as.getMin() || value > as.getMax())) {
+                equal = 0;
+            } else {
+                equal = as.estimateEqualFraction();
+            }
+            return nonNull * (filter instanceof PropertyIsEqualTo ? equal : 1 - equal);
+        }
+        if (Double.isNaN(value)) {
+            return DEFAULT_SELECTIVITY;
+        }
+        boolean less = filter instanceof PropertyIsLessThan
+                || filter instanceof PropertyIsLessThanOrEqualTo;
+        boolean greater = filter instanceof PropertyIsGreaterThan
+                || filter instanceof PropertyIsGreaterThanOrEqualTo;
+        if (!less && !greater) {
+            return DEFAULT_SELECTIVITY;
+        }
+        boolean inclusive = filter instanceof PropertyIsLessThanOrEqualTo
+                || filter instanceof PropertyIsGreaterThanOrEqualTo;
+        if (flipped) {
+            // literal < property is property > literal
+            less = !less;
+        }
+        double fraction;
+        if (less) {
+            fraction = as.estimateFractionBelow(value, inclusive);
+        } else {
+            fraction = 1 - as.estimateFractionBelow(value, !inclusive);
+        }
+        return nonNull * fraction;
+    }
+
+    double estimateSpatial(BinarySpatialOperator filter) {
+        DensityGrid grid = stats.getDensityGrid();
+        if (grid == null) {
+            return DEFAULT_SELECTIVITY;
+        }
+        Envelope area;
+        if (filter instanceof BBOX) {
+            BBOX bbox = (BBOX) filter;
+            area = new Envelope(bbox.getMinX(), bbox.getMaxX(), bbox.getMinY(), bbox.getMaxY());
+        } else {
+            area = envelope(filter.getExpression2());
+            if (area == null) {
+                area = envelope(filter.getExpression1());
+            }
+            if (area == null) {
+                return DEFAULT_SELECTIVITY;
+            }
+            if (filter instanceof DWithin) {
+                area.expandBy(((DWithin) filter).getDistance());
+            } else if (filter instanceof Beyond) {
+                area.expandBy(((Beyond) filter).getDistance());
+            }
+        }
+        double fraction = grid.estimateFraction(area);
+        if (filter instanceof Disjoint || filter instanceof Beyond) {
+            return 1 - fraction;
+        }
+        return fraction;
+    }
+
+    Envelope envelope(Expression expression) {
+        if (expression instanceof Literal) {
+            Object value = ((Literal) expression).getValue();
+            if (value instanceof Geometry) {
+                return new Envelope(((Geometry) value).getEnvelopeInternal());
+            } else if (value instanceof Envelope) {
+                return new Envelope((Envelope) value);
+            }
+        }
+        return null;
+    }
+
+    AttributeStatistics attribute(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        String name = ((PropertyName) expression).getPropertyName();
+        if (name == null) {
+            return null;
+        }
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            name = name.substring(colon + 1);
+        }
+        return stats.getAttribute(name);
+    }
+
+    /**
+     * Returns the literal value as used by the histograms, or NaN
+     */
+    static double value(Expression expression) {
+        if (!(expression instanceof Literal)) {
+            return Double.NaN;
+        }
+        Object value = ((Literal) expression).getValue();
+        double d = AttributeStatistics.toDouble(value);
+        if (Double.isNaN(d) && value != null) {
+            Number n = Converters.convert(value, Double.class);
+            if (n != null) {
+                return n.doubleValue();
+            }
+            Date date = Converters.convert(value, Date.class);
+            if (date != null) {
+                return date.getTime();
+            }
+        }
+        return d;
+    }
+}
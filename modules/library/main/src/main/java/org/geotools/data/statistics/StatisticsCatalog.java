@@ -0,0 +1,307 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Keeps the {@link FeatureTypeStatistics} of the feature types of a store, persisted in a
+ * directory as one <code>typeName.stats</code> file per type.
+ * <p>
+ * Statistics are opt-in: a store uses them once it has been given a catalog, and a type has
+ * statistics once they have been {@linkplain #refresh(SimpleFeatureSource) collected}. From then
+ * on the writers of the store, wrapped by {@link #wrap(FeatureWriter, String, Transaction)},
+ * update them incrementally. Changes made in a transaction are applied when it commits.
+ * </p>
+ * <p>
+ * Stores use the statistics to return estimated counts and bounds when the
+ * {@link Hints#STATISTICS_ESTIMATES} hint is set, either in the query hints or among the
+ * {@linkplain GeoTools#getDefaultHints() default hints}, and to evaluate the cheapest conditions
+ * of a filter first when filtering in memory.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class StatisticsCatalog {
+
+    /**
+     * Extension of the statistics files
+     */
+    public static final String EXTENSION = ".stats";
+
+    /**
+     * Maximum number of changes kept for a transaction, larger transactions make the
+     * statistics stale
+     */
+    static final int MAX_PENDING_CHANGES = 10000;
+
+    File directory;
+
+    Map<String, FeatureTypeStatistics> statistics = new HashMap<String, FeatureTypeStatistics>();
+
+    /**
+     * Types known not to have statistics on disk
+     */
+    Set<String> missing = new HashSet<String>();
+
+    Set<String> dirty = new HashSet<String>();
+
+    /**
+     * @param directory the directory the statistics are stored into, created on the first
+     *        save if missing
+     */
+    public StatisticsCatalog(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the statistics of a feature type, loading them from disk if needed, or null if
+     * they have never been collected
+     */
+    public synchronized FeatureTypeStatistics getStatistics(String typeName) throws IOException {
+        FeatureTypeStatistics stats = statistics.get(typeName);
+        if (stats == null && !missing.contains(typeName)) {
+            File file = getFile(typeName);
+            if (file.exists()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file)));
+                try {
+                    stats = FeatureTypeStatistics.read(in);
+                    statistics.put(typeName, stats);
+                } catch (IOException e) {
+                    FeatureTypeStatistics.LOGGER.log(Level.WARNING, "Ignoring the unreadable "
+                            + "statistics file " + file, e);
+                    missing.add(typeName);
+                } finally {
+                    in.close();
+                }
+            } else {
+                missing.add(typeName);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of a feature type if they exist and are not stale, null otherwise
+     */
+    public FeatureTypeStatistics getCurrentStatistics(String typeName) throws IOException {
+        FeatureTypeStatistics stats = getStatistics(typeName);
+        return stats == null || stats.isStale() ? null : stats;
+    }
+
+    /**
+     * Collects the statistics of a source with a full scan, and stores them
+     */
+    public FeatureTypeStatistics refresh(SimpleFeatureSource source) throws IOException {
+        FeatureTypeStatistics stats = FeatureTypeStatistics.collect(source.getFeatures(Query.ALL));
+        put(stats);
+        return stats;
+    }
+
+    /**
+     * Stores the statistics of a feature type, replacing the previous ones
+     */
+    public synchronized void put(FeatureTypeStatistics stats) throws IOException {
+        statistics.put(stats.getTypeName(), stats);
+        missing.remove(stats.getTypeName());
+        write(stats);
+        dirty.remove(stats.getTypeName());
+    }
+
+    /**
+     * Removes the statistics of a feature type, for example when it is dropped
+     */
+    public synchronized void remove(String typeName) {
+        statistics.remove(typeName);
+        dirty.remove(typeName);
+        missing.add(typeName);
+        File file = getFile(typeName);
+        if (file.exists() && !file.delete()) {
+            FeatureTypeStatistics.LOGGER.warning("Could not remove " + file);
+        }
+    }
+
+    /**
+     * Writes the statistics updated since the last save
+     */
+    public synchronized void save() throws IOException {
+        for (String typeName : new HashSet<String>(dirty)) {
+            save(typeName);
+        }
+    }
+
+    synchronized void save(String typeName) throws IOException {
+        FeatureTypeStatistics stats = statistics.get(typeName);
+        if (stats != null && dirty.remove(typeName)) {
+            write(stats);
+        }
+    }
+
+    /**
+     * Wraps a writer so that the features it writes and removes update the statistics of the
+     * type, if there are any. Under a transaction the changes are only applied on commit.
+     */
+    public FeatureWriter<SimpleFeatureType, SimpleFeature> wrap(
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer, String typeName,
+            Transaction transaction) throws IOException {
+        if (getStatistics(typeName) == null) {
+            return writer;
+        }
+        TransactionChanges changes = null;
+        if (transaction != null && transaction != Transaction.AUTO_COMMIT) {
+            ChangesKey key = new ChangesKey(this, typeName);
+            synchronized (transaction) {
+                changes = (TransactionChanges) transaction.getState(key);
+                if (changes == null) {
+                    changes = new TransactionChanges(this, typeName);
+                    transaction.putState(key, changes);
+                }
+            }
+        }
+        return new StatisticsFeatureWriter(writer, this, typeName, changes);
+    }
+
+    synchronized void added(String typeName, SimpleFeature feature) {
+        FeatureTypeStatistics stats = statistics.get(typeName);
+        if (stats != null) {
+            stats.add(feature);
+            dirty.add(typeName);
+        }
+    }
+
+    synchronized void removed(String typeName, SimpleFeature feature) {
+        FeatureTypeStatistics stats = statistics.get(typeName);
+        if (stats != null) {
+            stats.remove(feature);
+            dirty.add(typeName);
+        }
+    }
+
+    /**
+     * Makes the statistics of a feature type stale, they are then ignored until
+     * {@linkplain #refresh(SimpleFeatureSource) refreshed}. Stores call it for the changes that
+     * do not go through a {@linkplain #wrap wrapped writer}, such as the updates and deletes a
+     * database runs as a single statement.
+     */
+    public synchronized void invalidate(String typeName) throws IOException {
+        FeatureTypeStatistics stats = getStatistics(typeName);
+        if (stats != null && !stats.isStale()) {
+            stats.invalidate();
+            dirty.add(typeName);
+            save(typeName);
+        }
+    }
+
+    File getFile(String typeName) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < typeName.length(); i++) {
+            char c = typeName.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' ? c : '_');
+        }
+        return new File(directory, sb.toString() + EXTENSION);
+    }
+
+    /**
+     * Writes to a temporary file first so that a failure does not leave a corrupted file
+     */
+    void write(FeatureTypeStatistics stats) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the statistics directory " + directory);
+        }
+        File file = getFile(stats.getTypeName());
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            stats.write(out);
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace the statistics file " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Returns true if the hints, or the default hints, allow to use estimates
+     */
+    public static boolean isEstimateAllowed(Hints hints) {
+        Object value = hints != null ? hints.get(Hints.STATISTICS_ESTIMATES) : null;
+        if (value == null) {
+            value = GeoTools.getDefaultHints().get(Hints.STATISTICS_ESTIMATES);
+        }
+        return Boolean.TRUE.equals(value);
+    }
+
+    /**
+     * Key of the changes of a type in a transaction
+     */
+    static class ChangesKey {
+        StatisticsCatalog catalog;
+
+        String typeName;
+
+        ChangesKey(StatisticsCatalog catalog, String typeName) {
+            this.catalog = catalog;
+            this.typeName = typeName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ChangesKey)) {
+                return false;
+            }
+            ChangesKey other = (ChangesKey) obj;
+            return catalog == other.catalog && typeName.equals(other.typeName);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(catalog) * 31 + typeName.hashCode();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.Utilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Updates the statistics of a feature type with the features written and removed through a
+ * writer. Existing features are compared with their original values on write, only the modified
+ * ones update the statistics.
+ *
+ * @source $URL$
+ */
+class StatisticsFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleFeature> {
+
+    FeatureWriter<SimpleFeatureType, SimpleFeature> delegate;
+
+    StatisticsCatalog catalog;
+
+    String typeName;
+
+    /**
+     * The changes of the current transaction, or null for auto commit
+     */
+    TransactionChanges changes;
+
+    SimpleFeature current;
+
+    /**
+     * The values of the current feature as read, null for a new feature
+     */
+    Object[] original;
+
+    StatisticsFeatureWriter(FeatureWriter<SimpleFeatureType, SimpleFeature> delegate,
+            StatisticsCatalog catalog, String typeName, TransactionChanges changes) {
+        this.delegate = delegate;
+        this.catalog = catalog;
+        this.typeName = typeName;
+        this.changes = changes;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return delegate.getFeatureType();
+    }
+
+    public boolean hasNext() throws IOException {
+        return delegate.hasNext();
+    }
+
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        boolean append = !delegate.hasNext();
+        current = delegate.next();
+        original = append ? null : current.getAttributes().toArray();
+        return current;
+    }
+
+    public void write() throws IOException {
+        delegate.write();
+        if (current == null) {
+            return;
+        }
+        if (original == null) {
+            added(current);
+        } else if (modified()) {
+            removed(originalFeature());
+            added(current);
+        }
+        current = null;
+        original = null;
+    }
+
+    public void remove() throws IOException {
+        delegate.remove();
+        if (current != null && original != null) {
+            removed(originalFeature());
+        }
+        current = null;
+        original = null;
+    }
+
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            if (changes == null) {
+                catalog.save(typeName);
+            }
+        }
+    }
+
+    boolean modified() {
+        if (current.getAttributeCount() != original.length) {
+            return true;
+        }
+        for (int i = 0; i < original.length; i++) {
+            if (!Utilities.equals(original[i], current.getAttribute(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    SimpleFeature originalFeature() {
+        return SimpleFeatureBuilder.build(current.getFeatureType(), original, current.getID());
+    }
+
+    void added(SimpleFeature feature) {
+        if (changes != null) {
+            changes.added(feature);
+        } else {
+            catalog.added(typeName, feature);
+        }
+    }
+
+    void removed(SimpleFeature feature) {
+        if (changes != null) {
+            changes.removed(feature);
+        } else {
+            catalog.removed(typeName, feature);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.Transaction;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * The statistics changes made by a transaction on a feature type, applied to the catalog on
+ * commit and dropped on rollback. Past {@link StatisticsCatalog#MAX_PENDING_CHANGES} the
+ * changes are no longer recorded, and the commit makes the statistics stale instead.
+ *
+ * @source $URL$
+ */
+class TransactionChanges implements Transaction.State {
+
+    StatisticsCatalog catalog;
+
+    String typeName;
+
+    List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+
+    /**
+     * Tells if each feature has been added or removed
+     */
+    List<Boolean> added = new ArrayList<Boolean>();
+
+    boolean overflow;
+
+    TransactionChanges(StatisticsCatalog catalog, String typeName) {
+        this.catalog = catalog;
+        this.typeName = typeName;
+    }
+
+    synchronized void added(SimpleFeature feature) {
+        record(feature, true);
+    }
+
+    synchronized void removed(SimpleFeature feature) {
+        record(feature, false);
+    }
+
+    void record(SimpleFeature feature, boolean add) {
+        if (overflow) {
+            return;
+        }
+        if (features.size() >= StatisticsCatalog.MAX_PENDING_CHANGES) {
+            overflow = true;
+            features.clear();
+            added.clear();
+            return;
+        }
+        // writers may reuse the feature
+        features.add(SimpleFeatureBuilder.copy(feature));
+        added.add(add);
+    }
+
+    public void setTransaction(Transaction transaction) {
+        if (transaction == null) {
+            clear();
+        }
+    }
+
+    public void addAuthorization(String AuthID) throws IOException {
+    }
+
+    public synchronized void commit() throws IOException {
+        if (overflow) {
+            catalog.invalidate(typeName);
+        } else {
+            for (int i = 0; i < features.size(); i++) {
+                if (added.get(i)) {
+                    catalog.added(typeName, features.get(i));
+                } else {
+                    catalog.removed(typeName, features.get(i));
+                }
+            }
+        }
+        clear();
+        catalog.save(typeName);
+    }
+
+    public synchronized void rollback() throws IOException {
+        clear();
+    }
+
+    synchronized void clear() {
+        features.clear();
+        added.clear();
+        overflow = false;
+    }
+}
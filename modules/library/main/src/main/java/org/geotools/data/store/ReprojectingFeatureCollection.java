@@ -73,7 +73,8 @@ public class ReprojectingFeatureCollection extends DecoratingSimpleFeatureCollec
     CoordinateReferenceSystem target;
     
     /**
-     * Transformer used to transform geometries;
+     * Transformer used to transform geometries one by one, if null the features are reprojected
+     * in batches
      */
     GeometryCoordinateSequenceTransformer transformer;
     
@@ -108,9 +109,12 @@ public class ReprojectingFeatureCollection extends DecoratingSimpleFeatureCollec
         }
         
         this.transform = transform(source, target);
-        transformer = new GeometryCoordinateSequenceTransformer();
     }
 
+    /**
+     * Sets a transformer used to transform the geometries one by one, instead of the default
+     * batched reprojection
+     */
     public void setTransformer(GeometryCoordinateSequenceTransformer transformer) {
 		this.transformer = transformer;
 	}  
@@ -149,6 +153,9 @@ public class ReprojectingFeatureCollection extends DecoratingSimpleFeatureCollec
 
     public Iterator<SimpleFeature> iterator() {
         try {
+            if (transformer == null) {
+                return new ReprojectingIterator(delegate.iterator(), transform, schema);
+            }
             return new ReprojectingIterator(delegate.iterator(), transform, schema, transformer);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -17,12 +17,15 @@
 package org.geotools.data.store;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.geotools.factory.FactoryRegistryException;
 import org.geotools.feature.IllegalAttributeException;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.BatchGeometryTransformer;
 import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
 import org.geotools.referencing.ReferencingFactoryFinder;
 import org.opengis.feature.simple.SimpleFeature;
@@ -58,6 +61,35 @@ public class ReprojectingIterator implements Iterator {
      */
     GeometryCoordinateSequenceTransformer tx;
 
+    /**
+     * Transformer used when no {@link GeometryCoordinateSequenceTransformer} is provided, the
+     * features are then read ahead and reprojected in batches
+     */
+    BatchGeometryTransformer batchTx;
+
+    /**
+     * The reprojected values of the features read ahead, and their ids
+     */
+    List<Object[]> batch = new ArrayList<Object[]>();
+    List<String> ids = new ArrayList<String>();
+    int index;
+
+    /**
+     * The errors of the features of the batch that could not be reprojected, null if none
+     */
+    TransformException[] failures;
+
+    /**
+     * Reprojects the features in batches of {@link BatchGeometryTransformer#DEFAULT_BATCH_SIZE}.
+     * Since the delegate is read ahead, {@link #remove()} is not supported.
+     */
+    public ReprojectingIterator(Iterator delegate, MathTransform transform,
+            SimpleFeatureType schema) {
+        this.delegate = delegate;
+        this.schema = schema;
+        this.batchTx = new BatchGeometryTransformer(transform);
+    }
+
     public ReprojectingIterator(
 		Iterator delegate, MathTransform transform, SimpleFeatureType schema, 
 		GeometryCoordinateSequenceTransformer transformer
@@ -89,14 +121,34 @@ public class ReprojectingIterator implements Iterator {
     }
 
     public void remove() {
+        if (batchTx != null) {
+            throw new UnsupportedOperationException(
+                    "Features are reprojected in batches, remove is not supported");
+        }
         delegate.remove();
     }
 
     public boolean hasNext() {
-        return delegate.hasNext();
+        return index < batch.size() || delegate.hasNext();
     }
 
     public Object next() {
+        if (batchTx != null) {
+            if (index == batch.size()) {
+                readBatch();
+            }
+            Object[] attributes = batch.get(index);
+            String id = ids.get(index);
+            batch.set(index, null);
+            if (failures != null && failures[index] != null) {
+                // only the features that cannot be reprojected fail, as they do one by one
+                throw new RuntimeException(new IOException("Error occured transforming feature "
+                        + id).initCause(failures[index++]));
+            }
+            index++;
+            return SimpleFeatureBuilder.build(schema, attributes, id);
+        }
+
         SimpleFeature feature = (SimpleFeature) delegate.next();
         try {
             return reproject(feature);
@@ -105,6 +157,22 @@ public class ReprojectingIterator implements Iterator {
         }
     }
 
+    void readBatch() {
+        batch.clear();
+        ids.clear();
+        index = 0;
+        while (batch.size() < BatchGeometryTransformer.DEFAULT_BATCH_SIZE && delegate.hasNext()) {
+            SimpleFeature feature = (SimpleFeature) delegate.next();
+            batch.add(feature.getAttributes().toArray());
+            ids.add(feature.getID());
+        }
+        if (batch.isEmpty()) {
+            throw new NoSuchElementException("No more features");
+        }
+
+        failures = batchTx.transformEach(batch);
+    }
+
     SimpleFeature reproject(SimpleFeature feature) throws IOException {
 
         List attributes = feature.getAttributes();
@@ -0,0 +1,53 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ * 
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature;
+
+import org.geotools.feature.simple.CompactSimpleFeature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * A lenient feature factory building {@link CompactSimpleFeature} instances, which use
+ * significantly less memory than the default implementation when the feature type has
+ * numeric attributes.
+ * <p>
+ * To have {@link org.geotools.feature.simple.SimpleFeatureBuilder} and the data stores use it,
+ * set the {@link org.geotools.factory.Hints#FEATURE_FACTORY} hint to this class, e.g.:
+ * <pre>
+ * Hints hints = new Hints(Hints.FEATURE_FACTORY, CompactFeatureFactoryImpl.class);
+ * SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type, CommonFactoryFinder.getFeatureFactory(hints));
+ * </pre>
+ * </p>
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public class CompactFeatureFactoryImpl extends AbstractFeatureFactoryImpl {
+
+    public CompactFeatureFactoryImpl() {
+        validating = false;
+    }
+
+    @Override
+    public SimpleFeature createSimpleFeature(Object[] array, SimpleFeatureType type, String id) {
+        if (type.isAbstract()) {
+            throw new IllegalArgumentException("Cannot create an feature of an abstract FeatureType "
+                    + type.getTypeName());
+        }
+        return new CompactSimpleFeature(array, type, ff.featureId(id), validating);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.simple;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * The immutable storage layout of a {@link CompactSimpleFeature}: for each attribute it records
+ * whether it's stored in the primitive or in the object array, and at which position. Layouts are
+ * computed once per feature type and shared.
+ *
+ * @source $URL$
+ */
+final class CompactFeatureLayout {
+
+    static final int OBJECT = 0;
+
+    static final int BOOLEAN = 1;
+
+    static final int BYTE = 2;
+
+    static final int SHORT = 3;
+
+    static final int INTEGER = 4;
+
+    static final int LONG = 5;
+
+    static final int FLOAT = 6;
+
+    static final int DOUBLE = 7;
+
+    /**
+     * Layouts for feature types that are not {@link SimpleFeatureTypeImpl}, the layout does not
+     * reference the type so the weak keys can be collected
+     */
+    static final Map<SimpleFeatureType, CompactFeatureLayout> LAYOUTS = Collections
+            .synchronizedMap(new WeakHashMap<SimpleFeatureType, CompactFeatureLayout>());
+
+    /**
+     * The attribute name to position index
+     */
+    final Map<String, Integer> index;
+
+    /**
+     * The storage kind of each attribute
+     */
+    final int[] kinds;
+
+    /**
+     * The position of each attribute in either the primitive or the object array
+     */
+    final int[] slots;
+
+    /**
+     * The attribute bindings
+     */
+    final Class<?>[] bindings;
+
+    final int primitiveCount;
+
+    final int objectCount;
+
+    CompactFeatureLayout(SimpleFeatureType featureType, Map<String, Integer> index) {
+        this.index = index;
+        int count = featureType.getAttributeCount();
+        kinds = new int[count];
+        slots = new int[count];
+        bindings = new Class<?>[count];
+        int primitives = 0;
+        int objects = 0;
+        for (int i = 0; i < count; i++) {
+            bindings[i] = featureType.getDescriptor(i).getType().getBinding();
+            kinds[i] = getKind(bindings[i]);
+            if (kinds[i] == OBJECT) {
+                slots[i] = objects++;
+            } else {
+                slots[i] = primitives++;
+            }
+        }
+        this.primitiveCount = primitives;
+        this.objectCount = objects;
+    }
+
+    /**
+     * Returns the shared layout for the specified feature type
+     */
+    static CompactFeatureLayout getLayout(SimpleFeatureType featureType) {
+        if (featureType instanceof SimpleFeatureTypeImpl) {
+            SimpleFeatureTypeImpl impl = (SimpleFeatureTypeImpl) featureType;
+            CompactFeatureLayout layout = impl.compactLayout;
+            if (layout == null) {
+                // benign race, at worst the layout gets computed twice
+                layout = new CompactFeatureLayout(featureType, impl.index);
+                impl.compactLayout = layout;
+            }
+            return layout;
+        } else {
+            CompactFeatureLayout layout = LAYOUTS.get(featureType);
+            if (layout == null) {
+                layout = new CompactFeatureLayout(featureType, Collections
+                        .unmodifiableMap(SimpleFeatureTypeImpl.buildIndex(featureType)));
+                LAYOUTS.put(featureType, layout);
+            }
+            return layout;
+        }
+    }
+
+    static int getKind(Class<?> binding) {
+        if (binding == Integer.class) {
+            return INTEGER;
+        } else if (binding == Double.class) {
+            return DOUBLE;
+        } else if (binding == Long.class) {
+            return LONG;
+        } else if (binding == Float.class) {
+            return FLOAT;
+        } else if (binding == Short.class) {
+            return SHORT;
+        } else if (binding == Byte.class) {
+            return BYTE;
+        } else if (binding == Boolean.class) {
+            return BOOLEAN;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    /**
+     * Turns a primitive wrapper into its long representation
+     */
+    static long toBits(int kind, Object value) {
+        switch (kind) {
+        case BOOLEAN:
+            return ((Boolean) value).booleanValue() ? 1 : 0;
+        case FLOAT:
+            return Float.floatToRawIntBits(((Float) value).floatValue());
+        case DOUBLE:
+            return Double.doubleToRawLongBits(((Double) value).doubleValue());
+        default:
+            return ((Number) value).longValue();
+        }
+    }
+
+    /**
+     * Turns the long representation of a primitive back into its wrapper
+     */
+    static Object fromBits(int kind, long bits) {
+        switch (kind) {
+        case BOOLEAN:
+            return Boolean.valueOf(bits != 0);
+        case BYTE:
+            return Byte.valueOf((byte) bits);
+        case SHORT:
+            return Short.valueOf((short) bits);
+        case INTEGER:
+            return Integer.valueOf((int) bits);
+        case LONG:
+            return Long.valueOf(bits);
+        case FLOAT:
+            return Float.valueOf(Float.intBitsToFloat((int) bits));
+        case DOUBLE:
+            return Double.valueOf(Double.longBitsToDouble(bits));
+        default:
+            throw new IllegalArgumentException("Unknown primitive kind " + kind);
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.simple;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.feature.GeometryAttributeImpl;
+import org.geotools.feature.IllegalAttributeException;
+import org.geotools.feature.type.Types;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.Converters;
+import org.geotools.util.Utilities;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.AttributeType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.identity.Identifier;
+import org.opengis.geometry.BoundingBox;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A memory conscious implementation of {@link SimpleFeature}.
+ * <p>
+ * Attributes bound to a primitive wrapper (Integer, Long, Double, ...) are stored unboxed in a
+ * single <code>long[]</code>, their nullity is tracked in a bit mask, and all other attributes go
+ * into a (smaller) Object[]. The mapping between attribute positions and storage slots is computed
+ * once per feature type and shared by all the features of that type, and so is the attribute name
+ * index. User data maps are created only when asked for.
+ * </p>
+ * <p>
+ * The savings are significant for tables with many numeric columns, the price to pay is that
+ * numeric values are boxed again each time they are read. Instances are usually created by
+ * {@link CompactFeatureFactoryImpl}, which is selected using the {@link
+ * org.geotools.factory.Hints#FEATURE_FACTORY} hint.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class CompactSimpleFeature implements SimpleFeature {
+
+    protected FeatureId id;
+
+    protected SimpleFeatureType featureType;
+
+    /**
+     * The storage layout, shared among all features of the same type
+     */
+    protected CompactFeatureLayout layout;
+
+    /**
+     * The primitive values, doubles and floats are stored as their raw long bits
+     */
+    protected long[] primitives;
+
+    /**
+     * The null flags for the primitive values, one bit per primitive slot
+     */
+    protected long[] nulls;
+
+    /**
+     * The non primitive values
+     */
+    protected Object[] objects;
+
+    /**
+     * The set of user data attached to the feature (lazily created)
+     */
+    protected Map<Object, Object> userData;
+
+    /**
+     * The set of user data attached to each attribute (lazily created)
+     */
+    protected Map<Object, Object>[] attributeUserData;
+
+    /**
+     * Whether this feature is self validating or not
+     */
+    protected boolean validating;
+
+    /**
+     * Builds a new feature based on the provided values and feature type. The values are copied
+     * into the compact storage, the array can be reused by the caller afterwards.
+     *
+     * @param values
+     * @param featureType
+     * @param id
+     * @param validating
+     */
+    public CompactSimpleFeature(Object[] values, SimpleFeatureType featureType, FeatureId id,
+            boolean validating) {
+        this.id = id;
+        this.featureType = featureType;
+        this.validating = validating;
+        this.layout = CompactFeatureLayout.getLayout(featureType);
+        this.primitives = layout.primitiveCount > 0 ? new long[layout.primitiveCount] : null;
+        this.nulls = layout.primitiveCount > 0 ? new long[(layout.primitiveCount + 63) >> 6]
+                : null;
+        this.objects = new Object[layout.objectCount];
+
+        int count = Math.min(values.length, layout.kinds.length);
+        for (int i = 0; i < count; i++) {
+            store(i, values[i]);
+        }
+        for (int i = count; i < layout.kinds.length; i++) {
+            store(i, null);
+        }
+
+        // if we're self validating, do validation right now
+        if (validating)
+            validate();
+    }
+
+    /**
+     * Stores the value in the slot associated to the attribute, the value is supposed to be
+     * already converted to the attribute binding
+     */
+    void store(int index, Object value) {
+        final int kind = layout.kinds[index];
+        final int slot = layout.slots[index];
+        if (kind == CompactFeatureLayout.OBJECT) {
+            objects[slot] = value;
+        } else if (value == null) {
+            nulls[slot >> 6] |= 1L << slot;
+        } else {
+            Object converted = value;
+            if (!layout.bindings[index].isInstance(value)) {
+                converted = Converters.convert(value, layout.bindings[index]);
+                if (converted == null) {
+                    throw new IllegalAttributeException("Cannot convert " + value + " to "
+                            + layout.bindings[index].getName() + " for attribute "
+                            + featureType.getDescriptor(index).getLocalName());
+                }
+            }
+            primitives[slot] = CompactFeatureLayout.toBits(kind, converted);
+            nulls[slot >> 6] &= ~(1L << slot);
+        }
+    }
+
+    /**
+     * Returns the value of the attribute, boxing it back if it's stored as a primitive
+     */
+    Object load(int index) {
+        final int kind = layout.kinds[index];
+        final int slot = layout.slots[index];
+        if (kind == CompactFeatureLayout.OBJECT) {
+            return objects[slot];
+        } else if ((nulls[slot >> 6] & (1L << slot)) != 0) {
+            return null;
+        } else {
+            return CompactFeatureLayout.fromBits(kind, primitives[slot]);
+        }
+    }
+
+    public FeatureId getIdentifier() {
+        return id;
+    }
+
+    public String getID() {
+        return id.getID();
+    }
+
+    public int getNumberOfAttributes() {
+        return layout.kinds.length;
+    }
+
+    public Object getAttribute(int index) throws IndexOutOfBoundsException {
+        return load(index);
+    }
+
+    public Object getAttribute(String name) {
+        Integer idx = layout.index.get(name);
+        if (idx != null)
+            return load(idx);
+        else
+            return null;
+    }
+
+    public Object getAttribute(Name name) {
+        return getAttribute(name.getLocalPart());
+    }
+
+    public int getAttributeCount() {
+        return layout.kinds.length;
+    }
+
+    public List<Object> getAttributes() {
+        List<Object> result = new ArrayList<Object>(layout.kinds.length);
+        for (int i = 0; i < layout.kinds.length; i++) {
+            result.add(load(i));
+        }
+        return result;
+    }
+
+    public Object getDefaultGeometry() {
+        // should be specified in the index as the default key (null)
+        Integer idx = layout.index.get(null);
+        Object defaultGeometry = idx != null ? load(idx) : null;
+
+        // not found? do we have a default geometry at all?
+        if (defaultGeometry == null) {
+            GeometryDescriptor geometryDescriptor = featureType.getGeometryDescriptor();
+            if (geometryDescriptor != null) {
+                Integer defaultGeomIndex = layout.index.get(geometryDescriptor.getName()
+                        .getLocalPart());
+                defaultGeometry = load(defaultGeomIndex.intValue());
+            }
+        }
+
+        return defaultGeometry;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public SimpleFeatureType getType() {
+        return featureType;
+    }
+
+    public void setAttribute(int index, Object value) throws IndexOutOfBoundsException {
+        // first do conversion
+        Object converted = Converters.convert(value, layout.bindings[index]);
+        // if necessary, validation too
+        if (validating)
+            Types.validate(featureType.getDescriptor(index), converted);
+        // finally set the value into the feature
+        store(index, converted);
+    }
+
+    public void setAttribute(String name, Object value) {
+        final Integer idx = layout.index.get(name);
+        if (idx == null)
+            throw new IllegalAttributeException("Unknown attribute " + name);
+        setAttribute(idx.intValue(), value);
+    }
+
+    public void setAttribute(Name name, Object value) {
+        setAttribute(name.getLocalPart(), value);
+    }
+
+    public void setAttributes(List<Object> values) {
+        for (int i = 0; i < layout.kinds.length; i++) {
+            store(i, values.get(i));
+        }
+    }
+
+    public void setAttributes(Object[] values) {
+        setAttributes(Arrays.asList(values));
+    }
+
+    public void setDefaultGeometry(Object geometry) {
+        Integer geometryIndex = layout.index.get(null);
+        if (geometryIndex != null) {
+            setAttribute(geometryIndex, geometry);
+        }
+    }
+
+    public BoundingBox getBounds() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(featureType.getCoordinateReferenceSystem());
+        // geometries are never stored as primitives, only scan the object slots
+        for (Object o : objects) {
+            if (o instanceof Geometry) {
+                Geometry g = (Geometry) o;
+                if (bounds.isNull()) {
+                    bounds.init(g.getEnvelopeInternal());
+                } else {
+                    bounds.expandToInclude(g.getEnvelopeInternal());
+                }
+            }
+        }
+
+        return bounds;
+    }
+
+    public GeometryAttribute getDefaultGeometryProperty() {
+        GeometryDescriptor geometryDescriptor = featureType.getGeometryDescriptor();
+        GeometryAttribute geometryAttribute = null;
+        if (geometryDescriptor != null) {
+            Object defaultGeometry = getDefaultGeometry();
+            geometryAttribute = new GeometryAttributeImpl(defaultGeometry, geometryDescriptor, null);
+        }
+        return geometryAttribute;
+    }
+
+    public void setDefaultGeometryProperty(GeometryAttribute geometryAttribute) {
+        if (geometryAttribute != null)
+            setDefaultGeometry(geometryAttribute.getValue());
+        else
+            setDefaultGeometry(null);
+    }
+
+    public Collection<Property> getProperties() {
+        return new AttributeList();
+    }
+
+    public Collection<Property> getProperties(Name name) {
+        return getProperties(name.getLocalPart());
+    }
+
+    public Collection<Property> getProperties(String name) {
+        final Integer idx = layout.index.get(name);
+        if (idx != null) {
+            // cast temporarily to a plain collection to avoid type problems with generics
+            Collection c = Collections.singleton(new Attribute(idx));
+            return c;
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    public Property getProperty(Name name) {
+        return getProperty(name.getLocalPart());
+    }
+
+    public Property getProperty(String name) {
+        final Integer idx = layout.index.get(name);
+        if (idx == null) {
+            return null;
+        } else {
+            int index = idx.intValue();
+            AttributeDescriptor descriptor = featureType.getDescriptor(index);
+            if (descriptor instanceof GeometryDescriptor) {
+                return new GeometryAttributeImpl(load(index), (GeometryDescriptor) descriptor,
+                        null);
+            } else {
+                return new Attribute(index);
+            }
+        }
+    }
+
+    public Collection<? extends Property> getValue() {
+        return getProperties();
+    }
+
+    public void setValue(Collection<Property> values) {
+        int i = 0;
+        for (Property p : values) {
+            store(i++, p.getValue());
+        }
+    }
+
+    public void setValue(Object newValue) {
+        setValue((Collection<Property>) newValue);
+    }
+
+    public AttributeDescriptor getDescriptor() {
+        return null;
+    }
+
+    public Name getName() {
+        return null;
+    }
+
+    public boolean isNillable() {
+        return true;
+    }
+
+    public Map<Object, Object> getUserData() {
+        if (userData == null)
+            userData = new HashMap<Object, Object>();
+        return userData;
+    }
+
+    /**
+     * returns a unique code for this feature
+     *
+     * @return A unique int
+     */
+    public int hashCode() {
+        return id.hashCode() * featureType.hashCode();
+    }
+
+    /**
+     * Compares the feature against any other {@link SimpleFeature}, checking the identifier, the
+     * feature type and the attribute values
+     *
+     * @param obj the Object to test for equality.
+     *
+     * @return <code>true</code> if the object is equal, <code>false</code> otherwise.
+     */
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+
+        if (obj == this) {
+            return true;
+        }
+
+        if (!(obj instanceof SimpleFeature)) {
+            return false;
+        }
+
+        SimpleFeature feat = (SimpleFeature) obj;
+
+        if (id == null) {
+            if (feat.getIdentifier() != null) {
+                return false;
+            }
+        } else if (!id.equals(feat.getIdentifier())) {
+            return false;
+        }
+
+        if (!feat.getFeatureType().equals(featureType)) {
+            return false;
+        }
+
+        for (int i = 0, ii = layout.kinds.length; i < ii; i++) {
+            Object value = load(i);
+            Object otherAtt = feat.getAttribute(i);
+
+            if (value == null) {
+                if (otherAtt != null) {
+                    return false;
+                }
+            } else if (!value.equals(otherAtt)) {
+                if (value instanceof Geometry && otherAtt instanceof Geometry) {
+                    // JTS Geometry.equals(Object) and Geometry.equals(Geometry) differ
+                    if (!((Geometry) value).equals((Geometry) otherAtt)) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public void validate() {
+        for (int i = 0; i < layout.kinds.length; i++) {
+            AttributeDescriptor descriptor = getType().getDescriptor(i);
+            Types.validate(descriptor, load(i));
+        }
+    }
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer("CompactSimpleFeature:");
+        sb.append(getType().getName().getLocalPart());
+        sb.append("=");
+        sb.append(getValue());
+        return sb.toString();
+    }
+
+    /**
+     * Live collection backed directly on the compact storage
+     */
+    class AttributeList extends AbstractList<Property> {
+
+        public Attribute get(int index) {
+            return new Attribute(index);
+        }
+
+        public Attribute set(int index, Property element) {
+            store(index, element.getValue());
+            return null;
+        }
+
+        public int size() {
+            return layout.kinds.length;
+        }
+    }
+
+    /**
+     * Attribute that delegates directly to the compact storage
+     */
+    class Attribute implements org.opengis.feature.Attribute {
+        int index;
+
+        Attribute(int index) {
+            this.index = index;
+        }
+
+        public Identifier getIdentifier() {
+            return null;
+        }
+
+        public AttributeDescriptor getDescriptor() {
+            return featureType.getDescriptor(index);
+        }
+
+        public AttributeType getType() {
+            return featureType.getType(index);
+        }
+
+        public Name getName() {
+            return getDescriptor().getName();
+        }
+
+        public Map<Object, Object> getUserData() {
+            // lazily create the user data holder
+            if (attributeUserData == null)
+                attributeUserData = new HashMap[layout.kinds.length];
+            // lazily create the attribute user data
+            if (attributeUserData[index] == null)
+                attributeUserData[index] = new HashMap<Object, Object>();
+            return attributeUserData[index];
+        }
+
+        public Object getValue() {
+            return load(index);
+        }
+
+        public boolean isNillable() {
+            return getDescriptor().isNillable();
+        }
+
+        public void setValue(Object newValue) {
+            store(index, newValue);
+        }
+
+        public int hashCode() {
+            Object value = getValue();
+            return 37 * getDescriptor().hashCode() + (37 * (value == null ? 0 : value.hashCode()));
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Attribute)) {
+                return false;
+            }
+            Attribute other = (Attribute) obj;
+            if (!Utilities.equals(getDescriptor(), other.getDescriptor())) {
+                return false;
+            }
+            if (!Utilities.deepEquals(getValue(), other.getValue())) {
+                return false;
+            }
+            return Utilities.equals(getIdentifier(), other.getIdentifier());
+        }
+
+        public void validate() {
+            Types.validate(getDescriptor(), load(index));
+        }
+
+        public String toString() {
+            StringBuffer sb = new StringBuffer("CompactSimpleFeature.Attribute: ");
+            sb.append(getDescriptor().getName().getLocalPart());
+            sb.append("=");
+            sb.append(load(index));
+            return sb.toString();
+        }
+    }
+
+}
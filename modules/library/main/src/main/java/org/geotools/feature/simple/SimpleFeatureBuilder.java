@@ -153,6 +153,12 @@ public class SimpleFeatureBuilder {
     
     boolean validating;
     
+    /** whether the built feature object should be recycled across calls to buildFeature */
+    boolean featureReuse;
+    
+    /** the feature being recycled, if any */
+    SimpleFeatureImpl reusable;
+    
     public SimpleFeatureBuilder(SimpleFeatureType featureType) {
         this(featureType, CommonFactoryFinder.getFeatureFactory(null));
     }
@@ -342,8 +348,32 @@ public class SimpleFeatureBuilder {
         Object[] values = this.values;
         Map<Object,Object>[] userData = this.userData;
         Map<Object,Object> featureUserData = this.featureUserData;
-        reset();
-        SimpleFeature sf = factory.createSimpleFeature(values, featureType, id);
+        SimpleFeature sf;
+        if(reusable != null) {
+            // swap the value arrays, the one released by the feature will host the next values
+            Object[] recycled = reusable.values;
+            reusable.values = values;
+            reusable.id = new FeatureIdImpl(id);
+            reusable.userData = null;
+            reusable.attributeUserData = null;
+            if(reusable.validating) {
+                reusable.validate();
+            }
+            sf = reusable;
+            
+            Arrays.fill(recycled, null);
+            this.values = recycled;
+            this.next = 0;
+            this.userData = null;
+            this.featureUserData = null;
+        } else {
+            reset();
+            sf = factory.createSimpleFeature(values, featureType, id);
+            if(featureReuse && sf instanceof SimpleFeatureImpl 
+                    && ((SimpleFeatureImpl) sf).values == values) {
+                reusable = (SimpleFeatureImpl) sf;
+            }
+        }
         
         // handle the per attribute user data
         if(userData != null) {
@@ -596,4 +626,30 @@ public class SimpleFeatureBuilder {
     public void setValidating(boolean validating) {
         this.validating = validating;
     }
+    
+    /**
+     * Returns true if the builder recycles the same feature object across calls to 
+     * {@link #buildFeature(String)}
+     */
+    public boolean isFeatureReuse() {
+        return featureReuse;
+    }
+
+    /**
+     * Enables feature recycling. When enabled each call to {@link #buildFeature(String)} returns
+     * the same feature object, with its identifier, values and user data replaced, saving the 
+     * allocation of a new feature and value array each time. 
+     * <p>
+     * Only use this when the built features are not retained by the calling code, 
+     * see {@link org.geotools.factory.Hints#FEATURE_REUSE}. Recycling is only performed
+     * if the feature factory returns {@link SimpleFeatureImpl} instances, with other 
+     * factories a new feature is built each time. 
+     * </p>
+     */
+    public void setFeatureReuse(boolean featureReuse) {
+        this.featureReuse = featureReuse;
+        if(!featureReuse) {
+            reusable = null;
+        }
+    }
 }
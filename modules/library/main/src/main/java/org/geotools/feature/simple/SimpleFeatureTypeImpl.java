@@ -47,6 +47,11 @@ public class SimpleFeatureTypeImpl extends FeatureTypeImpl implements
 
     Map<String, Integer> index;
 
+    /**
+     * Storage layout used by {@link CompactSimpleFeature}, lazily computed
+     */
+    volatile CompactFeatureLayout compactLayout;
+
     @SuppressWarnings("unchecked")
     public SimpleFeatureTypeImpl(Name name, List<AttributeDescriptor> schema,
             GeometryDescriptor defaultGeometry, boolean isAbstract,
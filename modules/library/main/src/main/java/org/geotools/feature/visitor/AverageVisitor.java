@@ -33,7 +33,7 @@ import org.opengis.filter.expression.Expression;
  * @since 2.2.M2
  * @source $URL$
  */
-public class AverageVisitor implements FeatureCalc {
+public class AverageVisitor implements MergeableFeatureCalc {
     private Expression expr;
 
     /**
@@ -114,7 +114,7 @@ public class AverageVisitor implements FeatureCalc {
     }
 
     public void visit(SimpleFeature feature) {
-        visit(feature);
+        visit((org.opengis.feature.Feature) feature);
     }
     
     public void visit(org.opengis.feature.Feature feature) {
@@ -179,6 +179,27 @@ public class AverageVisitor implements FeatureCalc {
         // in fact visited each feature
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new AverageVisitor(expr);
+    }
+
+    /**
+     * Merges the count and sum of the partial visitor.
+     *
+     * @throws IllegalArgumentException if either visitor holds an optimized average
+     */
+    public void merge(MergeableFeatureCalc partial) {
+        CalcResult other = partial.getResult();
+        if (other == CalcResult.NULL_RESULT) {
+            return;
+        }
+        AverageResult merged = (AverageResult) getResult().merge(other);
+        if (merged.isOptimized) {
+            throw new IllegalArgumentException("Optimized average results cannot be merged.");
+        }
+        setValue(merged.getCount(), merged.getSum());
+    }
+
     /**
      * Encapsulates the strategy pattern for the "Average" Visitor
      */
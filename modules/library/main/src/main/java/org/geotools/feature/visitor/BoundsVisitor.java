@@ -29,7 +29,7 @@ import com.vividsolutions.jts.geom.Envelope;
  * @since 2.2.M2
  * @source $URL$
  */
-public class BoundsVisitor implements FeatureCalc {
+public class BoundsVisitor implements MergeableFeatureCalc {
     ReferencedEnvelope bounds = new ReferencedEnvelope();    
         
     public void visit(org.opengis.feature.Feature feature) {
@@ -44,6 +44,17 @@ public class BoundsVisitor implements FeatureCalc {
         this.bounds = new ReferencedEnvelope();
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new BoundsVisitor();
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        ReferencedEnvelope other = ((BoundsVisitor) partial).bounds;
+        if (other != null && !other.isEmpty()) {
+            bounds.include(other);
+        }
+    }
+
     public CalcResult getResult() {
     	if(bounds == null || bounds.isEmpty()) {
     		return CalcResult.NULL_RESULT;
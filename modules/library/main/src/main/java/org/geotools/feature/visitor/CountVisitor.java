@@ -29,7 +29,7 @@ import org.opengis.feature.simple.SimpleFeature;
  * @since 2.2.M2
  * @source $URL$
  */
-public class CountVisitor implements FeatureCalc {
+public class CountVisitor implements MergeableFeatureCalc {
     Integer count = null;
 
     public void init(SimpleFeatureCollection collection) {
@@ -61,6 +61,17 @@ public class CountVisitor implements FeatureCalc {
         this.count = null;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new CountVisitor();
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        Integer other = ((CountVisitor) partial).count;
+        if (other != null) {
+            count = count == null ? other : count + other;
+        }
+    }
+
     public CalcResult getResult() {
     	if(count == null) {
     		return CalcResult.NULL_RESULT;
@@ -0,0 +1,240 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Estimates the number of distinct values of an expression using a HyperLogLog sketch, in
+ * constant memory.
+ * <p>
+ * With the default precision the sketch uses 16KB and the standard error of the estimate is
+ * about 0.8%. This is the approximate counterpart of <code>UniqueVisitor.getUnique().size()</code>.
+ * </p>
+ * The algorithm is described here: http://en.wikipedia.org/wiki/HyperLogLog
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class DistinctCountVisitor implements MergeableFeatureCalc {
+
+    /**
+     * The default precision, the sketch has 2^precision registers
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    private Expression expr;
+
+    int precision;
+
+    byte[] registers;
+
+    boolean visited = false;
+
+    public DistinctCountVisitor(Expression expr) {
+        this(expr, DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param expr the expression whose distinct values are counted
+     * @param precision between 4 and 18, the standard error is about
+     *        <code>1.04 / sqrt(2^precision)</code>
+     */
+    public DistinctCountVisitor(Expression expr, int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18: " + precision);
+        }
+        this.expr = expr;
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void init(SimpleFeatureCollection collection) {
+        // do nothing
+    }
+
+    public void visit(SimpleFeature feature) {
+        visit((org.opengis.feature.Feature) feature);
+    }
+
+    public void visit(org.opengis.feature.Feature feature) {
+        Object value = expr.evaluate(feature);
+        if (value != null) {
+            add(hash(value));
+        }
+    }
+
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the rank is the position of the first 1 bit in the remaining bits
+        long w = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+        visited = true;
+    }
+
+    public Expression getExpression() {
+        return expr;
+    }
+
+    /**
+     * Returns a copy of the sketch registers, to store the sketch
+     */
+    public byte[] getRegisters() {
+        return registers.clone();
+    }
+
+    /**
+     * Replaces the sketch with a stored one
+     *
+     * @param registers the registers of a sketch with the same precision
+     */
+    public void setRegisters(byte[] registers) {
+        if (registers.length != this.registers.length) {
+            throw new IllegalArgumentException("Sketches with a different precision cannot be used");
+        }
+        this.registers = registers.clone();
+        visited = false;
+        for (byte b : registers) {
+            if (b != 0) {
+                visited = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values
+     */
+    public long getCount() {
+        return estimate(registers);
+    }
+
+    public void reset() {
+        registers = new byte[1 << precision];
+        visited = false;
+    }
+
+    public CalcResult getResult() {
+        if (!visited) {
+            return CalcResult.NULL_RESULT;
+        }
+        return new DistinctCountResult(registers.clone());
+    }
+
+    public MergeableFeatureCalc createPartial() {
+        return new DistinctCountVisitor(expr, precision);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        DistinctCountVisitor other = (DistinctCountVisitor) partial;
+        if (other.visited) {
+            union(registers, other.registers);
+            visited = true;
+        }
+    }
+
+    static void union(byte[] target, byte[] source) {
+        if (target.length != source.length) {
+            throw new IllegalArgumentException("Sketches with a different precision cannot be merged");
+        }
+        for (int i = 0; i < target.length; i++) {
+            if (source[i] > target[i]) {
+                target[i] = source[i];
+            }
+        }
+    }
+
+    static long estimate(byte[] registers) {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            sum += 1.0 / (1L << registers[i]);
+            if (registers[i] == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Hashes a value to 64 bits. Numbers hash by their double value, strings by their
+     * characters, anything else by its hash code.
+     */
+    static long hash(Object value) {
+        long h;
+        if (value instanceof Number) {
+            h = Double.doubleToLongBits(((Number) value).doubleValue());
+        } else if (value instanceof CharSequence) {
+            CharSequence chars = (CharSequence) value;
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < chars.length(); i++) {
+                h ^= chars.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        } else {
+            h = value.hashCode();
+        }
+        // murmur3 finalizer, spreads the bits over the whole long
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public static class DistinctCountResult extends AbstractCalcResult {
+        private byte[] registers;
+
+        public DistinctCountResult(byte[] registers) {
+            this.registers = registers;
+        }
+
+        public Object getValue() {
+            return new Long(estimate(registers));
+        }
+
+        public boolean isCompatible(CalcResult targetResults) {
+            return targetResults instanceof DistinctCountResult
+                    || targetResults == CalcResult.NULL_RESULT;
+        }
+
+        public CalcResult merge(CalcResult resultsToAdd) {
+            if (!isCompatible(resultsToAdd)) {
+                throw new IllegalArgumentException("Parameter is not a compatible type");
+            }
+            if (resultsToAdd == CalcResult.NULL_RESULT) {
+                return this;
+            }
+            byte[] merged = registers.clone();
+            union(merged, ((DistinctCountResult) resultsToAdd).registers);
+            return new DistinctCountResult(merged);
+        }
+    }
+}
@@ -21,6 +21,11 @@ import org.opengis.feature.FeatureVisitor;
 /**
  * A visitor which performs a calculation on a FeatureCollection. A FeatureCalc
  * will not modify the features visited.
+ * <p>
+ * A FeatureCalc should not hold onto the features visited either, as the data stores are
+ * allowed to recycle them while feeding the visitor (see {@link org.geotools.factory.Hints#FEATURE_REUSE}).
+ * Attribute values can be retained safely.
+ * </p>
  *
  * @author Cory Horner, Refractions
  *
@@ -0,0 +1,208 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Computes an aggregate for each group of features sharing the same values of a list of
+ * expressions, the equivalent of a SQL <code>GROUP BY</code>.
+ * <p>
+ * The aggregate is computed by a partial visitor created for each group out of the aggregate
+ * visitor, which is used as a prototype and never visits features itself. The result is a map
+ * from the list of values identifying each group to the value of its aggregate, in the order
+ * the groups have been found:
+ *
+ * <pre>
+ * GroupByVisitor visitor = new GroupByVisitor(ff.property(&quot;region&quot;), new SumVisitor(ff
+ *         .property(&quot;population&quot;)));
+ * features.accepts(visitor, null);
+ * Map&lt;List&lt;Object&gt;, Object&gt; sums = visitor.getGroupValues();
+ * </pre>
+ *
+ * Stores able to group in the database, such as the JDBC ones, compute the groups there,
+ * the others visit the features and group them in a hash table.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class GroupByVisitor implements MergeableFeatureCalc {
+
+    List<Expression> groupBy;
+
+    MergeableFeatureCalc aggregate;
+
+    Map<List<Object>, MergeableFeatureCalc> groups = new LinkedHashMap<List<Object>, MergeableFeatureCalc>();
+
+    public GroupByVisitor(Expression groupBy, MergeableFeatureCalc aggregate) {
+        this(Collections.singletonList(groupBy), aggregate);
+    }
+
+    /**
+     * @param groupBy the expressions whose values identify the groups
+     * @param aggregate the aggregate computed on each group
+     */
+    public GroupByVisitor(List<Expression> groupBy, MergeableFeatureCalc aggregate) {
+        if (groupBy == null || groupBy.isEmpty()) {
+            throw new IllegalArgumentException("At least one group by expression is required");
+        }
+        if (aggregate == null) {
+            throw new IllegalArgumentException("The aggregate visitor is required");
+        }
+        this.groupBy = new ArrayList<Expression>(groupBy);
+        this.aggregate = aggregate;
+    }
+
+    public void init(SimpleFeatureCollection collection) {
+        // do nothing
+    }
+
+    public void visit(SimpleFeature feature) {
+        visit((Feature) feature);
+    }
+
+    public void visit(Feature feature) {
+        List<Object> key = new ArrayList<Object>(groupBy.size());
+        for (Expression expression : groupBy) {
+            key.add(expression.evaluate(feature));
+        }
+        getGroup(key).visit(feature);
+    }
+
+    /**
+     * Returns the expressions whose values identify the groups
+     */
+    public List<Expression> getGroupByExpressions() {
+        return Collections.unmodifiableList(groupBy);
+    }
+
+    /**
+     * Returns the visitor used as a prototype for the aggregate of each group
+     */
+    public MergeableFeatureCalc getAggregateVisitor() {
+        return aggregate;
+    }
+
+    /**
+     * Returns the visitor computing the aggregate of a group, creating it if the group has not
+     * been found yet. Stores computing the aggregates natively set their value on it.
+     *
+     * @param key the values of the group by expressions
+     */
+    public MergeableFeatureCalc getGroup(List<Object> key) {
+        MergeableFeatureCalc group = groups.get(key);
+        if (group == null) {
+            group = aggregate.createPartial();
+            groups.put(new ArrayList<Object>(key), group);
+        }
+        return group;
+    }
+
+    /**
+     * Returns the value of the aggregate for each group, null for groups without a value
+     */
+    @SuppressWarnings("unchecked")
+    public Map<List<Object>, Object> getGroupValues() {
+        return (Map<List<Object>, Object>) new GroupByResult(getGroupResults()).getValue();
+    }
+
+    Map<List<Object>, CalcResult> getGroupResults() {
+        Map<List<Object>, CalcResult> results = new LinkedHashMap<List<Object>, CalcResult>();
+        for (Map.Entry<List<Object>, MergeableFeatureCalc> entry : groups.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().getResult());
+        }
+        return results;
+    }
+
+    public void reset() {
+        groups.clear();
+    }
+
+    public MergeableFeatureCalc createPartial() {
+        return new GroupByVisitor(groupBy, aggregate);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        GroupByVisitor other = (GroupByVisitor) partial;
+        for (Map.Entry<List<Object>, MergeableFeatureCalc> entry : other.groups.entrySet()) {
+            getGroup(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    public CalcResult getResult() {
+        if (groups.isEmpty()) {
+            return CalcResult.NULL_RESULT;
+        }
+        return new GroupByResult(getGroupResults());
+    }
+
+    public static class GroupByResult extends AbstractCalcResult {
+        Map<List<Object>, CalcResult> results;
+
+        public GroupByResult(Map<List<Object>, CalcResult> results) {
+            this.results = results;
+        }
+
+        /**
+         * Returns the map from the group values to the aggregate value
+         */
+        public Object getValue() {
+            Map<List<Object>, Object> values = new LinkedHashMap<List<Object>, Object>();
+            for (Map.Entry<List<Object>, CalcResult> entry : results.entrySet()) {
+                values.put(entry.getKey(), entry.getValue().getValue());
+            }
+            return values;
+        }
+
+        public boolean isCompatible(CalcResult targetResults) {
+            return targetResults == CalcResult.NULL_RESULT
+                    || targetResults instanceof GroupByResult;
+        }
+
+        public CalcResult merge(CalcResult resultsToAdd) {
+            if (!isCompatible(resultsToAdd)) {
+                throw new IllegalArgumentException("Parameter is not a compatible type");
+            }
+            if (resultsToAdd == CalcResult.NULL_RESULT) {
+                return this;
+            }
+
+            Map<List<Object>, CalcResult> merged = new LinkedHashMap<List<Object>, CalcResult>(
+                    results);
+            for (Map.Entry<List<Object>, CalcResult> entry : ((GroupByResult) resultsToAdd).results
+                    .entrySet()) {
+                CalcResult result = merged.get(entry.getKey());
+                if (result == null || result == CalcResult.NULL_RESULT) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else {
+                    merged.put(entry.getKey(), result.merge(entry.getValue()));
+                }
+            }
+            return new GroupByResult(merged);
+        }
+    }
+}
@@ -32,7 +32,7 @@ import org.opengis.filter.expression.Expression;
  * @since 2.2.M2
  * @source $URL$
  */
-public class MaxVisitor implements FeatureCalc {
+public class MaxVisitor implements MergeableFeatureCalc {
     private Expression expr;
     Comparable maxvalue;
     Comparable curvalue;
@@ -166,6 +166,20 @@ public class MaxVisitor implements FeatureCalc {
         maxvalue = (Comparable) result;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new MaxVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        MaxVisitor other = (MaxVisitor) partial;
+        countNull += other.countNull;
+        countNaN += other.countNaN;
+        if (other.visited && (!visited || other.maxvalue.compareTo(maxvalue) > 0)) {
+            maxvalue = other.maxvalue;
+            visited = true;
+        }
+    }
+
     public static class MaxResult extends AbstractCalcResult {
         private Comparable maxValue;
 
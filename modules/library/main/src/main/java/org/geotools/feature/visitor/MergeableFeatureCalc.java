@@ -0,0 +1,44 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+/**
+ * A FeatureCalc whose calculation can be split among several partial visitors, each one fed a
+ * subset of the features, and then merged back.
+ * <p>
+ * Partial visitors are independent from each other, so they can be run in parallel, see
+ * {@link ParallelCalc}. Merging is not thread safe and must happen once the partial visitors
+ * are done.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public interface MergeableFeatureCalc extends FeatureCalc {
+
+    /**
+     * Returns a new visitor performing the same calculation, with no features visited yet.
+     */
+    MergeableFeatureCalc createPartial();
+
+    /**
+     * Adds the features visited by the partial visitor to this visitor state.
+     *
+     * @param partial a visitor built by {@link #createPartial()}
+     */
+    void merge(MergeableFeatureCalc partial);
+}
@@ -32,7 +32,7 @@ import org.opengis.filter.expression.Expression;
  * @since 2.2.M2
  * @source $URL$
  */
-public class MinVisitor implements FeatureCalc {
+public class MinVisitor implements MergeableFeatureCalc {
     private Expression expr;
     Comparable minvalue;
     Comparable curvalue;
@@ -138,6 +138,18 @@ public class MinVisitor implements FeatureCalc {
         minvalue = (Comparable) result;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new MinVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        MinVisitor other = (MinVisitor) partial;
+        if (other.visited && (!visited || other.minvalue.compareTo(minvalue) < 0)) {
+            minvalue = other.minvalue;
+            visited = true;
+        }
+    }
+
     public static class MinResult extends AbstractCalcResult {
         private Comparable minValue;
 
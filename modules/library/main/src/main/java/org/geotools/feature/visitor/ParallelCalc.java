@@ -0,0 +1,280 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.util.ProgressListener;
+
+/**
+ * Runs a {@link MergeableFeatureCalc} in parallel, visiting each partition of the data with its
+ * own partial visitor and merging the partial results back into the calculation.
+ * <p>
+ * Two strategies are available:
+ * <ul>
+ * <li>{@link #accepts(List, MergeableFeatureCalc, ExecutorService, ProgressListener)} visits a
+ * list of partitions, each one through its own {@link SimpleFeatureCollection#accepts}, so that
+ * the optimizations of the store are retained for every partition</li>
+ * <li>{@link #accepts(SimpleFeatureCollection, MergeableFeatureCalc, ExecutorService, int)}
+ * reads a single collection in the calling thread and hands batches of features over to a
+ * number of worker threads</li>
+ * </ul>
+ * {@link #accepts(SimpleFeatureSource, Query, MergeableFeatureCalc, ExecutorService, int)}
+ * picks the first strategy for sources that support paging, the second one otherwise.
+ * </p>
+ * <p>
+ * The features handed over to the workers are not copied, so the collections must not be read
+ * with {@link org.geotools.factory.Hints#FEATURE_REUSE} enabled.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class ParallelCalc {
+
+    /**
+     * Number of features handed over to a worker thread in one go
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Marks the end of the features in the batch queue
+     */
+    static final List<SimpleFeature> END = new ArrayList<SimpleFeature>();
+
+    /**
+     * Computes the calculation over the partitions in parallel, merging the partial results in
+     * the order of the partitions.
+     *
+     * @param partitions disjoint collections, that together hold the features to be visited
+     * @param calc the calculation, whose state is updated with the merged partial results
+     * @param executor the executor running the partitions
+     * @param progress used to report progress and cancel the work, may be null
+     */
+    public static void accepts(List<? extends SimpleFeatureCollection> partitions,
+            MergeableFeatureCalc calc, ExecutorService executor, final ProgressListener progress)
+            throws IOException {
+        List<Future<MergeableFeatureCalc>> futures = new ArrayList<Future<MergeableFeatureCalc>>();
+        for (final SimpleFeatureCollection partition : partitions) {
+            final MergeableFeatureCalc partial = calc.createPartial();
+            futures.add(executor.submit(new Callable<MergeableFeatureCalc>() {
+                public MergeableFeatureCalc call() throws Exception {
+                    if (progress == null || !progress.isCanceled()) {
+                        partition.accepts(partial, null);
+                    }
+                    return partial;
+                }
+            }));
+        }
+
+        merge(calc, futures, progress);
+    }
+
+    /**
+     * Computes the calculation over a single collection. The features are read in the calling
+     * thread and visited in batches by <code>threads</code> partial visitors.
+     *
+     * @param collection the features to be visited
+     * @param calc the calculation, whose state is updated with the merged partial results
+     * @param executor the executor running the workers, it must be able to run
+     *        <code>threads</code> tasks at the same time
+     * @param threads the number of worker threads
+     */
+    public static void accepts(SimpleFeatureCollection collection, MergeableFeatureCalc calc,
+            ExecutorService executor, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        final BlockingQueue<List<SimpleFeature>> queue = new ArrayBlockingQueue<List<SimpleFeature>>(
+                threads * 2);
+        List<Future<MergeableFeatureCalc>> futures = new ArrayList<Future<MergeableFeatureCalc>>();
+        for (int i = 0; i < threads; i++) {
+            final MergeableFeatureCalc partial = calc.createPartial();
+            futures.add(executor.submit(new Callable<MergeableFeatureCalc>() {
+                public MergeableFeatureCalc call() throws Exception {
+                    List<SimpleFeature> batch;
+                    while ((batch = queue.take()) != END) {
+                        for (SimpleFeature feature : batch) {
+                            partial.visit(feature);
+                        }
+                    }
+                    return partial;
+                }
+            }));
+        }
+
+        SimpleFeatureIterator it = collection.features();
+        try {
+            List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+            boolean running = true;
+            while (running && it.hasNext()) {
+                batch.add(it.next());
+                if (batch.size() == BATCH_SIZE) {
+                    running = put(queue, batch, futures);
+                    batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                }
+            }
+            if (running && !batch.isEmpty()) {
+                put(queue, batch, futures);
+            }
+        } catch (RuntimeException e) {
+            for (Future<MergeableFeatureCalc> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            it.close();
+            for (int i = 0; i < threads; i++) {
+                if (!put(queue, END, futures)) {
+                    break;
+                }
+            }
+        }
+
+        merge(calc, futures, null);
+    }
+
+    /**
+     * Computes the calculation over the features returned by the query. If the source supports
+     * paging the query is split in <code>parallelism</code> pages, each one visited through
+     * the store, otherwise the features are read once and visited by
+     * <code>parallelism</code> threads.
+     */
+    public static void accepts(SimpleFeatureSource source, Query query,
+            MergeableFeatureCalc calc, ExecutorService executor, int parallelism)
+            throws IOException {
+        List<SimpleFeatureCollection> partitions = partition(source, query, parallelism);
+        if (partitions != null) {
+            accepts(partitions, calc, executor, (ProgressListener) null);
+        } else {
+            accepts(source.getFeatures(query), calc, executor, parallelism);
+        }
+    }
+
+    /**
+     * Splits the query in pages using {@link Query#getStartIndex()} and
+     * {@link Query#getMaxFeatures()}.
+     *
+     * @return the pages, or null if the source does not support paging, or the query already
+     *         uses it
+     */
+    public static List<SimpleFeatureCollection> partition(SimpleFeatureSource source,
+            Query query, int partitions) throws IOException {
+        QueryCapabilities caps = source.getQueryCapabilities();
+        if (!caps.isOffsetSupported() || query.getStartIndex() != null
+                || !query.isMaxFeaturesUnlimited()) {
+            return null;
+        }
+        // paging without a stable order might return the same feature in two pages
+        SortBy[] sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.length == 0) {
+            sortBy = new SortBy[] { SortBy.NATURAL_ORDER };
+        }
+        if (!caps.supportsSorting(sortBy)) {
+            return null;
+        }
+
+        int count = source.getCount(query);
+        if (count < 0) {
+            count = source.getFeatures(query).size();
+        }
+        int pageSize = Math.max(1, (count + partitions - 1) / partitions);
+
+        List<SimpleFeatureCollection> result = new ArrayList<SimpleFeatureCollection>();
+        for (int start = 0; start < count; start += pageSize) {
+            DefaultQuery page = new DefaultQuery(query);
+            page.setSortBy(sortBy);
+            page.setStartIndex(start);
+            // the last page takes whatever has been added in the meantime
+            if (start + pageSize < count) {
+                page.setMaxFeatures(pageSize);
+            }
+            result.add(source.getFeatures(page));
+        }
+        return result;
+    }
+
+    /**
+     * Queues a batch for the workers.
+     *
+     * @return false if a worker stopped before the end of the features, which means it failed
+     *         and the queue might never be drained
+     */
+    static boolean put(BlockingQueue<List<SimpleFeature>> queue, List<SimpleFeature> batch,
+            List<Future<MergeableFeatureCalc>> workers) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                for (Future<MergeableFeatureCalc> worker : workers) {
+                    if (worker.isDone()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    static void merge(MergeableFeatureCalc calc, List<Future<MergeableFeatureCalc>> futures,
+            ProgressListener progress) throws IOException {
+        try {
+            for (Future<MergeableFeatureCalc> future : futures) {
+                calc.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<MergeableFeatureCalc> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted while visiting the features")
+                    .initCause(e);
+        } catch (ExecutionException e) {
+            for (Future<MergeableFeatureCalc> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (progress != null) {
+                progress.exceptionOccurred(cause);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (IOException) new IOException("Failed to visit the features").initCause(cause);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A KLL quantile sketch over doubles, answering rank queries with an error proportional to
+ * <code>1 / k</code> of the number of values while keeping <code>O(k)</code> of them.
+ * <p>
+ * Values are stored in a hierarchy of compactors, level <code>h</code> holding values that
+ * stand for <code>2^h</code> inputs each. When a level is full it is sorted and every other
+ * value is promoted to the next level. Sketches can be merged level by level.
+ * </p>
+ * The algorithm is described in "Optimal Quantile Approximation in Streams", Karnin, Lang and
+ * Liberty, 2016.
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+class QuantileSketch {
+
+    static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    final int k;
+
+    final List<Level> levels = new ArrayList<Level>();
+
+    long count;
+
+    double min = Double.NaN;
+
+    double max = Double.NaN;
+
+    /**
+     * Picks which half of a compacted level is promoted. A fixed seed keeps the results
+     * reproducible
+     */
+    final Random random = new Random(0);
+
+    QuantileSketch(int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be at least 8: " + k);
+        }
+        this.k = k;
+        levels.add(new Level());
+    }
+
+    void add(double value) {
+        if (count == 0 || value < min) {
+            min = value;
+        }
+        if (count == 0 || value > max) {
+            max = value;
+        }
+        count++;
+        levels.get(0).add(value);
+        compress();
+    }
+
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0 || other.min < min) {
+            min = other.min;
+        }
+        if (count == 0 || other.max > max) {
+            max = other.max;
+        }
+        count += other.count;
+        while (levels.size() < other.levels.size()) {
+            levels.add(new Level());
+        }
+        for (int h = 0; h < other.levels.size(); h++) {
+            Level source = other.levels.get(h);
+            levels.get(h).addAll(source.values, source.size);
+        }
+        compress();
+    }
+
+    int capacity(int level) {
+        int depth = levels.size() - level - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    void compress() {
+        for (int h = 0; h < levels.size(); h++) {
+            Level level = levels.get(h);
+            if (level.size < capacity(h)) {
+                continue;
+            }
+            if (h + 1 == levels.size()) {
+                levels.add(new Level());
+            }
+            Level next = levels.get(h + 1);
+            Arrays.sort(level.values, 0, level.size);
+            // an odd value out stays at this level
+            int start = level.size % 2;
+            int offset = random.nextBoolean() ? 1 : 0;
+            for (int i = start + offset; i < level.size; i += 2) {
+                next.add(level.values[i]);
+            }
+            level.size = start;
+        }
+    }
+
+    /**
+     * Returns the value whose rank is closest to <code>fraction</code> of the values seen
+     *
+     * @param fraction between 0 and 1
+     */
+    double getQuantile(double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (fraction <= 0) {
+            return min;
+        } else if (fraction >= 1) {
+            return max;
+        }
+
+        int size = 0;
+        for (Level level : levels) {
+            size += level.size;
+        }
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        int i = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            Level level = levels.get(h);
+            for (int j = 0; j < level.size; j++) {
+                values[i] = level.values[j];
+                weights[i++] = 1L << h;
+            }
+        }
+        sort(values, weights);
+
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        double target = fraction * total;
+        long cumulative = 0;
+        for (i = 0; i < size; i++) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Sorts the values along with their weights
+     */
+    static void sort(double[] values, long[] weights) {
+        Integer[] indexes = new Integer[values.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        final double[] keys = values.clone();
+        Arrays.sort(indexes, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(keys[i1], keys[i2]);
+            }
+        });
+        long[] sortedWeights = weights.clone();
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = keys[indexes[i]];
+            weights[i] = sortedWeights[indexes[i]];
+        }
+    }
+
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(k);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * A growable array of doubles
+     */
+    static class Level {
+        double[] values = new double[8];
+
+        int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = grow(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(double[] source, int length) {
+            if (size + length > values.length) {
+                values = grow(values, Math.max(size + length, size * 2));
+            }
+            System.arraycopy(source, 0, values, size, length);
+            size += length;
+        }
+
+        static double[] grow(double[] values, int length) {
+            double[] result = new double[length];
+            System.arraycopy(values, 0, result, 0, values.length);
+            return result;
+        }
+    }
+}
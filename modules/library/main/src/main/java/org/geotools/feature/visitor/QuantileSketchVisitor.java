@@ -0,0 +1,223 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Computes approximate medians and quantiles of a numeric expression in bounded memory, using
+ * a KLL sketch. This is the approximate counterpart of {@link MedianVisitor} and
+ * {@link QuantileListVisitor}, which keep every value in memory.
+ * <p>
+ * With the default accuracy the rank of the returned values is within about 1% of the
+ * requested one. Nulls, NaN and infinite values are skipped and counted. Values that are not
+ * numbers cannot be sketched: they are counted as well, see {@link #getNonNumericCount()}, so
+ * that callers can fall back on an exact calculation.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class QuantileSketchVisitor implements MergeableFeatureCalc {
+
+    /**
+     * The default size of the sketch compactors
+     */
+    public static final int DEFAULT_ACCURACY = 200;
+
+    private Expression expr;
+
+    int accuracy;
+
+    QuantileSketch sketch;
+
+    int countNull = 0;
+
+    int countNaN = 0;
+
+    int countNonNumeric = 0;
+
+    public QuantileSketchVisitor(Expression expr) {
+        this(expr, DEFAULT_ACCURACY);
+    }
+
+    /**
+     * @param expr the expression whose quantiles are computed
+     * @param accuracy the size of the largest compactor, the rank error is proportional to its
+     *        inverse, memory usage to its value
+     */
+    public QuantileSketchVisitor(Expression expr, int accuracy) {
+        this.expr = expr;
+        this.accuracy = accuracy;
+        this.sketch = new QuantileSketch(accuracy);
+    }
+
+    public void init(SimpleFeatureCollection collection) {
+        // do nothing
+    }
+
+    public void visit(SimpleFeature feature) {
+        visit((org.opengis.feature.Feature) feature);
+    }
+
+    public void visit(org.opengis.feature.Feature feature) {
+        Object value = expr.evaluate(feature);
+        if (value == null) {
+            countNull++;
+            return;
+        }
+        if (!(value instanceof Number)) {
+            countNonNumeric++;
+            return;
+        }
+        double x = ((Number) value).doubleValue();
+        if (Double.isNaN(x) || Double.isInfinite(x)) {
+            countNaN++;
+            return;
+        }
+        sketch.add(x);
+    }
+
+    public Expression getExpression() {
+        return expr;
+    }
+
+    /**
+     * Returns the approximate median
+     */
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    /**
+     * Returns the value found at the specified fraction of the sorted values, 0 being the
+     * minimum and 1 the maximum
+     */
+    public double getQuantile(double fraction) {
+        if (sketch.count == 0) {
+            throw new IllegalStateException("Must visit before quantiles are ready!");
+        }
+        return sketch.getQuantile(fraction);
+    }
+
+    /**
+     * Returns the <code>classes + 1</code> breaks splitting the values in classes holding
+     * about the same number of values. The first break is the minimum, the last one the maximum.
+     */
+    public double[] getBreaks(int classes) {
+        double[] breaks = new double[classes + 1];
+        for (int i = 0; i <= classes; i++) {
+            breaks[i] = getQuantile((double) i / classes);
+        }
+        return breaks;
+    }
+
+    /**
+     * Returns the number of values that have been sketched
+     */
+    public long getCount() {
+        return sketch.count;
+    }
+
+    /**
+     * @return the number of features which returned a NaN
+     */
+    public int getNaNCount() {
+        return countNaN;
+    }
+
+    /**
+     * @return the number of features which returned a null
+     */
+    public int getNullCount() {
+        return countNull;
+    }
+
+    /**
+     * @return the number of features which returned a value that is not a number
+     */
+    public int getNonNumericCount() {
+        return countNonNumeric;
+    }
+
+    public void reset() {
+        sketch = new QuantileSketch(accuracy);
+        countNull = 0;
+        countNaN = 0;
+        countNonNumeric = 0;
+    }
+
+    public CalcResult getResult() {
+        if (sketch.count == 0) {
+            return CalcResult.NULL_RESULT;
+        }
+        return new QuantileSketchResult(sketch.copy());
+    }
+
+    public MergeableFeatureCalc createPartial() {
+        return new QuantileSketchVisitor(expr, accuracy);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        QuantileSketchVisitor other = (QuantileSketchVisitor) partial;
+        sketch.merge(other.sketch);
+        countNull += other.countNull;
+        countNaN += other.countNaN;
+        countNonNumeric += other.countNonNumeric;
+    }
+
+    /**
+     * The sketch of a set of values. The value of the result is the approximate median
+     */
+    public static class QuantileSketchResult extends AbstractCalcResult {
+        private QuantileSketch sketch;
+
+        QuantileSketchResult(QuantileSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        public Object getValue() {
+            return new Double(sketch.getQuantile(0.5));
+        }
+
+        /**
+         * Returns the value found at the specified fraction of the sorted values
+         */
+        public double getQuantile(double fraction) {
+            return sketch.getQuantile(fraction);
+        }
+
+        public boolean isCompatible(CalcResult targetResults) {
+            return targetResults instanceof QuantileSketchResult
+                    || targetResults == CalcResult.NULL_RESULT;
+        }
+
+        public CalcResult merge(CalcResult resultsToAdd) {
+            if (!isCompatible(resultsToAdd)) {
+                throw new IllegalArgumentException("Parameter is not a compatible type");
+            }
+            if (resultsToAdd == CalcResult.NULL_RESULT) {
+                return this;
+            }
+            QuantileSketch merged = sketch.copy();
+            merged.merge(((QuantileSketchResult) resultsToAdd).sketch);
+            return new QuantileSketchResult(merged);
+        }
+    }
+}
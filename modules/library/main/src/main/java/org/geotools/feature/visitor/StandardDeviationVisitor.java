@@ -35,12 +35,15 @@ import org.opengis.filter.expression.Expression;
  * It uses the rolling variance algorithm described here: 
  * http://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#On-line_algorithm
  * 
+ * Partial results are combined with the parallel algorithm described here:
+ * http://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Parallel_algorithm
+ * 
  * @author Cory Horner, Refractions Research Inc.
  * @author Andrea Aime, GeoSolutions
  *
  * @source $URL$
  */
-public class StandardDeviationVisitor implements FeatureCalc {
+public class StandardDeviationVisitor implements MergeableFeatureCalc {
 	private Expression expr;
 
     boolean visited = false;
@@ -80,12 +83,7 @@ public class StandardDeviationVisitor implements FeatureCalc {
 		if(count == 0) {
     		return CalcResult.NULL_RESULT;
     	}
-		return new AbstractCalcResult() {
-			public Object getValue() {
-                if (count == 0) return null;
-				return new Double(Math.sqrt(m2 / count));
-			}
-		};
+		return new StandardDeviationResult(count, mean, m2);
 	}
 
 	public void visit(SimpleFeature feature) {
@@ -122,6 +120,23 @@ public class StandardDeviationVisitor implements FeatureCalc {
 	    this.mean = 0;
 	}
 
+    public MergeableFeatureCalc createPartial() {
+        return new StandardDeviationVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        StandardDeviationVisitor other = (StandardDeviationVisitor) partial;
+        countNull += other.countNull;
+        countNaN += other.countNaN;
+        if (other.count > 0) {
+            StandardDeviationResult merged = new StandardDeviationResult(count, mean, m2)
+                    .merge(new StandardDeviationResult(other.count, other.mean, other.m2));
+            count = merged.count;
+            mean = merged.mean;
+            m2 = merged.m2;
+        }
+    }
+
     /**
      * @return the number of features which returned a NaN
      */
@@ -135,4 +150,63 @@ public class StandardDeviationVisitor implements FeatureCalc {
     public int getNullCount() {
     	return countNull;
     }
+
+    /**
+     * Standard deviation result, keeping the count, mean and sum of squared differences from
+     * the mean so that results computed on disjoint sets of features can be merged.
+     */
+    public static class StandardDeviationResult extends AbstractCalcResult {
+        int count;
+
+        double mean;
+
+        double m2;
+
+        public StandardDeviationResult(int count, double mean, double m2) {
+            this.count = count;
+            this.mean = mean;
+            this.m2 = m2;
+        }
+
+        public Object getValue() {
+            if (count == 0) return null;
+            return new Double(Math.sqrt(m2 / count));
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public boolean isCompatible(CalcResult targetResults) {
+            return targetResults instanceof StandardDeviationResult
+                    || targetResults == CalcResult.NULL_RESULT;
+        }
+
+        public CalcResult merge(CalcResult resultsToAdd) {
+            if (!isCompatible(resultsToAdd)) {
+                throw new IllegalArgumentException("Parameter is not a compatible type");
+            }
+            if (resultsToAdd == CalcResult.NULL_RESULT) {
+                return this;
+            }
+            return merge((StandardDeviationResult) resultsToAdd);
+        }
+
+        StandardDeviationResult merge(StandardDeviationResult other) {
+            if (other.count == 0) {
+                return this;
+            } else if (count == 0) {
+                return other;
+            }
+            int n = count + other.count;
+            double delta = other.mean - mean;
+            double newMean = mean + delta * other.count / n;
+            double newM2 = m2 + other.m2 + delta * delta * ((double) count * other.count) / n;
+            return new StandardDeviationResult(n, newMean, newM2);
+        }
+    }
 }
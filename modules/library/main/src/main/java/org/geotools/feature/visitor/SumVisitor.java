@@ -37,7 +37,7 @@ import org.opengis.filter.expression.Expression;
  * @since 2.2.M2
  * @source $URL$
  */
-public class SumVisitor implements FeatureCalc {
+public class SumVisitor implements MergeableFeatureCalc {
     private Expression expr;
     SumStrategy strategy;
 
@@ -87,7 +87,7 @@ public class SumVisitor implements FeatureCalc {
     }
 
     public void visit(SimpleFeature feature) {
-        visit(feature);
+        visit((Feature) feature);
     }
     public void visit(Feature feature) {
         Object value = expr.evaluate(feature);
@@ -116,6 +116,22 @@ public class SumVisitor implements FeatureCalc {
         strategy = null;
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new SumVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        SumStrategy other = ((SumVisitor) partial).strategy;
+        if (other == null) {
+            return;
+        }
+        Object partialSum = other.getResult();
+        if (strategy == null) {
+            strategy = createStrategy(partialSum.getClass());
+        }
+        strategy.add(partialSum);
+    }
+
     public CalcResult getResult() {
     	if(strategy == null) {
     		return CalcResult.NULL_RESULT;
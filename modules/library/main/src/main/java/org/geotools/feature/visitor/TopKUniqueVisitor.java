@@ -0,0 +1,192 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Collects the unique values of an expression keeping at most <code>k</code> of them, the most
+ * frequent ones.
+ * <p>
+ * As long as there are no more than <code>k</code> distinct values the result is the same as
+ * the {@link UniqueVisitor} one. Past that, values are counted with the Misra-Gries frequent
+ * items summary: each value occurring more than <code>n / (k + 1)</code> times out of
+ * <code>n</code> is guaranteed to be part of the result, and memory stays proportional to
+ * <code>k</code>. The summaries of separate partitions can be merged.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class TopKUniqueVisitor implements MergeableFeatureCalc {
+
+    private Expression expr;
+
+    int k;
+
+    /**
+     * Value to estimated count. Counts are held in a one element array to avoid boxing on
+     * increment
+     */
+    Map<Object, long[]> counters = new HashMap<Object, long[]>();
+
+    /**
+     * True if some values have been dropped from the summary
+     */
+    boolean truncated = false;
+
+    public TopKUniqueVisitor(Expression expr, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.expr = expr;
+        this.k = k;
+    }
+
+    public void init(SimpleFeatureCollection collection) {
+        // do nothing
+    }
+
+    public void visit(SimpleFeature feature) {
+        visit((org.opengis.feature.Feature) feature);
+    }
+
+    public void visit(org.opengis.feature.Feature feature) {
+        // we ignore null attributes, like UniqueVisitor
+        Object value = expr.evaluate(feature);
+        if (value != null) {
+            add(value, 1);
+        }
+    }
+
+    void add(Object value, long count) {
+        long[] counter = counters.get(value);
+        if (counter != null) {
+            counter[0] += count;
+        } else {
+            counters.put(value, new long[] { count });
+            // prune in batches, keeping the amortized cost of a visit constant
+            if (counters.size() > 2 * k) {
+                prune();
+            }
+        }
+    }
+
+    /**
+     * Subtracts the (k+1)-th largest count from all the counters, dropping the ones that are
+     * left with nothing
+     */
+    void prune() {
+        if (counters.size() <= k) {
+            return;
+        }
+        long[] counts = new long[counters.size()];
+        int i = 0;
+        for (long[] counter : counters.values()) {
+            counts[i++] = counter[0];
+        }
+        Arrays.sort(counts);
+        long threshold = counts[counts.length - k - 1];
+        for (Iterator<long[]> it = counters.values().iterator(); it.hasNext();) {
+            long[] counter = it.next();
+            counter[0] -= threshold;
+            if (counter[0] <= 0) {
+                it.remove();
+            }
+        }
+        truncated = true;
+    }
+
+    public Expression getExpression() {
+        return expr;
+    }
+
+    /**
+     * Returns the unique values, sorted by decreasing frequency
+     */
+    public List getTopValues() {
+        prune();
+        List<Map.Entry<Object, long[]>> entries = new ArrayList<Map.Entry<Object, long[]>>(
+                counters.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Object, long[]>>() {
+            public int compare(Map.Entry<Object, long[]> e1, Map.Entry<Object, long[]> e2) {
+                long c1 = e1.getValue()[0];
+                long c2 = e2.getValue()[0];
+                return c1 > c2 ? -1 : (c1 < c2 ? 1 : 0);
+            }
+        });
+        List result = new ArrayList(entries.size());
+        for (Map.Entry<Object, long[]> entry : entries) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the unique values found, at most <code>k</code> of them
+     */
+    public Set getUnique() {
+        prune();
+        return new HashSet(counters.keySet());
+    }
+
+    /**
+     * Returns true if there were more than <code>k</code> unique values, and only the most
+     * frequent ones have been kept
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void reset() {
+        counters = new HashMap<Object, long[]>();
+        truncated = false;
+    }
+
+    public CalcResult getResult() {
+        if (counters.isEmpty()) {
+            return CalcResult.NULL_RESULT;
+        }
+        return new UniqueVisitor.UniqueResult(getUnique());
+    }
+
+    public MergeableFeatureCalc createPartial() {
+        return new TopKUniqueVisitor(expr, k);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        TopKUniqueVisitor other = (TopKUniqueVisitor) partial;
+        for (Map.Entry<Object, long[]> entry : other.counters.entrySet()) {
+            add(entry.getKey(), entry.getValue()[0]);
+        }
+        truncated |= other.truncated;
+        prune();
+    }
+}
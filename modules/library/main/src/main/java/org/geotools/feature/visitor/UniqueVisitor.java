@@ -43,7 +43,7 @@ import org.opengis.filter.expression.Expression;
  * @since 2.2.M2
  * @source $URL$
  */
-public class UniqueVisitor implements FeatureCalc {
+public class UniqueVisitor implements MergeableFeatureCalc {
     private Expression expr;
     Set set = new HashSet();
 
@@ -73,7 +73,7 @@ public class UniqueVisitor implements FeatureCalc {
     }
     
     public void visit(SimpleFeature feature) {
-        visit(feature);
+        visit((Feature) feature);
     }
     public void visit(Feature feature) {
         //we ignore null attributes
@@ -116,6 +116,14 @@ public class UniqueVisitor implements FeatureCalc {
         this.set = new HashSet();
     }
 
+    public MergeableFeatureCalc createPartial() {
+        return new UniqueVisitor(expr);
+    }
+
+    public void merge(MergeableFeatureCalc partial) {
+        set.addAll(((UniqueVisitor) partial).set);
+    }
+
     public CalcResult getResult() {
         if (set.size() < 1) {
             return CalcResult.NULL_RESULT;
@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
 import org.geotools.filter.DefaultExpression;
 import org.geotools.filter.Expression;
 import org.geotools.filter.ExpressionType;
@@ -177,6 +179,14 @@ public abstract class ClassificationFunction extends DefaultExpression implement
         getParameters().set(0, e);
     }
     
+    /**
+     * Returns true if the {@link Hints#APPROXIMATE_AGGREGATES} default hint asks for bounded
+     * memory approximations instead of exact classifications.
+     */
+    protected boolean isApproximate() {
+        return Boolean.TRUE.equals(GeoTools.getDefaultHints().get(Hints.APPROXIMATE_AGGREGATES));
+    }
+
     /**
      * Returns the implementation hints. The default implementation returns an empty map.
      */
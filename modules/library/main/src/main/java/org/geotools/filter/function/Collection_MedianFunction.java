@@ -25,9 +25,12 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.visitor.CalcResult;
 import org.geotools.feature.visitor.MedianVisitor;
+import org.geotools.feature.visitor.QuantileSketchVisitor;
 import org.geotools.filter.AttributeExpression;
 import org.geotools.filter.Expression;
 import org.geotools.filter.FunctionExpression;
@@ -78,6 +81,14 @@ public class Collection_MedianFunction extends FunctionExpressionImpl
      */
     static CalcResult calculateMedian(FeatureCollection<? extends FeatureType, ? extends Feature> collection,
         Expression expression) throws IllegalFilterException, IOException {
+        if (Boolean.TRUE.equals(GeoTools.getDefaultHints().get(Hints.APPROXIMATE_AGGREGATES))) {
+            QuantileSketchVisitor sketchVisitor = new QuantileSketchVisitor(expression);
+            collection.accepts(sketchVisitor, null);
+            // non numeric values cannot be sketched, fall back on the exact median
+            if (sketchVisitor.getNonNumericCount() == 0) {
+                return sketchVisitor.getResult();
+            }
+        }
         MedianVisitor medianVisitor = new MedianVisitor(expression);
         collection.accepts(medianVisitor, null);
 
@@ -189,6 +189,17 @@ public class EnvFunction extends FunctionExpressionImpl {
         localLookup.getTable().put(name.toUpperCase(), value);
     }
 
+    /**
+     * Get a named value from the local (to this thread) lookup table, ignoring the
+     * global one.
+     *
+     * @param name the name
+     * @return the value, or {@code null} if the name is not in the local table
+     */
+    public static Object getLocalValue(String name) {
+        return localLookup.getTable().get(name.toUpperCase());
+    }
+
     /**
      * Add a named value to the global (accessible from any thread) lookup table.
      * If the name is already present in the table it will be assigned the new value.
@@ -17,6 +17,7 @@
 package org.geotools.filter.function;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -27,6 +28,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.visitor.CalcResult;
 import org.geotools.feature.visitor.QuantileListVisitor;
+import org.geotools.feature.visitor.QuantileSketchVisitor;
 import org.geotools.util.NullProgressListener;
 
 /**
@@ -46,9 +48,24 @@ public class QuantileFunction extends ClassificationFunction {
     }
     
 	private Object calculate(SimpleFeatureCollection featureCollection) {
+		if (progress == null) progress = new NullProgressListener();
+		if (isApproximate()) {
+		    QuantileSketchVisitor sketchVisit = new QuantileSketchVisitor(getExpression());
+		    try {
+		        featureCollection.accepts(sketchVisit, progress);
+		    } catch (IOException e) {
+		        LOGGER.log(Level.SEVERE, "QuantileFunction calculate(SimpleFeatureCollection) failed" , e);
+		        return null;
+		    }
+		    if (progress.isCanceled()) return null;
+		    // non numeric values cannot be sketched, use the exact classification for those
+		    if (sketchVisit.getNonNumericCount() == 0) {
+		        return calculateApproximate(sketchVisit);
+		    }
+		}
+
 		// use a visitor to find the values in each bin
 		QuantileListVisitor quantileVisit = new QuantileListVisitor(getExpression(), getClasses());
-		if (progress == null) progress = new NullProgressListener();
 		try {
             featureCollection.accepts(quantileVisit, progress);
         } catch (IOException e) {
@@ -75,6 +92,20 @@ public class QuantileFunction extends ClassificationFunction {
 		}
 	}
     
+    private Object calculateApproximate(QuantileSketchVisitor sketchVisit) {
+        if (sketchVisit.getCount() == 0) {
+            return null;
+        }
+        int classNum = (int) Math.min(getClasses(), sketchVisit.getCount());
+        double[] breaks = sketchVisit.getBreaks(classNum);
+        // each bin only needs its smallest and largest values
+        List[] bin = new List[classNum];
+        for (int i = 0; i < classNum; i++) {
+            bin[i] = Arrays.asList(new Double(breaks[i]), new Double(breaks[i + 1]));
+        }
+        return calculateNumerical(bin, new Double(breaks[0]), new Double(breaks[classNum]));
+    }
+
     private Object calculateNumerical(List[] bin, Comparable globalMin, Comparable globalMax) {
         int classNum = bin.length;
         //size arrays
@@ -27,6 +27,8 @@ import java.util.logging.Level;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.TopKUniqueVisitor;
 import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.util.NullProgressListener;
 
@@ -38,6 +40,12 @@ import org.geotools.util.NullProgressListener;
  * @source $URL$
  */
 public class UniqueIntervalFunction extends ClassificationFunction {
+
+    /**
+     * The number of unique values kept, the most frequent ones, when using approximate
+     * aggregates
+     */
+    static final int MAX_APPROXIMATE_VALUES = 10000;
     
     public UniqueIntervalFunction() {
         setName("UniqueInterval");
@@ -47,7 +55,12 @@ public class UniqueIntervalFunction extends ClassificationFunction {
         try {
             int classNum = getClasses();
         	//use a visitor to grab the unique values
-            UniqueVisitor uniqueVisit = new UniqueVisitor(getExpression());
+            FeatureCalc uniqueVisit;
+            if (isApproximate()) {
+                uniqueVisit = new TopKUniqueVisitor(getExpression(), MAX_APPROXIMATE_VALUES);
+            } else {
+                uniqueVisit = new UniqueVisitor(getExpression());
+            }
         	if (progress == null) progress = new NullProgressListener();
                 featureCollection.accepts(uniqueVisit, progress);
         	if (progress.isCanceled()) return null;
@@ -0,0 +1,408 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geometry.jts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Transforms the geometries of many features at once.
+ * <p>
+ * The coordinates of all the geometries in a batch are gathered into a single packed array,
+ * transformed with one {@link MathTransform#transform(double[], int, double[], int, int)} call,
+ * and scattered back into {@link LiteCoordinateSequence}s the transformed geometries are built
+ * upon. This saves the per sequence overhead of {@link GeometryCoordinateSequenceTransformer},
+ * which matters for the long chains of transforms a reprojection usually involves. When an
+ * {@link ExecutorService} is provided, large batches are split in chunks transformed in
+ * parallel, in which case the math transform must be safe to use from many threads (the
+ * GeoTools referencing ones are).
+ * </p>
+ * <p>
+ * The packed arrays are kept between batches, the transformer is not thread safe.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class BatchGeometryTransformer {
+
+    /**
+     * The number of features the reprojecting readers transform at once
+     */
+    public static final int DEFAULT_BATCH_SIZE = 128;
+
+    /**
+     * The minimum number of points a parallel chunk holds by default
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16384;
+
+    MathTransform transform;
+
+    int sourceDim;
+
+    int targetDim;
+
+    CoordinateReferenceSystem crs;
+
+    ExecutorService executor;
+
+    int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    LiteCoordinateSequenceFactory csFactory = new LiteCoordinateSequenceFactory();
+
+    /**
+     * The last source geometry factory and the one built from it
+     */
+    GeometryFactory sourceFactory;
+
+    GeometryFactory targetFactory;
+
+    /**
+     * The sequences of the current batch, in the order the geometries are visited
+     */
+    List<CoordinateSequence> sequences = new ArrayList<CoordinateSequence>();
+
+    /**
+     * Index of the next transformed sequence used while rebuilding the geometries
+     */
+    int cursor;
+
+    double[] sourceBuffer = new double[0];
+
+    double[] targetBuffer = new double[0];
+
+    public BatchGeometryTransformer(MathTransform transform) {
+        this.transform = transform;
+        this.sourceDim = transform.getSourceDimensions();
+        this.targetDim = transform.getTargetDimensions();
+        if (sourceDim < 2 || sourceDim > 3 || targetDim < 2 || targetDim > 3) {
+            throw new IllegalArgumentException("Only 2 and 3 dimensional transforms are "
+                    + "supported, got " + sourceDim + " -> " + targetDim);
+        }
+        this.executor = (ExecutorService) GeoTools.getDefaultHints().get(Hints.EXECUTOR_SERVICE);
+    }
+
+    public MathTransform getMathTransform() {
+        return transform;
+    }
+
+    /**
+     * Sets the coordinate reference system stored as user data of the transformed geometries
+     * whose source have no user data or a coordinate reference system, as
+     * {@link GeometryCoordinateSequenceTransformer} does.
+     */
+    public void setCoordinateReferenceSystem(CoordinateReferenceSystem crs) {
+        this.crs = crs;
+    }
+
+    /**
+     * Sets the executor used to transform large batches in parallel, or null to transform them
+     * on the calling thread. Defaults to the {@link Hints#EXECUTOR_SERVICE} found among the
+     * {@linkplain GeoTools#getDefaultHints default hints}, if any.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the minimum number of points of a parallel chunk. Batches smaller than two chunks are
+     * transformed on the calling thread.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Transforms a single geometry
+     */
+    public Geometry transform(Geometry geometry) throws TransformException {
+        Object[] values = new Object[] { geometry };
+        transform(Collections.singletonList(values));
+        return (Geometry) values[0];
+    }
+
+    /**
+     * Transforms in place the geometries found among the values of each row, usually the
+     * attributes of a batch of features. The other values are left untouched.
+     */
+    public void transform(List<Object[]> rows) throws TransformException {
+        sequences.clear();
+        for (Object[] values : rows) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof Geometry) {
+                    collect((Geometry) values[i]);
+                }
+            }
+        }
+        if (sequences.isEmpty()) {
+            return;
+        }
+
+        // gather
+        int points = 0;
+        for (CoordinateSequence cs : sequences) {
+            points += cs.size();
+        }
+        if (sourceBuffer.length < points * sourceDim) {
+            sourceBuffer = new double[points * sourceDim];
+        }
+        if (targetBuffer.length < points * targetDim) {
+            targetBuffer = new double[points * targetDim];
+        }
+        int offset = 0;
+        for (CoordinateSequence cs : sequences) {
+            offset = gather(cs, offset);
+        }
+
+        transformPoints(points);
+
+        // scatter
+        offset = 0;
+        for (int i = 0; i < sequences.size(); i++) {
+            CoordinateSequence cs = sequences.get(i);
+            sequences.set(i, scatter(cs, offset));
+            offset += cs.size() * targetDim;
+        }
+
+        // rebuild the geometries on top of the transformed sequences
+        cursor = 0;
+        for (Object[] values : rows) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof Geometry) {
+                    values[i] = rebuild((Geometry) values[i]);
+                }
+            }
+        }
+        sequences.clear();
+    }
+
+    /**
+     * Transforms the rows as {@link #transform(List)} does, but if the batch fails as a whole
+     * falls back on transforming the rows one by one, so that a single row that cannot be
+     * transformed does not fail the others. The failed rows are left untouched.
+     * 
+     * @return null if all the rows have been transformed, otherwise an array holding the
+     *         exception of each failed row at the index of the row, and null for the others
+     */
+    public TransformException[] transformEach(List<Object[]> rows) {
+        try {
+            transform(rows);
+            return null;
+        } catch (TransformException e) {
+            TransformException[] failures = new TransformException[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                try {
+                    transform(Collections.singletonList(rows.get(i)));
+                } catch (TransformException rowFailure) {
+                    failures[i] = rowFailure;
+                }
+            }
+            return failures;
+        }
+    }
+
+    void collect(Geometry g) {
+        if (g instanceof Point) {
+            sequences.add(((Point) g).getCoordinateSequence());
+        } else if (g instanceof LineString) {
+            sequences.add(((LineString) g).getCoordinateSequence());
+        } else if (g instanceof Polygon) {
+            Polygon polygon = (Polygon) g;
+            collect(polygon.getExteriorRing());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                collect(polygon.getInteriorRingN(i));
+            }
+        } else if (g instanceof GeometryCollection) {
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                collect(g.getGeometryN(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type " + g.getClass());
+        }
+    }
+
+    int gather(CoordinateSequence cs, int offset) {
+        final int size = cs.size();
+        if (cs instanceof LiteCoordinateSequence && cs.getDimension() == sourceDim) {
+            System.arraycopy(((LiteCoordinateSequence) cs).getArray(), 0, sourceBuffer, offset,
+                    size * sourceDim);
+            return offset + size * sourceDim;
+        }
+        // 2d sequences have no z to read, use 0 as a NaN would spill into x and y through
+        // the transform (think of a 3d affine one)
+        final boolean hasZ = cs.getDimension() >= 3;
+        for (int i = 0; i < size; i++) {
+            sourceBuffer[offset++] = cs.getX(i);
+            sourceBuffer[offset++] = cs.getY(i);
+            if (sourceDim == 3) {
+                sourceBuffer[offset++] = hasZ ? cs.getOrdinate(i, 2) : 0;
+            }
+        }
+        return offset;
+    }
+
+    void transformPoints(final int points) throws TransformException {
+        if (executor == null || points < chunkSize * 2) {
+            transform.transform(sourceBuffer, 0, targetBuffer, 0, points);
+            return;
+        }
+
+        List<Callable<Object>> chunks = new ArrayList<Callable<Object>>();
+        for (int start = 0; start < points; start += chunkSize) {
+            final int first = start;
+            final int count = Math.min(chunkSize, points - start);
+            chunks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    transform.transform(sourceBuffer, first * sourceDim, targetBuffer, first
+                            * targetDim, count);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new TransformException("Interrupted while transforming the coordinates", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TransformException) {
+                throw (TransformException) e.getCause();
+            }
+            throw new TransformException("Failed to transform the coordinates", e.getCause());
+        }
+    }
+
+    CoordinateSequence scatter(CoordinateSequence cs, int offset) {
+        final int size = cs.size();
+        // the ordinates the transform does not know about (think Z or M with a 2d CRS) are
+        // carried over as is
+        final int dimension = Math.max(targetDim, targetDim + cs.getDimension() - sourceDim);
+        double[] coords = new double[size * dimension];
+        if (dimension == targetDim) {
+            System.arraycopy(targetBuffer, offset, coords, 0, size * targetDim);
+        } else {
+            for (int i = 0; i < size; i++) {
+                int oi = 0;
+                for (; oi < targetDim; oi++) {
+                    coords[i * dimension + oi] = targetBuffer[offset + i * targetDim + oi];
+                }
+                for (; oi < dimension; oi++) {
+                    coords[i * dimension + oi] = cs.getOrdinate(i, oi + sourceDim - targetDim);
+                }
+            }
+        }
+        return new LiteCoordinateSequence(coords, dimension);
+    }
+
+    Geometry rebuild(Geometry g) {
+        Geometry transformed = build(g, factory(g.getFactory()));
+        transformed.setUserData(g.getUserData());
+        if (crs != null
+                && (g.getUserData() == null || g.getUserData() instanceof CoordinateReferenceSystem)) {
+            transformed.setUserData(crs);
+        }
+        return transformed;
+    }
+
+    Geometry build(Geometry g, GeometryFactory gf) {
+        Geometry transformed;
+        if (g instanceof Point) {
+            transformed = gf.createPoint(sequences.get(cursor++));
+        } else if (g instanceof LinearRing) {
+            transformed = gf.createLinearRing(sequences.get(cursor++));
+        } else if (g instanceof LineString) {
+            transformed = gf.createLineString(sequences.get(cursor++));
+        } else if (g instanceof Polygon) {
+            Polygon polygon = (Polygon) g;
+            LinearRing shell = (LinearRing) build(polygon.getExteriorRing(), gf);
+            LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = (LinearRing) build(polygon.getInteriorRingN(i), gf);
+            }
+            transformed = gf.createPolygon(shell, holes);
+        } else if (g instanceof MultiPoint) {
+            Point[] points = new Point[g.getNumGeometries()];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (Point) build(g.getGeometryN(i), gf);
+            }
+            transformed = gf.createMultiPoint(points);
+        } else if (g instanceof MultiLineString) {
+            LineString[] lines = new LineString[g.getNumGeometries()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = (LineString) build(g.getGeometryN(i), gf);
+            }
+            transformed = gf.createMultiLineString(lines);
+        } else if (g instanceof MultiPolygon) {
+            Polygon[] polygons = new Polygon[g.getNumGeometries()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = (Polygon) build(g.getGeometryN(i), gf);
+            }
+            transformed = gf.createMultiPolygon(polygons);
+        } else {
+            Geometry[] geoms = new Geometry[g.getNumGeometries()];
+            for (int i = 0; i < geoms.length; i++) {
+                geoms[i] = build(g.getGeometryN(i), gf);
+            }
+            transformed = gf.createGeometryCollection(geoms);
+        }
+        if (!(g instanceof GeometryCollection)) {
+            // simple elements keep their user data, as in GeometryCoordinateSequenceTransformer
+            transformed.setUserData(g.getUserData());
+        }
+        return transformed;
+    }
+
+    /**
+     * Returns a factory with the same precision model and SRID as the source one, building
+     * geometries on top of {@link LiteCoordinateSequence}s
+     */
+    GeometryFactory factory(GeometryFactory source) {
+        if (source != sourceFactory) {
+            sourceFactory = source;
+            targetFactory = new GeometryFactory(source.getPrecisionModel(), source.getSRID(),
+                    csFactory);
+        }
+        return targetFactory;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Tests the spatial index and the memory limit of {@link Diff}
+ *
+ * @source $URL$
+ */
+public class DiffTest extends TestCase {
+
+    SimpleFeatureType type;
+
+    GeometryFactory gf = new GeometryFactory();
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    protected void setUp() throws Exception {
+        type = DataUtilities.createType("diff", "name:String,value:Integer,*geom:Point");
+    }
+
+    protected void tearDown() throws Exception {
+        Hints.removeSystemDefault(Hints.MAX_MEMORY_DIFF);
+    }
+
+    SimpleFeature feature(String fid, int value, double x, double y) {
+        return SimpleFeatureBuilder.build(type, new Object[] { fid, value,
+                gf.createPoint(new Coordinate(x, y)) }, fid);
+    }
+
+    /**
+     * Fills a diff with 100 added features on a line, modifies some and removes others
+     */
+    Diff buildDiff() {
+        Diff diff = new Diff();
+        for (int i = 0; i < 100; i++) {
+            diff.add("f" + i, feature("f" + i, i, i, i));
+        }
+        // move f10 far away, remove f11
+        diff.modify("f10", feature("f10", 10, 1000, 1000));
+        diff.remove("f11");
+        // modify a feature of the underlying store
+        diff.modify("store.1", feature("store.1", 5, 5.5, 5.5));
+        return diff;
+    }
+
+    Set<String> read(Diff diff, Filter filter) throws Exception {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = new DiffFeatureReader<SimpleFeatureType, SimpleFeature>(
+                new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(type), diff, filter);
+        Set<String> fids = new HashSet<String>();
+        try {
+            while (reader.hasNext()) {
+                assertTrue(fids.add(reader.next().getID()));
+            }
+        } finally {
+            reader.close();
+        }
+        return fids;
+    }
+
+    public void testQueryIndex() throws Exception {
+        Diff diff = buildDiff();
+        Set<String> fids = new HashSet<String>();
+        for (Object f : diff.queryIndex(new Envelope(9.5, 12.5, 9.5, 12.5))) {
+            fids.add(((SimpleFeature) f).getID());
+        }
+        // the quadtree may return more, but never removed or moved away features
+        assertTrue(fids.contains("f12"));
+        assertFalse(fids.contains("f10"));
+        assertFalse(fids.contains("f11"));
+        assertTrue(diff.queryIndex(new Envelope()).isEmpty());
+    }
+
+    public void testBoundedFilter() throws Exception {
+        Diff diff = buildDiff();
+        Filter bbox = ff.bbox("geom", 4, 4, 12, 12, null);
+        Filter value = ff.greater(ff.property("value"), ff.literal(7));
+        Set<String> fids = read(diff, ff.and(bbox, value));
+        assertEquals(new HashSet<String>(Arrays.asList("f8", "f9", "f12")), fids);
+
+        fids = read(diff, bbox);
+        assertEquals(8, fids.size());
+        assertTrue(fids.contains("store.1"));
+
+        // not bounded, scans all the changes
+        fids = read(diff, ff.or(bbox, value));
+        assertEquals(96, fids.size());
+        assertTrue(fids.contains("f10"));
+    }
+
+    public void testSpill() throws Exception {
+        Hints.putSystemDefault(Hints.MAX_MEMORY_DIFF, 10);
+        Diff diff = buildDiff();
+        assertEquals(99, diff.added.size());
+        assertEquals(1, diff.modified2.size());
+
+        SimpleFeature f = (SimpleFeature) diff.added.get("f50");
+        assertEquals("f50", f.getID());
+        assertEquals(50, f.getAttribute("value"));
+        assertEquals(1000, ((SimpleFeature) diff.added.get("f10")).getDefaultGeometryProperty()
+                .getBounds().getMinX(), 0d);
+        assertNull(diff.added.get("f11"));
+        assertFalse(diff.modified2.containsKey("f11"));
+
+        Set<String> fids = read(diff, ff.bbox("geom", 40, 40, 42, 42, null));
+        assertEquals(3, fids.size());
+        assertEquals(100, read(diff, Filter.INCLUDE).size());
+
+        // copies keep the spilled features
+        Diff copy = new Diff(diff);
+        assertEquals(99, copy.added.size());
+        assertEquals(3, read(copy, ff.bbox("geom", 40, 40, 42, 42, null)).size());
+
+        diff.clear();
+        assertTrue(diff.isEmpty());
+        assertNull(diff.added.get("f50"));
+        assertEquals(99, copy.added.size());
+    }
+}
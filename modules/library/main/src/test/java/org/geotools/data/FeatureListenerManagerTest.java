@@ -0,0 +1,221 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.FeatureEvent.Type;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
+
+/**
+ * Tests the asynchronous delivery of {@link FeatureListenerManager}
+ *
+ * @source $URL$
+ */
+public class FeatureListenerManagerTest extends TestCase {
+
+    FeatureListenerManager manager;
+
+    SimpleFeatureSource source;
+
+    ExecutorService executor;
+
+    /**
+     * Records the events, the first one waits for the latch to be released
+     */
+    class RecordingListener implements FeatureListener {
+        CountDownLatch latch = new CountDownLatch(0);
+
+        List<FeatureEvent> events = Collections.synchronizedList(new ArrayList<FeatureEvent>());
+
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        public void changed(FeatureEvent featureEvent) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(featureEvent);
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    protected void setUp() throws Exception {
+        MemoryDataStore store = new MemoryDataStore();
+        store.createSchema(DataUtilities.createType("road", "name:String,*geom:LineString"));
+        source = store.getFeatureSource("road");
+        manager = new FeatureListenerManager();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    ReferencedEnvelope bounds(int i) {
+        return new ReferencedEnvelope(i, i + 1, i, i + 1, null);
+    }
+
+    public void testSynchronousByDefault() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        manager.addFeatureListener(source, listener);
+        manager.fireFeaturesAdded("road", Transaction.AUTO_COMMIT, bounds(0), false);
+
+        assertEquals(1, listener.events.size());
+        assertSame(Thread.currentThread(), listener.threads.get(0));
+        assertNull(manager.getStatistics(listener));
+    }
+
+    public void testCoalesce() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        listener.latch = new CountDownLatch(1);
+        manager.setExecutor(executor);
+        manager.addFeatureListener(source, listener);
+
+        manager.fireFeaturesAdded("road", Transaction.AUTO_COMMIT, bounds(0), false);
+        waitForDelivery(listener);
+        for (int i = 1; i < 10; i++) {
+            manager.fireFeaturesAdded("road", Transaction.AUTO_COMMIT, bounds(i), false);
+        }
+        manager.fireFeaturesRemoved("road", Transaction.AUTO_COMMIT, bounds(20), false);
+        listener.latch.countDown();
+        assertTrue(manager.flush(5000));
+
+        // the first event was being delivered, the next ones piled up in the queue
+        assertEquals(3, listener.events.size());
+        assertNotSame(Thread.currentThread(), listener.threads.get(0));
+        assertEquals(bounds(0), listener.events.get(0).getBounds());
+
+        FeatureEvent batch = listener.events.get(1);
+        assertTrue(batch instanceof BatchFeatureEvent);
+        assertEquals(Type.ADDED, batch.getType());
+        assertEquals(1, batch.getBounds().getMinX(), 0d);
+        assertEquals(10, batch.getBounds().getMaxX(), 0d);
+        assertSame(source, batch.getFeatureSource());
+
+        assertEquals(Type.REMOVED, listener.events.get(2).getType());
+
+        FeatureListenerManager.DeliveryStatistics stats = manager.getStatistics(listener);
+        assertEquals(11, stats.getFiredCount());
+        assertEquals(3, stats.getDeliveredCount());
+        assertEquals(0, stats.getPendingCount());
+        assertTrue(stats.getMaxLatency() >= stats.getAverageLatency());
+    }
+
+    public void testCoalesceFilters() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        listener.latch = new CountDownLatch(1);
+        manager.setExecutor(executor);
+        manager.addFeatureListener(source, listener);
+
+        manager.fireFeaturesChanged("road", Transaction.AUTO_COMMIT, bounds(0), false);
+        waitForDelivery(listener);
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        manager.fireEvent("road", Transaction.AUTO_COMMIT, new FeatureEvent(source,
+                Type.CHANGED, bounds(1), ff.id(Collections.singleton(ff.featureId("road.1")))));
+        manager.fireEvent("road", Transaction.AUTO_COMMIT, new FeatureEvent(source,
+                Type.CHANGED, bounds(2), ff.id(Collections.singleton(ff.featureId("road.2")))));
+        listener.latch.countDown();
+        assertTrue(manager.flush(5000));
+
+        // the fids of both changes are kept
+        assertEquals(2, listener.events.size());
+        Filter merged = listener.events.get(1).getFilter();
+        assertTrue(merged instanceof Id);
+        assertEquals(2, ((Id) merged).getIdentifiers().size());
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(source.getSchema());
+        SimpleFeature road1 = fb.buildFeature("road.1");
+        SimpleFeature road2 = fb.buildFeature("road.2");
+        SimpleFeature road3 = fb.buildFeature("road.3");
+        assertTrue(merged.evaluate(road1));
+        assertTrue(merged.evaluate(road2));
+        assertFalse(merged.evaluate(road3));
+
+        // other filters are combined with OR
+        BatchFeatureEvent batch = new BatchFeatureEvent(source);
+        batch.add(new FeatureEvent(source, Type.CHANGED, bounds(1), ff.id(Collections
+                .singleton(ff.featureId("road.1")))));
+        batch.add(new FeatureEvent(source, Type.CHANGED, bounds(2), ff.equals(ff
+                .property("name"), ff.literal("main"))));
+        fb.set("name", "main");
+        road3 = fb.buildFeature("road.3");
+        assertTrue(batch.getFilter().evaluate(road1));
+        assertTrue(batch.getFilter().evaluate(road3));
+        assertFalse(batch.getFilter().evaluate(road2));
+    }
+
+    /**
+     * Waits for the delivery thread to take the pending events
+     */
+    void waitForDelivery(FeatureListener listener) throws InterruptedException {
+        for (int i = 0; i < 500 && manager.getStatistics(listener).getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    public void testBackpressure() throws Exception {
+        final RecordingListener listener = new RecordingListener();
+        listener.latch = new CountDownLatch(1);
+        manager.setExecutor(executor);
+        manager.setQueueCapacity(2);
+        manager.addFeatureListener(source, listener);
+
+        // alternating types, nothing can be coalesced
+        Thread writer = new Thread() {
+            public void run() {
+                for (int i = 0; i < 6; i++) {
+                    if (i % 2 == 0) {
+                        manager.fireFeaturesAdded("road", Transaction.AUTO_COMMIT, bounds(i),
+                                false);
+                    } else {
+                        manager.fireFeaturesRemoved("road", Transaction.AUTO_COMMIT, bounds(i),
+                                false);
+                    }
+                }
+            }
+        };
+        writer.start();
+        writer.join(500);
+        assertTrue("the writer should wait for the listener", writer.isAlive());
+        assertTrue(manager.getStatistics(listener).getPendingCount() <= 2);
+
+        listener.latch.countDown();
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertTrue(manager.flush(5000));
+        assertEquals(6, listener.events.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(bounds(i), listener.events.get(i).getBounds());
+        }
+    }
+}
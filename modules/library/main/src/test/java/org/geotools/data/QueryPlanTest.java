@@ -0,0 +1,100 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Tests the query plans of {@link AbstractFeatureSource}
+ *
+ * @source $URL$
+ */
+public class QueryPlanTest extends TestCase {
+
+    SimpleFeatureSource source;
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    protected void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("plan",
+                "name:String,value:Integer,*geom:Point:srid=4326");
+        GeometryFactory gf = new GeometryFactory();
+        MemoryDataStore store = new MemoryDataStore();
+        store.createSchema(type);
+        for (int i = 0; i < 10; i++) {
+            store.addFeature(SimpleFeatureBuilder.build(type, new Object[] { "f" + i, i,
+                    gf.createPoint(new Coordinate(i, i)) }, "plan." + i));
+        }
+        source = store.getFeatureSource("plan");
+    }
+
+    public void testPlainQuery() throws Exception {
+        QueryPlan plan = ((QueryPlanner) source).explain(Query.ALL);
+        assertEquals("plan", plan.getTypeName());
+        assertEquals(Filter.INCLUDE, plan.getNativeFilter());
+        assertEquals(Filter.INCLUDE, plan.getResidualFilter());
+        assertTrue(plan.getMemorySteps().isEmpty());
+        assertEquals(10, plan.getEstimatedRows());
+    }
+
+    public void testMemorySteps() throws Exception {
+        Filter filter = ff.less(ff.property("value"), ff.literal(5));
+        DefaultQuery query = new DefaultQuery("plan", filter, new String[] { "name" });
+        query.setSortBy(new SortBy[] { ff.sort("name", SortOrder.DESCENDING) });
+        query.setMaxFeatures(3);
+
+        QueryPlan plan = ((QueryPlanner) source).explain(query);
+        // the memory store evaluates the filter itself
+        assertEquals(filter, plan.getResidualFilter());
+        assertTrue(plan.isSortInMemory());
+        assertTrue(plan.isLimitInMemory());
+        assertTrue(plan.isRetypeInMemory());
+        assertFalse(plan.isOffsetInMemory());
+        assertEquals(4, plan.getMemorySteps().size());
+        assertEquals(3, plan.getEstimatedRows());
+        assertTrue(plan.toString().contains("in memory: sort by"));
+    }
+
+    public void testReprojection() throws Exception {
+        DefaultQuery query = new DefaultQuery("plan");
+        query.setCoordinateSystemReproject(DefaultEngineeringCRS.GENERIC_2D);
+        QueryPlan plan = ((QueryPlanner) source).explain(query);
+        assertTrue(plan.isReprojectInMemory());
+        assertEquals(DefaultEngineeringCRS.GENERIC_2D, plan.getTargetCRS());
+
+        // same CRS, nothing to do
+        query.setCoordinateSystemReproject(DefaultGeographicCRS.WGS84);
+        plan = ((QueryPlanner) source).explain(query);
+        assertNull(plan.getTargetCRS());
+    }
+}
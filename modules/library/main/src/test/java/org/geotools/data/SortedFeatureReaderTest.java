@@ -0,0 +1,161 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * @source $URL$
+ */
+public class SortedFeatureReaderTest extends TestCase {
+
+    static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    SimpleFeatureType schema;
+
+    SimpleFeature[] features;
+
+    protected void setUp() throws Exception {
+        schema = DataUtilities.createType("test", "geom:Point,name:String,group:Integer");
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        features = new SimpleFeature[100];
+        for (int i = 0; i < features.length; i++) {
+            builder.add(gf.createPoint(new Coordinate(i, i)));
+            builder.add(i % 11 == 0 ? null : "name" + ((i * 37) % 100));
+            builder.add(Integer.valueOf(i % 5));
+            features[i] = builder.buildFeature("test." + i);
+        }
+    }
+
+    List<String> read(SortBy[] sortBy, int maxFeatures) throws Exception {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = new SortedFeatureReader(
+                new CollectionFeatureReader(features), sortBy, maxFeatures);
+        List<String> fids = new ArrayList<String>();
+        try {
+            while (reader.hasNext()) {
+                fids.add(reader.next().getID());
+            }
+        } finally {
+            reader.close();
+        }
+        return fids;
+    }
+
+    public void testSortInMemory() throws Exception {
+        List<String> fids = read(new SortBy[] { ff.sort("name", SortOrder.ASCENDING) }, 1000);
+        assertEquals(features.length, fids.size());
+        // nulls come first, in their original order
+        assertEquals("test.0", fids.get(0));
+        assertEquals("test.11", fids.get(1));
+        String previous = null;
+        for (String fid : fids) {
+            String name = (String) feature(fid).getAttribute("name");
+            if (previous != null) {
+                assertNotNull(name);
+                assertTrue(name.compareTo(previous) >= 0);
+            }
+            previous = name;
+        }
+    }
+
+    public void testSpillToDisk() throws Exception {
+        SortBy[][] sorts = new SortBy[][] {
+                { ff.sort("name", SortOrder.ASCENDING) },
+                { ff.sort("group", SortOrder.DESCENDING), ff.sort("name", SortOrder.ASCENDING) },
+                { ff.sort("group", SortOrder.ASCENDING), SortBy.REVERSE_ORDER },
+                { ff.sort("group", SortOrder.ASCENDING) } };
+        for (SortBy[] sortBy : sorts) {
+            // the runs on disk must merge back to the same order as the in memory sort
+            assertEquals(read(sortBy, 1000), read(sortBy, 7));
+            assertEquals(read(sortBy, 1000), read(sortBy, 1));
+        }
+
+        // equal values keep the original order
+        List<String> fids = read(new SortBy[] { ff.sort("group", SortOrder.ASCENDING) }, 7);
+        assertEquals("test.0", fids.get(0));
+        assertEquals("test.5", fids.get(1));
+        assertEquals("test.10", fids.get(2));
+        assertEquals("test.4", fids.get(80));
+        assertEquals("test.99", fids.get(99));
+    }
+
+    public void testDecodedFeatures() throws Exception {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = new SortedFeatureReader(
+                new CollectionFeatureReader(features), new SortBy[] { SortBy.REVERSE_ORDER }, 10);
+        try {
+            for (int i = features.length - 1; i >= 0; i--) {
+                SimpleFeature feature = reader.next();
+                assertEquals(features[i].getID(), feature.getID());
+                assertEquals(features[i].getAttribute("name"), feature.getAttribute("name"));
+                assertEquals(features[i].getAttribute("group"), feature.getAttribute("group"));
+                assertTrue(((Geometry) features[i].getDefaultGeometry())
+                        .equalsExact((Geometry) feature.getDefaultGeometry()));
+            }
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testSourceQuery() throws Exception {
+        DefaultQuery query = new DefaultQuery("test");
+        query.setPropertyNames(new String[] { "geom" });
+        query.setSortBy(new SortBy[] { ff.sort("name", SortOrder.ASCENDING) });
+        query.setStartIndex(10);
+        query.setMaxFeatures(10);
+        query.setHints(new Hints(Hints.FEATURE_REUSE, Boolean.TRUE));
+
+        Query source = SortedFeatureReader.getSourceQuery(query);
+        assertNull(source.getSortBy());
+        assertNull(source.getStartIndex());
+        assertTrue(source.isMaxFeaturesUnlimited());
+        assertNull(source.getHints().get(Hints.FEATURE_REUSE));
+        assertEquals(2, source.getPropertyNames().length);
+        assertEquals("name", source.getPropertyNames()[1]);
+    }
+
+    public void testCanSort() throws Exception {
+        assertTrue(SortedFeatureReader.canSort(schema, new SortBy[] { ff.sort("name",
+                SortOrder.ASCENDING) }));
+        assertFalse(SortedFeatureReader.canSort(schema, new SortBy[] { ff.sort("missing",
+                SortOrder.ASCENDING) }));
+        assertTrue(SortedFeatureReader.isNaturalOrder(null));
+        assertTrue(SortedFeatureReader.isNaturalOrder(new SortBy[] { SortBy.NATURAL_ORDER }));
+        assertFalse(SortedFeatureReader.isNaturalOrder(new SortBy[] { SortBy.REVERSE_ORDER }));
+    }
+
+    SimpleFeature feature(String fid) {
+        return features[Integer.parseInt(fid.substring(5))];
+    }
+}
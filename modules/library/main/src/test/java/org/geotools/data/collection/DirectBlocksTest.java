@@ -0,0 +1,88 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import junit.framework.TestCase;
+
+/**
+ * @source $URL$
+ */
+public class DirectBlocksTest extends TestCase {
+
+    public void testAddressing() {
+        DirectBlocks blocks = new DirectBlocks();
+        // 128k values per 1MB block
+        assertEquals(17, blocks.shift);
+        assertEquals(0, blocks.block(0));
+        assertEquals(0, blocks.position(0));
+        assertEquals(0, blocks.block(131071));
+        assertEquals(1048568, blocks.position(131071));
+        assertEquals(1, blocks.block(131072));
+        assertEquals(0, blocks.position(131072));
+
+        // the envelopes of 100 million features, well beyond what an int can address in bytes
+        long index = 100000000L * 4 + 3;
+        assertEquals(3051, blocks.block(index));
+        assertEquals((int) (index % 131072) * 8, blocks.position(index));
+
+        // the last value of the last feature the collection can hold
+        index = Integer.MAX_VALUE * 4L + 3;
+        assertEquals((int) (index / 131072), blocks.block(index));
+        assertEquals(1048568, blocks.position(index));
+    }
+
+    public void testGrow() {
+        // 4 values per block
+        DirectBlocks blocks = new DirectBlocks(32);
+        assertEquals(0, blocks.capacity());
+        blocks.ensureCapacity(0);
+        assertEquals(0, blocks.blocks.size());
+        blocks.ensureCapacity(5);
+        assertEquals(2, blocks.blocks.size());
+        assertEquals(8, blocks.capacity());
+        blocks.ensureCapacity(8);
+        assertEquals(2, blocks.blocks.size());
+
+        blocks.ensureCapacity(100);
+        for (int i = 0; i < 100; i++) {
+            blocks.putDouble(i, i / 2d);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i / 2d, blocks.getDouble(i), 0);
+        }
+
+        DirectBlocks longs = new DirectBlocks(32);
+        longs.ensureCapacity(10);
+        longs.putLong(9, (5L << 32) | 1234);
+        assertEquals((5L << 32) | 1234, longs.getLong(9));
+    }
+
+    public void testInvalidBlockSize() {
+        try {
+            new DirectBlocks(100);
+            fail("The block size must be a power of two");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+        try {
+            new DirectBlocks(4);
+            fail("The block size must hold at least one value");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.collection;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * @source $URL$
+ */
+public class OffHeapFeatureCollectionTest extends TestCase {
+
+    static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    SimpleFeatureType schema;
+
+    SimpleFeature[] features;
+
+    protected void setUp() throws Exception {
+        schema = DataUtilities.createType("test",
+                "geom:Point,name:String,count:Integer,size:Double,when:java.util.Date,flag:Boolean");
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        features = new SimpleFeature[1000];
+        for (int i = 0; i < features.length; i++) {
+            // a 40 x 25 grid, with a few holes in the values
+            builder.add(i % 100 == 0 ? null : gf.createPoint(new Coordinate(i % 40, i / 40)));
+            builder.add(i % 7 == 0 ? null : "feature è " + i);
+            builder.add(Integer.valueOf(i));
+            builder.add(Double.valueOf(i / 3d));
+            builder.add(i % 2 == 0 ? new Date(i * 1000L) : new Timestamp(i * 1000L));
+            builder.add(Boolean.valueOf(i % 3 == 0));
+            features[i] = builder.buildFeature("test." + i);
+        }
+    }
+
+    public void testDirectBuffers() throws Exception {
+        // small chunks, so that several are used
+        OffHeapFeatureCollection collection = new OffHeapFeatureCollection(schema, 4096);
+        try {
+            checkContents(collection);
+        } finally {
+            collection.dispose();
+        }
+    }
+
+    public void testMappedFile() throws Exception {
+        File file = File.createTempFile("offheap", ".bin");
+        OffHeapFeatureCollection collection = new OffHeapFeatureCollection(schema, file, 4096);
+        try {
+            checkContents(collection);
+        } finally {
+            collection.dispose();
+        }
+    }
+
+    void checkContents(OffHeapFeatureCollection collection) throws Exception {
+        for (int i = 0; i < features.length; i++) {
+            collection.add(features[i]);
+        }
+        assertTrue(collection.chunks.size() > 1);
+        assertEquals(features.length, collection.size());
+        assertEquals(new Coordinate(0, 0), new Coordinate(collection.getBounds().getMinX(),
+                collection.getBounds().getMinY()));
+        assertEquals(new Coordinate(39, 24), new Coordinate(collection.getBounds().getMaxX(),
+                collection.getBounds().getMaxY()));
+
+        // all features are decoded back in insertion order
+        SimpleFeatureIterator it = collection.features();
+        try {
+            for (int i = 0; i < features.length; i++) {
+                assertTrue(it.hasNext());
+                SimpleFeature f = it.next();
+                assertEquals(features[i].getID(), f.getID());
+                if (features[i].getDefaultGeometry() == null) {
+                    assertNull(f.getDefaultGeometry());
+                } else {
+                    assertTrue(((Geometry) features[i].getDefaultGeometry())
+                            .equalsExact((Geometry) f.getDefaultGeometry()));
+                }
+                for (int j = 1; j < schema.getAttributeCount(); j++) {
+                    assertEquals(features[i].getAttribute(j), f.getAttribute(j));
+                }
+            }
+            assertFalse(it.hasNext());
+        } finally {
+            it.close();
+        }
+
+        // spatial queries go through the index, and match a brute force scan
+        checkFilter(collection, ff.bbox("geom", 10.5, 5.5, 12.5, 7.5, null), 4);
+        checkFilter(collection, ff.and(ff.bbox("geom", 0, 0, 39, 24, null), ff.less(ff
+                .property("count"), ff.literal(80))), 79);
+        checkFilter(collection, ff.equals(ff.property("count"), ff.literal(500)), 1);
+        checkFilter(collection, Filter.EXCLUDE, 0);
+        assertNotNull(collection.index);
+
+        // the source uses the index too
+        SimpleFeatureSource source = new OffHeapFeatureSource(collection);
+        Query query = new Query("test", ff.bbox("geom", 10.5, 5.5, 12.5, 7.5, null));
+        query.setPropertyNames(new String[] { "name" });
+        SimpleFeatureCollection result = source.getFeatures(query);
+        assertEquals(4, result.size());
+        assertEquals(1, result.getSchema().getAttributeCount());
+
+        // adding features drops the index
+        collection.add(features[0]);
+        assertNull(collection.index);
+        assertEquals(features.length + 1, collection.size());
+    }
+
+    void checkFilter(SimpleFeatureCollection collection, Filter filter, int expected) {
+        int count = 0;
+        for (int i = 0; i < features.length; i++) {
+            if (filter.evaluate(features[i])) {
+                count++;
+            }
+        }
+        assertEquals(expected, count);
+        assertEquals(expected, collection.subCollection(filter).size());
+    }
+
+    public void testPackedRTree() throws Exception {
+        OffHeapFeatureCollection collection = new OffHeapFeatureCollection(schema);
+        for (int i = 0; i < features.length; i++) {
+            collection.add(features[i]);
+        }
+        PackedRTree tree = collection.getIndex();
+        // ten features without geometry
+        assertEquals(990, tree.numItems);
+        int[] all = tree.search(new com.vividsolutions.jts.geom.Envelope(-1, 40, -1, 25));
+        assertEquals(990, all.length);
+        for (int i = 1; i < all.length; i++) {
+            assertTrue(all[i - 1] < all[i]);
+        }
+        assertEquals(0, tree.search(new com.vividsolutions.jts.geom.Envelope(50, 60, 50, 60)).length);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.collection.CollectionFeatureSource;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * @source $URL$
+ */
+public class AttributeJoinTest extends TestCase {
+
+    static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(null);
+
+    SimpleFeatureSource places;
+
+    SimpleFeatureSource codes;
+
+    SimpleFeatureSource textCodes;
+
+    protected void setUp() throws Exception {
+        SimpleFeatureType placeType = DataUtilities.createType("places",
+                "geom:Point,name:String,code:Integer");
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(placeType);
+        for (int i = 0; i < 1000; i++) {
+            fb.add(gf.createPoint(new Coordinate(i, i)));
+            fb.add("place" + i);
+            fb.add(i % 10 == 0 ? null : new Integer(i % 300));
+            features.add(fb.buildFeature("places." + i));
+        }
+        places = new CollectionFeatureSource(new ListFeatureCollection(placeType, features));
+
+        // codes 0 to 199, with 5 showing up twice
+        SimpleFeatureType codeType = DataUtilities.createType("codes", "code:java.lang.Long,name:String");
+        features = new ArrayList<SimpleFeature>();
+        fb = new SimpleFeatureBuilder(codeType);
+        for (int i = 0; i < 200; i++) {
+            fb.add(new Long(i));
+            fb.add("code" + i);
+            features.add(fb.buildFeature("codes." + i));
+        }
+        fb.add(new Long(5));
+        fb.add("five");
+        features.add(fb.buildFeature("codes.five"));
+        codes = new CollectionFeatureSource(new ListFeatureCollection(codeType, features));
+
+        SimpleFeatureType textType = DataUtilities.createType("text", "code:String");
+        features = new ArrayList<SimpleFeature>();
+        fb = new SimpleFeatureBuilder(textType);
+        for (int i = 0; i < 20; i++) {
+            fb.add(i + ".0");
+            features.add(fb.buildFeature("text." + i));
+        }
+        textCodes = new CollectionFeatureSource(new ListFeatureCollection(textType, features));
+    }
+
+    public void testFeatureType() throws Exception {
+        AttributeJoin join = new AttributeJoin(places, codes, "code", "code");
+        SimpleFeatureType type = join.getFeatureType();
+        assertEquals(5, type.getAttributeCount());
+        assertNotNull(type.getDescriptor("codes_name"));
+        assertEquals("geom", type.getGeometryDescriptor().getLocalName());
+
+        join.setRightQuery(new DefaultQuery("codes", ff.equals(ff.property("code"), ff
+                .literal(5))));
+        SimpleFeatureIterator fi = join.getFeatures().features();
+        try {
+            while (fi.hasNext()) {
+                SimpleFeature f = fi.next();
+                assertEquals(new Integer(5), f.getAttribute("code"));
+                assertTrue(f.getID().startsWith(f.getAttribute("name").toString().replace("place",
+                        "places.")
+                        + "-codes."));
+            }
+        } finally {
+            fi.close();
+        }
+    }
+
+    public void testInner() throws Exception {
+        AttributeJoin join = new AttributeJoin(places, codes, "code", "code");
+        Set<String> expected = bruteForce(join);
+        assertEquals(expected, ids(join));
+        join.setMaxMemoryFeatures(10);
+        assertEquals(expected, ids(join));
+    }
+
+    public void testLeftOuter() throws Exception {
+        AttributeJoin join = new AttributeJoin(places, codes, "code", "code");
+        join.setType(AttributeJoin.Type.LEFT_OUTER);
+        Set<String> expected = bruteForce(join);
+        assertEquals(expected, ids(join));
+        join.setMaxMemoryFeatures(10);
+        assertEquals(expected, ids(join));
+    }
+
+    public void testBuildLeft() throws Exception {
+        // the left side is now the smaller one
+        AttributeJoin join = new AttributeJoin(codes, places, "code", "code");
+        join.setType(AttributeJoin.Type.LEFT_OUTER);
+        Set<String> expected = bruteForce(join);
+        assertEquals(expected, ids(join));
+        join.setMaxMemoryFeatures(10);
+        assertEquals(expected, ids(join));
+
+        join.setType(AttributeJoin.Type.INNER);
+        expected = bruteForce(join);
+        assertEquals(expected, ids(join));
+    }
+
+    public void testMixedKeys() throws Exception {
+        AttributeJoin join = new AttributeJoin(textCodes, codes, "code", "code");
+        assertEquals(21, join.getFeatures().size());
+    }
+
+    public void testFeatureSource() throws Exception {
+        AttributeJoin join = new AttributeJoin(places, codes, "code", "code");
+        SimpleFeatureSource source = join.getFeatureSource();
+        assertEquals(join.getFeatureType(), source.getSchema());
+        assertEquals(4, source.getFeatures(ff.equals(ff.property("codes_name"), ff.literal("five")))
+                .size());
+    }
+
+    Set<String> ids(AttributeJoin join) throws Exception {
+        Set<String> ids = new HashSet<String>();
+        SimpleFeatureIterator fi = join.getFeatures().features();
+        try {
+            while (fi.hasNext()) {
+                assertTrue("Duplicate pair", ids.add(fi.next().getID()));
+            }
+        } finally {
+            fi.close();
+        }
+        return ids;
+    }
+
+    Set<String> bruteForce(AttributeJoin join) throws Exception {
+        Set<String> ids = new HashSet<String>();
+        SimpleFeature[] left = (SimpleFeature[]) join.getLeft().getFeatures().toArray(
+                new SimpleFeature[0]);
+        SimpleFeature[] right = (SimpleFeature[]) join.getRight().getFeatures().toArray(
+                new SimpleFeature[0]);
+        for (SimpleFeature l : left) {
+            boolean matched = false;
+            Object lk = l.getAttribute(join.getLeftAttribute());
+            for (SimpleFeature r : right) {
+                Object rk = r.getAttribute(join.getRightAttribute());
+                if (lk != null && rk != null
+                        && ((Number) lk).longValue() == ((Number) rk).longValue()) {
+                    ids.add(l.getID() + "-" + r.getID());
+                    matched = true;
+                }
+            }
+            if (!matched && join.getType() == AttributeJoin.Type.LEFT_OUTER) {
+                ids.add(l.getID());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.join;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * @source $URL$
+ */
+public class SpatialJoinTest extends TestCase {
+
+    static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(null);
+
+    MemoryDataStore store;
+
+    SimpleFeatureSource points;
+
+    SimpleFeatureSource otherPoints;
+
+    SimpleFeatureSource districts;
+
+    SimpleFeatureSource boxes;
+
+    protected void setUp() throws Exception {
+        store = new MemoryDataStore();
+        Random random = new Random(1);
+
+        SimpleFeatureType pointType = DataUtilities.createType("points",
+                "geom:Point,name:String");
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(pointType);
+        for (int i = 0; i < 1000; i++) {
+            fb.add(gf.createPoint(new Coordinate(random.nextDouble() * 10,
+                    random.nextDouble() * 10)));
+            fb.add("p" + i);
+            store.addFeature(fb.buildFeature("points." + i));
+        }
+
+        SimpleFeatureType otherType = DataUtilities.createType("others", "geom:Point,id:Integer");
+        fb = new SimpleFeatureBuilder(otherType);
+        for (int i = 0; i < 300; i++) {
+            fb.add(gf.createPoint(new Coordinate(random.nextDouble() * 10,
+                    random.nextDouble() * 10)));
+            fb.add(new Integer(i));
+            store.addFeature(fb.buildFeature("others." + i));
+        }
+
+        // a grid of unit squares
+        SimpleFeatureType districtType = DataUtilities.createType("districts",
+                "geom:Polygon,name:String");
+        fb = new SimpleFeatureBuilder(districtType);
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                fb.add(polygon(new Envelope(x, x + 1, y, y + 1)));
+                fb.add("d" + x + "_" + y);
+                store.addFeature(fb.buildFeature("districts." + x + "_" + y));
+            }
+        }
+
+        // boxes large enough to span several partitions
+        SimpleFeatureType boxType = DataUtilities.createType("boxes", "geom:Polygon,name:String");
+        fb = new SimpleFeatureBuilder(boxType);
+        for (int i = 0; i < 50; i++) {
+            double x = random.nextDouble() * 8;
+            double y = random.nextDouble() * 8;
+            fb.add(polygon(new Envelope(x, x + random.nextDouble() * 3, y, y
+                    + random.nextDouble() * 3)));
+            fb.add("b" + i);
+            store.addFeature(fb.buildFeature("boxes." + i));
+        }
+
+        points = store.getFeatureSource("points");
+        otherPoints = store.getFeatureSource("others");
+        districts = store.getFeatureSource("districts");
+        boxes = store.getFeatureSource("boxes");
+    }
+
+    Geometry polygon(Envelope e) {
+        return gf.toGeometry(e);
+    }
+
+    public void testFeatureType() throws Exception {
+        SpatialJoin join = new SpatialJoin(points, districts, SpatialJoin.Predicate.WITHIN);
+        SimpleFeatureType type = join.getFeatureType();
+        assertEquals("points_districts", type.getTypeName());
+        assertEquals(3, type.getAttributeCount());
+        assertEquals("geom", type.getGeometryDescriptor().getLocalName());
+        assertNotNull(type.getDescriptor("districts_name"));
+
+        JoinTypeBuilder builder = new JoinTypeBuilder(points.getSchema(), districts
+                .getSchema());
+        builder.addRight("name", "district");
+        builder.addLeft("name");
+        try {
+            builder.addLeft("name", "district");
+            fail("Duplicate names should not be allowed");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+        join.setTypeBuilder(builder);
+        assertEquals(2, join.getFeatureType().getAttributeCount());
+
+        SimpleFeatureIterator fi = join.getFeatures().features();
+        try {
+            SimpleFeature f = fi.next();
+            String district = (String) f.getAttribute("district");
+            String point = (String) f.getAttribute("name");
+            assertEquals("points." + point.substring(1) + "-districts." + district.substring(1), f
+                    .getID());
+        } finally {
+            fi.close();
+        }
+    }
+
+    public void testWithin() throws Exception {
+        SpatialJoin join = new SpatialJoin(points, districts, SpatialJoin.Predicate.WITHIN);
+        Set<String> expected = bruteForce(join);
+        assertEquals(1000, expected.size());
+        assertStrategies(join, expected);
+    }
+
+    public void testIntersects() throws Exception {
+        SpatialJoin join = new SpatialJoin(boxes, districts, SpatialJoin.Predicate.INTERSECTS);
+        Set<String> expected = bruteForce(join);
+        assertTrue(expected.size() > 50);
+        assertStrategies(join, expected);
+    }
+
+    public void testDWithin() throws Exception {
+        SpatialJoin join = new SpatialJoin(points, otherPoints, SpatialJoin.Predicate.DWITHIN);
+        join.setDistance(0.5);
+        Set<String> expected = bruteForce(join);
+        assertTrue(expected.size() > 0);
+        assertStrategies(join, expected);
+    }
+
+    public void testQueries() throws Exception {
+        SpatialJoin join = new SpatialJoin(points, districts, SpatialJoin.Predicate.WITHIN);
+        join.setLeftQuery(new DefaultQuery("points", ff.like(ff.property("name"), "p1*")));
+        join.setRightQuery(new DefaultQuery("districts", ff.like(ff.property("name"), "d1_*")));
+        Set<String> expected = bruteForce(join);
+        assertTrue(expected.size() > 0);
+        assertStrategies(join, expected);
+    }
+
+    void assertStrategies(SpatialJoin join, Set<String> expected) throws Exception {
+        join.setStrategy(SpatialJoin.Strategy.AUTO);
+        assertEquals(expected, ids(join));
+        join.setStrategy(SpatialJoin.Strategy.INDEX_NESTED_LOOP);
+        assertEquals(expected, ids(join));
+        join.setStrategy(SpatialJoin.Strategy.PARTITION);
+        join.setMaxIndexSize(10);
+        assertEquals(expected, ids(join));
+        assertEquals(expected.size(), join.getFeatures().size());
+        try {
+            join.setStrategy(SpatialJoin.Strategy.PUSHDOWN);
+            join.reader();
+            fail("Memory data store cannot run joins natively");
+        } catch (IOException e) {
+            // fine
+        }
+        join.setMaxIndexSize(SpatialJoin.DEFAULT_MAX_INDEX_SIZE);
+    }
+
+    Set<String> ids(SpatialJoin join) throws Exception {
+        Set<String> ids = new HashSet<String>();
+        SimpleFeatureIterator fi = join.getFeatures().features();
+        try {
+            while (fi.hasNext()) {
+                assertTrue("Duplicate pair", ids.add(fi.next().getID()));
+            }
+        } finally {
+            fi.close();
+        }
+        return ids;
+    }
+
+    Set<String> bruteForce(SpatialJoin join) throws Exception {
+        Set<String> ids = new HashSet<String>();
+        SimpleFeature[] left = (SimpleFeature[]) join.getLeft().getFeatures(
+                join.getLeftQuery().getFilter()).toArray(new SimpleFeature[0]);
+        SimpleFeature[] right = (SimpleFeature[]) join.getRight().getFeatures(
+                join.getRightQuery().getFilter()).toArray(new SimpleFeature[0]);
+        for (SimpleFeature l : left) {
+            Geometry lg = (Geometry) l.getDefaultGeometry();
+            for (SimpleFeature r : right) {
+                Geometry rg = (Geometry) r.getDefaultGeometry();
+                boolean matches;
+                switch (join.getPredicate()) {
+                case INTERSECTS:
+                    matches = lg.intersects(rg);
+                    break;
+                case WITHIN:
+                    matches = lg.within(rg);
+                    break;
+                default:
+                    matches = lg.isWithinDistance(rg, join.getDistance());
+                }
+                if (matches) {
+                    ids.add(l.getID() + "-" + r.getID());
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -260,6 +260,99 @@ public class MemoryDataStoreTest extends DataTestCase {
         assertEquals(false, reader.hasNext());
     }
 
+    public void testSpatialIndex() throws Exception {
+        // only rd2 gets below y = 1
+        Filter filter = ff.bbox("geom", 2.5, 0, 3.5, 0.5, null);
+        MemoryIndex index = data.index("road");
+        assertEquals(1, index.candidates(filter).cardinality());
+        assertEquals(1, count(data.getFeatureReader(new DefaultQuery("road", filter),
+                Transaction.AUTO_COMMIT)));
+        assertEquals(1, data.getFeatureSource("road").getCount(new DefaultQuery("road", filter)));
+        
+        // disjoint cannot be answered by the index
+        assertNull(index.candidates(ff.disjoint(ff.property("geom"), ff.literal(roadFeatures[0]
+                .getDefaultGeometry()))));
+    }
+
+    public void testAttributeIndex() throws Exception {
+        Filter equal = ff.equals(ff.property("id"), ff.literal(2));
+        Filter range = ff.greater(ff.property("id"), ff.literal(1));
+        
+        // no attribute index, full scan
+        assertNull(data.index("road").candidates(equal));
+        
+        data.createIndex("road", "id", false);
+        MemoryIndex index = data.index("road");
+        assertEquals(1, index.candidates(equal).cardinality());
+        assertNull(index.candidates(range));
+        
+        data.createIndex("road", "id", true);
+        index = data.index("road");
+        assertEquals(1, index.candidates(equal).cardinality());
+        // the index gives a superset, the extremes are included
+        assertEquals(3, index.candidates(range).cardinality());
+        assertEquals(2, count(data.getFeatureReader(new DefaultQuery("road", range),
+                Transaction.AUTO_COMMIT)));
+        assertEquals(2, count(data.getFeatureReader(new DefaultQuery("road", ff.between(ff
+                .property("id"), ff.literal(2), ff.literal("3"))), Transaction.AUTO_COMMIT)));
+        
+        // an or of indexed filters, preserving the insertion order
+        Filter or = ff.or(equal, ff.equals(ff.property("id"), ff.literal(1)));
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = data.getFeatureReader(
+                new DefaultQuery("road", or), Transaction.AUTO_COMMIT);
+        try {
+            assertEquals("road.rd1", reader.next().getID());
+            assertEquals("road.rd2", reader.next().getID());
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+        
+        // modifications are picked up
+        data.addFeature(newRoad);
+        assertEquals(3, count(data.getFeatureReader(new DefaultQuery("road", range),
+                Transaction.AUTO_COMMIT)));
+        
+        data.removeIndex("road", "id");
+        assertNull(data.index("road").candidates(equal));
+        
+        try {
+            data.createIndex("road", "notThere", false);
+            fail("The attribute does not exist");
+        } catch(IllegalArgumentException e) {
+            // fine
+        }
+    }
+
+    public void testReaderSnapshot() throws Exception {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = data.getFeatureReader("road");
+        try {
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer = data.getFeatureWriter("road",
+                    Filter.INCLUDE, Transaction.AUTO_COMMIT);
+            try {
+                writer.next();
+                writer.remove();
+                writer.next().setAttribute("name", "changed");
+                writer.write();
+            } finally {
+                writer.close();
+            }
+            
+            // the open reader is not affected
+            assertCovered(roadFeatures, reader);
+        } finally {
+            reader.close();
+        }
+        
+        reader = data.getFeatureReader("road");
+        try {
+            assertEquals("changed", reader.next().getAttribute("name"));
+        } finally {
+            reader.close();
+        }
+        assertEquals(2, count(data.getFeatureReader("road")));
+    }
+
     public void testGetFeatureReaderMutability() throws IOException, IllegalAttributeException {
          FeatureReader<SimpleFeatureType, SimpleFeature> reader = data.getFeatureReader("road");
         SimpleFeature feature;
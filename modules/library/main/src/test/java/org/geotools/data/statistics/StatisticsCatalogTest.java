@@ -0,0 +1,262 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.statistics;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Tests the collection, persistence and incremental update of {@link StatisticsCatalog}
+ *
+ * @source $URL$
+ */
+public class StatisticsCatalogTest extends TestCase {
+
+    static final String TYPE_NAME = "stats";
+
+    SimpleFeatureType type;
+
+    MemoryDataStore store;
+
+    File directory;
+
+    StatisticsCatalog catalog;
+
+    GeometryFactory gf = new GeometryFactory();
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    protected void setUp() throws Exception {
+        type = DataUtilities.createType(TYPE_NAME, "name:String,value:Integer,*geom:Point");
+        store = new MemoryDataStore();
+        store.createSchema(type);
+        // 1000 features on a 100x10 grid, value in [0, 999], every tenth name null
+        SimpleFeature[] features = new SimpleFeature[1000];
+        for (int i = 0; i < features.length; i++) {
+            String name = i % 10 == 0 ? null : "n" + (i % 50);
+            features[i] = SimpleFeatureBuilder.build(type, new Object[] { name, i,
+                    gf.createPoint(new Coordinate(i % 100, i / 100)) }, TYPE_NAME + "." + i);
+        }
+        store.addFeatures(features);
+
+        directory = File.createTempFile("statistics", "dir");
+        directory.delete();
+        catalog = new StatisticsCatalog(directory);
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        Hints.removeSystemDefault(Hints.STATISTICS_ESTIMATES);
+    }
+
+    public void testCollect() throws Exception {
+        assertNull(catalog.getStatistics(TYPE_NAME));
+        FeatureTypeStatistics stats = catalog.refresh(store.getFeatureSource(TYPE_NAME));
+
+        assertEquals(1000, stats.getCount());
+        assertEquals(0, stats.getBounds().getMinX(), 0);
+        assertEquals(99, stats.getBounds().getMaxX(), 0);
+        assertEquals(9, stats.getBounds().getMaxY(), 0);
+        assertFalse(stats.isStale());
+
+        AttributeStatistics value = stats.getAttribute("value");
+        assertTrue(value.isNumeric());
+        assertEquals(0, value.getMin(), 0);
+        assertEquals(999, value.getMax(), 0);
+        assertEquals(1000, value.getDistinctCount(), 50);
+        assertEquals(500, value.getQuantile(0.5), 20);
+
+        AttributeStatistics name = stats.getAttribute("name");
+        assertEquals(0.1, name.getNullFraction(), 1e-9);
+        assertEquals(45, name.getDistinctCount(), 5);
+    }
+
+    public void testEstimates() throws Exception {
+        FeatureTypeStatistics stats = catalog.refresh(store.getFeatureSource(TYPE_NAME));
+
+        assertEquals(250, stats.estimateCount(ff.less(ff.property("value"), ff.literal(250))), 20);
+        assertEquals(100, stats.estimateCount(ff.between(ff.property("value"), ff.literal(100),
+                ff.literal(199))), 20);
+        assertEquals(100, stats.estimateCount(ff.isNull(ff.property("name"))), 1);
+        // the left half of the data
+        Filter bbox = ff.bbox("geom", -0.5, -0.5, 49.5, 9.5, null);
+        assertEquals(500, stats.estimateCount(bbox), 50);
+        assertEquals(0, stats.estimateCount(ff.bbox("geom", 200, 200, 300, 300, null)));
+        // independent conditions multiply
+        Filter and = ff.and(bbox, ff.less(ff.property("value"), ff.literal(500)));
+        assertEquals(250, stats.estimateCount(and), 40);
+
+        // the bounds are clipped to the filter
+        assertEquals(49.5, stats.estimateBounds(bbox).getMaxX(), 0);
+        assertEquals(9, stats.estimateBounds(bbox).getMaxY(), 0);
+    }
+
+    public void testOptimize() throws Exception {
+        FeatureTypeStatistics stats = catalog.refresh(store.getFeatureSource(TYPE_NAME));
+        Filter wide = ff.less(ff.property("value"), ff.literal(900));
+        Filter narrow = ff.less(ff.property("value"), ff.literal(10));
+        And optimized = (And) stats.optimize(ff.and(wide, narrow));
+        assertEquals(narrow, optimized.getChildren().get(0));
+        assertEquals(wide, optimized.getChildren().get(1));
+    }
+
+    public void testBreaks() throws Exception {
+        FeatureTypeStatistics stats = catalog.refresh(store.getFeatureSource(TYPE_NAME));
+        double[] breaks = stats.getAttribute("value").getBreaks(4);
+        assertEquals(5, breaks.length);
+        assertEquals(0, breaks[0], 0);
+        assertEquals(250, breaks[1], 20);
+        assertEquals(500, breaks[2], 20);
+        assertEquals(750, breaks[3], 20);
+        assertEquals(999, breaks[4], 0);
+    }
+
+    public void testPersistence() throws Exception {
+        FeatureTypeStatistics stats = catalog.refresh(store.getFeatureSource(TYPE_NAME));
+        assertTrue(catalog.getFile(TYPE_NAME).exists());
+
+        StatisticsCatalog reloaded = new StatisticsCatalog(directory);
+        FeatureTypeStatistics read = reloaded.getStatistics(TYPE_NAME);
+        assertNotNull(read);
+        assertEquals(stats.getCount(), read.getCount());
+        assertEquals(stats.getBounds(), read.getBounds());
+        assertEquals(stats.getAttribute("value").getDistinctCount(), read.getAttribute("value")
+                .getDistinctCount());
+        Filter filter = ff.less(ff.property("value"), ff.literal(250));
+        assertEquals(stats.estimateCount(filter), read.estimateCount(filter));
+        assertEquals(stats.getDensityGrid().getTotal(), read.getDensityGrid().getTotal());
+
+        reloaded.remove(TYPE_NAME);
+        assertFalse(catalog.getFile(TYPE_NAME).exists());
+        assertNull(reloaded.getStatistics(TYPE_NAME));
+    }
+
+    public void testAutoCommitUpdates() throws Exception {
+        catalog.refresh(store.getFeatureSource(TYPE_NAME));
+
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = catalog.wrap(store
+                .getFeatureWriterAppend(TYPE_NAME, Transaction.AUTO_COMMIT), TYPE_NAME,
+                Transaction.AUTO_COMMIT);
+        for (int i = 0; i < 10; i++) {
+            SimpleFeature f = writer.next();
+            f.setAttribute("value", 5000);
+            f.setDefaultGeometry(gf.createPoint(new Coordinate(50, 50)));
+            writer.write();
+        }
+        writer.close();
+
+        // changes are applied and saved
+        StatisticsCatalog reloaded = new StatisticsCatalog(directory);
+        FeatureTypeStatistics stats = reloaded.getStatistics(TYPE_NAME);
+        assertEquals(1010, stats.getCount());
+        assertEquals(10, stats.getModifications());
+        assertEquals(5000, stats.getAttribute("value").getMax(), 0);
+        assertEquals(50, stats.getBounds().getMaxY(), 0);
+
+        // remove them again
+        writer = catalog.wrap(store.getFeatureWriter(TYPE_NAME, ff.equals(ff.property("value"),
+                ff.literal(5000)), Transaction.AUTO_COMMIT), TYPE_NAME, Transaction.AUTO_COMMIT);
+        while (writer.hasNext()) {
+            writer.next();
+            writer.remove();
+        }
+        writer.close();
+        assertEquals(1000, catalog.getStatistics(TYPE_NAME).getCount());
+    }
+
+    public void testTransactionUpdates() throws Exception {
+        catalog.refresh(store.getFeatureSource(TYPE_NAME));
+        Filter small = ff.less(ff.property("value"), ff.literal(100));
+
+        Transaction t = new DefaultTransaction();
+        try {
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer = catalog.wrap(store
+                    .getFeatureWriter(TYPE_NAME, small, t), TYPE_NAME, t);
+            while (writer.hasNext()) {
+                writer.next();
+                writer.remove();
+            }
+            writer.close();
+            // nothing changes before the commit
+            assertEquals(1000, catalog.getStatistics(TYPE_NAME).getCount());
+            t.rollback();
+            assertEquals(1000, catalog.getStatistics(TYPE_NAME).getCount());
+
+            writer = catalog.wrap(store.getFeatureWriter(TYPE_NAME, small, t), TYPE_NAME, t);
+            while (writer.hasNext()) {
+                writer.next();
+                writer.remove();
+            }
+            writer.close();
+            t.commit();
+        } finally {
+            t.close();
+        }
+
+        FeatureTypeStatistics stats = new StatisticsCatalog(directory).getStatistics(TYPE_NAME);
+        assertEquals(900, stats.getCount());
+        assertEquals(0, stats.estimateCount(small), 10);
+    }
+
+    public void testStale() throws Exception {
+        FeatureTypeStatistics stats = catalog.refresh(store.getFeatureSource(TYPE_NAME));
+        SimpleFeature feature = SimpleFeatureBuilder.build(type, new Object[] { "n1", 1,
+                gf.createPoint(new Coordinate(1, 0)) }, TYPE_NAME + ".1");
+        for (int i = 0; i < 200; i++) {
+            catalog.removed(TYPE_NAME, feature);
+            catalog.added(TYPE_NAME, feature);
+        }
+        assertEquals(1000, stats.getCount());
+        assertTrue(stats.isStale());
+        assertNotNull(catalog.getStatistics(TYPE_NAME));
+        assertNull(catalog.getCurrentStatistics(TYPE_NAME));
+    }
+
+    public void testEstimateAllowed() throws Exception {
+        assertFalse(StatisticsCatalog.isEstimateAllowed(null));
+        Hints hints = new Hints(Hints.STATISTICS_ESTIMATES, Boolean.TRUE);
+        assertTrue(StatisticsCatalog.isEstimateAllowed(hints));
+        Hints.putSystemDefault(Hints.STATISTICS_ESTIMATES, Boolean.TRUE);
+        assertTrue(StatisticsCatalog.isEstimateAllowed(new Hints()));
+        assertFalse(StatisticsCatalog.isEstimateAllowed(new Hints(Hints.STATISTICS_ESTIMATES,
+                Boolean.FALSE)));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ * 
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.simple;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.CompactFeatureFactoryImpl;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class CompactSimpleFeatureTest extends TestCase {
+
+    SimpleFeatureType schema;
+
+    SimpleFeatureBuilder builder;
+
+    Point point;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        schema = DataUtilities.createType("roads",
+                "the_geom:Point,name:String,lanes:Integer,length:Double,id:java.lang.Long,oneway:Boolean");
+        Hints hints = new Hints(Hints.FEATURE_FACTORY, CompactFeatureFactoryImpl.class);
+        builder = new SimpleFeatureBuilder(schema, CommonFactoryFinder.getFeatureFactory(hints));
+        point = new GeometryFactory().createPoint(new Coordinate(1, 2));
+    }
+
+    public void testFactoryLookup() {
+        SimpleFeature f = builder.buildFeature("roads.1", new Object[] { point, "main", 2, 10.5,
+                100l, true });
+        assertTrue(f instanceof CompactSimpleFeature);
+    }
+
+    public void testValues() {
+        SimpleFeature f = builder.buildFeature("roads.1", new Object[] { point, "main", "2", 10.5,
+                100, true });
+        assertEquals(point, f.getDefaultGeometry());
+        assertEquals("main", f.getAttribute("name"));
+        assertEquals(Integer.valueOf(2), f.getAttribute("lanes"));
+        assertEquals(Double.valueOf(10.5), f.getAttribute(3));
+        assertEquals(Long.valueOf(100), f.getAttribute("id"));
+        assertEquals(Boolean.TRUE, f.getAttribute("oneway"));
+        assertEquals(6, f.getAttributeCount());
+        assertEquals(6, f.getAttributes().size());
+        assertEquals(1.0, f.getBounds().getMinX());
+    }
+
+    public void testNulls() {
+        SimpleFeature f = builder.buildFeature("roads.1", new Object[] { null, null, null, 1.0,
+                null, null });
+        assertNull(f.getDefaultGeometry());
+        assertNull(f.getAttribute("lanes"));
+        assertNull(f.getAttribute("id"));
+        assertEquals(1.0, f.getAttribute("length"));
+
+        f.setAttribute("lanes", 3);
+        assertEquals(Integer.valueOf(3), f.getAttribute("lanes"));
+        f.setAttribute("lanes", null);
+        assertNull(f.getAttribute("lanes"));
+        f.setAttribute("length", "12.25");
+        assertEquals(12.25, f.getAttribute("length"));
+    }
+
+    public void testProperties() {
+        SimpleFeature f = builder.buildFeature("roads.1", new Object[] { point, "main", 2, 10.5,
+                100l, true });
+        assertEquals(2, f.getProperty("lanes").getValue());
+        f.getProperty("lanes").setValue(4);
+        assertEquals(4, f.getAttribute("lanes"));
+        assertNull(f.getProperty("NOWHERE"));
+        assertEquals(6, f.getProperties().size());
+        f.getProperty("lanes").getUserData().put("key", "value");
+        assertEquals("value", f.getProperty("lanes").getUserData().get("key"));
+    }
+
+    public void testEquals() {
+        Object[] values = new Object[] { point, "main", 2, 10.5, 100l, true };
+        SimpleFeature compact = builder.buildFeature("roads.1", values);
+        SimpleFeature regular = SimpleFeatureBuilder.build(schema, values, "roads.1");
+        assertEquals(compact, regular);
+        assertEquals(compact, SimpleFeatureBuilder.copy(compact));
+    }
+
+    public void testSharedLayout() {
+        SimpleFeature f1 = builder.buildFeature("roads.1");
+        SimpleFeature f2 = builder.buildFeature("roads.2");
+        assertSame(((CompactSimpleFeature) f1).layout, ((CompactSimpleFeature) f2).layout);
+        assertEquals(4, ((CompactSimpleFeature) f1).layout.primitiveCount);
+    }
+}
@@ -22,6 +22,7 @@ import org.geotools.factory.CommonFactoryFinder;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.FilterFactory;
+import org.opengis.filter.identity.FeatureId;
 import org.opengis.filter.PropertyIsEqualTo;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -178,4 +179,33 @@ public class SimpleFeatureBuilderTest extends TestCase {
 	    }
 	    
     }
+	
+	public void testFeatureReuse() throws Exception {
+	    GeometryFactory gf = new GeometryFactory();
+	    builder.setFeatureReuse(true);
+	    
+	    builder.add( gf.createPoint( new Coordinate( 0, 0 ) ) );
+	    builder.add( new Integer( 1 ) );
+	    builder.add( new Float( 2.0 ) );
+	    SimpleFeature first = builder.buildFeature( "fid.1" );
+	    FeatureId firstId = first.getIdentifier();
+	    
+	    builder.add( gf.createPoint( new Coordinate( 1, 1 ) ) );
+	    builder.add( new Integer( 2 ) );
+	    SimpleFeature second = builder.buildFeature( "fid.2" );
+	    
+	    // same container, new contents
+	    assertSame( first, second );
+	    assertEquals( "fid.2", second.getID() );
+	    assertEquals( new Integer( 2 ) , second.getAttribute( "integer" ) );
+	    assertNull( second.getAttribute( "float" ) );
+	    // identifiers handed out earlier are not touched
+	    assertEquals( "fid.1", firstId.getID() );
+	    
+	    builder.setFeatureReuse(false);
+	    builder.add( gf.createPoint( new Coordinate( 2, 2 ) ) );
+	    SimpleFeature third = builder.buildFeature( "fid.3" );
+	    assertNotSame( second, third );
+	    assertEquals( "fid.2", second.getID() );
+	}
 }
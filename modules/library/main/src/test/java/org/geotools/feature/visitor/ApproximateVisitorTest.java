@@ -0,0 +1,143 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+
+/**
+ * @source $URL$
+ */
+public class ApproximateVisitorTest extends TestCase {
+
+    static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    SimpleFeatureType type;
+
+    SimpleFeatureBuilder builder;
+
+    protected void setUp() throws Exception {
+        type = DataUtilities.createType("test", "value:Double,name:String");
+        builder = new SimpleFeatureBuilder(type);
+    }
+
+    SimpleFeature feature(Object value, String name) {
+        builder.add(value);
+        builder.add(name);
+        return builder.buildFeature(null);
+    }
+
+    public void testDistinctCount() throws Exception {
+        DistinctCountVisitor visitor = new DistinctCountVisitor(ff.property("name"));
+        DistinctCountVisitor partial = (DistinctCountVisitor) visitor.createPartial();
+        for (int i = 0; i < 100000; i++) {
+            // every value shows up twice, once in each visitor
+            visitor.visit(feature(null, "name" + (i % 50000)));
+            partial.visit(feature(null, "name" + (i % 50000)));
+        }
+        partial.visit(feature(null, null));
+        visitor.merge(partial);
+
+        long count = ((Long) visitor.getResult().getValue()).longValue();
+        assertEquals(50000, count, 50000 * 0.03);
+
+        // small cardinalities are close to exact
+        DistinctCountVisitor small = new DistinctCountVisitor(ff.property("value"));
+        for (int i = 0; i < 100; i++) {
+            small.visit(feature(new Double(i % 10), null));
+        }
+        assertEquals(10, small.getCount());
+    }
+
+    public void testTopKUnique() throws Exception {
+        TopKUniqueVisitor visitor = new TopKUniqueVisitor(ff.property("name"), 5);
+        for (int i = 0; i < 3; i++) {
+            visitor.visit(feature(null, "a" + i));
+        }
+        assertFalse(visitor.isTruncated());
+        assertEquals(3, visitor.getUnique().size());
+
+        // five frequent values hidden among a thousand rare ones
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            visitor.visit(feature(null, "rare" + i));
+            visitor.visit(feature(null, "frequent" + random.nextInt(5)));
+        }
+        assertTrue(visitor.isTruncated());
+        assertTrue(visitor.getUnique().size() <= 5);
+        List top = visitor.getTopValues();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(top.contains("frequent" + i));
+        }
+
+        // merging keeps the summary bounded
+        TopKUniqueVisitor partial = (TopKUniqueVisitor) visitor.createPartial();
+        for (int i = 0; i < 100; i++) {
+            partial.visit(feature(null, "other" + i));
+        }
+        visitor.merge(partial);
+        assertTrue(visitor.getUnique().size() <= 5);
+    }
+
+    public void testQuantiles() throws Exception {
+        QuantileSketchVisitor visitor = new QuantileSketchVisitor(ff.property("value"));
+        QuantileSketchVisitor partial = (QuantileSketchVisitor) visitor.createPartial();
+        double[] values = new double[100000];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 100;
+            (i % 3 == 0 ? partial : visitor).visit(feature(new Double(values[i]), null));
+        }
+        visitor.visit(feature(null, null));
+        visitor.visit(feature(new Double(Double.NaN), null));
+        visitor.merge(partial);
+        Arrays.sort(values);
+
+        assertEquals(values.length, visitor.getCount());
+        assertEquals(1, visitor.getNullCount());
+        assertEquals(1, visitor.getNaNCount());
+        assertEquals(values[0], visitor.getQuantile(0), 0);
+        assertEquals(values[values.length - 1], visitor.getQuantile(1), 0);
+        for (double fraction = 0.1; fraction < 1; fraction += 0.1) {
+            // check the rank error rather than the value error
+            double quantile = visitor.getQuantile(fraction);
+            int rank = Arrays.binarySearch(values, quantile);
+            assertTrue(rank >= 0);
+            assertEquals(fraction, (double) rank / values.length, 0.02);
+        }
+        assertEquals(visitor.getMedian(),
+                ((Double) visitor.getResult().getValue()).doubleValue(), 0);
+        assertEquals(5, visitor.getBreaks(4).length);
+    }
+
+    public void testQuantilesNonNumeric() throws Exception {
+        QuantileSketchVisitor visitor = new QuantileSketchVisitor(ff.property("name"));
+        visitor.visit(feature(null, "abc"));
+        assertEquals(1, visitor.getNonNumericCount());
+        assertSame(CalcResult.NULL_RESULT, visitor.getResult());
+    }
+}
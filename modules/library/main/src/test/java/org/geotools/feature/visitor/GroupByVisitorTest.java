@@ -0,0 +1,124 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * @source $URL$
+ */
+public class GroupByVisitorTest extends TestCase {
+
+    FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    List<SimpleFeature> features;
+
+    protected void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("test",
+                "region:String,kind:Integer,population:Integer");
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        features = new ArrayList<SimpleFeature>();
+        String[] regions = { "north", "south", "east" };
+        for (int i = 0; i < 30; i++) {
+            builder.add(regions[i % 3]);
+            builder.add(Integer.valueOf(i % 2));
+            builder.add(Integer.valueOf(i));
+            features.add(builder.buildFeature("test." + i));
+        }
+    }
+
+    public void testSum() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(ff.property("region"), new SumVisitor(ff
+                .property("population")));
+        DataUtilities.collection(features).accepts(visitor, null);
+
+        Map<List<Object>, Object> sums = visitor.getGroupValues();
+        assertEquals(3, sums.size());
+        // 0 + 3 + ... + 27
+        assertEquals(135, ((Number) sums.get(Arrays.asList("north"))).intValue());
+        assertEquals(145, ((Number) sums.get(Arrays.asList("south"))).intValue());
+        assertEquals(155, ((Number) sums.get(Arrays.asList("east"))).intValue());
+        assertEquals(sums, visitor.getResult().toMap());
+    }
+
+    public void testCountMultipleKeys() throws Exception {
+        List<Expression> groupBy = Arrays.asList((Expression) ff.property("region"), ff
+                .property("kind"));
+        GroupByVisitor visitor = new GroupByVisitor(groupBy, new CountVisitor());
+        DataUtilities.collection(features).accepts(visitor, null);
+
+        Map<List<Object>, Object> counts = visitor.getGroupValues();
+        assertEquals(6, counts.size());
+        for (Object count : counts.values()) {
+            assertEquals(5, ((Number) count).intValue());
+        }
+        assertEquals(5, ((Number) counts.get(Arrays.asList((Object) "east", 1))).intValue());
+    }
+
+    public void testEmpty() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(ff.property("region"), new CountVisitor());
+        assertSame(CalcResult.NULL_RESULT, visitor.getResult());
+        assertTrue(visitor.getGroupValues().isEmpty());
+    }
+
+    public void testMergePartials() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(ff.property("region"), new MaxVisitor(ff
+                .property("population")));
+        List<SimpleFeatureCollection> partitions = new ArrayList<SimpleFeatureCollection>();
+        partitions.add(DataUtilities.collection(features.subList(0, 10)));
+        partitions.add(DataUtilities.collection(features.subList(10, 30)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ParallelCalc.accepts(partitions, visitor, executor, null);
+        } finally {
+            executor.shutdown();
+        }
+
+        Map<List<Object>, Object> max = visitor.getGroupValues();
+        assertEquals(27, ((Number) max.get(Arrays.asList("north"))).intValue());
+        assertEquals(28, ((Number) max.get(Arrays.asList("south"))).intValue());
+        assertEquals(29, ((Number) max.get(Arrays.asList("east"))).intValue());
+    }
+
+    public void testMergeResults() throws Exception {
+        GroupByVisitor first = new GroupByVisitor(ff.property("region"), new CountVisitor());
+        DataUtilities.collection(features.subList(0, 4)).accepts(first, null);
+        GroupByVisitor second = new GroupByVisitor(ff.property("region"), new CountVisitor());
+        DataUtilities.collection(features.subList(4, 30)).accepts(second, null);
+
+        Map merged = first.getResult().merge(second.getResult()).toMap();
+        assertEquals(10, ((Number) merged.get(Arrays.asList("north"))).intValue());
+        assertEquals(10, ((Number) merged.get(Arrays.asList("south"))).intValue());
+        assertEquals(10, ((Number) merged.get(Arrays.asList("east"))).intValue());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.Expression;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * @source $URL$
+ */
+public class ParallelCalcTest extends TestCase {
+
+    SimpleFeature[] features;
+
+    ExecutorService executor;
+
+    protected void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("test",
+                "geom:Point,value:Double,group:Integer");
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        features = new SimpleFeature[1000];
+        for (int i = 0; i < features.length; i++) {
+            builder.add(gf.createPoint(new Coordinate(i % 37, i / 37)));
+            builder.add(i % 13 == 0 ? null : new Double((i * 7919) % 1000 / 10.0));
+            builder.add(Integer.valueOf(i % 7));
+            features[i] = builder.buildFeature("test." + i);
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    List<SimpleFeatureCollection> partitions(int size) {
+        List<SimpleFeatureCollection> result = new ArrayList<SimpleFeatureCollection>();
+        for (int i = 0; i < features.length; i += size) {
+            result.add(DataUtilities.collection(Arrays.asList(features).subList(i,
+                    Math.min(features.length, i + size))));
+        }
+        return result;
+    }
+
+    List<MergeableFeatureCalc> visitors() {
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        Expression value = ff.property("value");
+        Expression group = ff.property("group");
+        List<MergeableFeatureCalc> result = new ArrayList<MergeableFeatureCalc>();
+        result.add(new MinVisitor(value));
+        result.add(new MaxVisitor(value));
+        result.add(new SumVisitor(group));
+        result.add(new AverageVisitor(group));
+        result.add(new CountVisitor());
+        result.add(new BoundsVisitor());
+        result.add(new StandardDeviationVisitor(group));
+        result.add(new UniqueVisitor(group));
+        return result;
+    }
+
+    void assertSameResult(MergeableFeatureCalc expected, MergeableFeatureCalc actual) {
+        Object expectedValue = expected.getResult().getValue();
+        Object actualValue = actual.getResult().getValue();
+        if (expectedValue instanceof Double) {
+            assertEquals(((Double) expectedValue).doubleValue(),
+                    ((Double) actualValue).doubleValue(), 1e-9);
+        } else {
+            assertEquals(expectedValue, actualValue);
+        }
+    }
+
+    public void testPartitions() throws Exception {
+        SimpleFeatureCollection all = DataUtilities.collection(features);
+        List<MergeableFeatureCalc> sequential = visitors();
+        List<MergeableFeatureCalc> parallel = visitors();
+        for (int i = 0; i < sequential.size(); i++) {
+            all.accepts(sequential.get(i), null);
+            ParallelCalc.accepts(partitions(77), parallel.get(i), executor, null);
+            assertSameResult(sequential.get(i), parallel.get(i));
+        }
+        MaxVisitor max = (MaxVisitor) parallel.get(1);
+        assertEquals(((MaxVisitor) sequential.get(1)).getNullCount(), max.getNullCount());
+    }
+
+    public void testBatches() throws Exception {
+        SimpleFeatureCollection all = DataUtilities.collection(features);
+        List<MergeableFeatureCalc> sequential = visitors();
+        List<MergeableFeatureCalc> parallel = visitors();
+        for (int i = 0; i < sequential.size(); i++) {
+            all.accepts(sequential.get(i), null);
+            ParallelCalc.accepts(all, parallel.get(i), executor, 3);
+            assertSameResult(sequential.get(i), parallel.get(i));
+        }
+    }
+
+    public void testMergeEmpty() throws Exception {
+        for (MergeableFeatureCalc calc : visitors()) {
+            calc.merge(calc.createPartial());
+            assertSame(CalcResult.NULL_RESULT, calc.getResult());
+        }
+    }
+
+    public void testFailure() throws Exception {
+        SimpleFeatureCollection all = DataUtilities.collection(features);
+        MinVisitor visitor = new MinVisitor("value") {
+            public void visit(org.opengis.feature.Feature feature) {
+                throw new IllegalStateException("failed");
+            }
+
+            public MergeableFeatureCalc createPartial() {
+                return this;
+            }
+        };
+        try {
+            ParallelCalc.accepts(all, visitor, executor, 2);
+            fail("the failure should have been reported");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+}
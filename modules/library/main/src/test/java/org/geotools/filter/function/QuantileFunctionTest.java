@@ -19,6 +19,7 @@ package org.geotools.filter.function;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.memory.MemoryDataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.simple.SimpleFeature;
@@ -94,6 +95,23 @@ public class QuantileFunctionTest extends FunctionTestSupport {
     }
     
     
+    public void testEvaluateApproximate() throws Exception {
+        Hints.putSystemDefault(Hints.APPROXIMATE_AGGREGATES, Boolean.TRUE);
+        try {
+            Function func = ff.function("Quantile", ff.property("foo"), ff.literal(2));
+            Object value = func.evaluate(featureCollection);
+            assertTrue(value instanceof RangedClassifier);
+            RangedClassifier ranged = (RangedClassifier) value;
+
+            // the sketch splits at the median of {4,90,20,43,29,61,8,12}
+            assertEquals(2, ranged.getSize());
+            assertEquals("4..20", ranged.getTitle(0));
+            assertEquals("20..90", ranged.getTitle(1));
+        } finally {
+            Hints.removeSystemDefault(Hints.APPROXIMATE_AGGREGATES);
+        }
+    }
+
     /**
      * Test a feature collection where each feature will be in
      * it's own bin.
@@ -0,0 +1,229 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geometry.jts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.matrix.GeneralMatrix;
+import org.geotools.referencing.operation.transform.AbstractMathTransform;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Checks {@link BatchGeometryTransformer} returns the same geometries as
+ * {@link GeometryCoordinateSequenceTransformer}
+ *
+ * @source $URL$
+ */
+public class BatchGeometryTransformerTest {
+
+    static final String[] WKT = { "POINT (-123 48)", "LINESTRING (-123 48, -122 49, -121 48.5)",
+            "POLYGON ((-123 48, -121 48, -121 50, -123 50, -123 48), "
+                    + "(-122.5 48.5, -122 48.5, -122 49, -122.5 48.5))",
+            "MULTIPOINT ((-123 48), (-122 49))",
+            "MULTILINESTRING ((-123 48, -122 49), (-121 48, -120 49))",
+            "MULTIPOLYGON (((-123 48, -121 48, -121 50, -123 48)), "
+                    + "((-120 48, -119 48, -119 49, -120 48)))",
+            "GEOMETRYCOLLECTION (POINT (-123 48), LINESTRING (-122 48, -121 49))",
+            "POLYGON EMPTY" };
+
+    CoordinateReferenceSystem utm;
+
+    MathTransform transform;
+
+    GeometryCoordinateSequenceTransformer reference;
+
+    @Before
+    public void setUp() throws Exception {
+        utm = CRS.parseWKT(JTSTest.UTM_ZONE_10N);
+        transform = CRS.findMathTransform(DefaultGeographicCRS.WGS84, utm, true);
+        reference = new GeometryCoordinateSequenceTransformer();
+        reference.setMathTransform(transform);
+    }
+
+    @Test
+    public void testSameAsOneByOne() throws Exception {
+        WKTReader reader = new WKTReader();
+        List<Object[]> rows = new ArrayList<Object[]>();
+        List<Geometry> expected = new ArrayList<Geometry>();
+        for (int i = 0; i < WKT.length; i++) {
+            Geometry g = reader.read(WKT[i]);
+            rows.add(new Object[] { "feature" + i, g, Integer.valueOf(i) });
+            expected.add(reference.transform(g));
+        }
+
+        BatchGeometryTransformer batch = new BatchGeometryTransformer(transform);
+        batch.transform(rows);
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            assertEquals("feature" + i, row[0]);
+            assertEquals(Integer.valueOf(i), row[2]);
+            Geometry transformed = (Geometry) row[1];
+            assertSame(expected.get(i).getClass(), transformed.getClass());
+            assertTrue(WKT[i], expected.get(i).equalsExact(transformed, 1e-9));
+        }
+
+        // the holes of the polygons are kept
+        assertEquals(1, ((Polygon) rows.get(2)[1]).getNumInteriorRing());
+        assertEquals(2, ((MultiPolygon) rows.get(5)[1]).getNumGeometries());
+
+        // the transformer can be reused for the next batch
+        Geometry point = batch.transform(reader.read(WKT[0]));
+        assertTrue(expected.get(0).equalsExact(point, 1e-9));
+    }
+
+    @Test
+    public void testExtraOrdinates() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        LineString line = gf.createLineString(new Coordinate[] { new Coordinate(-123, 48, 10),
+                new Coordinate(-122, 49, 20) });
+
+        LineString transformed = (LineString) new BatchGeometryTransformer(transform)
+                .transform(line);
+        assertEquals(10, transformed.getCoordinateN(0).z, 0d);
+        assertEquals(20, transformed.getCoordinateN(1).z, 0d);
+        assertTrue(reference.transform(line).equalsExact(transformed, 1e-9));
+    }
+
+    @Test
+    public void testUserData() throws Exception {
+        Point point = new GeometryFactory().createPoint(new Coordinate(-123, 48));
+        point.setUserData(DefaultGeographicCRS.WGS84);
+
+        BatchGeometryTransformer batch = new BatchGeometryTransformer(transform);
+        batch.setCoordinateReferenceSystem(utm);
+        assertSame(utm, batch.transform(point).getUserData());
+
+        point.setUserData("custom");
+        assertEquals("custom", batch.transform(point).getUserData());
+    }
+
+    @Test
+    public void testParallelChunks() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        List<Object[]> rows = new ArrayList<Object[]>();
+        List<Geometry> expected = new ArrayList<Geometry>();
+        for (int i = 0; i < 200; i++) {
+            Coordinate[] coords = new Coordinate[i % 7 + 2];
+            for (int j = 0; j < coords.length; j++) {
+                coords[j] = new Coordinate(-124 + i * 0.01, 45 + j * 0.1);
+            }
+            LineString line = gf.createLineString(coords);
+            rows.add(new Object[] { line });
+            expected.add(reference.transform(line));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchGeometryTransformer batch = new BatchGeometryTransformer(transform);
+            batch.setExecutor(executor);
+            batch.setChunkSize(50);
+            batch.transform(rows);
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            assertTrue(expected.get(i).equalsExact((Geometry) rows.get(i)[0], 1e-9));
+        }
+    }
+
+    @Test
+    public void test2DSequenceWith3DTransform() throws Exception {
+        GeneralMatrix matrix = new GeneralMatrix(4);
+        matrix.setElement(0, 3, 10);
+        MathTransform translate = ProjectiveTransform.create(matrix);
+
+        GeometryFactory gf = new GeometryFactory(new LiteCoordinateSequenceFactory());
+        LineString line = gf.createLineString(new LiteCoordinateSequence(new double[] { 1, 2,
+                3, 4 }, 2));
+        LineString transformed = (LineString) new BatchGeometryTransformer(translate)
+                .transform(line);
+        assertEquals(11, transformed.getCoordinateN(0).x, 0d);
+        assertEquals(2, transformed.getCoordinateN(0).y, 0d);
+        assertEquals(13, transformed.getCoordinateN(1).x, 0d);
+        assertEquals(4, transformed.getCoordinateN(1).y, 0d);
+    }
+
+    @Test
+    public void testTransformEachSkipsFailures() throws Exception {
+        // fails on negative x, as a projection would outside of its domain
+        MathTransform failing = new AbstractMathTransform() {
+            public int getSourceDimensions() {
+                return 2;
+            }
+
+            public int getTargetDimensions() {
+                return 2;
+            }
+
+            public void transform(double[] srcPts, int srcOff, double[] dstPts, int dstOff,
+                    int numPts) throws TransformException {
+                for (int i = 0; i < numPts * 2; i++) {
+                    if (i % 2 == 0 && srcPts[srcOff + i] < 0) {
+                        throw new TransformException("Negative x");
+                    }
+                    dstPts[dstOff + i] = srcPts[srcOff + i] * 2;
+                }
+            }
+        };
+
+        GeometryFactory gf = new GeometryFactory();
+        Point bad = gf.createPoint(new Coordinate(-1, 1));
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] { gf.createPoint(new Coordinate(1, 1)) });
+        rows.add(new Object[] { bad });
+        rows.add(new Object[] { gf.createPoint(new Coordinate(2, 3)) });
+
+        BatchGeometryTransformer batch = new BatchGeometryTransformer(failing);
+        TransformException[] failures = batch.transformEach(rows);
+        assertNotNull(failures);
+        assertNull(failures[0]);
+        assertNotNull(failures[1]);
+        assertNull(failures[2]);
+        assertEquals(new Coordinate(2, 2), ((Point) rows.get(0)[0]).getCoordinate());
+        assertSame(bad, rows.get(1)[0]);
+        assertEquals(new Coordinate(4, 6), ((Point) rows.get(2)[0]).getCoordinate());
+
+        // a batch that transforms as a whole reports no failure
+        rows.remove(1);
+        assertNull(batch.transformEach(rows));
+    }
+}
@@ -570,7 +570,67 @@ public class Hints extends RenderingHints {
      * @since 2.4.1
      */
     public static final Key FEATURE_2D = new Key(Boolean.class);
-    
+
+    /**
+     * Tells the feature readers that the caller will not hold onto the features it gets,
+     * allowing them to return the same feature object on each call to {@code next()},
+     * with its contents overwritten, instead of allocating a new one for each record.
+     * <p>
+     * Only suitable for code that is done with a feature before calling {@code hasNext()} or
+     * {@code next()} again, such as the renderer or aggregate visitors. The attribute values
+     * themselves are not recycled.
+     *
+     * @since 2.8
+     */
+    public static final Key FEATURE_REUSE = new Key(Boolean.class);
+
+    /**
+     * The maximum number of features a sorting reader will keep in memory when the data
+     * store cannot sort natively. Larger results are sorted in runs spilled to temporary
+     * files and merged back while reading.
+     *
+     * @since 2.8
+     */
+    public static final Key MAX_MEMORY_SORT = new Key(Integer.class);
+
+    /**
+     * The maximum number of added or modified features a transaction keeps in memory before
+     * moving the further ones to a temporary file. Read from the
+     * {@linkplain GeoTools#getDefaultHints default hints} when the transaction state is created.
+     *
+     * @since 2.8
+     */
+    public static final Key MAX_MEMORY_DIFF = new Key(Integer.class);
+
+    /**
+     * Allows stores having statistics about their data to answer counts and bounds requests
+     * with estimates instead of computing them. Used either as a query hint or among the
+     * {@linkplain GeoTools#getDefaultHints default hints}.
+     *
+     * @since 2.8
+     */
+    public static final Key STATISTICS_ESTIMATES = new Key(Boolean.class);
+
+    /**
+     * Allows aggregate calculations that would otherwise keep every value in memory (unique
+     * values, medians, quantiles) to use bounded size approximations instead. Used by the
+     * classification functions when set among the {@linkplain GeoTools#getDefaultHints
+     * default hints}.
+     *
+     * @since 2.8
+     */
+    public static final Key APPROXIMATE_AGGREGATES = new Key(Boolean.class);
+
+    /**
+     * Asks the feature listener managers of the data stores to deliver the feature events on
+     * an executor instead of the writer thread, coalescing the pending ones. The executor is
+     * the {@link #EXECUTOR_SERVICE} found among the {@linkplain GeoTools#getDefaultHints
+     * default hints}, or a shared pool of daemon threads if none is set.
+     *
+     * @since 2.8
+     */
+    public static final Key ASYNC_FEATURE_EVENTS = new Key(Boolean.class);
+
     /**
      * Asks a datastore having a vector pyramid (pre-generalized geometries)
      * to return the geometry version whose points have been generalized
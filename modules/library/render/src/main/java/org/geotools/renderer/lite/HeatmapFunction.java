@@ -0,0 +1,319 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.image.DataBufferFloat;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import javax.media.jai.RasterFactory;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.GeoTools;
+import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.filter.FunctionExpressionImpl;
+import org.geotools.filter.function.EnvFunction;
+import org.geotools.filter.function.RenderingTransformation;
+import org.geotools.filter.visitor.DuplicatingFilterVisitor;
+import org.geotools.geometry.Envelope2D;
+import org.geotools.referencing.CRS;
+import org.opengis.coverage.grid.GridGeometry;
+import org.opengis.feature.Feature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Not;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * A rendering transformation turning a point layer into a kernel density surface, to be
+ * displayed with a {@code RasterSymbolizer}.
+ * <p>
+ * The function takes the geometry property, the radius of the kernel in pixels and the weight of
+ * each point (a literal or an expression evaluated on each feature). The points are counted
+ * directly into a grid at the output resolution, which is then smoothed with a gaussian kernel,
+ * so the memory used only depends on the size of the map. The values of the resulting coverage
+ * are scaled between 0 and 1. Geometries other than points contribute their centroid.
+ * </p>
+ * <p>
+ * Example use in a style:
+ * <pre><code>
+ * &lt;FeatureTypeStyle&gt;
+ *   &lt;Transformation&gt;
+ *     &lt;ogc:Function name="Heatmap"&gt;
+ *       &lt;ogc:PropertyName&gt;the_geom&lt;/ogc:PropertyName&gt;
+ *       &lt;ogc:Literal&gt;20&lt;/ogc:Literal&gt;
+ *       &lt;ogc:Literal&gt;1&lt;/ogc:Literal&gt;
+ *     &lt;/ogc:Function&gt;
+ *   &lt;/Transformation&gt;
+ *   &lt;Rule&gt;
+ *     &lt;RasterSymbolizer&gt;
+ *       &lt;ColorMap type="ramp"&gt;
+ *         &lt;ColorMapEntry color="#0000FF" quantity="0" opacity="0"/&gt;
+ *         &lt;ColorMapEntry color="#FF0000" quantity="1"/&gt;
+ *       &lt;/ColorMap&gt;
+ *     &lt;/RasterSymbolizer&gt;
+ *   &lt;/Rule&gt;
+ * &lt;/FeatureTypeStyle&gt;
+ * </code></pre>
+ * </p>
+ * <p>
+ * The output grid is read from the {@link StreamingRenderer#OUTPUT_GRID_ENV} "env" variable,
+ * which the renderer sets in the rendering thread while evaluating the function. The function
+ * keeps no state of its own, so the same instance can be shared by concurrent renderings. The
+ * query returned by {@link #invertQuery(Query, GridGeometry)} only asks for the properties
+ * the function uses, with the bounding boxes of its filter grown by the kernel radius, and sets
+ * {@link Hints#FEATURE_REUSE} since the features are not retained. The smoothing passes run in
+ * parallel on the {@link Hints#EXECUTOR_SERVICE} found among the
+ * {@linkplain GeoTools#getDefaultHints default hints}, if any.
+ * </p>
+ *
+ * @since 2.8
+ * @source $URL$
+ */
+public class HeatmapFunction extends FunctionExpressionImpl implements RenderingTransformation {
+
+    /**
+     * The number of points reprojected at once when the features and the output grid do not
+     * share the same coordinate reference system
+     */
+    static final int BUFFER_POINTS = 1024;
+
+    public HeatmapFunction() {
+        super("Heatmap");
+    }
+
+    public int getArgCount() {
+        return 3;
+    }
+
+    int getRadius() {
+        Integer radius = getExpression(1).evaluate(null, Integer.class);
+        if (radius == null || radius < 0) {
+            throw new IllegalArgumentException("The heatmap radius must be a positive number "
+                    + "of pixels, got " + getExpression(1));
+        }
+        return radius;
+    }
+
+    public Query invertQuery(Query targetQuery, GridGeometry gridGeometry) {
+        Query query = new Query(targetQuery);
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < getArgCount(); i++) {
+            for (String name : DataUtilities.attributeNames(getExpression(i))) {
+                if (!names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        if (!names.isEmpty()) {
+            query.setPropertyNames(names);
+        }
+
+        // points up to a radius away from the map contribute to it
+        final int width = GridGeometry2D.wrap(gridGeometry).getGridRange2D().width;
+        if (width > 0 && targetQuery.getFilter() != null) {
+            final int radius = getRadius();
+            DuplicatingFilterVisitor expander = new DuplicatingFilterVisitor() {
+                @Override
+                public Object visit(BBOX bbox, Object extraData) {
+                    double expand = radius * (bbox.getMaxX() - bbox.getMinX()) / width;
+                    return getFactory(extraData).bbox(bbox.getExpression1(),
+                            bbox.getMinX() - expand, bbox.getMinY() - expand,
+                            bbox.getMaxX() + expand, bbox.getMaxY() + expand, bbox.getSRS());
+                }
+
+                @Override
+                public Object visit(Not filter, Object extraData) {
+                    // growing an excluded area would drop points
+                    return filter;
+                }
+            };
+            query.setFilter((Filter) targetQuery.getFilter().accept(expander, null));
+        }
+
+        Hints hints = new Hints(Hints.FEATURE_REUSE, Boolean.TRUE);
+        if (targetQuery.getHints() != null) {
+            hints.add(targetQuery.getHints());
+            hints.put(Hints.FEATURE_REUSE, Boolean.TRUE);
+        }
+        query.setHints(hints);
+        return query;
+    }
+
+    /**
+     * Returns null, the function only works on vector data
+     */
+    public GridGeometry invertGridGeometry(Query targetQuery, GridGeometry targetGridGeometry) {
+        return null;
+    }
+
+    public Object evaluate(Object object) {
+        if (!(object instanceof FeatureCollection)) {
+            return null;
+        }
+        // the grid the renderer set for the current thread
+        EnvFunction env = new EnvFunction();
+        env.setParameters(Collections.singletonList(CommonFactoryFinder.getFilterFactory(null)
+                .literal(StreamingRenderer.OUTPUT_GRID_ENV)));
+        Object grid = env.evaluate(null);
+        if (!(grid instanceof GridGeometry)) {
+            throw new IllegalStateException("The output grid is unknown, the \""
+                    + StreamingRenderer.OUTPUT_GRID_ENV + "\" env variable is not set");
+        }
+        try {
+            return heatmap((FeatureCollection) object, GridGeometry2D.wrap((GridGeometry) grid));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to compute the heatmap", e);
+        }
+    }
+
+    GridCoverage2D heatmap(FeatureCollection features, GridGeometry2D outputGrid)
+            throws Exception {
+        Envelope2D envelope = outputGrid.getEnvelope2D();
+        GridEnvelope2D range = outputGrid.getGridRange2D();
+        HeatmapSurface surface = new HeatmapSurface(range.width, range.height, getRadius());
+
+        MathTransform transform = null;
+        CoordinateReferenceSystem source = features.getSchema().getCoordinateReferenceSystem();
+        CoordinateReferenceSystem target = envelope.getCoordinateReferenceSystem();
+        if (source != null && target != null && !CRS.equalsIgnoreMetadata(source, target)) {
+            transform = CRS.findMathTransform(source, target, true);
+        }
+
+        Expression geometry = getExpression(0);
+        Expression weight = getExpression(2);
+        double constantWeight = 1;
+        if (weight instanceof Literal) {
+            Double value = weight.evaluate(null, Double.class);
+            constantWeight = value != null ? value : 1;
+            weight = null;
+        }
+
+        // coordinates are collected in batches, reprojected at once if needed, then counted
+        PointBuffer buffer = new PointBuffer(surface, envelope, transform);
+        FeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                Feature feature = (Feature) it.next();
+                Object value = geometry.evaluate(feature);
+                if (!(value instanceof Geometry) || ((Geometry) value).isEmpty()) {
+                    continue;
+                }
+                double w = constantWeight;
+                if (weight != null) {
+                    Double v = weight.evaluate(feature, Double.class);
+                    if (v == null) {
+                        continue;
+                    }
+                    w = v;
+                }
+                Geometry g = (Geometry) value;
+                if (g instanceof Point) {
+                    buffer.add(((Point) g).getX(), ((Point) g).getY(), w);
+                } else if (g.getGeometryType().equals("MultiPoint")) {
+                    for (int i = 0; i < g.getNumGeometries(); i++) {
+                        Point p = (Point) g.getGeometryN(i);
+                        buffer.add(p.getX(), p.getY(), w);
+                    }
+                } else {
+                    Point centroid = g.getCentroid();
+                    buffer.add(centroid.getX(), centroid.getY(), w);
+                }
+            }
+        } finally {
+            it.close();
+        }
+        buffer.flush();
+
+        ExecutorService executor = (ExecutorService) GeoTools.getDefaultHints().get(
+                Hints.EXECUTOR_SERVICE);
+        float[] values = surface.computeSurface(executor);
+
+        DataBufferFloat data = new DataBufferFloat(values, values.length);
+        WritableRaster raster = RasterFactory.createBandedRaster(data, range.width,
+                range.height, range.width, new int[] { 0 }, new int[] { 0 }, null);
+        return CoverageFactoryFinder.getGridCoverageFactory(null).create("heatmap", raster,
+                envelope);
+    }
+
+    /**
+     * Collects the point coordinates and adds them to the surface in batches
+     */
+    static class PointBuffer {
+        HeatmapSurface surface;
+
+        MathTransform transform;
+
+        double minX, maxY, scaleX, scaleY;
+
+        double[] coordinates = new double[BUFFER_POINTS * 2];
+
+        double[] weights = new double[BUFFER_POINTS];
+
+        int count;
+
+        PointBuffer(HeatmapSurface surface, Envelope2D envelope, MathTransform transform) {
+            this.surface = surface;
+            this.transform = transform;
+            this.minX = envelope.getMinX();
+            this.maxY = envelope.getMaxY();
+            this.scaleX = surface.width / envelope.getWidth();
+            this.scaleY = surface.height / envelope.getHeight();
+        }
+
+        void add(double x, double y, double weight) throws Exception {
+            coordinates[count * 2] = x;
+            coordinates[count * 2 + 1] = y;
+            weights[count++] = weight;
+            if (count == BUFFER_POINTS) {
+                flush();
+            }
+        }
+
+        void flush() throws Exception {
+            if (transform != null) {
+                transform.transform(coordinates, 0, coordinates, 0, count);
+            }
+            for (int i = 0; i < count; i++) {
+                surface.addPoint((coordinates[i * 2] - minX) * scaleX,
+                        (maxY - coordinates[i * 2 + 1]) * scaleY, weights[i]);
+            }
+            Arrays.fill(weights, 0, count, 0);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A kernel density surface computed at pixel resolution.
+ * <p>
+ * Points are accumulated into a grid padded by the kernel radius on each side, so that points
+ * just outside the output area still contribute to it. The surface is then smoothed with a
+ * gaussian kernel applied as two one dimensional passes, along the rows then along the columns,
+ * each pass being split in bands run in parallel when an executor is available. Memory use only
+ * depends on the number of pixels.
+ * </p>
+ *
+ * @source $URL$
+ */
+class HeatmapSurface {
+
+    final int width;
+
+    final int height;
+
+    final int radius;
+
+    /**
+     * Width of the padded grid
+     */
+    final int gridWidth;
+
+    /**
+     * The accumulated weights, in a padded grid of {@code (height + 2 * radius)} rows of
+     * {@link #gridWidth} cells
+     */
+    final float[] grid;
+
+    final float[] kernel;
+
+    HeatmapSurface(int width, int height, int radius) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid surface size " + width + "x" + height);
+        }
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must be positive: " + radius);
+        }
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.gridWidth = width + 2 * radius;
+        this.grid = new float[gridWidth * (height + 2 * radius)];
+        this.kernel = kernel(radius);
+    }
+
+    /**
+     * A normalized gaussian kernel of {@code 2 * radius + 1} values, whose standard deviation is
+     * a third of the radius
+     */
+    static float[] kernel(int radius) {
+        float[] kernel = new float[2 * radius + 1];
+        if (radius == 0) {
+            kernel[0] = 1;
+            return kernel;
+        }
+        double sigma = radius / 3.0;
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double value = Math.exp(-(i * i) / (2 * sigma * sigma));
+            kernel[i + radius] = (float) value;
+            sum += value;
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+
+    /**
+     * Adds a point, in pixel coordinates relative to the top left corner of the output area.
+     * Points further than the radius from the output area are ignored.
+     */
+    void addPoint(double x, double y, double weight) {
+        int col = (int) Math.floor(x) + radius;
+        int row = (int) Math.floor(y) + radius;
+        if (col >= 0 && col < gridWidth && row >= 0 && row < height + 2 * radius) {
+            grid[row * gridWidth + col] += weight;
+        }
+    }
+
+    /**
+     * Computes the smoothed surface, scaled so that its maximum is 1
+     *
+     * @param executor used to run the passes in parallel, may be null
+     * @return the {@code width * height} values of the surface, row by row from the top
+     */
+    float[] computeSurface(ExecutorService executor) {
+        final int paddedHeight = height + 2 * radius;
+        // rows pass, only keeps the columns of the output area
+        final float[] rows = new float[paddedHeight * width];
+        run(executor, paddedHeight, new Band() {
+            public void compute(int from, int to) {
+                for (int r = from; r < to; r++) {
+                    int in = r * gridWidth;
+                    int out = r * width;
+                    for (int c = 0; c < width; c++) {
+                        float sum = 0;
+                        for (int k = 0; k < kernel.length; k++) {
+                            sum += kernel[k] * grid[in + c + k];
+                        }
+                        rows[out + c] = sum;
+                    }
+                }
+            }
+        });
+
+        // columns pass, only keeps the rows of the output area
+        final float[] surface = new float[height * width];
+        run(executor, width, new Band() {
+            public void compute(int from, int to) {
+                for (int c = from; c < to; c++) {
+                    for (int r = 0; r < height; r++) {
+                        float sum = 0;
+                        for (int k = 0; k < kernel.length; k++) {
+                            sum += kernel[k] * rows[(r + k) * width + c];
+                        }
+                        surface[r * width + c] = sum;
+                    }
+                }
+            }
+        });
+
+        float max = 0;
+        for (int i = 0; i < surface.length; i++) {
+            max = Math.max(max, surface[i]);
+        }
+        if (max > 0) {
+            for (int i = 0; i < surface.length; i++) {
+                surface[i] /= max;
+            }
+        }
+        return surface;
+    }
+
+    /**
+     * A range of rows or columns computed by a pass
+     */
+    interface Band {
+        void compute(int from, int to);
+    }
+
+    static void run(ExecutorService executor, int size, final Band band) {
+        int bands = executor == null ? 1 : Math.min(size, Runtime.getRuntime()
+                .availableProcessors());
+        if (bands <= 1) {
+            band.compute(0, size);
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        int step = (size + bands - 1) / bands;
+        for (int start = 0; start < size; start += step) {
+            final int from = start;
+            final int to = Math.min(size, start + step);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    band.compute(from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing the heatmap", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to compute the heatmap", e.getCause());
+        }
+    }
+}
@@ -68,6 +68,7 @@ import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.SchemaException;
 import org.geotools.filter.IllegalFilterException;
+import org.geotools.filter.function.EnvFunction;
 import org.geotools.filter.function.GeometryTransformationVisitor;
 import org.geotools.filter.function.RenderingTransformation;
 import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
@@ -342,6 +343,16 @@ public final class StreamingRenderer implements GTRenderer {
      */
     public static final String CONTINUOUS_MAP_WRAPPING = "continuousMapWrapping";
 
+    /**
+     * Name of the "env" variable holding the {@link GridGeometry2D} of the map being painted
+     * while a rendering transformation is evaluated. It is local to the rendering thread, so
+     * the transformations shared by concurrent renderings can find out their output grid
+     * without keeping it in their own state.
+     * 
+     * @see EnvFunction
+     */
+    public static final String OUTPUT_GRID_ENV = "outputGrid";
+
     /**
      * Boolean flag indicating whether vector rendering should be preferred when
      * painting graphic fills. See {@link SLDStyleFactory#isVectorRenderingEnabled()}
@@ -1036,6 +1047,12 @@ public final class StreamingRenderer implements GTRenderer {
         Hints hints = new Hints(Hints.JTS_COORDINATE_SEQUENCE_FACTORY, csFactory);
         hints.put(Hints.JTS_GEOMETRY_FACTORY, gFactory);
         hints.put(Hints.FEATURE_2D, Boolean.TRUE);
+        // ... features are painted and forgotten, unless a listener gets to see them or a
+        // rendering transformation gets them first (it might keep them around, and decides
+        // on its own whether to reuse them when inverting the query)
+        if(renderListeners.isEmpty() && !hasTransformation(styles)) {
+            hints.put(Hints.FEATURE_REUSE, Boolean.TRUE);
+        }
         
         // update the screenmaps
         try {
@@ -1089,6 +1106,17 @@ public final class StreamingRenderer implements GTRenderer {
         return query;
     }
 
+    /**
+     * Returns true if any of the styles has a rendering transformation
+     */
+    boolean hasTransformation(LiteFeatureTypeStyle[] styles) {
+        for (LiteFeatureTypeStyle fts : styles) {
+            if (fts.transformation != null) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     /**
      * Takes care of eventual geometric transformations
@@ -1992,6 +2020,19 @@ public final class StreamingRenderer implements GTRenderer {
 
     FeatureCollection applyRenderingTransformation(Expression transformation,
             FeatureSource featureSource, Query query, GridGeometry2D gridGeometry) throws IOException, SchemaException, TransformException  {
+        // restore rather than clear, a caller up the stack might have set its own grid
+        Object previousGrid = EnvFunction.getLocalValue(OUTPUT_GRID_ENV);
+        EnvFunction.setLocalValue(OUTPUT_GRID_ENV, gridGeometry);
+        try {
+            return evaluateTransformation(transformation, featureSource, query, gridGeometry);
+        } finally {
+            EnvFunction.setLocalValue(OUTPUT_GRID_ENV, previousGrid);
+        }
+    }
+
+    FeatureCollection evaluateTransformation(Expression transformation,
+            FeatureSource featureSource, Query query, GridGeometry2D gridGeometry)
+            throws IOException, SchemaException, TransformException {
         Object result = null;
         
         // check if it's a wrapper coverage or a wrapped reader
@@ -0,0 +1,129 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureCollections;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.function.EnvFunction;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.spatial.BBOX;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Tests {@link HeatmapFunction} as the renderer uses it
+ *
+ * @source $URL$
+ */
+public class HeatmapFunctionTest extends TestCase {
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    HeatmapFunction function;
+
+    /**
+     * One unit per pixel, with the point in the middle of the cell at column 5, row 4
+     */
+    GridGeometry2D grid = new GridGeometry2D(new GridEnvelope2D(0, 0, 10, 10),
+            new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84));
+
+    FeatureCollection features;
+
+    protected void setUp() throws Exception {
+        function = new HeatmapFunction();
+        function.setParameters(Arrays.asList(ff.property("geom"), ff.literal(2), ff.literal(1)));
+
+        SimpleFeatureType type = DataUtilities.createType("points", "geom:Point,weight:Double");
+        features = FeatureCollections.newCollection();
+        SimpleFeature point = SimpleFeatureBuilder.build(type, new Object[] {
+                new GeometryFactory().createPoint(new Coordinate(5.5, 5.5)), 1d }, "points.1");
+        features.add(point);
+    }
+
+    protected void tearDown() throws Exception {
+        EnvFunction.setLocalValue(StreamingRenderer.OUTPUT_GRID_ENV, null);
+    }
+
+    public void testEvaluateWithGrid() {
+        EnvFunction.setLocalValue(StreamingRenderer.OUTPUT_GRID_ENV, grid);
+        GridCoverage2D coverage = (GridCoverage2D) function.evaluate(features);
+
+        assertEquals(grid.getGridRange2D(), coverage.getGridGeometry().getGridRange2D());
+        Raster raster = coverage.getRenderedImage().getData();
+        assertEquals(1, raster.getSampleFloat(5, 4, 0), 1e-6);
+        assertTrue(raster.getSampleFloat(6, 4, 0) < 1);
+        assertTrue(raster.getSampleFloat(6, 4, 0) > 0);
+        assertEquals(0, raster.getSampleFloat(0, 9, 0), 0);
+    }
+
+    public void testEvaluateWithoutGrid() {
+        try {
+            function.evaluate(features);
+            fail("The output grid is not set");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(StreamingRenderer.OUTPUT_GRID_ENV));
+        }
+    }
+
+    public void testInvertQuery() {
+        // two pixels of radius, two units on each side
+        Query query = new Query("points", ff.bbox("geom", 0, 0, 10, 10, null));
+        Query inverted = function.invertQuery(query, grid);
+        assertExpanded((BBOX) inverted.getFilter());
+        assertEquals(Arrays.asList("geom"), Arrays.asList(inverted.getPropertyNames()));
+        assertEquals(Boolean.TRUE, inverted.getHints().get(Hints.FEATURE_REUSE));
+
+        // the bounding boxes combined with other conditions grow as well
+        Filter weight = ff.greater(ff.property("weight"), ff.literal(0));
+        query.setFilter(ff.and(ff.bbox("geom", 0, 0, 10, 10, null), weight));
+        And and = (And) function.invertQuery(query, grid).getFilter();
+        assertExpanded((BBOX) and.getChildren().get(0));
+        assertEquals(weight, and.getChildren().get(1));
+
+        // but not the excluded ones
+        Filter not = ff.not(ff.bbox("geom", 0, 0, 10, 10, null));
+        query.setFilter(not);
+        assertEquals(not, function.invertQuery(query, grid).getFilter());
+    }
+
+    void assertExpanded(BBOX bbox) {
+        assertEquals(-2, bbox.getMinX(), 1e-9);
+        assertEquals(-2, bbox.getMinY(), 1e-9);
+        assertEquals(12, bbox.getMaxX(), 1e-9);
+        assertEquals(12, bbox.getMaxY(), 1e-9);
+    }
+}
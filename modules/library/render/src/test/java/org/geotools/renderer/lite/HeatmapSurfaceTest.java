@@ -0,0 +1,92 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the density surface behind {@link HeatmapFunction}
+ *
+ * @source $URL$
+ */
+public class HeatmapSurfaceTest extends TestCase {
+
+    public void testKernel() {
+        float[] kernel = HeatmapSurface.kernel(5);
+        assertEquals(11, kernel.length);
+        float sum = 0;
+        for (int i = 0; i < kernel.length; i++) {
+            sum += kernel[i];
+            assertEquals(kernel[i], kernel[kernel.length - 1 - i], 1e-6);
+        }
+        assertEquals(1, sum, 1e-5);
+        assertTrue(kernel[5] > kernel[4]);
+    }
+
+    public void testSinglePoint() {
+        HeatmapSurface surface = new HeatmapSurface(21, 11, 4);
+        surface.addPoint(10.5, 5.5, 1);
+        float[] values = surface.computeSurface(null);
+        assertEquals(21 * 11, values.length);
+
+        // peak on the point, symmetric around it, nothing beyond the radius
+        assertEquals(1, values[5 * 21 + 10], 1e-6);
+        assertEquals(values[5 * 21 + 8], values[5 * 21 + 12], 1e-6);
+        assertEquals(values[3 * 21 + 10], values[7 * 21 + 10], 1e-6);
+        assertTrue(values[5 * 21 + 9] < 1);
+        assertEquals(0, values[5 * 21 + 15], 0);
+        assertEquals(0, values[0], 0);
+    }
+
+    public void testPointOutside() {
+        HeatmapSurface surface = new HeatmapSurface(10, 10, 3);
+        // within the radius from the left border
+        surface.addPoint(-2, 5, 1);
+        // too far away
+        surface.addPoint(-20, 5, 1);
+        float[] values = surface.computeSurface(null);
+        assertTrue(values[5 * 10] > 0);
+        assertEquals(1, values[5 * 10], 1e-6);
+        assertTrue(values[5 * 10 + 1] > 0);
+        assertEquals(0, values[5 * 10 + 2], 0);
+    }
+
+    public void testParallel() {
+        HeatmapSurface serial = new HeatmapSurface(97, 53, 7);
+        HeatmapSurface parallel = new HeatmapSurface(97, 53, 7);
+        for (int i = 0; i < 500; i++) {
+            double x = (i * 37) % 110 - 5;
+            double y = (i * 17) % 60 - 3;
+            serial.addPoint(x, y, i % 3 + 1);
+            parallel.addPoint(x, y, i % 3 + 1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            float[] expected = serial.computeSurface(null);
+            float[] values = parallel.computeSurface(executor);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], values[i], 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
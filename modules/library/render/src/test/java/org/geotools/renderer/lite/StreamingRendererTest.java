@@ -25,17 +25,29 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
 import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.property.PropertyDataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.FunctionExpressionImpl;
+import org.geotools.filter.function.RenderingTransformation;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.DefaultMapContext;
 import org.geotools.map.MapContext;
@@ -44,13 +56,16 @@ import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.renderer.RenderListener;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleBuilder;
+import org.geotools.test.TestData;
 import org.junit.Test;
+import org.opengis.coverage.grid.GridGeometry;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
@@ -238,4 +253,75 @@ public class StreamingRendererTest extends TestCase {
                 screen.height - 1) != 0);
 
     }
+
+    /**
+     * A rendering transformation keeping all the features it receives, as an aggregation or a
+     * density surface would do
+     */
+    static class CollectingTransformation extends FunctionExpressionImpl implements
+            RenderingTransformation {
+        List<SimpleFeature> collected = new ArrayList<SimpleFeature>();
+
+        CollectingTransformation() {
+            super("collect");
+        }
+
+        public int getArgCount() {
+            return 0;
+        }
+
+        public Object evaluate(Object object) {
+            SimpleFeatureIterator it = ((SimpleFeatureCollection) object).features();
+            try {
+                while (it.hasNext()) {
+                    collected.add(it.next());
+                }
+            } finally {
+                it.close();
+            }
+            return new ListFeatureCollection(collected.get(0).getFeatureType(), collected);
+        }
+
+        public Query invertQuery(Query targetQuery, GridGeometry gridGeometry) {
+            return targetQuery;
+        }
+
+        public GridGeometry invertGridGeometry(Query targetQuery, GridGeometry targetGridGeometry) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testTransformationKeepsFeatures() throws Exception {
+        // the property store recycles its features when asked to
+        File property = new File(TestData.getResource(this, "line.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        SimpleFeatureSource source = ds.getFeatureSource("line");
+        assertTrue(source.getSupportedHints().contains(Hints.FEATURE_REUSE));
+
+        CollectingTransformation transformation = new CollectingTransformation();
+        Style style = createLineStyle();
+        style.featureTypeStyles().get(0).setTransformation(transformation);
+        MapContext mapContext = new DefaultMapContext(DefaultGeographicCRS.WGS84);
+        mapContext.addLayer(source, style);
+
+        StreamingRenderer sr = new StreamingRenderer();
+        sr.setContext(mapContext);
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_4BYTE_ABGR);
+        ReferencedEnvelope bounds = source.getBounds();
+        bounds.expandBy(1, 1);
+        sr.paint(image.createGraphics(), new Rectangle(200, 200), bounds);
+
+        // the transformation got distinct features, each one with its own geometry
+        int count = source.getFeatures().size();
+        assertEquals(count, transformation.collected.size());
+        Map<SimpleFeature, Boolean> instances = new IdentityHashMap<SimpleFeature, Boolean>();
+        Set<String> geometries = new HashSet<String>();
+        for (SimpleFeature f : transformation.collected) {
+            instances.put(f, Boolean.TRUE);
+            geometries.add(((Geometry) f.getDefaultGeometry()).toText());
+        }
+        assertEquals(count, instances.size());
+        assertEquals(count, geometries.size());
+    }
 }
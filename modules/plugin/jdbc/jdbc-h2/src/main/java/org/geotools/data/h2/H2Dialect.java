@@ -28,9 +28,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
+import org.geotools.data.join.SpatialJoin;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.Geometries;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.SQLDialect;
@@ -69,6 +74,11 @@ public class H2Dialect extends SQLDialect {
     
     public static String H2_SPATIAL_INDEX = "org.geotools.data.h2.spatialIndex";
     
+    /**
+     * Whether GeoDB provides ST_SimplifyPreserveTopology, null until a connection is checked
+     */
+    volatile Boolean preserveTopology;
+    
     public H2Dialect( JDBCDataStore dataStore ) {
         super( dataStore );
     }
@@ -82,6 +92,16 @@ public class H2Dialect extends SQLDialect {
     public void initializeConnection(Connection cx) throws SQLException {
         //spatialize the database
         GeoDB.InitGeoDB(cx);
+        
+        if (preserveTopology == null) {
+            ResultSet functions = cx.getMetaData().getProcedures(null, null,
+                    "ST_SIMPLIFYPRESERVETOPOLOGY");
+            try {
+                preserveTopology = functions.next();
+            } finally {
+                dataStore.closeSafe(functions);
+            }
+        }
     }
     
     @Override
@@ -322,6 +342,56 @@ public class H2Dialect extends SQLDialect {
         sql.append(")");
     }
 
+    /**
+     * Uses the topology preserving simplification, ST_Simplify collapses the polygons smaller
+     * than the distance into empty geometries. Falls back on ST_Simplify with the GeoDB
+     * versions not providing it.
+     */
+    @Override
+    public void encodeGeometryColumnSimplified(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        encodeSimplify(gatt, sql, distance);
+    }
+
+    @Override
+    public void encodeGeometryColumnGeneralized(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        encodeSimplify(gatt, sql, distance);
+    }
+
+    void encodeSimplify(GeometryDescriptor gatt, StringBuffer sql, Double distance) {
+        sql.append(Boolean.FALSE.equals(preserveTopology) ? "ST_Simplify("
+                : "ST_SimplifyPreserveTopology(");
+        encodeColumnName(gatt.getLocalName(), sql);
+        sql.append(", ").append(distance).append(")");
+    }
+
+    @Override
+    protected void addSupportedHints(Set<Hints.Key> hints) {
+        hints.add(Hints.GEOMETRY_SIMPLIFICATION);
+        hints.add(Hints.GEOMETRY_GENERALIZATION);
+    }
+
+    @Override
+    public boolean encodeSpatialJoinPredicate(SpatialJoin.Predicate predicate, String left,
+            String right, double distance, StringBuffer sql) {
+        switch (predicate) {
+        case INTERSECTS:
+            sql.append("ST_Intersects(").append(left).append(", ").append(right).append(")");
+            break;
+        case WITHIN:
+            sql.append("ST_Within(").append(left).append(", ").append(right).append(")");
+            break;
+        case DWITHIN:
+            sql.append("ST_Distance(").append(left).append(", ").append(right).append(") <= ");
+            sql.append(distance);
+            break;
+        default:
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public Envelope decodeGeometryEnvelope(ResultSet rs, int column,
             Connection cx) throws SQLException, IOException {
@@ -417,6 +487,32 @@ public class H2Dialect extends SQLDialect {
         }
     }
     
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName,
+            int count, Connection cx) throws SQLException {
+
+        Statement st = cx.createStatement();
+        try {
+            String sql = "SELECT NEXTVAL('" + sequenceName + "') FROM SYSTEM_RANGE(1, " + count
+                    + ")";
+            dataStore.getLogger().fine( sql );
+            ResultSet rs = st.executeQuery( sql );
+            try {
+                List<Object> values = new ArrayList<Object>(count);
+                while ( rs.next() ) {
+                    values.add( rs.getInt( 1 ) );
+                }
+                return values;
+            }
+            finally {
+                dataStore.closeSafe( rs );
+            }
+        }
+        finally {
+            dataStore.closeSafe( st );
+        }
+    }
+
     @Override
     public Object getNextAutoGeneratedValue(String schemaName,
             String tableName, String columnName, Connection cx)
@@ -21,9 +21,13 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.data.join.SpatialJoin;
+import org.geotools.factory.Hints;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.JDBCDataStore;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -133,6 +137,12 @@ public class H2DialectBasic extends BasicSQLDialect {
         return delegate.getNextSequenceValue(schemaName, sequenceName, cx);
     }
     
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName,
+            int count, Connection cx) throws SQLException {
+        return delegate.getNextSequenceValues(schemaName, sequenceName, count, cx);
+    }
+
     @Override
     public boolean lookupGeneratedValuesPostInsert() {
         return delegate.lookupGeneratedValuesPostInsert();
@@ -156,6 +166,29 @@ public class H2DialectBasic extends BasicSQLDialect {
             StringBuffer sql) {
         delegate.encodeGeometryEnvelope(tableName, geometryColumn, sql);
     }
+
+    @Override
+    public void encodeGeometryColumnSimplified(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        delegate.encodeGeometryColumnSimplified(gatt, srid, sql, distance);
+    }
+
+    @Override
+    public void encodeGeometryColumnGeneralized(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        delegate.encodeGeometryColumnGeneralized(gatt, srid, sql, distance);
+    }
+
+    @Override
+    protected void addSupportedHints(Set<Hints.Key> hints) {
+        delegate.addSupportedHints(hints);
+    }
+
+    @Override
+    public boolean encodeSpatialJoinPredicate(SpatialJoin.Predicate predicate, String left,
+            String right, double distance, StringBuffer sql) {
+        return delegate.encodeSpatialJoinPredicate(predicate, left, right, distance, sql);
+    }
     
     @Override
     public Envelope decodeGeometryEnvelope(ResultSet rs, int column,
@@ -22,11 +22,16 @@ import java.text.NumberFormat;
 import java.util.Collections;
 import java.util.List;
 
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
 import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 
 /**
@@ -171,6 +176,29 @@ public class Coordinates {
             return c;
         }
 
+        if (sequence instanceof PackedCoordinateSequence
+                && (factory instanceof LiteCoordinateSequenceFactory || factory instanceof PackedCoordinateSequenceFactory)) {
+            // copy the ordinates over without building Coordinate objects
+            final int D = sequence.getDimension();
+            double[] ordinates = new double[(toIndex - fromIndex) * D];
+            if (sequence instanceof LiteCoordinateSequence) {
+                System.arraycopy(((LiteCoordinateSequence) sequence).getArray(), fromIndex * D,
+                        ordinates, 0, ordinates.length);
+            } else {
+                int offset = 0;
+                for (int i = fromIndex; i < toIndex; i++) {
+                    for (int j = 0; j < D; j++) {
+                        ordinates[offset++] = sequence.getOrdinate(i, j);
+                    }
+                }
+            }
+            if (factory instanceof LiteCoordinateSequenceFactory) {
+                return ((LiteCoordinateSequenceFactory) factory).create(ordinates, D);
+            } else {
+                return ((PackedCoordinateSequenceFactory) factory).create(ordinates, D);
+            }
+        }
+
         Coordinate[] array = new Coordinate[toIndex - fromIndex];
         int index = 0;
         for(int i = fromIndex; i < toIndex; i++, index++) {
@@ -118,7 +118,7 @@ public class GeometryConverter {
         final int SRID = asInteger( data[1], SDO.SRID_NULL );
         final double POINT[] = asDoubleArray( (STRUCT) data[2], Double.NaN );
         final int ELEMINFO[] = asIntArray( (ARRAY) data[3], 0 );
-        final double ORDINATES[] = asDoubleArray( (ARRAY) data[4], Double.NaN );;
+        final double ORDINATES[] = asOrdinateArray( (ARRAY) data[4], GTYPE );
                 
         return SDO.create( geometryFactory,
                            GTYPE,
@@ -447,6 +447,22 @@ public class GeometryConverter {
         }
         return array;
     }
+    /**
+     * Presents SDO_ORDINATE_ARRAY as a double[].
+     * <p>
+     * Only z and measures can be <code>NULL</code>, for 2D geometries without measures the
+     * whole array is fetched in a single call rather than going thru a NUMBER per ordinate.
+     * Otherwise <code>NULL</code> ordinates are represented as <code>Double.NaN</code>.</p>
+     */
+    protected double[] asOrdinateArray( ARRAY array, final int GTYPE )
+        throws SQLException
+    {
+        if( array == null ) return null;
+        if( SDO.D( GTYPE ) == 2 && SDO.L( GTYPE ) == 0 ) return array.getDoubleArray();
+        
+        return asDoubleArray( array.getOracleArray(), Double.NaN );
+    }
+    
     protected int[] asIntArray( ARRAY array, int DEFAULT )
         throws SQLException
     {
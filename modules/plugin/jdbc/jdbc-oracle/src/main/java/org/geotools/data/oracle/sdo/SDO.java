@@ -44,6 +44,8 @@ import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 
 /**
@@ -953,16 +955,15 @@ public final class SDO {
                 list.add(ordinateArray(access, i));
             }
         } else {
+            // read the ordinates directly, packed sequences would build a Coordinate each time
+            final boolean hasZ = sequence.getDimension() > 2;
             for (int i = 0; i < sequence.size(); i++) {
-                list.add(ordinateArray(sequence.getCoordinate(i)));
+                list.add(new double[] { sequence.getX(i), sequence.getY(i),
+                        hasZ ? sequence.getOrdinate(i, CoordinateSequence.Z) : Double.NaN });
             }
         }
     }
 
-    private static double[] ordinateArray(Coordinate coord) {
-        return new double[] { coord.x, coord.y, coord.z };
-    }
-
     private static double[] ordinateArray(CoordinateAccess access, int index) {
         final int D = access.getDimension();
         final int L = access.getNumAttributes();
@@ -2078,9 +2079,14 @@ public final class SDO {
                 + "an ordinate array of length " + ordinates.length);
         }
         
-        // special optimization for faster 2D rendering
-        if(D == 2 && L == 0 && f instanceof LiteCoordinateSequenceFactory) {
-            return ((LiteCoordinateSequenceFactory) f).create(ordinates);
+        // without measures the ordinates are already packed, wrap them without copying
+        if (L == 0) {
+            if (f instanceof LiteCoordinateSequenceFactory) {
+                return ((LiteCoordinateSequenceFactory) f).create(ordinates, D);
+            } else if (f instanceof PackedCoordinateSequenceFactory
+                    && ((PackedCoordinateSequenceFactory) f).getType() == PackedCoordinateSequenceFactory.DOUBLE) {
+                return new PackedCoordinateSequence.Double(ordinates, D);
+            }
         }
 
         final int LENGTH = ordinates.length / LEN;
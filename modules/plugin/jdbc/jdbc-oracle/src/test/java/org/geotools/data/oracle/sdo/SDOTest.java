@@ -0,0 +1,110 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.oracle.sdo;
+
+import junit.framework.TestCase;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Decodes SDO_GEOMETRY contents as captured from the SDO_GTYPE, SDO_SRID, SDO_POINT,
+ * SDO_ELEM_INFO and SDO_ORDINATES attributes of the STRUCTs returned by Oracle, which allows
+ * testing the decoding without a database.
+ *
+ * @source $URL$
+ */
+public class SDOTest extends TestCase {
+
+    GeometryFactory packed = new GeometryFactory(new PackedCoordinateSequenceFactory());
+
+    GeometryFactory lite = new GeometryFactory(new LiteCoordinateSequenceFactory());
+
+    public void testPoint() {
+        // SDO_GEOMETRY(2001, 4326, SDO_POINT_TYPE(10, 20, NULL), NULL, NULL)
+        Point p = (Point) SDO.create(packed, 2001, 4326, new double[] { 10, 20, Double.NaN },
+                null, null);
+        assertEquals(new Coordinate(10, 20), p.getCoordinate());
+        assertEquals(4326, p.getSRID());
+    }
+
+    public void testLinePacked() {
+        // SDO_GEOMETRY(2002, NULL, NULL, SDO_ELEM_INFO_ARRAY(1, 2, 1),
+        //   SDO_ORDINATE_ARRAY(0, 0, 10, 10, 20, 5))
+        double[] ordinates = new double[] { 0, 0, 10, 10, 20, 5 };
+        LineString line = (LineString) SDO.create(packed, 2002, SDO.SRID_NULL, null,
+                new int[] { 1, 2, 1 }, ordinates);
+        assertTrue(line.getCoordinateSequence() instanceof PackedCoordinateSequence.Double);
+        assertEquals(3, line.getNumPoints());
+        assertEquals(new Coordinate(20, 5), line.getCoordinateN(2));
+    }
+
+    public void testPolygonWithHoleLite() throws Exception {
+        // SDO_GEOMETRY(2003, NULL, NULL, SDO_ELEM_INFO_ARRAY(1, 1003, 1, 11, 2003, 1),
+        //   SDO_ORDINATE_ARRAY(0, 0, 10, 0, 10, 10, 0, 10, 0, 0, 2, 2, 2, 4, 4, 4, 4, 2, 2, 2))
+        double[] ordinates = new double[] { 0, 0, 10, 0, 10, 10, 0, 10, 0, 0, 2, 2, 2, 4, 4, 4,
+                4, 2, 2, 2 };
+        Polygon polygon = (Polygon) SDO.create(lite, 2003, SDO.SRID_NULL, null, new int[] { 1,
+                1003, 1, 11, 2003, 1 }, ordinates);
+        assertTrue(polygon.getExteriorRing().getCoordinateSequence() instanceof LiteCoordinateSequence);
+        assertTrue(polygon.getInteriorRingN(0).getCoordinateSequence() instanceof LiteCoordinateSequence);
+        Geometry expected = new WKTReader()
+                .read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))");
+        assertTrue(expected.equalsExact(polygon));
+    }
+
+    public void testMultiLine3DPacked() {
+        // SDO_GEOMETRY(3006, NULL, NULL, SDO_ELEM_INFO_ARRAY(1, 2, 1, 7, 2, 1),
+        //   SDO_ORDINATE_ARRAY(0, 0, 1, 1, 1, 2, 5, 5, 3, 6, 6, 4))
+        double[] ordinates = new double[] { 0, 0, 1, 1, 1, 2, 5, 5, 3, 6, 6, 4 };
+        MultiLineString lines = (MultiLineString) SDO.create(packed, 3006, SDO.SRID_NULL, null,
+                new int[] { 1, 2, 1, 7, 2, 1 }, ordinates);
+        assertEquals(2, lines.getNumGeometries());
+        LineString second = (LineString) lines.getGeometryN(1);
+        assertTrue(second.getCoordinateSequence() instanceof PackedCoordinateSequence.Double);
+        assertEquals(3, second.getCoordinateSequence().getDimension());
+        assertEquals(4d, second.getCoordinateN(1).z);
+    }
+
+    public void testRoundTrip() throws Exception {
+        String[] wkts = { "LINESTRING(0 0, 10 10, 20 5)",
+                "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))",
+                "MULTIPOINT(1 1, 2 2)", "MULTILINESTRING((0 0, 1 1), (2 2, 3 3))",
+                "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))" };
+        for (String wkt : wkts) {
+            for (GeometryFactory factory : new GeometryFactory[] { new GeometryFactory(), packed,
+                    lite }) {
+                Geometry expected = new WKTReader(factory).read(wkt);
+                int gtype = SDO.gType(expected);
+                Geometry g = SDO.create(factory, gtype, SDO.SRID_NULL, null, SDO
+                        .elemInfo(expected), SDO.ordinates(expected));
+                assertTrue(wkt, expected.equals(g));
+            }
+        }
+    }
+}
@@ -16,19 +16,31 @@
  */
 package org.geotools.data.postgis;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
 import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
+import org.geotools.data.jdbc.datasource.UnWrapper;
+import org.geotools.data.join.SpatialJoin;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.ColumnMetadata;
@@ -39,6 +51,8 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
@@ -52,6 +66,8 @@ import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBConstants;
+import com.vividsolutions.jts.io.WKBWriter;
 import com.vividsolutions.jts.io.WKTReader;
 
 public class PostGISDialect extends BasicSQLDialect {
@@ -92,6 +108,16 @@ public class PostGISDialect extends BasicSQLDialect {
     };
     
     static final Version V_1_5_0 = new Version("1.5.0");
+    
+    /**
+     * Flag set on the geometry type of EWKB geometries carrying a srid
+     */
+    static final int EWKB_SRID_FLAG = 0x20000000;
+    
+    /**
+     * Amount of data sent to the server with each COPY message
+     */
+    static final int COPY_BUFFER_SIZE = 65536;
 
     public PostGISDialect(JDBCDataStore dataStore) {
         super(dataStore);
@@ -141,52 +167,113 @@ public class PostGISDialect extends BasicSQLDialect {
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor,
             ResultSet rs, String column, GeometryFactory factory, Connection cx)
             throws IOException, SQLException {
-        WKBAttributeIO reader = wkbReader.get();
-        if(reader == null) {
-            reader = new WKBAttributeIO(factory);
-            wkbReader.set(reader);
-        }
-        
-        return (Geometry) reader.read(rs, column);
+        return decodeGeometryValue(descriptor, rs, rs.findColumn(column), factory, cx, null);
     }
     
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor,
             ResultSet rs, int column, GeometryFactory factory, Connection cx)
             throws IOException, SQLException {
+        return decodeGeometryValue(descriptor, rs, column, factory, cx, null);
+    }
+    
+    @Override
+    public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs,
+            int column, GeometryFactory factory, Connection cx, Hints hints)
+            throws IOException, SQLException {
+        // the reader keeps a decoding buffer around, but the factory can change
+        // with each query (e.g., the renderer asks for a lite coordinate sequence factory)
         WKBAttributeIO reader = wkbReader.get();
         if(reader == null) {
             reader = new WKBAttributeIO(factory);
             wkbReader.set(reader);
         }
         
-        return (Geometry) reader.read(rs, column);
+        boolean force2D = hints != null && Boolean.TRUE.equals(hints.get(Hints.FEATURE_2D));
+        return (Geometry) reader.read(rs, column, factory, force2D);
     }
 
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, int srid,
             StringBuffer sql) {
-        
+        encodeGeometryColumn(gatt, null, 0, sql);
+    }
+
+    /**
+     * Uses the topology preserving simplification, ST_SnapToGrid and ST_Simplify turn the
+     * features smaller than the distance into NULL or empty geometries, which would then
+     * disappear from the map instead of being rendered as a pixel
+     */
+    @Override
+    public void encodeGeometryColumnSimplified(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        encodeGeometryColumn(gatt, "ST_SimplifyPreserveTopology", distance, sql);
+    }
+
+    @Override
+    public void encodeGeometryColumnGeneralized(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        encodeGeometryColumn(gatt, "ST_SimplifyPreserveTopology", distance, sql);
+    }
+
+    /**
+     * Encodes a geometry column, reduced by the specified function if not null. The geography
+     * columns are never reduced, the functions work on planar coordinates only.
+     */
+    void encodeGeometryColumn(GeometryDescriptor gatt, String reduceFunction, double distance,
+            StringBuffer sql) {
         boolean geography = "geography".equals(gatt.getUserData().get(JDBCDataStore.JDBC_NATIVE_TYPENAME));
         
         sql.append("encode(");
         sql.append("ST_AsBinary(");
         if (!geography) {
+            if (reduceFunction != null) {
+                sql.append(reduceFunction).append("(");
+            }
             sql.append("ST_Force_2D(");
         }
         
         encodeColumnName(gatt.getLocalName(), sql);
         if (!geography) {
             sql.append(")");
+            if (reduceFunction != null) {
+                sql.append(", ").append(distance).append(")");
+            }
         }
         sql.append("),'base64')");
     }
 
+    @Override
+    protected void addSupportedHints(Set<Hints.Key> hints) {
+        hints.add(Hints.GEOMETRY_SIMPLIFICATION);
+        hints.add(Hints.GEOMETRY_GENERALIZATION);
+    }
+
     @Override
     public void encodeGeometryEnvelope(String tableName, String geometryColumn,
             StringBuffer sql) {
         sql.append("ST_AsText(ST_Force_2D(Envelope(");
         sql.append("ST_Extent(\"" + geometryColumn + "\"::geometry))))");
     }
+
+    @Override
+    public boolean encodeSpatialJoinPredicate(SpatialJoin.Predicate predicate, String left,
+            String right, double distance, StringBuffer sql) {
+        switch (predicate) {
+        case INTERSECTS:
+            sql.append("ST_Intersects(").append(left).append(", ").append(right).append(")");
+            break;
+        case WITHIN:
+            sql.append("ST_Within(").append(left).append(", ").append(right).append(")");
+            break;
+        case DWITHIN:
+            sql.append("ST_DWithin(").append(left).append(", ").append(right).append(", ");
+            sql.append(distance).append(")");
+            break;
+        default:
+            return false;
+        }
+        return true;
+    }
     
     @Override
     public List<ReferencedEnvelope> getOptimizedBounds(String schema, SimpleFeatureType featureType,
@@ -496,6 +583,195 @@ public class PostGISDialect extends BasicSQLDialect {
         return null;
     }
     
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        Statement st = cx.createStatement();
+        try {
+            String sql = "SELECT nextval('" + sequenceName + "') FROM generate_series(1, "
+                    + count + ")";
+
+            dataStore.getLogger().fine(sql);
+            ResultSet rs = st.executeQuery(sql);
+            try {
+                List<Object> values = new ArrayList<Object>(count);
+                while (rs.next()) {
+                    values.add(rs.getLong(1));
+                }
+                return values;
+            } finally {
+                dataStore.closeSafe(rs);
+            }
+        } finally {
+            dataStore.closeSafe(st);
+        }
+    }
+
+    @Override
+    public boolean isBulkLoadSupported() {
+        return true;
+    }
+
+    /**
+     * Loads the rows with a COPY ... FROM STDIN command in text format, geometries being
+     * encoded as hex EWKB. The connection must give access to the native PostgreSQL
+     * connection.
+     */
+    @Override
+    public long bulkLoad(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids, Iterator<Object[]> rows, Connection cx) throws SQLException,
+            IOException {
+        StringBuffer sql = new StringBuffer("COPY ");
+        String schema = dataStore.getDatabaseSchema();
+        if (schema != null && !"".equals(schema)) {
+            encodeSchemaName(schema, sql);
+            sql.append(".");
+        }
+        encodeTableName(featureType.getTypeName(), sql);
+        sql.append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            encodeColumnName(columns[i], sql);
+        }
+        sql.append(") FROM STDIN");
+        dataStore.getLogger().fine(sql.toString());
+
+        CopyIn copy = unwrapConnection(cx).getCopyAPI().copyIn(sql.toString());
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE);
+            Writer writer = new OutputStreamWriter(buffer, "UTF-8");
+            StringBuffer row = new StringBuffer();
+            while (rows.hasNext()) {
+                Object[] values = rows.next();
+                row.setLength(0);
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        row.append('\t');
+                    }
+                    encodeCopyValue(values[i], srids[i], row);
+                }
+                row.append('\n');
+                writer.append(row);
+
+                writer.flush();
+                if (buffer.size() >= COPY_BUFFER_SIZE) {
+                    copy.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                    buffer.reset();
+                }
+            }
+            writer.flush();
+            if (buffer.size() > 0) {
+                copy.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+            }
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Encodes a value in the COPY text format
+     */
+    void encodeCopyValue(Object value, int srid, StringBuffer row) {
+        if (value == null) {
+            row.append("\\N");
+        } else if (value instanceof Geometry) {
+            Geometry g = (Geometry) value;
+            if (g instanceof LinearRing) {
+                //postgis does not handle linear rings, convert to just a line string
+                g = g.getFactory().createLineString(((LinearRing) g).getCoordinateSequence());
+            }
+            row.append(WKBWriter.toHex(toEWKB(g, srid)));
+        } else if (value instanceof byte[]) {
+            // bytea escape format, with the backslash itself escaped for COPY
+            for (byte b : (byte[]) value) {
+                String octal = Integer.toOctalString(b & 0xff);
+                row.append("\\\\");
+                for (int i = octal.length(); i < 3; i++) {
+                    row.append('0');
+                }
+                row.append(octal);
+            }
+        } else {
+            String text;
+            if (value instanceof java.util.Date && !(value instanceof java.sql.Date)
+                    && !(value instanceof java.sql.Time) && !(value instanceof Timestamp)) {
+                text = new Timestamp(((java.util.Date) value).getTime()).toString();
+            } else {
+                text = value.toString();
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                case '\\':
+                    row.append("\\\\");
+                    break;
+                case '\t':
+                    row.append("\\t");
+                    break;
+                case '\n':
+                    row.append("\\n");
+                    break;
+                case '\r':
+                    row.append("\\r");
+                    break;
+                default:
+                    row.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes a geometry as EWKB, that is WKB with the srid following the geometry type
+     */
+    static byte[] toEWKB(Geometry g, int srid) {
+        byte[] wkb = new WKBWriter().write(g);
+        if (srid <= 0) {
+            return wkb;
+        }
+
+        byte[] ewkb = new byte[wkb.length + 4];
+        ByteBuffer buffer = ByteBuffer.wrap(ewkb);
+        buffer.order(wkb[0] == WKBConstants.wkbNDR ? ByteOrder.LITTLE_ENDIAN
+                : ByteOrder.BIG_ENDIAN);
+        ByteBuffer source = ByteBuffer.wrap(wkb).order(buffer.order());
+        buffer.put(wkb[0]);
+        buffer.putInt(source.getInt(1) | EWKB_SRID_FLAG);
+        buffer.putInt(srid);
+        buffer.put(wkb, 5, wkb.length - 5);
+        return ewkb;
+    }
+
+    /**
+     * Obtains the native PostgreSQL connection
+     */
+    PGConnection unwrapConnection(Connection cx) throws SQLException {
+        if (cx instanceof PGConnection) {
+            return (PGConnection) cx;
+        }
+
+        try {
+            UnWrapper uw = DataSourceFinder.getUnWrapper(cx);
+            if (uw != null) {
+                Connection uwcx = uw.unwrap(cx);
+                if (uwcx instanceof PGConnection) {
+                    return (PGConnection) uwcx;
+                }
+            }
+        } catch (IOException e) {
+            throw (SQLException) new SQLException(
+                    "Could not obtain native PostgreSQL connection.").initCause(e);
+        }
+
+        throw new SQLException("Could not obtain native PostgreSQL connection for "
+                + cx.getClass());
+    }
+
     @Override
     public void registerClassToSqlMappings(Map<Class<?>, Integer> mappings) {
         super.registerClassToSqlMappings(mappings);
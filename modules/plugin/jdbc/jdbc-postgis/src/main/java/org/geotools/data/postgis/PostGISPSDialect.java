@@ -22,8 +22,13 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.geotools.data.join.SpatialJoin;
+import org.geotools.factory.Hints;
 import org.geotools.jdbc.ColumnMetadata;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.PreparedFilterToSQL;
@@ -65,6 +70,12 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
         return delegate.decodeGeometryValue(descriptor, rs, column, factory, cx);
     }
 
+    @Override
+    public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs, int column,
+            GeometryFactory factory, Connection cx, Hints hints) throws IOException, SQLException {
+        return delegate.decodeGeometryValue(descriptor, rs, column, factory, cx, hints);
+    }
+
 
     public Geometry decodeGeometryValue(GeometryDescriptor descriptor,
             ResultSet rs, String column, GeometryFactory factory, Connection cx)
@@ -79,12 +90,35 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
         delegate.encodeGeometryColumn(gatt, srid, sql);
     }
 
+    @Override
+    public void encodeGeometryColumnSimplified(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        delegate.encodeGeometryColumnSimplified(gatt, srid, sql, distance);
+    }
+
+    @Override
+    public void encodeGeometryColumnGeneralized(GeometryDescriptor gatt, int srid,
+            StringBuffer sql, Double distance) {
+        delegate.encodeGeometryColumnGeneralized(gatt, srid, sql, distance);
+    }
+
+    @Override
+    protected void addSupportedHints(Set<Hints.Key> hints) {
+        delegate.addSupportedHints(hints);
+    }
+
 
     public void encodeGeometryEnvelope(String tableName, String geometryColumn,
             StringBuffer sql) {
         delegate.encodeGeometryEnvelope(tableName, geometryColumn, sql);
     }
 
+    @Override
+    public boolean encodeSpatialJoinPredicate(SpatialJoin.Predicate predicate, String left,
+            String right, double distance, StringBuffer sql) {
+        return delegate.encodeSpatialJoinPredicate(predicate, left, right, distance, sql);
+    }
+
 
     public void encodePrimaryKey(String column, StringBuffer sql) {
         delegate.encodePrimaryKey(column, sql);
@@ -202,6 +236,24 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
         }
     }
 
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        return delegate.getNextSequenceValues(schemaName, sequenceName, count, cx);
+    }
+
+    @Override
+    public boolean isBulkLoadSupported() {
+        return delegate.isBulkLoadSupported();
+    }
+
+    @Override
+    public long bulkLoad(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids, Iterator<Object[]> rows, Connection cx) throws SQLException,
+            IOException {
+        return delegate.bulkLoad(featureType, columns, bindings, srids, rows, cx);
+    }
+
     @Override
     public PreparedFilterToSQL createPreparedFilterToSQL() {
         PostgisPSFilterToSql fts = new PostgisPSFilterToSql(this);
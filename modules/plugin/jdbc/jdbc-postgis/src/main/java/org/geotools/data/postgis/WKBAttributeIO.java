@@ -27,8 +27,6 @@ import org.geotools.data.DataSourceException;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.io.InStream;
-import com.vividsolutions.jts.io.WKBReader;
 import com.vividsolutions.jts.io.WKBWriter;
 
 
@@ -41,37 +39,34 @@ import com.vividsolutions.jts.io.WKBWriter;
  * @since 2.4.1
  */
 public class WKBAttributeIO {
-    WKBReader wkbr;
-    ByteArrayInStream inStream = new ByteArrayInStream();
+    GeometryFactory gf;
+    WKBDecoder decoder = new WKBDecoder();
 
     public WKBAttributeIO() {
-        wkbr = new WKBReader();
+        this(new GeometryFactory());
     }
     
     public WKBAttributeIO(GeometryFactory gf) {
-        wkbr = new WKBReader(gf);
+        this.gf = gf;
     }
 
     /**
-     * This method will convert a Well Known Binary representation to a
+     * This method will convert a base64 encoded Well Known Binary representation to a
      * JTS  Geometry object.
      *
-     * @param wkb te wkb encoded byte array
+     * @param wkb the base64 encoded wkb bytes
      *
      * @return a JTS Geometry object that is equivalent to the WTB
      *         representation passed in by param wkb
      *
-     * @throws IOException if more than one geometry object was found in  the
-     *         WTB representation, or if the parser could not parse the WKB
-     *         representation.
+     * @throws IOException if the parser could not parse the WKB representation.
      */
-    private Geometry wkb2Geometry(byte[] wkbBytes)
+    private Geometry wkb2Geometry(byte[] wkbBytes, GeometryFactory factory, boolean force2D)
         throws IOException {
         if (wkbBytes == null)  //DJB: null value from database --> null geometry (the same behavior as WKT).  NOTE: sending back a GEOMETRYCOLLECTION(EMPTY) is also a possibility, but this is not the same as NULL
             return null;
         try {
-            inStream.setBytes(wkbBytes);
-            return wkbr.read(inStream);
+            return decoder.decodeBase64(wkbBytes, factory, force2D);
         } catch (Exception e) {
             throw new DataSourceException("An exception occurred while parsing WKB data", e);
         }
@@ -86,7 +81,7 @@ public class WKBAttributeIO {
             byte bytes[] = rs.getBytes(columnName);
             if (bytes == null) // ie. its a null column -> return a null geometry!
                 return null;
-            return wkb2Geometry(Base64.decode(bytes));
+            return wkb2Geometry(bytes, gf, false);
         } catch (SQLException e) {
             throw new DataSourceException("SQL exception occurred while reading the geometry.", e);
         }
@@ -97,11 +92,23 @@ public class WKBAttributeIO {
      *      int)
      */
     public Object read(ResultSet rs, int columnIndex) throws IOException {
+        return read(rs, columnIndex, gf, false);
+    }
+    
+    /**
+     * Reads a base64 encoded geometry with the specified factory, keeping only the X and Y
+     * ordinates if <code>force2D</code> is set. The driver bytes are decoded directly, without
+     * intermediate copies.
+     * 
+     * @since 2.8
+     */
+    public Object read(ResultSet rs, int columnIndex, GeometryFactory factory, boolean force2D)
+            throws IOException {
         try {
             byte bytes[] = rs.getBytes(columnIndex);
             if (bytes == null) // ie. its a null column -> return a null geometry!
                 return null;
-            return wkb2Geometry(Base64.decode(bytes));
+            return wkb2Geometry(bytes, factory, force2D);
         } catch (SQLException e) {
             throw new DataSourceException("SQL exception occurred while reading the geometry.", e);
         }
@@ -151,29 +158,4 @@ public class WKBAttributeIO {
 
         return wkbBytes;
       }
-    
-    /**
-     * Accelerates data loading compared to the plain InStream shipped along with JTS
-     * @author Andrea Aime - TOPP
-     *
-     */
-    private static class ByteArrayInStream implements InStream {
-        
-        byte[] buffer;
-        int position;
-        
-        public void setBytes(final byte[] buffer) {
-            this.buffer = buffer;
-            this.position = 0;
-        }
-        
-
-        public void read(final byte[] buf) throws IOException {
-            final int size = buf.length;
-            System.arraycopy(buffer, position, buf, 0, size);
-            position += size;
-        }
-        
-    }
 }
-
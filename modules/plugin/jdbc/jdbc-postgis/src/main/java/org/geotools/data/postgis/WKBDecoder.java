@@ -0,0 +1,345 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKBConstants;
+
+/**
+ * Decodes WKB and EWKB geometries, either binary or base64 encoded, without the intermediate
+ * copies done by the JTS {@link com.vividsolutions.jts.io.WKBReader}.
+ * <p>
+ * The base64 text is decoded in a buffer reused from one geometry to the next, and the
+ * coordinates are read from it straight into the coordinate sequences. When the geometry
+ * factory uses a {@link LiteCoordinateSequenceFactory} the packed coordinate arrays are wrapped
+ * in {@link LiteCoordinateSequence} objects without further copies. The Z ordinate is kept only
+ * if the geometry has one and a 2D result has not been requested, the M ordinate is always
+ * skipped.
+ * </p>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ *
+ * @source $URL$
+ */
+class WKBDecoder {
+
+    static final int EWKB_Z_FLAG = 0x80000000;
+
+    static final int EWKB_M_FLAG = 0x40000000;
+
+    static final int EWKB_SRID_FLAG = 0x20000000;
+
+    static final byte[] BASE64_DECODABET = new byte[128];
+    static {
+        Arrays.fill(BASE64_DECODABET, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_DECODABET[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * The decoded WKB, reused across geometries
+     */
+    byte[] buffer = new byte[1024];
+
+    /**
+     * The WKB being parsed
+     */
+    byte[] wkb;
+
+    int length;
+
+    int position;
+
+    boolean littleEndian;
+
+    GeometryFactory factory;
+
+    CoordinateSequenceFactory csFactory;
+
+    boolean force2D;
+
+    /**
+     * Decodes a base64 encoded WKB geometry
+     *
+     * @param base64 the base64 text, as ASCII bytes, may contain white space
+     * @param factory the factory used to build the geometry
+     * @param force2D whether only the X and Y ordinates should be kept
+     */
+    Geometry decodeBase64(byte[] base64, GeometryFactory factory, boolean force2D)
+            throws IOException {
+        if (base64 == null) {
+            return null;
+        }
+        int needed = base64.length * 3 / 4;
+        if (buffer.length < needed) {
+            buffer = new byte[Math.max(needed, buffer.length * 2)];
+        }
+
+        int size = 0;
+        int quantum = 0;
+        int count = 0;
+        for (int i = 0; i < base64.length; i++) {
+            int c = base64[i];
+            if (c == '=') {
+                break;
+            }
+            int value = c >= 0 ? BASE64_DECODABET[c] : -1;
+            if (value < 0) {
+                // line breaks and other white space
+                continue;
+            }
+            quantum = (quantum << 6) | value;
+            if (++count == 4) {
+                buffer[size++] = (byte) (quantum >> 16);
+                buffer[size++] = (byte) (quantum >> 8);
+                buffer[size++] = (byte) quantum;
+                quantum = 0;
+                count = 0;
+            }
+        }
+        // trailing bytes, before the padding
+        if (count == 2) {
+            buffer[size++] = (byte) (quantum >> 4);
+        } else if (count == 3) {
+            buffer[size++] = (byte) (quantum >> 10);
+            buffer[size++] = (byte) (quantum >> 2);
+        }
+
+        return decode(buffer, size, factory, force2D);
+    }
+
+    /**
+     * Decodes a WKB geometry
+     *
+     * @param wkb the array holding the geometry, starting at its first element
+     * @param length the number of valid bytes in the array
+     */
+    Geometry decode(byte[] wkb, int length, GeometryFactory factory, boolean force2D)
+            throws IOException {
+        this.wkb = wkb;
+        this.length = length;
+        this.position = 0;
+        this.factory = factory;
+        this.csFactory = factory.getCoordinateSequenceFactory();
+        this.force2D = force2D;
+        try {
+            return readGeometry();
+        } finally {
+            this.wkb = null;
+            this.factory = null;
+            this.csFactory = null;
+        }
+    }
+
+    Geometry readGeometry() throws IOException {
+        littleEndian = readByte() == WKBConstants.wkbNDR;
+        int typeInt = readInt();
+
+        boolean hasZ = (typeInt & EWKB_Z_FLAG) != 0;
+        boolean hasM = (typeInt & EWKB_M_FLAG) != 0;
+        int srid = 0;
+        if ((typeInt & EWKB_SRID_FLAG) != 0) {
+            srid = readInt();
+        }
+        int type = typeInt & 0xffff;
+        if (type >= 1000) {
+            // ISO WKB, 1000 for Z, 2000 for M, 3000 for both
+            int dims = type / 1000;
+            hasZ |= dims == 1 || dims == 3;
+            hasM |= dims == 2 || dims == 3;
+            type = type % 1000;
+        }
+        int inputDimension = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+        int outputDimension = hasZ && !force2D ? 3 : 2;
+
+        Geometry geometry;
+        switch (type) {
+        case WKBConstants.wkbPoint:
+            geometry = readPoint(inputDimension, outputDimension);
+            break;
+        case WKBConstants.wkbLineString:
+            geometry = factory.createLineString(readCoordinates(inputDimension,
+                    outputDimension));
+            break;
+        case WKBConstants.wkbPolygon:
+            geometry = readPolygon(inputDimension, outputDimension);
+            break;
+        case WKBConstants.wkbMultiPoint:
+            Point[] points = new Point[readInt()];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (Point) readMember(Point.class);
+            }
+            geometry = factory.createMultiPoint(points);
+            break;
+        case WKBConstants.wkbMultiLineString:
+            LineString[] lines = new LineString[readInt()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = (LineString) readMember(LineString.class);
+            }
+            geometry = factory.createMultiLineString(lines);
+            break;
+        case WKBConstants.wkbMultiPolygon:
+            Polygon[] polygons = new Polygon[readInt()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = (Polygon) readMember(Polygon.class);
+            }
+            geometry = factory.createMultiPolygon(polygons);
+            break;
+        case WKBConstants.wkbGeometryCollection:
+            Geometry[] geometries = new Geometry[readInt()];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = readGeometry();
+            }
+            geometry = factory.createGeometryCollection(geometries);
+            break;
+        default:
+            throw new IOException("Unknown WKB geometry type: " + type);
+        }
+        if (srid != 0) {
+            geometry.setSRID(srid);
+        }
+        return geometry;
+    }
+
+    Geometry readMember(Class<? extends Geometry> type) throws IOException {
+        Geometry member = readGeometry();
+        if (!type.isInstance(member)) {
+            throw new IOException("Invalid geometry type in collection, expected "
+                    + type.getSimpleName() + " but got " + member.getGeometryType());
+        }
+        return member;
+    }
+
+    Point readPoint(int inputDimension, int outputDimension) throws IOException {
+        CoordinateSequence cs = readCoordinates(1, inputDimension, outputDimension);
+        // empty points are encoded with NaN ordinates
+        if (Double.isNaN(cs.getOrdinate(0, 0)) && Double.isNaN(cs.getOrdinate(0, 1))) {
+            return factory.createPoint((CoordinateSequence) null);
+        }
+        return factory.createPoint(cs);
+    }
+
+    Polygon readPolygon(int inputDimension, int outputDimension) throws IOException {
+        int numRings = readInt();
+        if (numRings == 0) {
+            return factory.createPolygon(null, null);
+        }
+        LinearRing shell = factory.createLinearRing(readCoordinates(inputDimension,
+                outputDimension));
+        LinearRing[] holes = new LinearRing[numRings - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = factory.createLinearRing(readCoordinates(inputDimension, outputDimension));
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    CoordinateSequence readCoordinates(int inputDimension, int outputDimension)
+            throws IOException {
+        return readCoordinates(readInt(), inputDimension, outputDimension);
+    }
+
+    CoordinateSequence readCoordinates(int size, int inputDimension, int outputDimension)
+            throws IOException {
+        ensureAvailable(size * inputDimension * 8);
+        if (csFactory instanceof LiteCoordinateSequenceFactory) {
+            double[] ordinates = new double[size * outputDimension];
+            for (int i = 0, j = 0; i < size; i++) {
+                for (int d = 0; d < inputDimension; d++) {
+                    double value = readDouble();
+                    if (d < outputDimension) {
+                        ordinates[j++] = value;
+                    }
+                }
+            }
+            return new LiteCoordinateSequence(ordinates, outputDimension);
+        } else {
+            CoordinateSequence cs = csFactory.create(size, outputDimension);
+            for (int i = 0; i < size; i++) {
+                for (int d = 0; d < inputDimension; d++) {
+                    double value = readDouble();
+                    if (d < outputDimension) {
+                        cs.setOrdinate(i, d, value);
+                    }
+                }
+            }
+            return cs;
+        }
+    }
+
+    void ensureAvailable(int bytes) throws IOException {
+        if (bytes < 0 || position + bytes > length) {
+            throw new IOException("Unexpected end of WKB data at byte " + position
+                    + ", needed " + bytes + " more bytes");
+        }
+    }
+
+    byte readByte() throws IOException {
+        ensureAvailable(1);
+        return wkb[position++];
+    }
+
+    int readInt() throws IOException {
+        ensureAvailable(4);
+        byte[] b = wkb;
+        int p = position;
+        position += 4;
+        if (littleEndian) {
+            return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16
+                    | (b[p + 3] & 0xff) << 24;
+        } else {
+            return (b[p] & 0xff) << 24 | (b[p + 1] & 0xff) << 16 | (b[p + 2] & 0xff) << 8
+                    | (b[p + 3] & 0xff);
+        }
+    }
+
+    /**
+     * Reads a double, the caller must have checked the bytes are available
+     */
+    double readDouble() {
+        byte[] b = wkb;
+        int p = position;
+        position += 8;
+        long bits;
+        if (littleEndian) {
+            bits = (b[p] & 0xffL) | (b[p + 1] & 0xffL) << 8 | (b[p + 2] & 0xffL) << 16
+                    | (b[p + 3] & 0xffL) << 24 | (b[p + 4] & 0xffL) << 32
+                    | (b[p + 5] & 0xffL) << 40 | (b[p + 6] & 0xffL) << 48
+                    | (b[p + 7] & 0xffL) << 56;
+        } else {
+            bits = (b[p] & 0xffL) << 56 | (b[p + 1] & 0xffL) << 48 | (b[p + 2] & 0xffL) << 40
+                    | (b[p + 3] & 0xffL) << 32 | (b[p + 4] & 0xffL) << 24
+                    | (b[p + 5] & 0xffL) << 16 | (b[p + 6] & 0xffL) << 8 | (b[p + 7] & 0xffL);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+}
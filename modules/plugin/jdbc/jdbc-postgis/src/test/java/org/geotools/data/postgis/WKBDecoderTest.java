@@ -0,0 +1,122 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class WKBDecoderTest extends TestCase {
+
+    static final String[] WKT = { "POINT(1 2)", "LINESTRING(0 0, 10 10, 20 5)",
+            "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))",
+            "MULTIPOINT(1 1, 2 2)", "MULTILINESTRING((0 0, 1 1), (2 2, 3 3))",
+            "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+            "GEOMETRYCOLLECTION(POINT(1 1), LINESTRING(0 0, 1 1))" };
+
+    WKBDecoder decoder = new WKBDecoder();
+
+    GeometryFactory factory = new GeometryFactory();
+
+    public void testDecodeBothByteOrders() throws Exception {
+        WKTReader reader = new WKTReader();
+        for (String wkt : WKT) {
+            Geometry expected = reader.read(wkt);
+            for (int order : new int[] { ByteOrderValues.BIG_ENDIAN,
+                    ByteOrderValues.LITTLE_ENDIAN }) {
+                byte[] wkb = new WKBWriter(2, order).write(expected);
+                Geometry g = decoder.decode(wkb, wkb.length, factory, false);
+                assertTrue(wkt, expected.equalsExact(g));
+            }
+        }
+    }
+
+    public void testDecodeBase64() throws Exception {
+        Geometry expected = new WKTReader().read(WKT[2]);
+        byte[] wkb = new WKBWriter().write(expected);
+        // the default options break lines, as the postgres encode function does
+        byte[] base64 = Base64.encodeBytes(wkb).getBytes("ASCII");
+        assertTrue(expected.equalsExact(decoder.decodeBase64(base64, factory, false)));
+
+        // the buffer is reused with smaller geometries
+        expected = new WKTReader().read(WKT[0]);
+        base64 = Base64.encodeBytes(new WKBWriter().write(expected)).getBytes("ASCII");
+        assertTrue(expected.equalsExact(decoder.decodeBase64(base64, factory, false)));
+    }
+
+    public void testDecodeEWKB() throws Exception {
+        Geometry expected = new WKTReader().read(WKT[5]);
+        byte[] ewkb = PostGISDialect.toEWKB(expected, 4326);
+        Geometry g = decoder.decode(ewkb, ewkb.length, factory, false);
+        assertTrue(expected.equalsExact(g));
+        assertEquals(4326, g.getSRID());
+    }
+
+    public void testZ() throws Exception {
+        Geometry expected = new WKTReader().read("LINESTRING(0 0 1, 10 10 2)");
+        byte[] wkb = new WKBWriter(3).write(expected);
+
+        LineString line = (LineString) decoder.decode(wkb, wkb.length, factory, false);
+        assertEquals(3, line.getCoordinateSequence().getDimension());
+        assertEquals(2d, line.getCoordinateN(1).z);
+
+        line = (LineString) decoder.decode(wkb, wkb.length, factory, true);
+        assertTrue(Double.isNaN(line.getCoordinateN(1).z));
+        assertEquals(10d, line.getCoordinateN(1).y);
+    }
+
+    public void testLiteCoordinateSequence() throws Exception {
+        GeometryFactory lite = new GeometryFactory(new LiteCoordinateSequenceFactory());
+        Geometry expected = new WKTReader().read("LINESTRING(0 0 1, 10 10 2)");
+        byte[] wkb = new WKBWriter(3).write(expected);
+
+        LineString line = (LineString) decoder.decode(wkb, wkb.length, lite, true);
+        assertTrue(line.getCoordinateSequence() instanceof LiteCoordinateSequence);
+        assertEquals(2, line.getCoordinateSequence().getDimension());
+        assertTrue(expected.equals(line));
+    }
+
+    public void testEmptyPoint() throws Exception {
+        // empty points are encoded with NaN ordinates
+        byte[] wkb = new WKBWriter().write(factory.createPoint(new Coordinate(Double.NaN,
+                Double.NaN)));
+        Point p = (Point) decoder.decode(wkb, wkb.length, factory, false);
+        assertTrue(p.isEmpty());
+    }
+
+    public void testTruncated() throws Exception {
+        byte[] wkb = new WKBWriter().write(new WKTReader().read(WKT[1]));
+        try {
+            decoder.decode(wkb, wkb.length - 4, factory, false);
+            fail("Should have failed on truncated data");
+        } catch (IOException e) {
+            // fine
+        }
+    }
+}
@@ -30,9 +30,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 
 import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.Geometries;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.JDBCDataStore;
@@ -308,8 +312,37 @@ public class SpatiaLiteDialect extends BasicSQLDialect {
                 finally {
                     dataStore.closeSafe( st );
                 }
+                
+                createSpatialIndex( featureType.getTypeName(), gd.getLocalName(), cx );
+            }
+        }
+    }
+    
+    /**
+     * Creates the R*Tree spatial index of a geometry column, along with the triggers keeping
+     * it in synch with the table. A failure is logged, leaving the column without index.
+     */
+    void createSpatialIndex(String tableName, String columnName, Connection cx) {
+        String sql = "SELECT CreateSpatialIndex('" + tableName + "', '" + columnName + "')";
+        LOGGER.fine( sql );
+        
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            st = cx.createStatement();
+            rs = st.executeQuery( sql );
+            if ( !rs.next() || rs.getInt( 1 ) != 1 ) {
+                LOGGER.warning( "Could not create the spatial index of " + tableName + "." + columnName );
             }
         }
+        catch( SQLException e ) {
+            LOGGER.log( Level.WARNING, "Could not create the spatial index of " + tableName + "." 
+                + columnName, e );
+        }
+        finally {
+            dataStore.closeSafe( rs );
+            dataStore.closeSafe( st );
+        }
     }
     
     @Override
@@ -336,6 +369,54 @@ public class SpatiaLiteDialect extends BasicSQLDialect {
         }
     }
     
+    /**
+     * Reads the bounds out of the R*Tree spatial indexes, which saves scanning and parsing all
+     * the geometries of the table. Returns null unless all the geometry columns are indexed.
+     * <p>
+     * The R*Tree stores single precision values rounded outwards, so the bounds might be a
+     * little larger than the actual ones.
+     * </p>
+     */
+    @Override
+    public List<ReferencedEnvelope> getOptimizedBounds(String schema, SimpleFeatureType featureType,
+            Connection cx) throws SQLException, IOException {
+        List<ReferencedEnvelope> result = new ArrayList<ReferencedEnvelope>();
+        for (AttributeDescriptor ad : featureType.getAttributeDescriptors()) {
+            if (!(ad instanceof GeometryDescriptor)) {
+                continue;
+            }
+            
+            GeometryDescriptor gd = (GeometryDescriptor) ad;
+            String spatialIndex = (String) gd.getUserData().get(SPATIALITE_SPATIAL_INDEX);
+            if (spatialIndex == null) {
+                return null;
+            }
+            
+            String sql = "SELECT min(xmin), min(ymin), max(xmax), max(ymax) FROM \"" 
+                + spatialIndex + "\"";
+            LOGGER.fine(sql);
+            
+            Statement st = cx.createStatement();
+            try {
+                ResultSet rs = st.executeQuery(sql);
+                try {
+                    // an empty index returns nulls
+                    if (rs.next() && rs.getObject(1) != null) {
+                        result.add(new ReferencedEnvelope(rs.getDouble(1), rs.getDouble(3), 
+                            rs.getDouble(2), rs.getDouble(4), gd.getCoordinateReferenceSystem()));
+                    }
+                }
+                finally {
+                    dataStore.closeSafe(rs);
+                }
+            }
+            finally {
+                dataStore.closeSafe(st);
+            }
+        }
+        return result;
+    }
+    
     @Override
     public boolean lookupGeneratedValuesPostInsert() {
         return true;
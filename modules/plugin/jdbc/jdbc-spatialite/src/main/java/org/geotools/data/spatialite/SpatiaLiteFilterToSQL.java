@@ -145,18 +145,17 @@ public class SpatiaLiteFilterToSQL extends FilterToSQL {
                 out.write(")");
             }
             
-            if (!(filter instanceof Disjoint)) {
+            // disjoint and beyond match features away from the geometry, the index can't help
+            if (!(filter instanceof Disjoint) && !(filter instanceof Beyond)) {
                 String spatialIndex = (String) 
                     currentGeometry.getUserData().get(SpatiaLiteDialect.SPATIALITE_SPATIAL_INDEX);
-                if (spatialIndex != null) {
-                    Envelope e = geometry.evaluate(null, Envelope.class);
-                    out.write(" AND ROWID IN (");
-                    out.write("SELECT pkid FROM \""+spatialIndex+"\" WHERE ");
-                    out.write("xmin <= " + e.getMaxX() + " AND ");
-                    out.write("xmax >= " + e.getMinX() + " AND ");
-                    out.write("ymin <= " + e.getMaxY() + " AND ");
-                    out.write("ymax >= " + e.getMinY());
-                    out.write(")");
+                Envelope e = spatialIndex != null ? geometry.evaluate(null, Envelope.class) : null;
+                if (e != null && !e.isNull()) {
+                    if (filter instanceof DWithin) {
+                        e = new Envelope(e);
+                        e.expandBy(((DWithin) filter).getDistance());
+                    }
+                    encodeSpatialIndexFilter(spatialIndex, e);
                 }
             }
         } 
@@ -166,4 +165,19 @@ public class SpatiaLiteFilterToSQL extends FilterToSQL {
         
         return extraData;
     }
+
+    /**
+     * Restricts the rows to the ones whose bounding box, as stored in the R*Tree spatial
+     * index, intersects the envelope. SQLite does not use the index on its own, without the
+     * subquery the spatial functions are evaluated against every row of the table.
+     */
+    void encodeSpatialIndexFilter(String spatialIndex, Envelope e) throws IOException {
+        out.write(" AND ROWID IN (");
+        out.write("SELECT pkid FROM \""+spatialIndex+"\" WHERE ");
+        out.write("xmin <= " + e.getMaxX() + " AND ");
+        out.write("xmax >= " + e.getMinX() + " AND ");
+        out.write("ymin <= " + e.getMaxY() + " AND ");
+        out.write("ymax >= " + e.getMinY());
+        out.write(")");
+    }
 }
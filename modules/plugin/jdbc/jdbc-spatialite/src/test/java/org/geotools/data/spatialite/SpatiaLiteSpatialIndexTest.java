@@ -0,0 +1,167 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2011, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.spatialite;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.jdbc.JDBCTestSetup;
+import org.geotools.jdbc.JDBCTestSupport;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Checks the R*Tree spatial indexes are created with new tables, and used by the spatial
+ * filters and the bounds computation.
+ *
+ * @source $URL$
+ */
+public class SpatiaLiteSpatialIndexTest extends JDBCTestSupport {
+
+    static final String TABLE = "indexed";
+
+    static final String INDEX = "idx_indexed_geom";
+
+    @Override
+    protected JDBCTestSetup createTestSetup() {
+        return new SpatiaLiteTestSetup();
+    }
+
+    @Override
+    protected void connect() throws Exception {
+        super.connect();
+        runSafe("DROP TABLE " + INDEX);
+        runSafe("DROP TABLE " + TABLE);
+        runSafe("DELETE FROM geometry_columns WHERE f_table_name = '" + TABLE + "'");
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName(TABLE);
+        tb.add("geom", Point.class, DefaultGeographicCRS.WGS84);
+        tb.add("name", String.class);
+        dataStore.createSchema(tb.buildFeatureType());
+
+        SimpleFeatureStore store = (SimpleFeatureStore) dataStore.getFeatureSource(TABLE);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(store.getSchema());
+        DefaultFeatureCollection features = new DefaultFeatureCollection(null, store.getSchema());
+        GeometryFactory gf = new GeometryFactory();
+        for (int i = 0; i < 10; i++) {
+            fb.add(gf.createPoint(new Coordinate(i, i)));
+            fb.add("p" + i);
+            features.add(fb.buildFeature(null));
+        }
+        store.addFeatures(features);
+    }
+
+    void runSafe(String sql) throws SQLException {
+        Connection cx = dataStore.getDataSource().getConnection();
+        try {
+            Statement st = cx.createStatement();
+            try {
+                st.execute(sql);
+            } catch (SQLException e) {
+                // the table might not be there
+            } finally {
+                st.close();
+            }
+        } finally {
+            cx.close();
+        }
+    }
+
+    public void testIndexCreated() throws Exception {
+        SimpleFeatureType schema = dataStore.getSchema(TABLE);
+        GeometryDescriptor gd = schema.getGeometryDescriptor();
+        assertEquals(INDEX, gd.getUserData().get(SpatiaLiteDialect.SPATIALITE_SPATIAL_INDEX));
+
+        // the triggers filled the index
+        Connection cx = dataStore.getDataSource().getConnection();
+        try {
+            Statement st = cx.createStatement();
+            ResultSet rs = st.executeQuery("SELECT count(*) FROM " + INDEX);
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(1));
+            rs.close();
+            st.close();
+        } finally {
+            cx.close();
+        }
+    }
+
+    public void testFilters() throws Exception {
+        FilterFactory2 ff = (FilterFactory2) dataStore.getFilterFactory();
+        SimpleFeatureCollection features = dataStore.getFeatureSource(TABLE).getFeatures();
+
+        Filter bbox = ff.bbox("geom", 1.5, 1.5, 4.5, 4.5, "EPSG:4326");
+        assertEquals(3, features.subCollection(bbox).size());
+
+        Point origin = new GeometryFactory().createPoint(new Coordinate(0, 0));
+        // the index must be looked up around the geometry, not just on its envelope
+        Filter dwithin = ff.dwithin(ff.property("geom"), ff.literal(origin), 1.5, "m");
+        assertEquals(2, features.subCollection(dwithin).size());
+
+        // the index does not help finding the features away from the geometry
+        Filter beyond = ff.beyond(ff.property("geom"), ff.literal(origin), 1.5, "m");
+        assertEquals(8, features.subCollection(beyond).size());
+    }
+
+    public void testEncodeIndexFilter() throws Exception {
+        SpatiaLiteFilterToSQL encoder = new SpatiaLiteFilterToSQL();
+        encoder.setFeatureType(dataStore.getSchema(TABLE));
+        FilterFactory2 ff = (FilterFactory2) dataStore.getFilterFactory();
+
+        String sql = encoder.encodeToString(ff.bbox("geom", 1, 2, 3, 4, "EPSG:4326"));
+        assertTrue(sql, sql.contains("ROWID IN (SELECT pkid FROM \"" + INDEX + "\""));
+
+        Point origin = new GeometryFactory().createPoint(new Coordinate(0, 0));
+        sql = encoder.encodeToString(ff.dwithin(ff.property("geom"), ff.literal(origin), 2, "m"));
+        assertTrue(sql, sql.contains("xmin <= 2.0 AND xmax >= -2.0"));
+
+        sql = encoder.encodeToString(ff.beyond(ff.property("geom"), ff.literal(origin), 2, "m"));
+        assertFalse(sql, sql.contains("ROWID IN"));
+    }
+
+    public void testBounds() throws Exception {
+        ReferencedEnvelope bounds = dataStore.getFeatureSource(TABLE).getBounds();
+        assertEquals(0, bounds.getMinX(), 1e-6);
+        assertEquals(0, bounds.getMinY(), 1e-6);
+        assertEquals(9, bounds.getMaxX(), 1e-6);
+        assertEquals(9, bounds.getMaxY(), 1e-6);
+
+        // the index covers the whole table, filtered bounds are still computed from the rows
+        FilterFactory2 ff = (FilterFactory2) dataStore.getFilterFactory();
+        bounds = dataStore.getFeatureSource(TABLE).getBounds(
+                new DefaultQuery(TABLE, ff.equals(ff.property("name"), ff.literal("p3"))));
+        assertEquals(3, bounds.getMinX(), 1e-6);
+        assertEquals(3, bounds.getMaxX(), 1e-6);
+    }
+}
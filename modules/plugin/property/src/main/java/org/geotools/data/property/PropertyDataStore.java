@@ -25,6 +25,8 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Set;
 
 import org.geotools.data.AbstractDataStore;
 import org.geotools.data.DataSourceException;
@@ -32,8 +34,10 @@ import org.geotools.data.DataUtilities;
 import org.geotools.data.DefaultServiceInfo;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
 import org.geotools.data.ServiceInfo;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.SchemaException;
 import org.opengis.feature.simple.SimpleFeature;
@@ -120,6 +124,15 @@ public class PropertyDataStore extends AbstractDataStore {
     protected  FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName) throws IOException {
         return new PropertyFeatureReader( directory, typeName );        
     }
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName,
+            Query query) throws IOException {
+        PropertyFeatureReader reader = new PropertyFeatureReader( directory, typeName );
+        Hints hints = query.getHints();
+        if( hints != null && Boolean.TRUE.equals( hints.get( Hints.FEATURE_REUSE ))){
+            reader.setFeatureReuse( true );
+        }
+        return reader;
+    }
     protected FeatureWriter<SimpleFeatureType, SimpleFeature> getFeatureWriter(String typeName) throws IOException {
         return new PropertyFeatureWriter( this, typeName );
     }
@@ -136,5 +149,8 @@ public class PropertyDataStore extends AbstractDataStore {
     //
     public SimpleFeatureSource getFeatureSource(final String typeName) throws IOException {
         return new PropertyFeatureSource( this, typeName );
-    }        
+    }
+    protected Set getSupportedHints() {
+        return Collections.singleton( Hints.FEATURE_REUSE );
+    }
 }
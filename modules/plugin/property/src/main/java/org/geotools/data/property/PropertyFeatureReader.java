@@ -39,6 +39,9 @@ public class PropertyFeatureReader implements  FeatureReader<SimpleFeatureType,
 	private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.data.property");
     /** DOCUMENT ME! */
     PropertyAttributeReader reader;
+    
+    /** builds the features, reused across calls to next() */
+    SimpleFeatureBuilder builder;
 
     /**
      * Creates a new PropertyFeatureReader object.
@@ -52,6 +55,16 @@ public class PropertyFeatureReader implements  FeatureReader<SimpleFeatureType,
         throws IOException {
         File file = new File(directory, typeName + ".properties");
         reader = new PropertyAttributeReader(file);
+        builder = new SimpleFeatureBuilder(reader.type);
+    }
+    
+    /**
+     * Enables recycling of the returned feature object, see 
+     * {@link org.geotools.factory.Hints#FEATURE_REUSE}
+     * @param featureReuse
+     */
+    public void setFeatureReuse(boolean featureReuse) {
+        builder.setFeatureReuse(featureReuse);
     }
 
     /**
@@ -76,21 +89,21 @@ public class PropertyFeatureReader implements  FeatureReader<SimpleFeatureType,
         throws IOException, IllegalAttributeException, NoSuchElementException {
         reader.next();
 
-        SimpleFeatureType type = reader.type;
         String fid = reader.getFeatureID();
-        Object[] values = new Object[reader.getAttributeCount()];
 
         for (int i = 0; i < reader.getAttributeCount(); i++) {
+            Object value;
             try {
-				values[i] = reader.read(i);
+				value = reader.read(i);
 			} catch (RuntimeException e) {
-				values[i] = null;
+				value = null;
 			} catch (IOException e) {
 				throw e;
 			}
+            builder.add(value);
         }
 
-        return SimpleFeatureBuilder.build(type, values, fid);
+        return builder.buildFeature(fid);
     }
 
     /**
@@ -44,6 +44,7 @@ public class PropertyFeatureSource extends AbstractFeatureLocking {
     int cacheCount = -1;
     
     PropertyFeatureSource( PropertyDataStore propertyDataStore, String typeName ) throws IOException{
+        super( propertyDataStore.getSupportedHints() );
         this.store = propertyDataStore;
         this.typeName = typeName;
         this.featureType = store.getSchema( typeName );
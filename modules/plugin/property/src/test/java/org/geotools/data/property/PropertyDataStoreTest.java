@@ -51,6 +51,8 @@ import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 
 /**
  * Test functioning of PropertyDataStore.
@@ -207,6 +209,73 @@ public class PropertyDataStoreTest extends TestCase {
         return count( store.getFeatureReader( typeName ) );                
     }
     
+    public void testGetFeatureReaderReuse() throws Exception {
+        DefaultQuery query = new DefaultQuery("road");
+        query.setHints(new Hints(Hints.FEATURE_REUSE, Boolean.TRUE));
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = store.getFeatureReader("road", query);
+        List<String> names = new ArrayList<String>();
+        List<String> fids = new ArrayList<String>();
+        SimpleFeature previous = null;
+        try {
+            while( reader.hasNext() ){
+                SimpleFeature feature = reader.next();
+                if( previous != null ){
+                    assertSame( previous, feature );
+                }
+                previous = feature;
+                names.add( (String) feature.getAttribute("name") );
+                fids.add( feature.getID() );
+            }
+        }
+        finally {
+            reader.close();
+        }
+        assertEquals( Arrays.asList( "jody", "brent", "dave", "justin" ), names );
+        assertEquals( Arrays.asList( "fid1", "fid2", "fid3", "fid4" ), fids );
+        assertTrue( store.getFeatureSource("road").getSupportedHints().contains( Hints.FEATURE_REUSE ) );
+    }
+
+    public void testGetFeaturesSorted() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("road");
+        assertFalse( source.getQueryCapabilities().supportsSorting( new SortBy[] {
+                ff.sort("name", SortOrder.ASCENDING) } ) );
+
+        DefaultQuery query = new DefaultQuery("road");
+        query.setSortBy( new SortBy[] { ff.sort("name", SortOrder.ASCENDING) } );
+        query.setPropertyNames( new String[] { "id" } );
+        List<Object> ids = new ArrayList<Object>();
+        SimpleFeatureIterator it = source.getFeatures( query ).features();
+        try {
+            while( it.hasNext() ){
+                SimpleFeature feature = it.next();
+                assertEquals( 1, feature.getAttributeCount() );
+                ids.add( feature.getAttribute("id") );
+            }
+        }
+        finally {
+            it.close();
+        }
+        assertEquals( Arrays.asList( (Object) 2, 3, 1, 4 ), ids );
+
+        // page through the sorted results
+        query.setSortBy( new SortBy[] { ff.sort("name", SortOrder.DESCENDING) } );
+        query.setStartIndex( 1 );
+        query.setMaxFeatures( 2 );
+        SimpleFeatureCollection page = source.getFeatures( query );
+        assertEquals( 2, page.size() );
+        ids.clear();
+        it = page.features();
+        try {
+            while( it.hasNext() ){
+                ids.add( it.next().getAttribute("id") );
+            }
+        }
+        finally {
+            it.close();
+        }
+        assertEquals( Arrays.asList( (Object) 1, 3 ), ids );
+    }
+
     public void testWriterSkipThrough() throws Exception {
         PropertyFeatureWriter writer = (PropertyFeatureWriter)
             store.getFeatureWriter("road");
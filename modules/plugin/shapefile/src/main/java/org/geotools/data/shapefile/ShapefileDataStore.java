@@ -46,6 +46,7 @@ import org.geotools.data.EmptyFeatureReader;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.Query;
+import org.geotools.data.QueryPlan;
 import org.geotools.data.ResourceInfo;
 import org.geotools.data.ServiceInfo;
 import org.geotools.data.Transaction;
@@ -63,6 +64,8 @@ import org.geotools.data.shapefile.shp.ShapefileReader;
 import org.geotools.data.shapefile.shp.ShapefileWriter;
 import org.geotools.data.shapefile.shp.xml.ShpXmlFileReader;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.statistics.FeatureTypeStatistics;
+import org.geotools.data.statistics.StatisticsCatalog;
 import org.geotools.factory.Hints;
 import org.geotools.feature.AttributeTypeBuilder;
 import org.geotools.feature.FeatureTypes;
@@ -127,6 +130,7 @@ public class ShapefileDataStore extends AbstractFileDataStore {
     protected SimpleFeatureType schema; // read only
     protected boolean useMemoryMappedBuffer = false; // windows is not up to use memory mapping in anger
     protected Charset dbfCharset;
+    protected StatisticsCatalog statisticsCatalog; // null unless statistics are enabled
     
     private ServiceInfo info;
 
@@ -370,6 +374,72 @@ public class ShapefileDataStore extends AbstractFileDataStore {
         }
     }
 
+    /**
+     * Describes the scan of the shapefile: the shapes outside of the filter bounds are skipped
+     * reading their header only, the dbf file is not opened when only the geometry is needed,
+     * and the whole filter is evaluated in memory.
+     */
+    @Override
+    protected QueryPlan explain(Query query) throws IOException {
+        QueryPlan plan = super.explain(query);
+        Filter filter = query.getFilter() != null ? query.getFilter() : Filter.INCLUDE;
+        
+        StringBuilder sb = new StringBuilder("scan of ").append(shpFiles.get(SHP));
+        Envelope bbox = getFilterBounds(filter);
+        if (bbox != null) {
+            sb.append(", skipping the shapes outside of ").append(bbox);
+        }
+        if (isGeometryOnly(query)) {
+            sb.append(", without reading ").append(shpFiles.get(DBF));
+            plan.setRetypeInMemory(false);
+        }
+        plan.setNativeQuery(sb.toString());
+        
+        // every record is at least looked at
+        int records = getCount(new Query(getCurrentTypeName()));
+        if (records >= 0) {
+            plan.setEstimatedCost(records);
+        }
+        FeatureTypeStatistics statistics = statisticsCatalog != null ? statisticsCatalog
+                .getCurrentStatistics(getCurrentTypeName()) : null;
+        if (statistics != null) {
+            plan.setEstimatedRows(Math.min(statistics.estimateCount(filter), query
+                    .getMaxFeatures()));
+        }
+        return plan;
+    }
+    
+    /**
+     * Returns the bounds of the area a filter selects, or null if it is not limited to an area
+     */
+    protected Envelope getFilterBounds(Filter filter) {
+        Envelope bbox = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR,
+                new ReferencedEnvelope());
+        if (bbox == null || bbox.isNull() || Double.isInfinite(bbox.getWidth())
+                || Double.isInfinite(bbox.getHeight())) {
+            return null;
+        }
+        return bbox;
+    }
+    
+    /**
+     * True if the query only needs the default geometry, both to return it and to evaluate
+     * the filter
+     */
+    boolean isGeometryOnly(Query query) {
+        String[] propertyNames = query.getPropertyNames();
+        String defaultGeomName = schema.getGeometryDescriptor().getLocalName();
+        if (propertyNames == null || propertyNames.length != 1
+                || !propertyNames[0].equals(defaultGeomName)) {
+            return false;
+        }
+        FilterAttributeExtractor extractor = new FilterAttributeExtractor(schema);
+        query.getFilter().accept(extractor, null);
+        String[] filterAttnames = extractor.getAttributeNames();
+        return filterAttnames.length == 0
+                || (filterAttnames.length == 1 && filterAttnames[0].equals(defaultGeomName));
+    }
+
     /**
      * Just like the basic version, but adds a small optimization: if no
      * attributes are going to be read, don't uselessly open and read the dbf
@@ -401,20 +471,34 @@ public class ShapefileDataStore extends AbstractFileDataStore {
                 SimpleFeatureType newSchema = DataUtilities.createSubType(
                         schema, propertyNames);
 
-                return createFeatureReader(typeName,
-                        getAttributesReader(false, query), newSchema);
+                return setupFeatureReuse(createFeatureReader(typeName,
+                        getAttributesReader(false, query), newSchema), query);
             } catch (SchemaException se) {
                 throw new DataSourceException("Error creating schema", se);
             }
         }
 
         try {
-            return createFeatureReader(getSchema().getTypeName(),
-                    getAttributesReader(true, query), schema);
+            return setupFeatureReuse(createFeatureReader(getSchema().getTypeName(),
+                    getAttributesReader(true, query), schema), query);
         } catch (SchemaException se) {
             throw new DataSourceException("Error creating schema", se);
         }
     }
+    
+    /**
+     * Enables feature object recycling on the reader if the query asks for it with the
+     * {@link Hints#FEATURE_REUSE} hint
+     */
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> setupFeatureReuse(
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader, Query query) {
+        Hints hints = query.getHints();
+        if (hints != null && Boolean.TRUE.equals(hints.get(Hints.FEATURE_REUSE))
+                && reader instanceof org.geotools.data.FIDFeatureReader) {
+            ((org.geotools.data.FIDFeatureReader) reader).setFeatureReuse(true);
+        }
+        return reader;
+    }
 
     /**
      * Builds the most appropriate geometry factory depending on the available query hints
@@ -687,8 +771,54 @@ public class ShapefileDataStore extends AbstractFileDataStore {
             featureReader = new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(schema);
         }
 
-        return new ShapefileFeatureWriter(typeName, shpFiles, attReader,
-                featureReader, dbfCharset);
+        return wrapStatistics(new ShapefileFeatureWriter(typeName, shpFiles, attReader,
+                featureReader, dbfCharset));
+    }
+
+    /**
+     * Wraps the writer so that it keeps the statistics up to date, if the store has some.
+     * Writers are only created to write directly to the files, transactions use them on
+     * commit.
+     */
+    protected FeatureWriter<SimpleFeatureType, SimpleFeature> wrapStatistics(
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer) throws IOException {
+        if (statisticsCatalog == null) {
+            return writer;
+        }
+        return statisticsCatalog.wrap(writer, getCurrentTypeName(), Transaction.AUTO_COMMIT);
+    }
+
+    /**
+     * The catalog of the statistics of the shapefile, or <code>null</code> if statistics are
+     * not enabled
+     */
+    public StatisticsCatalog getStatisticsCatalog() {
+        return statisticsCatalog;
+    }
+
+    /**
+     * Enables statistics for the shapefile. Once collected with
+     * {@link StatisticsCatalog#refresh(SimpleFeatureSource)} they are updated by the writes
+     * made through this store, and used to estimate the count and bounds of filtered queries
+     * when {@link Hints#STATISTICS_ESTIMATES} allows it. Statistics must be refreshed after
+     * the shapefile has been modified by other means.
+     * 
+     * @param statisticsCatalog the catalog, for example one storing the statistics next to
+     *        the shapefile, <code>null</code> to disable statistics
+     */
+    public void setStatisticsCatalog(StatisticsCatalog statisticsCatalog) {
+        this.statisticsCatalog = statisticsCatalog;
+    }
+
+    /**
+     * Returns the statistics of the shapefile if estimates are allowed for the query and
+     * statistics are available and current, <code>null</code> otherwise
+     */
+    protected FeatureTypeStatistics getEstimateStatistics(Query query) throws IOException {
+        if (statisticsCatalog == null || !StatisticsCatalog.isEstimateAllowed(query.getHints())) {
+            return null;
+        }
+        return statisticsCatalog.getCurrentStatistics(getCurrentTypeName());
     }
 
     /**
@@ -1027,6 +1157,11 @@ public class ShapefileDataStore extends AbstractFileDataStore {
             return getBounds();
         }
 
+        FeatureTypeStatistics statistics = getEstimateStatistics(query);
+        if (statistics != null && query.getCoordinateSystemReproject() == null) {
+            return statistics.estimateBounds(query.getFilter());
+        }
+
         return null; // too expensive
 
         // TODO should we just return the layer? matches the javadocs
@@ -1080,6 +1215,11 @@ public class ShapefileDataStore extends AbstractFileDataStore {
 
         }
 
+        FeatureTypeStatistics statistics = getEstimateStatistics(query);
+        if (statistics != null) {
+            return Math.min(statistics.estimateCount(query.getFilter()), query.getMaxFeatures());
+        }
+
         return super.getCount(query);
     }
 
@@ -1178,6 +1318,7 @@ public class ShapefileDataStore extends AbstractFileDataStore {
         hints.add( Hints.JTS_COORDINATE_SEQUENCE_FACTORY );
         hints.add( Hints.GEOMETRY_DISTANCE);
         hints.add( Hints.SCREENMAP);
+        hints.add( Hints.FEATURE_REUSE);
         return hints;
     }
     
@@ -49,6 +49,7 @@ import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.InProcessLockingManager;
 import org.geotools.data.Query;
+import org.geotools.data.QueryPlan;
 import org.geotools.data.Transaction;
 import org.geotools.data.TransactionStateDiff;
 import org.geotools.data.shapefile.FileWriter;
@@ -61,6 +62,7 @@ import org.geotools.data.shapefile.shp.IndexFile;
 import org.geotools.data.shapefile.shp.ShapefileException;
 import org.geotools.data.shapefile.shp.ShapefileReader;
 import org.geotools.data.shapefile.shp.ShapefileReader.Record;
+import org.geotools.data.statistics.FeatureTypeStatistics;
 import org.geotools.factory.Hints;
 import org.geotools.feature.SchemaException;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
@@ -274,6 +276,38 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
         return filter;
     }
 
+    /**
+     * Adds the index used to the plan: the fid index for id filters, the spatial index when the
+     * filter selects an area. Neither index is checked by this method, they might be created
+     * or rebuilt when the query is run.
+     */
+    @Override
+    protected QueryPlan explain(Query query) throws IOException {
+        QueryPlan plan = super.explain(query);
+        Filter filter = query.getFilter() != null ? query.getFilter() : Filter.INCLUDE;
+        FeatureTypeStatistics statistics = statisticsCatalog != null ? statisticsCatalog
+                .getCurrentStatistics(getCurrentTypeName()) : null;
+        if (filter instanceof Id && isLocal()) {
+            plan.setIndex("fid index " + shpFiles.get(FIX));
+            plan.setNativeQuery("lookup of the ids in " + shpFiles.get(FIX) + ", then read of "
+                    + shpFiles.get(SHP) + " at their offsets");
+            plan.setEstimatedCost(((Id) filter).getIdentifiers().size());
+        } else {
+            Envelope bbox = getFilterBounds(filter);
+            if (bbox != null && useIndex) {
+                plan.setIndex(treeType + " spatial index " + shpFiles.get(treeType.shpFileType));
+                plan.setNativeQuery("lookup of " + bbox + " in " + shpFiles.get(treeType.shpFileType)
+                        + ", then " + plan.getNativeQuery());
+                if (statistics != null && statistics.getDensityGrid() != null) {
+                    // only the records found by the index are read
+                    plan.setEstimatedCost(Math.ceil(statistics.getCount()
+                            * statistics.getDensityGrid().estimateFraction(bbox)));
+                }
+            }
+        }
+        return plan;
+    }
+
     /**
      * Creates a new instance of ShapefileDataStore.
      * 
@@ -393,8 +427,8 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
                 newSchema = createSubType(propertyNames);
             }
 
-            return createFeatureReader(typeName, getAttributesReader(readDbf,
-                    readGeometry, query, newSchema), newSchema);
+            return setupFeatureReuse(createFeatureReader(typeName, getAttributesReader(readDbf,
+                    readGeometry, query, newSchema), newSchema), query);
         } catch (SchemaException se) {
             throw new DataSourceException("Error creating schema", se);
         }
@@ -972,8 +1006,8 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
             return new EmptyFeatureWriter(schema);
         }
 
-        return new IndexedShapefileFeatureWriter(typeName, shpFiles, attReader,
-                featureReader, this, dbfCharset);
+        return wrapStatistics(new IndexedShapefileFeatureWriter(typeName, shpFiles, attReader,
+                featureReader, this, dbfCharset));
     }
 
     /**
@@ -987,6 +1021,11 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
         if (filter == Filter.INCLUDE || query == Query.ALL) {
             return getBounds();
         }
+
+        FeatureTypeStatistics statistics = getEstimateStatistics(query);
+        if (statistics != null && query.getCoordinateSystemReproject() == null) {
+            return statistics.estimateBounds(filter);
+        }
         // else if (this.useIndex) {
         // if (treeType == IndexType.GRX) {
         // return getBoundsRTree(query);
@@ -1230,6 +1269,7 @@ public class IndexedShapefileDataStore extends ShapefileDataStore implements
         hints.add( Hints.JTS_COORDINATE_SEQUENCE_FACTORY );
         hints.add( Hints.GEOMETRY_DISTANCE);
         hints.add( Hints.SCREENMAP);
+        hints.add( Hints.FEATURE_REUSE);
         return hints;
     }
 }
@@ -45,7 +45,11 @@ import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.data.statistics.FeatureTypeStatistics;
+import org.geotools.data.statistics.StatisticsCatalog;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -743,6 +747,45 @@ public class ShapefileDataStoreTest extends TestCaseSupport {
         store.dispose();
     }
 
+    public void testStatisticsFollowWrites() throws Exception {
+        ShapefileDataStore sds = createDataStore();
+        String typeName = sds.getTypeNames()[0];
+        File directory = new File(getTempFile().getPath() + "-statistics");
+        StatisticsCatalog catalog = new StatisticsCatalog(directory);
+        sds.setStatisticsCatalog(catalog);
+        SimpleFeatureStore featureStore = (SimpleFeatureStore) sds.getFeatureSource(typeName);
+        catalog.refresh(featureStore);
+
+        // the filtered counts are estimated
+        Filter filter = ff.greaterOrEqual(ff.property("b"), ff.literal(0));
+        DefaultQuery query = new DefaultQuery(typeName, filter);
+        query.setHints(new Hints(Hints.STATISTICS_ESTIMATES, Boolean.TRUE));
+        FeatureTypeStatistics stats = catalog.getStatistics(typeName);
+        assertEquals(20, stats.getCount());
+        assertEquals(stats.estimateCount(filter), featureStore.getCount(query));
+
+        // removals made under a transaction update the statistics on commit
+        Transaction t = new DefaultTransaction();
+        featureStore.setTransaction(t);
+        featureStore.removeFeatures(ff.less(ff.property("b"), ff.literal(10)));
+        assertEquals(20, stats.getCount());
+        t.commit();
+        featureStore.setTransaction(Transaction.AUTO_COMMIT);
+        t.close();
+        assertEquals(10, stats.getCount());
+        assertFalse(stats.isStale());
+        assertEquals(stats.estimateCount(filter), featureStore.getCount(query));
+        assertEquals(10, stats.estimateCount(filter), 2);
+
+        // and so are the ones made in auto commit mode, with the statistics saved right away
+        featureStore.removeFeatures(ff.less(ff.property("b"), ff.literal(15)));
+        assertEquals(5, stats.getCount());
+        assertEquals(5, new StatisticsCatalog(directory).getStatistics(typeName).getCount());
+        sds.dispose();
+        catalog.remove(typeName);
+        directory.delete();
+    }
+
     /**
      * Checks if feature reading optimizations still allow to execute the
      * queries or not
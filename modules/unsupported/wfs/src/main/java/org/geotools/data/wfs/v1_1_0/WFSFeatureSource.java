@@ -26,6 +26,8 @@ import org.geotools.data.FeatureListener;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
+import org.geotools.data.QueryPlan;
+import org.geotools.data.QueryPlanner;
 import org.geotools.data.ResourceInfo;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.wfs.WFSDataStore;
@@ -49,7 +51,7 @@ import org.opengis.filter.Filter;
  *         /data/XmlSimpleFeatureParser.java $
  */
 
-public class WFSFeatureSource implements SimpleFeatureSource {
+public class WFSFeatureSource implements SimpleFeatureSource, QueryPlanner {
 
     private String typeName;
 
@@ -132,6 +134,14 @@ public class WFSFeatureSource implements SimpleFeatureSource {
         return count;
     }
 
+    /**
+     * @see QueryPlanner#explain(Query)
+     */
+    public QueryPlan explain(Query query) throws IOException {
+        Query namedQuery = namedQuery(typeName, query);
+        return dataStore.explain(namedQuery);
+    }
+
     /**
      * @see FeatureSource#getFeatures(Filter)
      */
@@ -44,6 +44,7 @@ import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.LockingManager;
 import org.geotools.data.MaxFeatureReader;
 import org.geotools.data.Query;
+import org.geotools.data.QueryPlan;
 import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.SchemaNotFoundException;
 import org.geotools.data.Transaction;
@@ -370,6 +371,49 @@ public final class WFS_1_1_0_DataStore implements WFSDataStore {
         return reader;
     }
 
+    /**
+     * Describes how {@link #getFeatureReader(Query, Transaction)} runs a query: the part of the
+     * filter the server supports, the sorting and the maximum number of features are sent with
+     * the GetFeature request, the rest of the filter is evaluated on the parsed features. No
+     * request is sent to the server.
+     */
+    public QueryPlan explain(final Query query) throws IOException {
+        final String typeName = query.getTypeName();
+        QueryPlan plan = new QueryPlan(typeName);
+        if (Filter.EXCLUDE.equals(query.getFilter())) {
+            plan.setNativeFilter(Filter.EXCLUDE);
+            plan.setEstimatedRows(0);
+            plan.setEstimatedCost(0);
+            return plan;
+        }
+
+        Filter[] filters = wfs.splitFilters(query.getFilter());
+        plan.setNativeFilter(filters[0]);
+        plan.setResidualFilter(filters[1]);
+        plan.setSortBy(query.getSortBy());
+
+        final boolean post = useHttpPostFor(GET_FEATURE);
+        StringBuilder sb = new StringBuilder("GetFeature ");
+        sb.append(post ? "POST " : "GET ").append(wfs.getOperationURL(GET_FEATURE, post));
+        sb.append(" typeName=").append(typeName);
+        int maxFeatures = getMaxFeatures(query);
+        if (maxFeatures != Query.DEFAULT_MAX) {
+            sb.append(" maxFeatures=").append(maxFeatures);
+        }
+        sb.append(" outputFormat=").append(wfs.getDefaultOutputFormat(GET_FEATURE));
+        plan.setNativeQuery(sb.toString());
+
+        plan.setPropertyNames(query.getPropertyNames());
+        plan.setRetypeInMemory(query.getPropertyNames() != Query.ALL_NAMES);
+        plan.setLimitInMemory(maxFeatures != Query.DEFAULT_MAX);
+        if (query.getCoordinateSystemReproject() != null) {
+            // requested to the server through the srsName, when it supports the CRS
+            plan.setReprojection(getFeatureTypeCRS(typeName), query.getCoordinateSystemReproject(),
+                    false);
+        }
+        return plan;
+    }
+
     /**
      * Sends the GetFeature request using the appropriate HTTP method depending on the
      * {@link #isPreferPostOverGet()} preference and what the server supports.